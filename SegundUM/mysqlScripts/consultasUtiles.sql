@@ -46,4 +46,21 @@ WHERE
     MONTH(p.fecha_publicacion) = MONTH(CURRENT_DATE())
     AND YEAR(p.fecha_publicacion) = YEAR(CURRENT_DATE())
 ORDER BY 
-    p.visualizaciones DESC;
\ No newline at end of file
+    p.visualizaciones DESC;
+-- Índice sobre la ruta materializada de las categorías (descendientes por prefijo).
+-- EclipseLink sólo lo crea al generar la tabla; en una BD ya existente hay que crearlo a mano
+CREATE INDEX idx_categorias_ruta ON categorias (ruta);
+
+-- Descendientes de una categoría por su ruta
+SELECT * FROM categorias WHERE ruta LIKE '|222|%' AND id <> '222';
+
+-- Índice para la paginación por clave de productos (fecha de publicación descendente, id).
+-- Igual que el anterior, en una BD ya existente hay que crearlo a mano
+CREATE INDEX idx_productos_fecha_id ON productos (fecha_publicacion, id);
+
+-- Página siguiente a la última fila devuelta ('2025-11-12 10:00:00', 'abc')
+SELECT * FROM productos
+WHERE fecha_publicacion < '2025-11-12 10:00:00'
+   OR (fecha_publicacion = '2025-11-12 10:00:00' AND id < 'abc')
+ORDER BY fecha_publicacion DESC, id DESC
+LIMIT 21;
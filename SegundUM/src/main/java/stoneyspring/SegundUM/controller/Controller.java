@@ -2,8 +2,10 @@ package stoneyspring.SegundUM.controller;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,10 +13,19 @@ import org.slf4j.LoggerFactory;
 import stoneyspring.SegundUM.dominio.Categoria;
 import stoneyspring.SegundUM.dominio.EstadoProducto;
 import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
 import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.metricas.MetricaOperacion;
+import stoneyspring.SegundUM.metricas.RegistroMetricas;
+import stoneyspring.SegundUM.repositorio.Pagina;
 import stoneyspring.SegundUM.servicio.FactoriaServicios;
 import stoneyspring.SegundUM.servicio.ServicioException;
+import stoneyspring.SegundUM.servicio.categorias.InformeCarga;
+import stoneyspring.SegundUM.servicio.categorias.InformeSincronizacion;
 import stoneyspring.SegundUM.servicio.categorias.ServicioCategorias;
+import stoneyspring.SegundUM.servicio.estadisticas.InformeConsistencia;
+import stoneyspring.SegundUM.servicio.estadisticas.InformeMensual;
+import stoneyspring.SegundUM.servicio.estadisticas.ServicioEstadisticas;
 import stoneyspring.SegundUM.servicio.productos.ServicioProductos;
 import stoneyspring.SegundUM.servicio.usuarios.ServicioUsuarios;
 
@@ -25,23 +36,66 @@ import stoneyspring.SegundUM.servicio.usuarios.ServicioUsuarios;
  * sin interrumpir la ejecución del programa. Los errores se registran mediante
  * el logger y se retornan valores por defecto apropiados.
  * </p>
+ * <p>
+ * Cada caso de uso se mide en la métrica {@code controlador.CUn.metodo} de {@link RegistroMetricas}.
+ * Cuenta como error cualquier llamada que no termina con éxito, ya sea por datos inválidos o por
+ * un error del servicio.
+ * </p>
  * 
  * @see ServicioUsuarios
  * @see ServicioProductos
  * @see ServicioCategorias
+ * @see ServicioEstadisticas
  */
 public class Controller {
 
     private static final Logger logger = LoggerFactory.getLogger(Controller.class);
+
+    private static final MetricaOperacion METRICA_CU1_REGISTRAR_USUARIO =
+            RegistroMetricas.getMetrica("controlador", "CU1", "registrarUsuario");
+    private static final MetricaOperacion METRICA_CU2_MODIFICAR_DATOS_PERSONALES =
+            RegistroMetricas.getMetrica("controlador", "CU2", "modificarDatosPersonales");
+    private static final MetricaOperacion METRICA_CU3_DAR_ALTA_PRODUCTO =
+            RegistroMetricas.getMetrica("controlador", "CU3", "darAltaProducto");
+    private static final MetricaOperacion METRICA_CU4_MODIFICAR_PRODUCTO =
+            RegistroMetricas.getMetrica("controlador", "CU4", "modificarProducto");
+    private static final MetricaOperacion METRICA_CU5_ASOCIAR_LUGAR_RECOGIDA =
+            RegistroMetricas.getMetrica("controlador", "CU5", "asociarLugarRecogida");
+    private static final MetricaOperacion METRICA_CU6_OBTENER_RESUMEN_MENSUAL =
+            RegistroMetricas.getMetrica("controlador", "CU6", "obtenerResumenMensual");
+    private static final MetricaOperacion METRICA_CU6_OBTENER_ESTADISTICAS_MENSUALES =
+            RegistroMetricas.getMetrica("controlador", "CU6", "obtenerEstadisticasMensuales");
+    private static final MetricaOperacion METRICA_CU6_COMPROBAR_ESTADISTICAS_MENSUALES =
+            RegistroMetricas.getMetrica("controlador", "CU6", "comprobarEstadisticasMensuales");
+    private static final MetricaOperacion METRICA_CU7_BUSCAR_PRODUCTOS =
+            RegistroMetricas.getMetrica("controlador", "CU7", "buscarProductos");
+    private static final MetricaOperacion METRICA_CU7_BUSCAR_PRODUCTOS_PAGINADO =
+            RegistroMetricas.getMetrica("controlador", "CU7", "buscarProductosPaginado");
+    private static final MetricaOperacion METRICA_CU7_RECORRER_PRODUCTOS =
+            RegistroMetricas.getMetrica("controlador", "CU7", "recorrerProductos");
+    private static final MetricaOperacion METRICA_CU7_BUSCAR_CERCANOS =
+            RegistroMetricas.getMetrica("controlador", "CU7", "buscarCercanos");
+    private static final MetricaOperacion METRICA_CU8_CARGAR_CATEGORIAS =
+            RegistroMetricas.getMetrica("controlador", "CU8", "cargarCategorias");
+    private static final MetricaOperacion METRICA_CU8_CARGAR_CATEGORIAS_STREAMING =
+            RegistroMetricas.getMetrica("controlador", "CU8", "cargarCategoriasStreaming");
+    private static final MetricaOperacion METRICA_CU8_CARGAR_DIRECTORIO_CATEGORIAS =
+            RegistroMetricas.getMetrica("controlador", "CU8", "cargarDirectorioCategorias");
+    private static final MetricaOperacion METRICA_CU8_SINCRONIZAR_CATEGORIAS =
+            RegistroMetricas.getMetrica("controlador", "CU8", "sincronizarCategorias");
+    private static final MetricaOperacion METRICA_CU9_MODIFICAR_DESCRIPCION_CATEGORIA =
+            RegistroMetricas.getMetrica("controlador", "CU9", "modificarDescripcionCategoria");
     
     private ServicioUsuarios servicioUsuarios;
     private ServicioProductos servicioProductos;
     private ServicioCategorias servicioCategorias;
+    private ServicioEstadisticas servicioEstadisticas;
 
     public Controller() {
         this.servicioUsuarios = FactoriaServicios.getServicio(ServicioUsuarios.class);
         this.servicioProductos = FactoriaServicios.getServicio(ServicioProductos.class);
         this.servicioCategorias = FactoriaServicios.getServicio(ServicioCategorias.class);
+        this.servicioEstadisticas = FactoriaServicios.getServicio(ServicioEstadisticas.class);
     }
 
     // ========== CASOS DE USO DE USUARIO ==========
@@ -60,7 +114,7 @@ public class Controller {
     public String registrarUsuario(String email, String nombre, String apellidos, 
                                    String clave, LocalDate fechaNacimiento, 
                                    String telefono) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU1_REGISTRAR_USUARIO.iniciar()) {
             if (email == null || email.trim().isEmpty()) {
                 logger.warn("Intento de registro con email vacío");
                 return null;
@@ -82,9 +136,9 @@ public class Controller {
                 return null;
             }
 
-            return servicioUsuarios.altaUsuario(email, nombre, apellidos, clave, fechaNacimiento, telefono);
+            return medicion.exito(servicioUsuarios.altaUsuario(email, nombre, apellidos, clave, fechaNacimiento, telefono));
         } catch (ServicioException e) {
-            logger.error("Error al registrar el usuario con email: " + email, e);
+            logger.error("Error al registrar el usuario con email: {}", email, e);
             return null;
         }
     }
@@ -104,7 +158,7 @@ public class Controller {
                                            String apellidos, String clave, 
                                            LocalDate fechaNacimiento, 
                                            String telefono) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU2_MODIFICAR_DATOS_PERSONALES.iniciar()) {
             if (usuarioId == null || usuarioId.trim().isEmpty()) {
                 logger.warn("Intento de modificación de usuario con ID vacío");
                 return false;
@@ -112,9 +166,10 @@ public class Controller {
 
             servicioUsuarios.modificarUsuario(usuarioId, nombre, apellidos, 
                                              clave, fechaNacimiento, telefono);
+            medicion.exito();
             return true;
         } catch (ServicioException e) {
-            logger.error("Error al modificar datos del usuario con ID: " + usuarioId, e);
+            logger.error("Error al modificar datos del usuario con ID: {}", usuarioId, e);
             return false;
         }
     }
@@ -135,13 +190,13 @@ public class Controller {
                                  BigDecimal precio, EstadoProducto estado, 
                                  String categoriaId, boolean envioDisponible, 
                                  String vendedorId) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU3_DAR_ALTA_PRODUCTO.iniciar()) {
             if (titulo == null || titulo.trim().isEmpty()) {
                 logger.warn("Intento de alta de producto con título vacío");
                 return null;
             }
             if (precio == null || precio.compareTo(BigDecimal.ZERO) <= 0) {
-                logger.warn("Intento de alta de producto con precio inválido: " + precio);
+                logger.warn("Intento de alta de producto con precio inválido: {}", precio);
                 return null;
             }
             if (estado == null) {
@@ -157,10 +212,10 @@ public class Controller {
                 return null;
             }
 
-            return servicioProductos.altaProducto(titulo, descripcion, precio, estado, 
-                                                 categoriaId, envioDisponible, vendedorId);
+            return medicion.exito(servicioProductos.altaProducto(titulo, descripcion, precio, estado, 
+                                                 categoriaId, envioDisponible, vendedorId));
         } catch (ServicioException e) {
-            logger.error("Error al dar de alta el producto: " + titulo, e);
+            logger.error("Error al dar de alta el producto: {}", titulo, e);
             return null;
         }
     }
@@ -175,7 +230,7 @@ public class Controller {
      */
     public boolean modificarProducto(String productoId, BigDecimal nuevoPrecio, 
                                     String nuevaDescripcion) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU4_MODIFICAR_PRODUCTO.iniciar()) {
             if (productoId == null || productoId.trim().isEmpty()) {
                 logger.warn("Intento de modificación de producto con ID vacío");
                 return false;
@@ -187,14 +242,15 @@ public class Controller {
             }
             
             if (nuevoPrecio != null && nuevoPrecio.compareTo(BigDecimal.ZERO) <= 0) {
-                logger.warn("Intento de modificación de producto con precio inválido: " + nuevoPrecio);
+                logger.warn("Intento de modificación de producto con precio inválido: {}", nuevoPrecio);
                 return false;
             }
 
             servicioProductos.modificarProducto(productoId, nuevoPrecio, nuevaDescripcion);
+            medicion.exito();
             return true;
         } catch (ServicioException e) {
-            logger.error("Error al modificar el producto con ID: " + productoId, e);
+            logger.error("Error al modificar el producto con ID: {}", productoId, e);
             return false;
         }
     }
@@ -210,7 +266,7 @@ public class Controller {
      */
     public boolean asociarLugarRecogida(String productoId, String descripcion, 
                                        Double longitud, Double latitud) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU5_ASOCIAR_LUGAR_RECOGIDA.iniciar()) {
             if (productoId == null || productoId.trim().isEmpty()) {
                 logger.warn("Intento de asociar lugar de recogida con ID de producto vacío");
                 return false;
@@ -224,18 +280,19 @@ public class Controller {
                 return false;
             }
             if (longitud < -180 || longitud > 180) {
-                logger.warn("Intento de asociar lugar de recogida con longitud inválida: " + longitud);
+                logger.warn("Intento de asociar lugar de recogida con longitud inválida: {}", longitud);
                 return false;
             }
             if (latitud < -90 || latitud > 90) {
-                logger.warn("Intento de asociar lugar de recogida con latitud inválida: " + latitud);
+                logger.warn("Intento de asociar lugar de recogida con latitud inválida: {}", latitud);
                 return false;
             }
 
             servicioProductos.asignarLugarRecogida(productoId, descripcion, longitud, latitud);
+            medicion.exito();
             return true;
         } catch (ServicioException e) {
-            logger.error("Error al asociar lugar de recogida al producto con ID: " + productoId, e);
+            logger.error("Error al asociar lugar de recogida al producto con ID: {}", productoId, e);
             return false;
         }
     }
@@ -245,32 +302,79 @@ public class Controller {
      * 
      * @param mes Mes (1-12)
      * @param anio Año
-     * @return Lista de resúmenes de productos ordenados por visualizaciones (descendente),
+     * @return Resúmenes de los productos más vistos del mes, ordenados por visualizaciones (descendente),
      *         o lista vacía si hay algún error
      */
     public List<ResumenProducto> obtenerResumenMensual(int mes, int anio) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU6_OBTENER_RESUMEN_MENSUAL.iniciar()) {
             if (mes < 1 || mes > 12) {
-                logger.warn("Intento de obtener resumen mensual con mes inválido: " + mes);
+                logger.warn("Intento de obtener resumen mensual con mes inválido: {}", mes);
                 return Collections.emptyList();
             }
             if (anio < 1900 || anio > 2100) {
-                logger.warn("Intento de obtener resumen mensual con año inválido: " + anio);
+                logger.warn("Intento de obtener resumen mensual con año inválido: {}", anio);
                 return Collections.emptyList();
             }
 
-            return servicioProductos.historialMes(mes, anio);
+            return medicion.exito(servicioProductos.historialMes(mes, anio));
         } catch (ServicioException e) {
-            logger.error("Error al obtener resumen mensual para " + mes + "/" + anio, e);
+            logger.error("Error al obtener resumen mensual para {}/{}", mes, anio, e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * CU6 (estadísticas): Obtener el número de productos, las visualizaciones y los precios mínimo, medio y máximo
+     * de los productos publicados en un mes, en total, por vendedor y por categoría
+     * 
+     * @param mes Mes (1-12)
+     * @param anio Año
+     * @return Estadísticas del mes, o null si hay algún error
+     */
+    public InformeMensual obtenerEstadisticasMensuales(int mes, int anio) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU6_OBTENER_ESTADISTICAS_MENSUALES.iniciar()) {
+            if (mes < 1 || mes > 12) {
+                logger.warn("Intento de obtener estadísticas mensuales con mes inválido: {}", mes);
+                return null;
+            }
+            if (anio < 1900 || anio > 2100) {
+                logger.warn("Intento de obtener estadísticas mensuales con año inválido: {}", anio);
+                return null;
+            }
+
+            return medicion.exito(servicioEstadisticas.informeMes(mes, anio));
+        } catch (ServicioException e) {
+            logger.error("Error al obtener las estadísticas mensuales de {}/{}", mes, anio, e);
+            return null;
+        }
+    }
+
+    /**
+     * CU6 (comprobación): Comparar las estadísticas guardadas de un mes con las calculadas a partir de los productos
+     * 
+     * @param mes Mes (1-12)
+     * @param anio Año
+     * @return Informe con las estadísticas que no coinciden, o null si hay algún error
+     */
+    public InformeConsistencia comprobarEstadisticasMensuales(int mes, int anio) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU6_COMPROBAR_ESTADISTICAS_MENSUALES.iniciar()) {
+            if (mes < 1 || mes > 12) {
+                logger.warn("Intento de comprobar estadísticas mensuales con mes inválido: {}", mes);
+                return null;
+            }
+
+            return medicion.exito(servicioEstadisticas.comprobarMes(mes, anio));
+        } catch (ServicioException e) {
+            logger.error("Error al comprobar las estadísticas mensuales de {}/{}", mes, anio, e);
+            return null;
+        }
+    }
+
     /**
      * CU7: Consultar productos a la venta con filtros
      * 
      * @param categoriaId ID de la categoría (opcional, puede ser null)
-     * @param textoBusqueda Texto a buscar en la descripción (opcional, puede ser null)
+     * @param textoBusqueda Palabras a buscar en el título y la descripción (opcional, puede ser null)
      * @param estadoMinimo Estado mínimo del producto (opcional, puede ser null)
      * @param precioMaximo Precio máximo (opcional, puede ser null)
      * @return Lista de productos que cumplen los criterios, o lista vacía si hay algún error
@@ -278,20 +382,104 @@ public class Controller {
     public List<Producto> buscarProductos(String categoriaId, String textoBusqueda, 
                                          EstadoProducto estadoMinimo, 
                                          BigDecimal precioMaximo) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU7_BUSCAR_PRODUCTOS.iniciar()) {
             if (precioMaximo != null && precioMaximo.compareTo(BigDecimal.ZERO) < 0) {
-                logger.warn("Intento de búsqueda con precio máximo negativo: " + precioMaximo);
+                logger.warn("Intento de búsqueda con precio máximo negativo: {}", precioMaximo);
                 return Collections.emptyList();
             }
 
-            return servicioProductos.buscarProductos(categoriaId, textoBusqueda, 
-                                                    estadoMinimo, precioMaximo);
+            return medicion.exito(servicioProductos.buscarProductos(categoriaId, textoBusqueda, 
+                                                    estadoMinimo, precioMaximo));
         } catch (ServicioException e) {
             logger.error("Error al buscar productos", e);
             return Collections.emptyList();
         }
     }
 
+    /**
+     * CU7 (cercanía): Consultar los productos que se pueden recoger cerca de un punto, del más cercano al más lejano
+     * 
+     * @param latitud Latitud del punto
+     * @param longitud Longitud del punto
+     * @param radioKm Distancia máxima al lugar de recogida, en km
+     * @param categoriaId ID de la categoría (opcional, puede ser null)
+     * @param estadoMinimo Estado mínimo del producto (opcional, puede ser null)
+     * @param precioMaximo Precio máximo (opcional, puede ser null)
+     * @return Productos con su distancia, o lista vacía si hay algún error
+     */
+    public List<ProductoCercano> buscarProductosCercanos(double latitud, double longitud, double radioKm,
+                                                         String categoriaId, EstadoProducto estadoMinimo,
+                                                         BigDecimal precioMaximo) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU7_BUSCAR_CERCANOS.iniciar()) {
+            if (radioKm <= 0) {
+                logger.warn("Intento de búsqueda por cercanía con radio no positivo: {}", radioKm);
+                return Collections.emptyList();
+            }
+
+            return medicion.exito(servicioProductos.buscarCercanos(latitud, longitud, radioKm, categoriaId,
+                                                                   estadoMinimo, precioMaximo));
+        } catch (ServicioException e) {
+            logger.error("Error al buscar productos cercanos a ({}, {})", latitud, longitud, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * CU7 (paginado): Consultar productos a la venta con filtros, página a página
+     * 
+     * @param categoriaId ID de la categoría (opcional, puede ser null)
+     * @param textoBusqueda Palabras a buscar en el título y la descripción (opcional, puede ser null)
+     * @param estadoMinimo Estado mínimo del producto (opcional, puede ser null)
+     * @param precioMaximo Precio máximo (opcional, puede ser null)
+     * @param cursor Cursor de la página anterior ({@link Pagina#getSiguiente()}), o null para la primera
+     * @param tamano Número máximo de productos de la página
+     * @return Página de productos, o página vacía si hay algún error
+     */
+    public Pagina<Producto> buscarProductos(String categoriaId, String textoBusqueda,
+                                            EstadoProducto estadoMinimo, BigDecimal precioMaximo,
+                                            String cursor, int tamano) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU7_BUSCAR_PRODUCTOS_PAGINADO.iniciar()) {
+            if (tamano <= 0) {
+                logger.warn("Intento de búsqueda con tamaño de página no positivo: {}", tamano);
+                return new Pagina<>(Collections.emptyList(), null);
+            }
+            if (precioMaximo != null && precioMaximo.compareTo(BigDecimal.ZERO) < 0) {
+                logger.warn("Intento de búsqueda con precio máximo negativo: {}", precioMaximo);
+                return new Pagina<>(Collections.emptyList(), null);
+            }
+
+            return medicion.exito(servicioProductos.buscarProductos(categoriaId, textoBusqueda, estadoMinimo, precioMaximo,
+                                                     cursor, tamano));
+        } catch (ServicioException e) {
+            logger.error("Error al buscar productos", e);
+            return new Pagina<>(Collections.emptyList(), null);
+        }
+    }
+
+    /**
+     * CU7 (streaming): Recorrer todos los productos a la venta con filtros sin cargarlos a la vez en memoria
+     * 
+     * @param consumidor Recibe cada producto; no debe guardarlos todos
+     * @return true si se recorrieron todos los productos, false si hubo algún error
+     */
+    public boolean recorrerProductos(String categoriaId, String textoBusqueda,
+                                     EstadoProducto estadoMinimo, BigDecimal precioMaximo,
+                                     Consumer<? super Producto> consumidor) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU7_RECORRER_PRODUCTOS.iniciar()) {
+            if (precioMaximo != null && precioMaximo.compareTo(BigDecimal.ZERO) < 0) {
+                logger.warn("Intento de búsqueda con precio máximo negativo: {}", precioMaximo);
+                return false;
+            }
+
+            servicioProductos.recorrerProductos(categoriaId, textoBusqueda, estadoMinimo, precioMaximo, consumidor);
+            medicion.exito();
+            return true;
+        } catch (ServicioException e) {
+            logger.error("Error al recorrer productos", e);
+            return false;
+        }
+    }
+
     // ========== CASOS DE USO DE ADMINISTRADOR ==========
 
     /**
@@ -301,20 +489,94 @@ public class Controller {
      * @return true si la carga fue exitosa, false en caso contrario
      */
     public boolean cargarCategorias(String rutaArchivoXML) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU8_CARGAR_CATEGORIAS.iniciar()) {
             if (rutaArchivoXML == null || rutaArchivoXML.trim().isEmpty()) {
                 logger.error("La ruta del archivo XML es nula o vacía");
                 return false;
             }
 
             servicioCategorias.cargarJerarquia(rutaArchivoXML);
+            medicion.exito();
             return true;
         } catch (ServicioException e) {
-            logger.error("Error al cargar categorías desde XML: " + rutaArchivoXML, e);
+            logger.error("Error al cargar categorías desde XML: {}", rutaArchivoXML, e);
             return false;
         }
     }
 
+    /**
+     * CU8 (streaming): Cargar nuevas categorías desde archivo XML sin construir el árbol en memoria
+     * 
+     * @param rutaArchivoXML Ruta del archivo XML con la jerarquía de categorías
+     * @param tamanoLote Número de categorías que se insertan en cada transacción
+     * @return true si la carga fue exitosa, false en caso contrario
+     */
+    public boolean cargarCategorias(String rutaArchivoXML, int tamanoLote) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU8_CARGAR_CATEGORIAS_STREAMING.iniciar()) {
+            if (rutaArchivoXML == null || rutaArchivoXML.trim().isEmpty()) {
+                logger.error("La ruta del archivo XML es nula o vacía");
+                return false;
+            }
+            if (tamanoLote <= 0) {
+                logger.warn("Intento de carga de categorías con tamaño de lote inválido: {}", tamanoLote);
+                return false;
+            }
+
+            servicioCategorias.cargarJerarquiaStreaming(rutaArchivoXML, tamanoLote);
+            medicion.exito();
+            return true;
+        } catch (ServicioException e) {
+            logger.error("Error al cargar categorías desde XML: {}", rutaArchivoXML, e);
+            return false;
+        }
+    }
+
+    /**
+     * CU8 (directorio): Cargar todas las jerarquías de categorías del directorio <i>categoriasXML/</i>,
+     * leyendo los ficheros en paralelo
+     * 
+     * @param tamanoLote Número de categorías que se insertan en cada transacción
+     * @return Informe de la carga con el resultado y los tiempos de cada fichero, o null si hay algún error
+     */
+    public InformeCarga cargarDirectorioCategorias(int tamanoLote) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU8_CARGAR_DIRECTORIO_CATEGORIAS.iniciar()) {
+            if (tamanoLote <= 0) {
+                logger.warn("Intento de carga del directorio de categorías con tamaño de lote inválido: {}", tamanoLote);
+                return null;
+            }
+
+            InformeCarga informe = servicioCategorias.cargarDirectorio(tamanoLote);
+            medicion.exito();
+            return informe;
+        } catch (ServicioException e) {
+            logger.error("Error al cargar el directorio de categorías", e);
+            return null;
+        }
+    }
+
+    /**
+     * CU8 (sincronización): Actualizar una jerarquía de categorías ya cargada con los cambios de su archivo XML,
+     * escribiendo solo las categorías insertadas, movidas, renombradas o borradas
+     * 
+     * @param rutaArchivoXML Ruta del archivo XML con la jerarquía de categorías
+     * @return Informe con las categorías que han cambiado, o null si hay algún error
+     */
+    public InformeSincronizacion sincronizarCategorias(String rutaArchivoXML) {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU8_SINCRONIZAR_CATEGORIAS.iniciar()) {
+            if (rutaArchivoXML == null || rutaArchivoXML.trim().isEmpty()) {
+                logger.error("La ruta del archivo XML es nula o vacía");
+                return null;
+            }
+
+            InformeSincronizacion informe = servicioCategorias.sincronizarJerarquia(rutaArchivoXML);
+            medicion.exito();
+            return informe;
+        } catch (ServicioException e) {
+            logger.error("Error al sincronizar categorías desde XML: {}", rutaArchivoXML, e);
+            return null;
+        }
+    }
+
     /**
      * CU9: Modificar la descripción de una categoría existente (administrador)
      * 
@@ -324,7 +586,7 @@ public class Controller {
      */
     public boolean modificarDescripcionCategoria(String categoriaId, 
                                                 String nuevaDescripcion) {
-        try {
+        try (MetricaOperacion.Medicion medicion = METRICA_CU9_MODIFICAR_DESCRIPCION_CATEGORIA.iniciar()) {
             if (categoriaId == null || categoriaId.trim().isEmpty()) {
                 logger.warn("Intento de modificar categoría con ID vacío");
                 return false;
@@ -335,9 +597,10 @@ public class Controller {
             }
 
             servicioCategorias.modificarDescripcion(categoriaId, nuevaDescripcion);
+            medicion.exito();
             return true;
         } catch (ServicioException e) {
-            logger.error("Error al modificar descripción de categoría con ID: " + categoriaId, e);
+            logger.error("Error al modificar descripción de categoría con ID: {}", categoriaId, e);
             return false;
         }
     }
@@ -373,7 +636,7 @@ public class Controller {
 
             return servicioCategorias.getDescendientes(categoriaId);
         } catch (ServicioException e) {
-            logger.error("Error al obtener descendientes de categoría con ID: " + categoriaId, e);
+            logger.error("Error al obtener descendientes de categoría con ID: {}", categoriaId, e);
             return Collections.emptyList();
         }
     }
@@ -394,8 +657,53 @@ public class Controller {
             servicioProductos.anadirVisualizacion(productoId);
             return true;
         } catch (ServicioException e) {
-            logger.error("Error al registrar visualización del producto con ID: " + productoId, e);
+            logger.error("Error al registrar visualización del producto con ID: {}", productoId, e);
             return false;
         }
     }
+
+    /**
+     * Obtener los productos de un vendedor, página a página y del más reciente al más antiguo
+     * 
+     * @param vendedorId ID del vendedor
+     * @param cursor Cursor de la página anterior, o null para la primera
+     * @param tamano Número máximo de productos de la página
+     * @return Página de productos, o página vacía si hay algún error
+     */
+    public Pagina<Producto> obtenerProductosVendedor(String vendedorId, String cursor, int tamano) {
+        try {
+            if (vendedorId == null || vendedorId.trim().isEmpty() || tamano <= 0) {
+                logger.warn("Intento de obtener productos con ID de vendedor vacío o tamaño de página no positivo");
+                return new Pagina<>(Collections.emptyList(), null);
+            }
+
+            return servicioProductos.productosVendedor(vendedorId, cursor, tamano);
+        } catch (ServicioException e) {
+            logger.error("Error al obtener productos del vendedor con ID: {}", vendedorId, e);
+            return new Pagina<>(Collections.emptyList(), null);
+        }
+    }
+
+    /**
+     * Obtener los productos publicados entre dos fechas, página a página y del más reciente al más antiguo
+     * 
+     * @param desde Fecha de publicación mínima (incluida)
+     * @param hasta Fecha de publicación máxima (incluida)
+     * @param cursor Cursor de la página anterior, o null para la primera
+     * @param tamano Número máximo de productos de la página
+     * @return Página de productos, o página vacía si hay algún error
+     */
+    public Pagina<Producto> obtenerProductosPorFechas(LocalDateTime desde, LocalDateTime hasta, String cursor, int tamano) {
+        try {
+            if (desde == null || hasta == null || tamano <= 0) {
+                logger.warn("Intento de obtener productos sin rango de fechas o con tamaño de página no positivo");
+                return new Pagina<>(Collections.emptyList(), null);
+            }
+
+            return servicioProductos.productosPorFechas(desde, hasta, cursor, tamano);
+        } catch (ServicioException e) {
+            logger.error("Error al obtener productos publicados entre {} y {}", desde, hasta, e);
+            return new Pagina<>(Collections.emptyList(), null);
+        }
+    }
 }
\ No newline at end of file
@@ -4,13 +4,16 @@ import javax.persistence.*;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.*;
 
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
+
 import stoneyspring.SegundUM.repositorio.Identificable;
 
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "categorias")
+@Table(name = "categorias", indexes = @Index(name = "idx_categorias_ruta", columnList = "ruta"))
 @XmlRootElement(name = "categoria")
 @XmlAccessorType(XmlAccessType.FIELD)
 public class Categoria implements Identificable {
@@ -34,8 +37,11 @@ public class Categoria implements Identificable {
 	@XmlElement(name = "categoria")
 	private List<Categoria> subcategorias = new ArrayList<>();
 
+	// Al leer categorías (también las de los productos de un listado) los padres de todas se leen juntos,
+	// con una consulta IN por nivel, en lugar de una por padre
 	@ManyToOne
 	@JoinColumn(name = "categoria_padre_id")
+	@BatchFetch(BatchFetchType.IN)
 	@XmlTransient
 	private Categoria categoriaPadre;
 
@@ -61,6 +67,15 @@ public class Categoria implements Identificable {
 		}
 	}
 
+	// Si la categoría no trae ruta (no viene de un XML) se calcula a partir de la del padre: |raiz|...|id|
+	@PrePersist
+	void calcularRuta() {
+		if (ruta == null) {
+			String rutaPadre = categoriaPadre != null ? categoriaPadre.getRuta() : null;
+			ruta = (rutaPadre != null ? rutaPadre : "|") + id + "|";
+		}
+	}
+
 	// Método para añadir subcategoría
 	public void addSubcategoria(Categoria subcategoria) {
 		if (subcategorias == null) {
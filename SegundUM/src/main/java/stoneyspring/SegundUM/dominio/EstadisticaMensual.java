@@ -0,0 +1,207 @@
+package stoneyspring.SegundUM.dominio;
+
+import javax.persistence.*;
+
+import stoneyspring.SegundUM.repositorio.Identificable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.YearMonth;
+
+/**
+ * Agregados de los productos publicados en un mes: del mes entero, de un vendedor o de una categoría.
+ * Se mantienen con cada alta, cambio de precio y volcado de visualizaciones, y los meses terminados
+ * se cierran: sus filas ya no cambian.
+ */
+@Entity
+@Table(name = "estadisticas_mensuales", indexes = {
+    @Index(name = "idx_estadisticas_mes", columnList = "anio, mes, tipo")
+})
+public class EstadisticaMensual implements Identificable {
+
+    /**
+     * De qué productos del mes son los agregados.
+     */
+    public enum Tipo {
+        /** Todos los productos del mes ({@link EstadisticaMensual#CLAVE_MES}). */
+        MES,
+        /** Los de un vendedor (la clave es su id). */
+        VENDEDOR,
+        /** Los de una categoría, sin contar sus subcategorías (la clave es su id). */
+        CATEGORIA
+    }
+
+    /** Clave de la fila del mes entero. */
+    public static final String CLAVE_MES = "*";
+
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private int anio;
+
+    @Column(nullable = false)
+    private int mes;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Tipo tipo;
+
+    @Column(nullable = false)
+    private String clave;
+
+    @Column(nullable = false)
+    private long productos;
+
+    @Column(nullable = false)
+    private long visualizaciones;
+
+    @Column(name = "suma_precios", nullable = false, precision = 19, scale = 2)
+    private BigDecimal sumaPrecios;
+
+    @Column(name = "precio_minimo", precision = 10, scale = 2)
+    private BigDecimal precioMinimo;
+
+    @Column(name = "precio_maximo", precision = 10, scale = 2)
+    private BigDecimal precioMaximo;
+
+    @Column(nullable = false)
+    private boolean cerrado;
+
+    @Column(nullable = false)
+    private boolean calculado;
+
+    // Constructor por defecto para JPA
+    protected EstadisticaMensual() {}
+
+    /**
+     * Agregados vacíos (sin productos).
+     */
+    public EstadisticaMensual(YearMonth mes, Tipo tipo, String clave) {
+        this.id = id(mes, tipo, clave);
+        this.anio = mes.getYear();
+        this.mes = mes.getMonthValue();
+        this.tipo = tipo;
+        this.clave = clave;
+        this.productos = 0;
+        this.visualizaciones = 0;
+        this.sumaPrecios = BigDecimal.ZERO;
+    }
+
+    public EstadisticaMensual(YearMonth mes, Tipo tipo, String clave, long productos, long visualizaciones,
+                              BigDecimal sumaPrecios, BigDecimal precioMinimo, BigDecimal precioMaximo) {
+        this(mes, tipo, clave);
+        this.productos = productos;
+        this.visualizaciones = visualizaciones;
+        this.sumaPrecios = sumaPrecios != null ? sumaPrecios : BigDecimal.ZERO;
+        this.precioMinimo = precioMinimo;
+        this.precioMaximo = precioMaximo;
+    }
+
+    /**
+     * Id de la fila: <i>aaaa-mm|TIPO|clave</i>.
+     */
+    public static String id(YearMonth mes, Tipo tipo, String clave) {
+        return mes + "|" + tipo + "|" + clave;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public YearMonth getYearMonth() {
+        return YearMonth.of(anio, mes);
+    }
+
+    public int getAnio() {
+        return anio;
+    }
+
+    public int getMes() {
+        return mes;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public long getProductos() {
+        return productos;
+    }
+
+    public long getVisualizaciones() {
+        return visualizaciones;
+    }
+
+    public BigDecimal getSumaPrecios() {
+        return sumaPrecios;
+    }
+
+    public BigDecimal getPrecioMinimo() {
+        return precioMinimo;
+    }
+
+    public BigDecimal getPrecioMaximo() {
+        return precioMaximo;
+    }
+
+    /**
+     * Precio medio con dos decimales, o null si no hay productos.
+     */
+    public BigDecimal getPrecioMedio() {
+        return productos == 0 ? null : sumaPrecios.divide(BigDecimal.valueOf(productos), 2, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Si el mes está cerrado: los agregados son los de su cierre y ya no se actualizan.
+     */
+    public boolean isCerrado() {
+        return cerrado;
+    }
+
+    public void setCerrado(boolean cerrado) {
+        this.cerrado = cerrado;
+    }
+
+    /**
+     * Sólo en la fila del mes entero: si el mes se ha calculado de los productos. Antes de calcularlo se crea
+     * la fila sin calcular, para que las altas del mes esperen en ella a que termine el cálculo.
+     */
+    public boolean isCalculado() {
+        return calculado;
+    }
+
+    public void setCalculado(boolean calculado) {
+        this.calculado = calculado;
+    }
+
+    /**
+     * Si los agregados coinciden con los de otra fila (sin mirar si están cerradas).
+     */
+    public boolean mismosAgregados(EstadisticaMensual otra) {
+        return productos == otra.productos && visualizaciones == otra.visualizaciones
+                && iguales(sumaPrecios, otra.sumaPrecios) && iguales(precioMinimo, otra.precioMinimo)
+                && iguales(precioMaximo, otra.precioMaximo);
+    }
+
+    private static boolean iguales(BigDecimal a, BigDecimal b) {
+        return a == null ? b == null : b != null && a.compareTo(b) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d-%02d %s %s: %d productos, %d visualizaciones, precio %s/%s/%s%s",
+                anio, mes, tipo, clave, productos, visualizaciones, precioMinimo, getPrecioMedio(), precioMaximo,
+                cerrado ? " (cerrado)" : "");
+    }
+}
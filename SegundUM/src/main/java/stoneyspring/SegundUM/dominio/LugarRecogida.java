@@ -3,6 +3,8 @@ package stoneyspring.SegundUM.dominio;
 import javax.persistence.Column;
 import javax.persistence.Embeddable;
 
+import stoneyspring.SegundUM.utils.Geohash;
+
 @Embeddable
 public class LugarRecogida {
     
@@ -13,6 +15,10 @@ public class LugarRecogida {
     
     private Double latitud;
     
+    // Celda del punto para las búsquedas por cercanía; se recalcula al cambiar las coordenadas
+    @Column(length = 12)
+    private String geohash;
+    
     // Constructor por defecto para JPA
     protected LugarRecogida() {}
     
@@ -20,6 +26,7 @@ public class LugarRecogida {
         this.descripcion = descripcion;
         this.longitud = longitud;
         this.latitud = latitud;
+        this.geohash = Geohash.codificar(latitud, longitud);
     }
     
     // Getters y setters
@@ -37,6 +44,7 @@ public class LugarRecogida {
     
     public void setLongitud(Double longitud) {
         this.longitud = longitud;
+        this.geohash = Geohash.codificar(latitud, longitud);
     }
     
     public Double getLatitud() {
@@ -45,5 +53,17 @@ public class LugarRecogida {
     
     public void setLatitud(Double latitud) {
         this.latitud = latitud;
+        this.geohash = Geohash.codificar(latitud, longitud);
+    }
+    
+    public String getGeohash() {
+        return geohash;
+    }
+    
+    // Para los lugares guardados antes de tener geohash
+    void calcularGeohash() {
+        if (geohash == null) {
+            geohash = Geohash.codificar(latitud, longitud);
+        }
     }
 }
\ No newline at end of file
@@ -8,7 +8,10 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "productos")
+@Table(name = "productos", indexes = {
+    @Index(name = "idx_productos_fecha_id", columnList = "fecha_publicacion, id"),
+    @Index(name = "idx_productos_recogida_geohash", columnList = "recogida_geohash")
+})
 public class Producto implements Identificable {
     
     @Id
@@ -34,7 +37,9 @@ public class Producto implements Identificable {
     @JoinColumn(name = "categoria_id", nullable = false)
     private Categoria categoria;
     
-    @Column(nullable = false)
+    // Solo cambian con RepositorioProductos.incrementarVisualizaciones: una actualización del producto
+    // leído antes de un volcado no las deshace, y el volcado no cambia la versión
+    @Column(nullable = false, updatable = false)
     private Integer visualizaciones;
     
     @Column(name = "envio_disponible", nullable = false)
@@ -44,7 +49,8 @@ public class Producto implements Identificable {
     @AttributeOverrides({
         @AttributeOverride(name = "descripcion", column = @Column(name = "recogida_descripcion", length = 500)),
         @AttributeOverride(name = "longitud", column = @Column(name = "recogida_longitud")),
-        @AttributeOverride(name = "latitud", column = @Column(name = "recogida_latitud"))
+        @AttributeOverride(name = "latitud", column = @Column(name = "recogida_latitud")),
+        @AttributeOverride(name = "geohash", column = @Column(name = "recogida_geohash", length = 12))
     })
     private LugarRecogida recogida;
     
@@ -52,6 +58,11 @@ public class Producto implements Identificable {
     @JoinColumn(name = "vendedor_id", nullable = false)
     private Usuario vendedor;
     
+    // Versión para las actualizaciones optimistas; DEFAULT 0 para las filas que ya había al añadir la columna
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private long version;
+    
     // Constructor por defecto para JPA
     protected Producto() {}
     
@@ -70,7 +81,16 @@ public class Producto implements Identificable {
         this.visualizaciones = 0;
     }
     
-    // Método para incrementar visualizaciones
+    // El geohash se calcula al asignar las coordenadas; aquí se completa el de los lugares que no lo tienen
+    @PrePersist
+    @PreUpdate
+    void calcularGeohash() {
+        if (recogida != null) {
+            recogida.calcularGeohash();
+        }
+    }
+    
+    // Método para incrementar visualizaciones (en memoria: en el repositorio cambian con incrementarVisualizaciones)
     public void incrementarVisualizaciones() {
         this.visualizaciones++;
     }
@@ -86,6 +106,10 @@ public class Producto implements Identificable {
         this.id = id;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
     public String getTitulo() {
         return titulo;
     }
@@ -0,0 +1,28 @@
+package stoneyspring.SegundUM.dominio;
+
+/**
+ * Producto de una búsqueda por cercanía, con la distancia a su lugar de recogida.
+ */
+public class ProductoCercano {
+    
+    private final Producto producto;
+    private final double distanciaKm;
+    
+    public ProductoCercano(Producto producto, double distanciaKm) {
+        this.producto = producto;
+        this.distanciaKm = distanciaKm;
+    }
+    
+    public Producto getProducto() {
+        return producto;
+    }
+    
+    public double getDistanciaKm() {
+        return distanciaKm;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%s (%.3f km)", producto.getId(), distanciaKm);
+    }
+}
@@ -38,6 +38,11 @@ public class Usuario implements Identificable {
     @OneToMany(mappedBy = "vendedor", cascade = CascadeType.ALL)
     private List<Producto> productos = new ArrayList<>();
     
+    // Versión para las actualizaciones optimistas (ver Producto)
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 0 NOT NULL")
+    private long version;
+    
     // Constructor por defecto para JPA
     protected Usuario() {}
     
@@ -64,6 +69,10 @@ public class Usuario implements Identificable {
         this.id = id;
     }
     
+    public long getVersion() {
+        return version;
+    }
+    
     public String getEmail() {
         return email;
     }
@@ -0,0 +1,77 @@
+package stoneyspring.SegundUM.metricas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias en nanosegundos con cubetas log-lineales, como HdrHistogram: valores exactos hasta
+ * {@value #EXACTOS} ns y, a partir de ahí, {@value #SUBCUBETAS} cubetas por cada potencia de dos, así que
+ * cualquier percentil tiene un error relativo menor del 3,2%. Ocupa un array fijo de contadores y registrar
+ * un valor es un incremento atómico, sin reservar memoria ni bloquear.
+ */
+class Histograma {
+
+    private static final int BITS_SUBCUBETA = 5;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    private static final int EXACTOS = 2 * SUBCUBETAS;
+    private static final int BITS_EXACTOS = BITS_SUBCUBETA + 1;
+
+    /** Exactos más {@value #SUBCUBETAS} cubetas por cada potencia de dos desde 2^6 hasta 2^62. */
+    private static final int CUBETAS = EXACTOS + (63 - BITS_EXACTOS) * SUBCUBETAS;
+
+    private final AtomicLongArray cubetas = new AtomicLongArray(CUBETAS);
+
+    static int indice(long valor) {
+        if (valor < EXACTOS) {
+            return (int) Math.max(valor, 0);
+        }
+        int magnitud = 63 - Long.numberOfLeadingZeros(valor);
+        int subcubeta = (int) (valor >>> (magnitud - BITS_SUBCUBETA)) - SUBCUBETAS;
+        return EXACTOS + (magnitud - BITS_EXACTOS) * SUBCUBETAS + subcubeta;
+    }
+
+    /** Mayor valor que cae en la cubeta. */
+    static long valorMaximo(int indice) {
+        if (indice < EXACTOS) {
+            return indice;
+        }
+        int magnitud = (indice - EXACTOS) / SUBCUBETAS + BITS_EXACTOS;
+        int subcubeta = (indice - EXACTOS) % SUBCUBETAS;
+        long ancho = 1L << (magnitud - BITS_SUBCUBETA);
+        return (SUBCUBETAS + subcubeta) * ancho + ancho - 1;
+    }
+
+    void registrar(long nanos) {
+        cubetas.incrementAndGet(indice(nanos));
+    }
+
+    /**
+     * Valor por debajo del cual está el porcentaje indicado de los valores registrados (0 si no hay ninguno).
+     * Mientras se registran valores es una aproximación, no una foto exacta.
+     */
+    long percentil(double porcentaje) {
+        long[] copia = new long[CUBETAS];
+        long total = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cubetas.get(i);
+            total += copia[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(porcentaje / 100 * total));
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) {
+                return valorMaximo(i);
+            }
+        }
+        return valorMaximo(CUBETAS - 1);
+    }
+
+    void reiniciar() {
+        for (int i = 0; i < CUBETAS; i++) {
+            cubetas.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package stoneyspring.SegundUM.metricas;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Llamadas, errores y latencias de una operación (un método de repositorio o un caso de uso).
+ * Se obtienen de {@link RegistroMetricas} y admiten registros concurrentes desde cualquier hilo.
+ * <pre>
+ * try (MetricaOperacion.Medicion medicion = metrica.iniciar()) {
+ *     ...
+ *     return medicion.exito(resultado);
+ * }
+ * </pre>
+ */
+public class MetricaOperacion implements MetricaOperacionMBean {
+
+    private final String nombre;
+
+    private final LongAdder llamadas = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder nanosTotales = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+    private final Histograma histograma = new Histograma();
+
+    MetricaOperacion(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public void registrar(long nanos, boolean error) {
+        llamadas.increment();
+        if (error) {
+            errores.increment();
+        }
+        nanosTotales.add(nanos);
+        maximo.accumulate(nanos);
+        histograma.registrar(nanos);
+    }
+
+    /**
+     * Empieza a medir una llamada. Al cerrar la medición se registra como error salvo que se haya llamado
+     * antes a {@link Medicion#exito()}.
+     */
+    public Medicion iniciar() {
+        return new Medicion();
+    }
+
+    public class Medicion implements AutoCloseable {
+
+        private final long inicio = System.nanoTime();
+        private boolean exito;
+
+        public void exito() {
+            exito = true;
+        }
+
+        public <V> V exito(V resultado) {
+            exito = true;
+            return resultado;
+        }
+
+        @Override
+        public void close() {
+            registrar(System.nanoTime() - inicio, !exito);
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /** El histograma da el mayor valor de la cubeta, que puede pasarse del máximo real. */
+    private double percentil(double porcentaje) {
+        return micros(Math.min(histograma.percentil(porcentaje), maximo.get()));
+    }
+
+    @Override
+    public long getLlamadas() {
+        return llamadas.sum();
+    }
+
+    @Override
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    @Override
+    public double getMedia() {
+        long total = llamadas.sum();
+        return total == 0 ? 0 : micros(nanosTotales.sum() / total);
+    }
+
+    @Override
+    public double getPercentil50() {
+        return percentil(50);
+    }
+
+    @Override
+    public double getPercentil90() {
+        return percentil(90);
+    }
+
+    @Override
+    public double getPercentil99() {
+        return percentil(99);
+    }
+
+    @Override
+    public double getPercentil999() {
+        return percentil(99.9);
+    }
+
+    @Override
+    public double getMaximo() {
+        return micros(maximo.get());
+    }
+
+    @Override
+    public void reiniciar() {
+        llamadas.reset();
+        errores.reset();
+        nanosTotales.reset();
+        maximo.reset();
+        histograma.reiniciar();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s llamadas=%d errores=%d media=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                nombre, getLlamadas(), getErrores(), getMedia(), getPercentil50(), getPercentil90(),
+                getPercentil99(), getPercentil999(), getMaximo());
+    }
+}
@@ -0,0 +1,28 @@
+package stoneyspring.SegundUM.metricas;
+
+/**
+ * Vista JMX de una {@link MetricaOperacion}. Los tiempos están en microsegundos.
+ */
+public interface MetricaOperacionMBean {
+
+    long getLlamadas();
+
+    long getErrores();
+
+    double getMedia();
+
+    double getPercentil50();
+
+    double getPercentil90();
+
+    double getPercentil99();
+
+    double getPercentil999();
+
+    double getMaximo();
+
+    /**
+     * Pone a cero los contadores y el histograma.
+     */
+    void reiniciar();
+}
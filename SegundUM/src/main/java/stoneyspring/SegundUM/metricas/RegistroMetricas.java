@@ -0,0 +1,140 @@
+package stoneyspring.SegundUM.metricas;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.utils.PropertiesReader;
+
+/**
+ * <p>
+ * Registro de las métricas de la aplicación, una {@link MetricaOperacion} por operación. Cada métrica se
+ * publica como MBean ({@code stoneyspring.SegundUM:type=tipo,grupo=grupo,name=operacion}) para consultarla
+ * con JConsole o VisualVM.
+ * </p>
+ * <p>
+ * Además, cada <i>volcado.segundos</i> segundos (ver <i>metricas.properties</i>; 0 lo desactiva) se escribe
+ * una foto de las métricas con llamadas en el logger {@code metricas}, que <i>logback.xml</i> manda a
+ * <i>logs/metricas.log</i>. Con <i>jmx=false</i> no se publican los MBeans.
+ * </p>
+ */
+public final class RegistroMetricas {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistroMetricas.class);
+    private static final Logger volcado = LoggerFactory.getLogger("metricas");
+
+    private static final String PROPERTIES = "metricas.properties";
+    private static final String DOMINIO_JMX = "stoneyspring.SegundUM";
+    private static final long VOLCADO_SEGUNDOS_POR_DEFECTO = 60;
+
+    private static final ConcurrentMap<String, MetricaOperacion> metricas = new ConcurrentHashMap<>();
+
+    private static final boolean jmx;
+
+    static {
+        long segundos = VOLCADO_SEGUNDOS_POR_DEFECTO;
+        boolean publicar = true;
+        try {
+            PropertiesReader properties = new PropertiesReader(PROPERTIES);
+            if (properties.getProperty("volcado.segundos") != null) {
+                segundos = Long.parseLong(properties.getProperty("volcado.segundos").trim());
+            }
+            if (properties.getProperty("jmx") != null) {
+                publicar = Boolean.parseBoolean(properties.getProperty("jmx").trim());
+            }
+        } catch (Exception e) {
+            logger.warn("No se ha podido leer {}, se usa la configuración por defecto", PROPERTIES, e);
+        }
+        jmx = publicar;
+
+        if (segundos > 0) {
+            ScheduledExecutorService planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "volcado-metricas");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            planificador.scheduleWithFixedDelay(RegistroMetricas::volcar, segundos, segundos, TimeUnit.SECONDS);
+        }
+    }
+
+    private RegistroMetricas() {
+    }
+
+    /**
+     * Métrica de la operación, que se crea (y se publica por JMX) la primera vez que se pide.
+     *
+     * @param tipo Tipo de componente, por ejemplo "repositorio" o "controlador"
+     * @param grupo Agrupación dentro del tipo, por ejemplo la entidad o el caso de uso
+     * @param operacion Nombre de la operación
+     */
+    public static MetricaOperacion getMetrica(String tipo, String grupo, String operacion) {
+        String nombre = tipo + "." + grupo + "." + operacion;
+        MetricaOperacion metrica = metricas.get(nombre);
+        if (metrica == null) {
+            metrica = metricas.computeIfAbsent(nombre, n -> publicar(new MetricaOperacion(n), tipo, grupo, operacion));
+        }
+        return metrica;
+    }
+
+    private static MetricaOperacion publicar(MetricaOperacion metrica, String tipo, String grupo, String operacion) {
+        if (jmx) {
+            try {
+                MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+                ObjectName nombre = new ObjectName(DOMINIO_JMX + ":type=" + valorJmx(tipo)
+                        + ",grupo=" + valorJmx(grupo) + ",name=" + valorJmx(operacion));
+                if (!servidor.isRegistered(nombre)) {
+                    servidor.registerMBean(metrica, nombre);
+                }
+            } catch (Exception e) {
+                logger.warn("No se ha podido publicar por JMX la métrica {}", metrica.getNombre(), e);
+            }
+        }
+        return metrica;
+    }
+
+    private static String valorJmx(String valor) {
+        for (char c : valor.toCharArray()) {
+            if (",=:\"*?\n".indexOf(c) >= 0) {
+                return ObjectName.quote(valor);
+            }
+        }
+        return valor;
+    }
+
+    /**
+     * Todas las métricas registradas, ordenadas por nombre.
+     */
+    public static List<MetricaOperacion> getMetricas() {
+        List<MetricaOperacion> lista = new ArrayList<>(metricas.values());
+        lista.sort(Comparator.comparing(MetricaOperacion::getNombre));
+        return lista;
+    }
+
+    /**
+     * Escribe en el logger {@code metricas} una línea por cada métrica con alguna llamada.
+     */
+    public static void volcar() {
+        try {
+            for (MetricaOperacion metrica : getMetricas()) {
+                if (metrica.getLlamadas() > 0) {
+                    volcado.info("{}", metrica);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Una excepción cancelaría los volcados siguientes
+            logger.error("Error al volcar las métricas", e);
+        }
+    }
+}
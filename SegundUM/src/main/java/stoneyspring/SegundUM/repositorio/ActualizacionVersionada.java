@@ -0,0 +1,206 @@
+package stoneyspring.SegundUM.repositorio;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Column;
+import javax.persistence.EntityManager;
+import javax.persistence.JoinColumn;
+import javax.persistence.PreUpdate;
+import javax.persistence.Query;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
+import javax.persistence.metamodel.EmbeddableType;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.eclipse.persistence.config.CacheUsage;
+import org.eclipse.persistence.config.QueryHints;
+
+/**
+ * <p>
+ * Actualización de una entidad con atributo de versión ({@code @Version}) en una sola sentencia, sin leerla antes:
+ * </p>
+ * <pre>
+ * UPDATE Entidad t SET t.a = :p0, t.b.c = :p1, ..., t.version = t.version + 1 WHERE t.id = :id AND t.version = :version
+ * </pre>
+ * <p>
+ * La sentencia se construye con el metamodelo la primera vez y se guarda por clase. Escribe todos los atributos
+ * simples, las referencias a una entidad y los de los embebidos (no las colecciones), salvo los que no se
+ * actualizan ({@code updatable = false}), que JPA tampoco escribe. Si no cambia ninguna fila,
+ * la entidad no existe o su versión no es la leída.
+ * </p>
+ * Una sentencia así no pasa por el ciclo de vida de JPA, así que antes se llaman los métodos {@code @PreUpdate}
+ * de la entidad. Tampoco se deja que EclipseLink invalide la caché compartida: lo haría evaluando la condición
+ * sobre todas las entidades de la clase en caché. Quien la ejecuta quita de la caché solo la entidad actualizada.
+ */
+final class ActualizacionVersionada {
+
+    /** Por clase; {@link #SIN_VERSION} si no tiene atributo de versión. */
+    private static final ConcurrentMap<Class<?>, ActualizacionVersionada> ACTUALIZACIONES = new ConcurrentHashMap<>();
+    private static final ActualizacionVersionada SIN_VERSION = new ActualizacionVersionada();
+
+    /**
+     * Atributo que se escribe: el camino de campos hasta él desde la entidad.
+     */
+    private static final class Campo {
+        private final String parametro;
+        private final Field[] camino;
+
+        Campo(String parametro, Field[] camino) {
+            this.parametro = parametro;
+            this.camino = camino;
+        }
+
+        /** Valor del atributo, o null si algún embebido del camino es null. */
+        Object leer(Object entidad) throws IllegalAccessException {
+            Object valor = entidad;
+            for (Field campo : camino) {
+                if (valor == null) {
+                    return null;
+                }
+                valor = campo.get(valor);
+            }
+            return valor;
+        }
+    }
+
+    private final String jpql;
+    private final List<Campo> campos;
+    private final Field version;
+    private final List<Method> antesDeActualizar;
+
+    private ActualizacionVersionada() {
+        this.jpql = null;
+        this.campos = Collections.emptyList();
+        this.version = null;
+        this.antesDeActualizar = Collections.emptyList();
+    }
+
+    private ActualizacionVersionada(String jpql, List<Campo> campos, Field version, List<Method> antesDeActualizar) {
+        this.jpql = jpql;
+        this.campos = campos;
+        this.version = version;
+        this.antesDeActualizar = antesDeActualizar;
+    }
+
+    /**
+     * La actualización versionada de la clase, o null si la entidad no tiene atributo de versión.
+     */
+    static ActualizacionVersionada de(EntityManager em, Class<?> clase) {
+        ActualizacionVersionada actualizacion = ACTUALIZACIONES.computeIfAbsent(clase, c -> construir(em, c));
+        return actualizacion == SIN_VERSION ? null : actualizacion;
+    }
+
+    private static ActualizacionVersionada construir(EntityManager em, Class<?> clase) {
+        EntityType<?> tipo = em.getMetamodel().entity(clase);
+        SingularAttribute<?, ?> atributoId = null;
+        SingularAttribute<?, ?> atributoVersion = null;
+        for (SingularAttribute<?, ?> atributo : tipo.getSingularAttributes()) {
+            if (atributo.isId()) {
+                atributoId = atributo;
+            } else if (atributo.isVersion()) {
+                atributoVersion = atributo;
+            }
+        }
+        if (atributoVersion == null) {
+            return SIN_VERSION;
+        }
+
+        List<Campo> campos = new ArrayList<>();
+        StringBuilder asignaciones = new StringBuilder();
+        anadirCampos(tipo, "t", new ArrayList<>(), campos, asignaciones);
+        String nombreVersion = atributoVersion.getName();
+        asignaciones.append("t.").append(nombreVersion).append(" = t.").append(nombreVersion).append(" + 1");
+
+        String jpql = "UPDATE " + tipo.getName() + " t SET " + asignaciones
+                + " WHERE t." + atributoId.getName() + " = :id AND t." + nombreVersion + " = :version";
+        return new ActualizacionVersionada(jpql, campos, accesible((Field) atributoVersion.getJavaMember()),
+                metodosPreUpdate(clase));
+    }
+
+    private static void anadirCampos(ManagedType<?> tipo, String ruta, List<Field> camino, List<Campo> campos,
+                                     StringBuilder asignaciones) {
+        for (SingularAttribute<?, ?> atributo : tipo.getSingularAttributes()) {
+            Field campo = (Field) atributo.getJavaMember();
+            if (atributo.isId() || atributo.isVersion() || !actualizable(campo)) {
+                continue;
+            }
+            List<Field> caminoAtributo = new ArrayList<>(camino);
+            caminoAtributo.add(accesible(campo));
+            String rutaAtributo = ruta + "." + atributo.getName();
+            if (atributo.getPersistentAttributeType() == PersistentAttributeType.EMBEDDED) {
+                anadirCampos((EmbeddableType<?>) atributo.getType(), rutaAtributo, caminoAtributo, campos, asignaciones);
+            } else {
+                String parametro = "p" + campos.size();
+                campos.add(new Campo(parametro, caminoAtributo.toArray(new Field[0])));
+                asignaciones.append(rutaAtributo).append(" = :").append(parametro).append(", ");
+            }
+        }
+    }
+
+    private static boolean actualizable(Field campo) {
+        Column columna = campo.getAnnotation(Column.class);
+        JoinColumn columnaUnion = campo.getAnnotation(JoinColumn.class);
+        return (columna == null || columna.updatable()) && (columnaUnion == null || columnaUnion.updatable());
+    }
+
+    private static List<Method> metodosPreUpdate(Class<?> clase) {
+        List<Method> metodos = new ArrayList<>();
+        for (Class<?> c = clase; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method metodo : c.getDeclaredMethods()) {
+                if (metodo.isAnnotationPresent(PreUpdate.class)) {
+                    metodo.setAccessible(true);
+                    // los de las superclases primero, como en JPA
+                    metodos.add(0, metodo);
+                }
+            }
+        }
+        return metodos;
+    }
+
+    private static Field accesible(Field campo) {
+        campo.setAccessible(true);
+        return campo;
+    }
+
+    /**
+     * Ejecuta la actualización de la entidad en la transacción del EntityManager. Si se aplica, incrementa la
+     * versión de la entidad y devuelve true; si no (no existe o su versión ha cambiado), devuelve false.
+     */
+    boolean ejecutar(EntityManager em, Identificable entidad) {
+        try {
+            for (Method metodo : antesDeActualizar) {
+                metodo.invoke(entidad);
+            }
+            Number versionLeida = (Number) version.get(entidad);
+            Query query = em.createQuery(jpql)
+                .setHint(QueryHints.CACHE_USAGE, CacheUsage.NoCache)
+                .setParameter("id", entidad.getId())
+                .setParameter("version", versionLeida);
+            for (Campo campo : campos) {
+                query.setParameter(campo.parametro, campo.leer(entidad));
+            }
+            if (query.executeUpdate() == 0) {
+                return false;
+            }
+            if (version.getType() == int.class || version.getType() == Integer.class) {
+                version.set(entidad, versionLeida.intValue() + 1);
+            } else {
+                version.set(entidad, versionLeida.longValue() + 1);
+            }
+            return true;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("No se puede acceder a los atributos de " + entidad.getClass().getName(), e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Error en un método @PreUpdate de " + entidad.getClass().getName(),
+                    e.getCause());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package stoneyspring.SegundUM.repositorio;
+
+/**
+ * Excepción que representa que una entidad versionada ha cambiado en el repositorio desde que se leyó:
+ * la actualización no se ha aplicado. Se puede volver a leer la entidad y reintentar.
+ */
+@SuppressWarnings("serial")
+public class ConflictoVersion extends RepositorioException {
+    
+    public ConflictoVersion(String msg, Throwable causa) {
+        super(msg, causa);
+    }
+    
+    public ConflictoVersion(String msg) {
+        super(msg);
+    }
+    
+    /**
+     * Si la excepción, o alguna de sus causas, es un fallo de bloqueo optimista de JPA o de EclipseLink.
+     */
+    static boolean esConflicto(Throwable e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof javax.persistence.OptimisticLockException
+                    || causa instanceof org.eclipse.persistence.exceptions.OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,30 +1,44 @@
 package stoneyspring.SegundUM.repositorio;
 
-import stoneyspring.SegundUM.utils.PropertiesReader;
+import stoneyspring.SegundUM.utils.RegistroImplementaciones;
 
 /**
  * Factoría que encapsula la implementación de los repositorios.
- * Utiliza un fichero de propiedades para cargar la implementación.
+ * Utiliza un fichero de propiedades para cargar la implementación, que se lee una sola vez
+ * (ver {@link RegistroImplementaciones}).
+ * Cada repositorio es una instancia única, compartida por todos los que lo piden, que se crea la primera vez.
+ * El modo de consistencia por defecto de un repositorio se puede fijar con la propiedad
+ * <i>entidad</i>.consistencia (FUERTE, CACHE o INSTANTANEA); si no está, se queda el de la implementación.
+ * Como el repositorio es compartido, cambiar después su modo por defecto afecta a todos.
+ * Los repositorios se devuelven envueltos en un {@link RepositorioInstrumentado}, que mide cada llamada.
  */
 public class FactoriaRepositorios {
 	
 	private static final String PROPERTIES = "repositorios.properties";
 	
+	private static final RegistroImplementaciones registro =
+			RegistroImplementaciones.cargar(PROPERTIES, FactoriaRepositorios::preparar);
+	
+	private static Object preparar(Class<?> entidad, Object repositorio) {
+		String consistencia = registro.getPropiedad(entidad.getName() + ".consistencia");
+		if (consistencia != null && repositorio instanceof RepositorioString) {
+			((RepositorioString<?>) repositorio).setModoConsistencia(ModoConsistencia.valueOf(consistencia.trim()));
+		}
+		return RepositorioInstrumentado.instrumentar(repositorio, entidad);
+	}
 	
 	@SuppressWarnings("unchecked")
 	public static <T, K, R extends Repositorio<T, K>> R getRepositorio(Class<?> entidad) {
 				
 			
-			try {				
-					PropertiesReader properties = new PropertiesReader(PROPERTIES);		
-					String clase = properties.getProperty(entidad.getName());
-					return (R) Class.forName(clase).getConstructor().newInstance();
+			try {
+					return (R) registro.getInstancia(entidad);
 			}
-			catch (Exception e) {
+			catch (RuntimeException e) {
 				
 				e.printStackTrace(); // útil para depuración
 				
-				throw new RuntimeException("No se ha podido obtener el repositorio para la entidad: " + entidad.getName());
+				throw new RuntimeException("No se ha podido obtener el repositorio para la entidad: " + entidad.getName(), e);
 			}
 			
 	}
@@ -0,0 +1,31 @@
+package stoneyspring.SegundUM.repositorio;
+
+/**
+ * Cómo de actualizados tienen que estar los datos que devuelve una lectura del repositorio,
+ * a cambio de más o menos consultas a la base de datos.
+ * <p>
+ * Cada repositorio tiene un modo por defecto (ver {@link FactoriaRepositorios}) y las lecturas
+ * que lo admiten reciben otro modo en la propia llamada.
+ * </p>
+ */
+public enum ModoConsistencia {
+
+    /**
+     * Los datos se leen siempre de la base de datos y se actualiza la caché con ellos, también los de las
+     * entidades relacionadas que se cargan con la leída. Es el modo por defecto: ve también los cambios hechos
+     * fuera de la aplicación.
+     */
+    FUERTE,
+
+    /**
+     * Se usa la caché compartida: una entidad ya leída no vuelve a la base de datos. La caché se mantiene
+     * al día con las escrituras hechas a través de los repositorios, pero no ve los cambios hechos fuera.
+     */
+    CACHE,
+
+    /**
+     * Como {@link #CACHE}, pero se devuelven directamente las instancias de la caché compartida, sin copiarlas
+     * al contexto de persistencia. Es lo más barato, pero las entidades devueltas no deben modificarse.
+     */
+    INSTANTANEA
+}
@@ -0,0 +1,37 @@
+package stoneyspring.SegundUM.repositorio;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Página de resultados de una consulta paginada por clave.
+ * El cursor <i>siguiente</i> se pasa tal cual a la misma consulta para obtener la página siguiente;
+ * es nulo si ya no hay más resultados.
+ */
+public class Pagina<T> {
+
+    private final List<T> elementos;
+    private final String siguiente;
+
+    public Pagina(List<T> elementos, String siguiente) {
+        this.elementos = Collections.unmodifiableList(elementos);
+        this.siguiente = siguiente;
+    }
+
+    public List<T> getElementos() {
+        return elementos;
+    }
+
+    public String getSiguiente() {
+        return siguiente;
+    }
+
+    public boolean hayMas() {
+        return siguiente != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Pagina{elementos=" + elementos.size() + ", siguiente=" + siguiente + "}";
+    }
+}
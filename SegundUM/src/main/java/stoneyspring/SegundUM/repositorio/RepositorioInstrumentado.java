@@ -0,0 +1,82 @@
+package stoneyspring.SegundUM.repositorio;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import stoneyspring.SegundUM.metricas.MetricaOperacion;
+import stoneyspring.SegundUM.metricas.RegistroMetricas;
+
+/**
+ * Proxy que mide cada llamada a un repositorio en la métrica {@code repositorio.Entidad.metodo}
+ * de {@link RegistroMetricas}. Una llamada que lanza una excepción cuenta como error.
+ * Entre métodos sobrecargados, el de menos parámetros se queda con el nombre y los demás llevan
+ * además los tipos de sus parámetros, por ejemplo {@code getById(String,ModoConsistencia)}.
+ */
+class RepositorioInstrumentado implements InvocationHandler {
+
+    private final Object repositorio;
+    private final String entidad;
+    private final ConcurrentMap<Method, MetricaOperacion> metricas = new ConcurrentHashMap<>();
+
+    private RepositorioInstrumentado(Object repositorio, Class<?> entidad) {
+        this.repositorio = repositorio;
+        this.entidad = entidad.getSimpleName();
+    }
+
+    /**
+     * Envuelve el repositorio en un proxy que implementa todas sus interfaces.
+     */
+    @SuppressWarnings("unchecked")
+    static <R> R instrumentar(R repositorio, Class<?> entidad) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        for (Class<?> clase = repositorio.getClass(); clase != null; clase = clase.getSuperclass()) {
+            interfaces.addAll(Arrays.asList(clase.getInterfaces()));
+        }
+        return (R) Proxy.newProxyInstance(repositorio.getClass().getClassLoader(),
+                interfaces.toArray(new Class<?>[0]), new RepositorioInstrumentado(repositorio, entidad));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(repositorio, args);
+        }
+        MetricaOperacion metrica = metricas.get(method);
+        if (metrica == null) {
+            metrica = metricas.computeIfAbsent(method,
+                    m -> RegistroMetricas.getMetrica("repositorio", entidad, nombreOperacion(proxy, m)));
+        }
+        try (MetricaOperacion.Medicion medicion = metrica.iniciar()) {
+            return medicion.exito(method.invoke(repositorio, args));
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String nombreOperacion(Object proxy, Method method) {
+        List<Integer> parametros = Arrays.stream(proxy.getClass().getInterfaces())
+                .flatMap(i -> Arrays.stream(i.getMethods()))
+                .filter(m -> m.getName().equals(method.getName()))
+                .map(m -> Arrays.asList(m.getParameterTypes()))
+                .distinct()
+                .map(List::size)
+                .collect(Collectors.toList());
+        int minimo = Collections.min(parametros);
+        if (method.getParameterCount() == minimo && Collections.frequency(parametros, minimo) == 1) {
+            return method.getName();
+        }
+        return Arrays.stream(method.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", method.getName() + "(", ")"));
+    }
+}
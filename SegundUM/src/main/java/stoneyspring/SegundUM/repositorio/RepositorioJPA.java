@@ -1,56 +1,104 @@
 package stoneyspring.SegundUM.repositorio;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
+import org.eclipse.persistence.config.CascadePolicy;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.CursoredStream;
 
 import stoneyspring.SegundUM.utils.EntityManagerHelper;
 
 public abstract class RepositorioJPA<T extends Identificable> implements RepositorioString<T> {
     
+    /**
+     * Filas que se leen de cada vez al recorrer una consulta con cursor; también cada cuántas
+     * entidades se vacía el contexto de persistencia.
+     */
+    protected static final int TAMANO_PAGINA_CURSOR = 500;
+    
+    private ModoConsistencia modoConsistencia = ModoConsistencia.FUERTE;
+    
     public abstract Class<T> getClase();
 
     @Override
     public String add(T entity) throws RepositorioException {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            em.getTransaction().begin();
+            iniciarTransaccion(em);
             em.persist(entity);
-            em.getTransaction().commit();
+            confirmarTransaccion(em);
         } catch (Exception e) {
             throw new RepositorioException("Error al guardar la entidad", e);
         } finally {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
-            }
+            deshacerTransaccion(em);
             EntityManagerHelper.closeEntityManager();
         }
         return entity.getId();
     }
 
+    /**
+     * <p>
+     * Actualiza la entidad. Si tiene atributo de versión ({@code @Version}) la actualización es optimista: si la
+     * entidad ha cambiado en el repositorio desde que se leyó, no se aplica y se lanza {@link ConflictoVersion}.
+     * </p>
+     * Sin versión se comprueba que existe y se hace merge. Con versión, si la entidad está gestionada (se leyó en la
+     * misma unidad de trabajo) basta con un flush: EclipseLink escribe lo que ha cambiado comprobando la versión.
+     * Si no, se escribe con una sola sentencia UPDATE que comprueba la versión ({@link ActualizacionVersionada}),
+     * sin leerla antes; solo si no cambia ninguna fila se consulta si existe, para distinguir EntidadNoEncontrada
+     * del conflicto.
+     */
     @Override
     public void update(T entity) throws RepositorioException, EntidadNoEncontrada {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            em.getTransaction().begin();
+            iniciarTransaccion(em);
             
-            T instancia = em.find(getClase(), entity.getId());
-            if (instancia == null) {
-                throw new EntidadNoEncontrada(entity.getId() + " no existe en el repositorio");
+            ActualizacionVersionada actualizacion = ActualizacionVersionada.de(em, getClase());
+            boolean versionada = false;
+            if (actualizacion == null) {
+                T instancia = em.find(getClase(), entity.getId());
+                if (instancia == null) {
+                    throw new EntidadNoEncontrada(entity.getId() + " no existe en el repositorio");
+                }
+                entity = em.merge(entity);
+            } else if (em.contains(entity)) {
+                em.flush();
+            } else if (!actualizacion.ejecutar(em, entity)) {
+                if (!existeId(em, entity.getId())) {
+                    throw new EntidadNoEncontrada(entity.getId() + " no existe en el repositorio");
+                }
+                throw new ConflictoVersion("La entidad con id " + entity.getId() + " ha cambiado desde que se leyó");
+            } else {
+                versionada = true;
+            }
+            confirmarTransaccion(em);
+            if (versionada) {
+                // Dentro de una unidad de trabajo todavía no se ha confirmado: si alguien vuelve a llevarla a la
+                // caché antes, la corregirá la siguiente lectura en modo FUERTE
+                em.getEntityManagerFactory().getCache().evict(getClase(), entity.getId());
             }
-            entity = em.merge(entity);          
-            em.getTransaction().commit();
         } catch (RuntimeException e) {
+            if (ConflictoVersion.esConflicto(e)) {
+                throw new ConflictoVersion("La entidad con id " + entity.getId() + " ha cambiado desde que se leyó", e);
+            }
             throw new RepositorioException("Error al actualizar la entidad con id " + entity.getId(), e);
         } finally {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
-            }
+            deshacerTransaccion(em);
             EntityManagerHelper.closeEntityManager();
         }
     }
@@ -59,36 +107,185 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
     public void delete(T entity) throws RepositorioException, EntidadNoEncontrada {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            em.getTransaction().begin();
+            iniciarTransaccion(em);
             T instancia = em.find(getClase(), entity.getId());
             if (instancia == null) {
                 throw new EntidadNoEncontrada(entity.getId() + " no existe en el repositorio");
             }
             em.remove(instancia);
             
-            em.getTransaction().commit();
+            confirmarTransaccion(em);
         } catch (RuntimeException e) {
             throw new RepositorioException("Error al borrar la entidad con id " + entity.getId(), e);
         } finally {
-            if (em.getTransaction().isActive()) {
-                em.getTransaction().rollback();
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    /*
+     * Operaciones por lotes: todo va en una transacción y cada tamanoLote entidades se hace
+     * flush (las sentencias salen agrupadas por el batch writing de EclipseLink, ver persistence.xml)
+     * y clear, para que el contexto de persistencia no crezca con el número de entidades (salvo
+     * dentro de una unidad de trabajo, ver vaciarContexto).
+     */
+
+    @Override
+    public List<String> addAll(Collection<T> entities, int tamanoLote) throws RepositorioException {
+        comprobarTamanoLote(tamanoLote);
+        List<String> ids = new ArrayList<>(entities.size());
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            int pendientes = 0;
+            for (T entity : entities) {
+                em.persist(entity);
+                ids.add(entity.getId());
+                if (++pendientes == tamanoLote) {
+                    em.flush();
+                    vaciarContexto(em);
+                    pendientes = 0;
+                }
             }
+            confirmarTransaccion(em);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al guardar " + entities.size() + " entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            deshacerTransaccion(em);
             EntityManagerHelper.closeEntityManager();
         }
+        return ids;
+    }
+
+    @Override
+    public void updateAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+        comprobarTamanoLote(tamanoLote);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            for (List<T> lote : trocear(entities, tamanoLote)) {
+                comprobarExisten(em, lote);
+                for (T entity : lote) {
+                    em.merge(entity);
+                }
+                em.flush();
+                vaciarContexto(em);
+            }
+            confirmarTransaccion(em);
+        } catch (RuntimeException e) {
+            if (ConflictoVersion.esConflicto(e)) {
+                throw new ConflictoVersion("Alguna de las " + entities.size() + " entidades de " + getClase().getSimpleName()
+                        + " ha cambiado desde que se leyó", e);
+            }
+            throw new RepositorioException("Error al actualizar " + entities.size() + " entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+        comprobarTamanoLote(tamanoLote);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            for (List<T> lote : trocear(entities, tamanoLote)) {
+                for (T instancia : comprobarExisten(em, lote)) {
+                    // remove (y no un DELETE masivo) para respetar las cascadas del mapeo
+                    em.remove(instancia);
+                }
+                em.flush();
+                vaciarContexto(em);
+            }
+            confirmarTransaccion(em);
+        } catch (RuntimeException e) {
+            throw new RepositorioException("Error al borrar " + entities.size() + " entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    /**
+     * Vacía el contexto de persistencia entre lotes o páginas. Dentro de una unidad de trabajo no: el
+     * contexto es el de la unidad, y vaciarlo desligaría las entidades que ya ha leído o modificado.
+     */
+    protected void vaciarContexto(EntityManager em) {
+        if (!EntityManagerHelper.isUnidadTrabajoActiva()) {
+            em.clear();
+        }
+    }
+
+    private void comprobarTamanoLote(int tamanoLote) {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser positivo: " + tamanoLote);
+        }
+    }
+
+    private List<List<T>> trocear(Collection<T> entities, int tamanoLote) {
+        List<List<T>> lotes = new ArrayList<>();
+        List<T> lote = new ArrayList<>(tamanoLote);
+        for (T entity : entities) {
+            lote.add(entity);
+            if (lote.size() == tamanoLote) {
+                lotes.add(lote);
+                lote = new ArrayList<>(tamanoLote);
+            }
+        }
+        if (!lote.isEmpty()) {
+            lotes.add(lote);
+        }
+        return lotes;
+    }
+
+    /**
+     * Si hay una entidad con el id, con una consulta que no la carga.
+     */
+    protected boolean existeId(EntityManager em, String id) {
+        return em.createQuery("SELECT COUNT(t) FROM " + getClase().getSimpleName() + " t WHERE t.id = :id", Long.class)
+            .setParameter("id", id)
+            .getSingleResult() > 0;
+    }
+
+    /**
+     * Recupera con una sola consulta las instancias del lote y lanza EntidadNoEncontrada si falta alguna.
+     */
+    private List<T> comprobarExisten(EntityManager em, List<T> lote) throws EntidadNoEncontrada {
+        Set<String> ids = new HashSet<>();
+        for (T entity : lote) {
+            ids.add(entity.getId());
+        }
+
+        final String queryString = " SELECT t from " + getClase().getSimpleName() + " t WHERE t.id IN :ids ";
+        TypedQuery<T> query = em.createQuery(queryString, getClase());
+        query.setParameter("ids", ids);
+        List<T> instancias = query.getResultList();
+
+        if (instancias.size() != ids.size()) {
+            for (T instancia : instancias) {
+                ids.remove(instancia.getId());
+            }
+            throw new EntidadNoEncontrada(ids + " no existen en el repositorio");
+        }
+        return instancias;
     }
 
     @Override
     public T getById(String id) throws EntidadNoEncontrada, RepositorioException {
+        return getById(id, modoConsistencia);
+    }
+
+    @Override
+    public T getById(String id, ModoConsistencia modo) throws EntidadNoEncontrada, RepositorioException {
         try {   
             EntityManager em = EntityManagerHelper.getEntityManager();
                 
-            T instancia = em.find(getClase(), id);
-            // Se hace el refresh para asegurarnos de que los datos vienen actualizados de la cache
-            // sino podrían venir sucios de la cache aunque no tiene por qué.
+            // En modo FUERTE el find va directamente a la base de datos (antes se hacía find y refresh,
+            // dos consultas); en los otros puede resolverse con la caché compartida sin ninguna
+            T instancia = em.find(getClase(), id, sugerencias(modo));
             if (instancia == null) {
                 throw new EntidadNoEncontrada(id + " no existe en el repositorio");             
-            } else {
-                em.refresh(instancia);
             }
             return instancia;
 
@@ -100,8 +297,26 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
         }
     }
 
+    @Override
+    public T getReferencia(String id) throws EntidadNoEncontrada, RepositorioException {
+        try {
+            return EntityManagerHelper.getEntityManager().getReference(getClase(), id);
+        } catch (EntityNotFoundException e) {
+            throw new EntidadNoEncontrada(id + " no existe en el repositorio");
+        } catch (RuntimeException e) {
+            throw new RepositorioException("Error al obtener una referencia a la entidad con id " + id, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
     @Override
     public List<T> getAll() throws RepositorioException {
+        return getAll(modoConsistencia);
+    }
+
+    @Override
+    public List<T> getAll(ModoConsistencia modo) throws RepositorioException {
         try {
             EntityManager em = EntityManagerHelper.getEntityManager();
         
@@ -109,7 +324,7 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
 
             TypedQuery<T> query = em.createQuery(queryString, getClase());
 
-            query.setHint(QueryHints.REFRESH, HintValues.TRUE);
+            aplicarConsistencia(query, modo);
 
             return query.getResultList();
 
@@ -123,6 +338,41 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
         }
     }
 
+    @Override
+    public ModoConsistencia getModoConsistencia() {
+        return modoConsistencia;
+    }
+
+    @Override
+    public void setModoConsistencia(ModoConsistencia modo) {
+        this.modoConsistencia = modo;
+    }
+
+    /**
+     * Sugerencias de consulta que aplican el modo de consistencia.
+     */
+    protected static Map<String, Object> sugerencias(ModoConsistencia modo) {
+        Map<String, Object> sugerencias = new HashMap<>();
+        switch (modo) {
+        case FUERTE:
+            sugerencias.put(QueryHints.CACHE_RETRIEVE_MODE, CacheRetrieveMode.BYPASS);
+            sugerencias.put(QueryHints.CACHE_STORE_MODE, CacheStoreMode.REFRESH);
+            // también las entidades relacionadas que se cargan con ella, que si no saldrían de la caché
+            sugerencias.put(QueryHints.REFRESH_CASCADE, CascadePolicy.CascadeAllParts);
+            break;
+        case INSTANTANEA:
+            sugerencias.put(QueryHints.READ_ONLY, HintValues.TRUE);
+            break;
+        case CACHE:
+            break;
+        }
+        return sugerencias;
+    }
+
+    protected static void aplicarConsistencia(Query query, ModoConsistencia modo) {
+        sugerencias(modo).forEach(query::setHint);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public List<String> getIds() throws RepositorioException {
@@ -132,8 +382,6 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
 
             Query query = em.createQuery(queryString);
 
-            query.setHint(QueryHints.REFRESH, HintValues.TRUE);
-
             return query.getResultList();
 
         } catch (RuntimeException e) {
@@ -145,4 +393,108 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
             EntityManagerHelper.closeEntityManager();
         }
     }
+
+    @Override
+    public Pagina<T> getPagina(String cursor, int tamano) throws RepositorioException {
+        comprobarTamanoPagina(tamano);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            String queryString = " SELECT t from " + getClase().getSimpleName() + " t "
+                    + (cursor != null ? " WHERE t.id > :cursor " : "")
+                    + " ORDER BY t.id ";
+
+            TypedQuery<T> query = em.createQuery(queryString, getClase());
+            if (cursor != null) {
+                query.setParameter("cursor", cursor);
+            }
+            aplicarConsistencia(query, modoConsistencia);
+            // una fila de más para saber si hay página siguiente
+            query.setMaxResults(tamano + 1);
+
+            List<T> elementos = query.getResultList();
+            if (elementos.size() <= tamano) {
+                return new Pagina<>(elementos, null);
+            }
+            elementos = new ArrayList<>(elementos.subList(0, tamano));
+            return new Pagina<>(elementos, elementos.get(tamano - 1).getId());
+
+        } catch (RuntimeException e) {
+            throw new RepositorioException("Error recuperando una página de " + getClase().getSimpleName() + " tras " + cursor, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Override
+    public void recorrer(Consumer<? super T> consumidor) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            Query query = em.createQuery(" SELECT t from " + getClase().getSimpleName() + " t ");
+            aplicarConsistencia(query, modoConsistencia);
+            recorrerCursor(em, query, consumidor);
+        } catch (RuntimeException e) {
+            throw new RepositorioException("Error recorriendo las entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    /**
+     * Ejecuta la consulta con un cursor de EclipseLink y entrega los resultados uno a uno.
+     * Cada {@link #TAMANO_PAGINA_CURSOR} filas se liberan las ya leídas y se vacía el contexto de persistencia
+     * (fuera de una unidad de trabajo), así la memoria no crece con el número de filas.
+     */
+    @SuppressWarnings("unchecked")
+    protected <R> void recorrerCursor(EntityManager em, Query query, Consumer<? super R> consumidor) {
+        query.setHint(QueryHints.CURSOR, HintValues.TRUE);
+        query.setHint(QueryHints.CURSOR_PAGE_SIZE, TAMANO_PAGINA_CURSOR);
+        query.setHint(QueryHints.JDBC_FETCH_SIZE, TAMANO_PAGINA_CURSOR);
+
+        CursoredStream cursor = (CursoredStream) query.getSingleResult();
+        try {
+            int leidas = 0;
+            while (cursor.hasNext()) {
+                consumidor.accept((R) cursor.next());
+                if (++leidas % TAMANO_PAGINA_CURSOR == 0) {
+                    cursor.releasePrevious();
+                    vaciarContexto(em);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Transacciones: fuera de una unidad de trabajo cada operación abre, confirma y (si falla) deshace
+     * la suya. Dentro de una unidad de trabajo la transacción es la de la unidad, que es quien la
+     * confirma o la deshace (ver UnidadTrabajo), así que aquí no se hace nada.
+     */
+
+    protected void iniciarTransaccion(EntityManager em) {
+        if (!EntityManagerHelper.isUnidadTrabajoActiva()) {
+            em.getTransaction().begin();
+        }
+    }
+
+    protected void confirmarTransaccion(EntityManager em) {
+        if (!EntityManagerHelper.isUnidadTrabajoActiva()) {
+            em.getTransaction().commit();
+        }
+    }
+
+    /**
+     * Para el bloque finally: deshace la transacción de la operación si no se ha llegado a confirmar.
+     */
+    protected void deshacerTransaccion(EntityManager em) {
+        if (!EntityManagerHelper.isUnidadTrabajoActiva() && em.getTransaction().isActive()) {
+            em.getTransaction().rollback();
+        }
+    }
+
+    protected void comprobarTamanoPagina(int tamano) {
+        if (tamano <= 0) {
+            throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + tamano);
+        }
+    }
 }
\ No newline at end of file
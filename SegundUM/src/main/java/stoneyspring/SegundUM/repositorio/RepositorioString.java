@@ -1,8 +1,85 @@
 package stoneyspring.SegundUM.repositorio;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
 /**
  * Extensión de la interfaz repositorio para concretar
  * el uso de cadenas como identificadores
  */
 public interface RepositorioString<T> extends Repositorio<T, String> {
-}
\ No newline at end of file
+
+    /**
+     * Número de entidades que se escriben por lote si no se indica otro.
+     */
+    int TAMANO_LOTE_POR_DEFECTO = 100;
+
+    /**
+     * Añade todas las entidades en una única operación, escribiéndolas en lotes de
+     * <i>tamanoLote</i> elementos. Devuelve los ids en el mismo orden.
+     */
+    List<String> addAll(Collection<T> entities, int tamanoLote) throws RepositorioException;
+
+    /**
+     * Actualiza todas las entidades en una única operación, escribiéndolas en lotes de
+     * <i>tamanoLote</i> elementos. Si alguna no existe no se actualiza ninguna.
+     */
+    void updateAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada;
+
+    /**
+     * Borra todas las entidades en una única operación, en lotes de <i>tamanoLote</i> elementos.
+     * Si alguna no existe no se borra ninguna.
+     */
+    void deleteAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada;
+
+    /**
+     * Devuelve hasta <i>tamano</i> entidades ordenadas por id, a continuación del cursor
+     * (nulo para la primera página). Alternativa a {@link #getAll()} que no carga todas las entidades a la vez.
+     */
+    Pagina<T> getPagina(String cursor, int tamano) throws RepositorioException;
+
+    /**
+     * Entrega todas las entidades al consumidor, una a una y sin mantenerlas en memoria.
+     * Las entidades entregadas no deben guardarse para usarlas después de la llamada.
+     */
+    void recorrer(Consumer<? super T> consumidor) throws RepositorioException;
+
+    /**
+     * Recupera la entidad con el modo de consistencia indicado en lugar del del repositorio.
+     */
+    T getById(String id, ModoConsistencia modo) throws RepositorioException, EntidadNoEncontrada;
+
+    /**
+     * Entidad que se sabe que existe, para relacionarla con otra que se va a guardar. Por defecto es la de
+     * {@link #getById(Object)}; los repositorios JPA devuelven una referencia del EntityManager en uso (el de la
+     * unidad de trabajo, si la hay), que no vuelve a leerla si está en la caché.
+     */
+    default T getReferencia(String id) throws RepositorioException, EntidadNoEncontrada {
+        return getById(id);
+    }
+
+    /**
+     * Recupera todas las entidades con el modo de consistencia indicado en lugar del del repositorio.
+     */
+    List<T> getAll(ModoConsistencia modo) throws RepositorioException;
+
+    /**
+     * Modo de consistencia de las lecturas que no indican otro.
+     */
+    ModoConsistencia getModoConsistencia();
+
+    void setModoConsistencia(ModoConsistencia modo);
+
+    default List<String> addAll(Collection<T> entities) throws RepositorioException {
+        return addAll(entities, TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    default void updateAll(Collection<T> entities) throws RepositorioException, EntidadNoEncontrada {
+        updateAll(entities, TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    default void deleteAll(Collection<T> entities) throws RepositorioException, EntidadNoEncontrada {
+        deleteAll(entities, TAMANO_LOTE_POR_DEFECTO);
+    }
+}
@@ -1,17 +1,19 @@
 package stoneyspring.SegundUM.repositorio;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
-
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import stoneyspring.SegundUM.utils.JAXBHelper;
+
 
 /**
  * <p>
@@ -25,6 +27,9 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 
 	public final static String DIRECTORIO = "categoriasXML/";
 
+	// Los ficheros se leen en cada llamada, así que todos los modos son consistentes; sólo se guarda
+	private ModoConsistencia modoConsistencia = ModoConsistencia.FUERTE;
+
 	static {
 
 		File directorio = new File(DIRECTORIO);
@@ -41,7 +46,7 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 	protected String getDocumento(String id) {
 
 		if (id.endsWith(".xml")) { // si es un xml concreto
-			logger.debug("El id proporcionado es un nombre de fichero XML: " + id);
+			logger.debug("El id proporcionado es un nombre de fichero XML: {}", id);
 			return DIRECTORIO + id;
 		}
 		// Si no, asumimos que es generado por el repositorioXML
@@ -54,7 +59,7 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 
 		File fichero = new File(documento);
 		
-		logger.debug("Comprobando existencia del fichero: " + documento + " - Existe: " + fichero.exists());
+		logger.debug("Comprobando existencia del fichero: {} - Existe: {}", documento, fichero.exists());
 
 		return fichero.exists();
 	}
@@ -67,12 +72,8 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 
 		try {
 
-			JAXBContext contexto = JAXBContext.newInstance(getClase());
-			Marshaller marshaller = contexto.createMarshaller();
-
-			marshaller.setProperty("jaxb.formatted.output", true);
-
-			marshaller.marshal(entity, fichero);
+			// el contexto JAXB se crea una sola vez por clase, ver JAXBHelper
+			JAXBHelper.guardar(getClase(), entity, fichero);
 
 		} catch (Exception e) {
 
@@ -80,7 +81,6 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	protected T load(String id) throws RepositorioException, EntidadNoEncontrada {
 
 		if (!checkDocumento(id))
@@ -90,10 +90,7 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 
 		try {
 
-			JAXBContext contexto = JAXBContext.newInstance(getClase());
-			Unmarshaller unmarshaller = contexto.createUnmarshaller();
-
-			return (T) unmarshaller.unmarshal(new File(documento));
+			return JAXBHelper.cargar(getClase(), new File(documento));
 
 		} catch (Exception e) {
 			throw new RepositorioException("Error al cargar la entidad con id: " + id, e);
@@ -133,11 +130,66 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 
 	}
 
+	// En ficheros no hay transacciones ni escritura por lotes: se comprueba todo antes de escribir
+	// y el tamaño de lote se ignora
+
+	@Override
+	public List<String> addAll(Collection<T> entities, int tamanoLote) throws RepositorioException {
+		List<String> ids = new ArrayList<>(entities.size());
+		for (T entity : entities) {
+			ids.add(add(entity));
+		}
+		return ids;
+	}
+
+	@Override
+	public void updateAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+		comprobarExisten(entities);
+		for (T entity : entities) {
+			save(entity);
+		}
+	}
+
+	@Override
+	public void deleteAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+		comprobarExisten(entities);
+		for (T entity : entities) {
+			new File(getDocumento(entity.getId())).delete();
+		}
+	}
+
+	private void comprobarExisten(Collection<T> entities) throws EntidadNoEncontrada {
+		for (T entity : entities) {
+			if (!checkDocumento(entity.getId()))
+				throw new EntidadNoEncontrada("La entidad no existe, id: " + entity.getId());
+		}
+	}
+
 	@Override
 	public T getById(String id) throws RepositorioException, EntidadNoEncontrada {
 		return load(id);
 	}
 
+	@Override
+	public T getById(String id, ModoConsistencia modo) throws RepositorioException, EntidadNoEncontrada {
+		return load(id);
+	}
+
+	@Override
+	public List<T> getAll(ModoConsistencia modo) throws RepositorioException {
+		return getAll();
+	}
+
+	@Override
+	public ModoConsistencia getModoConsistencia() {
+		return modoConsistencia;
+	}
+
+	@Override
+	public void setModoConsistencia(ModoConsistencia modo) {
+		this.modoConsistencia = modo;
+	}
+
 	@Override
 	public List<T> getAll() throws RepositorioException {
 		LinkedList<T> resultado = new LinkedList<T>();
@@ -155,6 +207,40 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 		return resultado;
 	}
 
+	@Override
+	public Pagina<T> getPagina(String cursor, int tamano) throws RepositorioException {
+		if (tamano <= 0)
+			throw new IllegalArgumentException("El tamaño de página debe ser positivo: " + tamano);
+
+		List<String> ids = new ArrayList<>(getIds());
+		Collections.sort(ids);
+
+		List<T> elementos = new ArrayList<>(tamano);
+		for (String id : ids) {
+			if (cursor != null && id.compareTo(cursor) <= 0)
+				continue;
+			if (elementos.size() == tamano)
+				return new Pagina<>(elementos, elementos.get(tamano - 1).getId());
+			try {
+				elementos.add(load(id));
+			} catch (EntidadNoEncontrada e) {
+				// borrado mientras se recorría
+			}
+		}
+		return new Pagina<>(elementos, null);
+	}
+
+	@Override
+	public void recorrer(Consumer<? super T> consumidor) throws RepositorioException {
+		for (String id : getIds()) {
+			try {
+				consumidor.accept(load(id));
+			} catch (EntidadNoEncontrada e) {
+				// borrado mientras se recorría
+			}
+		}
+	}
+
 	@Override
 	public List<String> getIds() throws RepositorioException {
 		LinkedList<String> resultado = new LinkedList<>();
@@ -0,0 +1,125 @@
+package stoneyspring.SegundUM.repositorio;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * <p>
+ * Unidad de trabajo: mientras está abierta, todas las llamadas a repositorios JPA del hilo comparten
+ * un mismo EntityManager y una misma transacción, en lugar de abrir, confirmar y cerrar los suyos.
+ * El caso de uso paga una sola conexión y un solo commit, y es atómico.
+ * </p>
+ * <pre>
+ * try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+ *     ... llamadas a los repositorios ...
+ *     unidad.confirmar();
+ * }
+ * </pre>
+ * <p>
+ * Si se cierra sin haber confirmado (por ejemplo, porque se ha lanzado una excepción) la transacción
+ * se deshace. Los cambios no se escriben en la base de datos hasta confirmar, así que los errores
+ * de las escrituras pueden aparecer entonces y no en la llamada al repositorio.
+ * </p>
+ * Si ya hay una unidad abierta en el hilo, la nueva se une a ella: confirmar y cerrar no hacen nada
+ * y es la unidad exterior la que decide.
+ */
+public class UnidadTrabajo implements AutoCloseable {
+
+    /** Acciones registradas con {@link #alTerminar(Runnable)} en la unidad abierta en el hilo. */
+    private static final ThreadLocal<List<Runnable>> alTerminar = new ThreadLocal<>();
+
+    private final boolean anidada;
+    private final EntityManager em;
+
+    private UnidadTrabajo() {
+        anidada = EntityManagerHelper.isUnidadTrabajoActiva();
+        if (anidada) {
+            em = EntityManagerHelper.getEntityManager();
+        } else {
+            alTerminar.set(new ArrayList<>());
+            try {
+                em = EntityManagerHelper.abrirUnidadTrabajo();
+                em.getTransaction().begin();
+            } catch (RuntimeException e) {
+                // el hilo (quizá de un pool) no puede quedar marcado: sus unidades siguientes serían anidadas
+                // y no confirmarían nada
+                alTerminar.remove();
+                try {
+                    EntityManagerHelper.cerrarUnidadTrabajo();
+                } catch (RuntimeException cierre) {
+                    e.addSuppressed(cierre);
+                }
+                throw e;
+            }
+        }
+    }
+
+    public static UnidadTrabajo iniciar() {
+        return new UnidadTrabajo();
+    }
+
+    /**
+     * Si hay una unidad abierta en el hilo (una nueva se uniría a ella).
+     */
+    public static boolean isActiva() {
+        return EntityManagerHelper.isUnidadTrabajoActiva();
+    }
+
+    /**
+     * Ejecuta la acción cuando termine la unidad abierta en el hilo, se confirme o se deshaga (por ejemplo, para
+     * descartar una caché que podría haberse cargado antes de confirmar). Si no hay ninguna, la ejecuta ya.
+     */
+    public static void alTerminar(Runnable accion) {
+        List<Runnable> acciones = alTerminar.get();
+        if (acciones == null) {
+            accion.run();
+        } else {
+            acciones.add(accion);
+        }
+    }
+
+    /**
+     * Confirma la transacción de la unidad. Lanza {@link ConflictoVersion} si una entidad versionada ha cambiado
+     * desde que se leyó.
+     */
+    public void confirmar() throws RepositorioException {
+        if (anidada) {
+            return;
+        }
+        try {
+            em.getTransaction().commit();
+        } catch (RuntimeException e) {
+            if (ConflictoVersion.esConflicto(e)) {
+                throw new ConflictoVersion("Una entidad de la unidad de trabajo ha cambiado desde que se leyó", e);
+            }
+            throw new RepositorioException("Error al confirmar la unidad de trabajo", e);
+        }
+    }
+
+    /**
+     * Deshace la transacción si no se ha confirmado, cierra el EntityManager y ejecuta las acciones registradas
+     * con {@link #alTerminar(Runnable)}.
+     */
+    @Override
+    public void close() {
+        if (anidada) {
+            return;
+        }
+        try {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+        } finally {
+            EntityManagerHelper.cerrarUnidadTrabajo();
+            List<Runnable> acciones = alTerminar.get();
+            alTerminar.remove();
+            for (Runnable accion : acciones) {
+                accion.run();
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package stoneyspring.SegundUM.repositorio.categorias;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import stoneyspring.SegundUM.dominio.Categoria;
 import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
@@ -26,4 +28,39 @@ public interface RepositorioCategorias extends RepositorioString<Categoria> {
      * Verifica si existe una categoría con el ID dado.
      */
     boolean existe(String id) throws RepositorioException;
+    
+    /**
+     * Inserta un lote de categorías en una única transacción.
+     * El lote debe venir en orden padre-primero y el padre de cada categoría
+     * debe estar en el mismo lote o haberse insertado antes.
+     * Dentro de una unidad de trabajo el lote se escribe pero no se confirma: varios lotes
+     * seguidos se confirman (o se deshacen) juntos con la unidad.
+     */
+    void addLote(List<Categoria> lote) throws RepositorioException;
+    
+    /**
+     * Recupera el árbol completo de categorías y devuelve sus raíces.
+     * Las categorías devueltas no están ligadas al sistema de persistencia.
+     */
+    List<Categoria> getJerarquiaCompleta() throws RepositorioException;
+    
+    /**
+     * De las categorías indicadas, devuelve los ids de las que tienen algún producto.
+     */
+    Set<String> getConProductos(Collection<String> ids) throws RepositorioException;
+    
+    /**
+     * Aplica en una única transacción los cambios de una sincronización:
+     * <ul>
+     * <li>inserta las <i>nuevas</i>, que deben venir en orden padre-primero (el padre de cada una está antes
+     * en la lista o ya existe);</li>
+     * <li>escribe nombre, descripción, ruta y padre de las <i>modificadas</i>;</li>
+     * <li>borra las <i>borradas</i>, que deben venir de la más profunda a la menos.</li>
+     * </ul>
+     * Las modificaciones y los borrados son sentencias directas sobre la tabla, sin cargar las entidades, así que
+     * no se propagan: quien llama debe incluir en <i>borradas</i> todos los descendientes de una categoría borrada
+     * (o moverlos antes) y no borrar categorías con productos.
+     */
+    void aplicarCambios(List<Categoria> nuevas, List<Categoria> modificadas, List<Categoria> borradas)
+            throws RepositorioException;
 }
\ No newline at end of file
@@ -0,0 +1,392 @@
+package stoneyspring.SegundUM.repositorio.categorias;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.ModoConsistencia;
+import stoneyspring.SegundUM.repositorio.Pagina;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.UnidadTrabajo;
+
+/**
+ * <p>
+ * Repositorio de categorías con caché en memoria del árbol completo.<br>
+ * Las categorías casi nunca cambian (sólo al cargar una jerarquía o modificar una descripción), así
+ * que las lecturas se sirven de una instantánea inmutable del árbol y no van a la base de datos.
+ * </p>
+ * <p>
+ * Las escrituras se delegan en el repositorio subyacente y, al terminar (tanto si van bien como si fallan),
+ * se vuelve a cargar la instantánea y se sustituye de forma atómica: los lectores ven la anterior o la nueva,
+ * nunca una a medias. Las escrituras por lotes sólo invalidan la instantánea, porque suelen llegar seguidas
+ * (carga en streaming) y recargar el árbol tras cada lote sería cuadrático. Dentro de una unidad de trabajo la
+ * instantánea no se toca hasta que termina la unidad, para que no recoja nada sin confirmar.
+ * </p>
+ * <p>
+ * Las categorías devueltas son las de la instantánea y se comparten entre llamadas, así que deben tratarse
+ * como de sólo lectura. Para modificar una categoría se usa {@link #update(Categoria)}, que no reutiliza
+ * el objeto recibido sino que actualiza la versión persistida.
+ * </p>
+ * La instantánea y los contadores son compartidos por todas las instancias: la factoría da siempre
+ * la misma, pero se pueden crear otras con su propio delegado.
+ */
+public class RepositorioCategoriasCache implements RepositorioCategorias {
+
+	private static final Logger logger = LoggerFactory.getLogger(RepositorioCategoriasCache.class);
+
+	private static final AtomicReference<Instantanea> instantanea = new AtomicReference<>();
+	private static final Object cerrojoCarga = new Object();
+
+	private static final LongAdder aciertos = new LongAdder();
+	private static final LongAdder fallos = new LongAdder();
+
+	private final RepositorioCategorias delegado;
+	private ModoConsistencia modoConsistencia = ModoConsistencia.CACHE;
+
+	public RepositorioCategoriasCache() {
+		this(new RepositorioCategoriasJPA());
+	}
+
+	public RepositorioCategoriasCache(RepositorioCategorias delegado) {
+		this.delegado = delegado;
+	}
+
+	/**
+	 * Árbol de categorías en un momento dado. No se modifica una vez construido.
+	 */
+	private static class Instantanea {
+
+		final List<Categoria> raices;
+		final Map<String, Categoria> porId;
+
+		Instantanea(List<Categoria> raices) {
+			Map<String, Categoria> indice = new HashMap<>();
+			Deque<Categoria> pendientes = new ArrayDeque<>(raices);
+			while (!pendientes.isEmpty()) {
+				Categoria categoria = pendientes.pop();
+				indice.put(categoria.getId(), categoria);
+				pendientes.addAll(categoria.getSubcategorias());
+				categoria.setSubcategorias(Collections.unmodifiableList(categoria.getSubcategorias()));
+			}
+			this.raices = Collections.unmodifiableList(new ArrayList<>(raices));
+			this.porId = Collections.unmodifiableMap(indice);
+		}
+	}
+
+	/*** Gestión de la instantánea ***/
+
+	/**
+	 * La instantánea para una lectura, que cuenta como acierto si ya estaba cargada y como fallo si hay que
+	 * cargarla. Cada lectura la pide una sola vez, así que cuenta un único resultado.
+	 * Devuelve null si no está cargada y el hilo está en una unidad de trabajo: la unidad vería lo que ha escrito
+	 * sin confirmar y lo dejaría en la instantánea que comparten todos, así que la lectura va al repositorio
+	 * subyacente.
+	 */
+	private Instantanea getInstantanea() throws RepositorioException {
+		Instantanea actual = instantanea.get();
+		if (actual != null) {
+			aciertos.increment();
+			return actual;
+		}
+
+		fallos.increment();
+		if (UnidadTrabajo.isActiva()) {
+			return null;
+		}
+		synchronized (cerrojoCarga) {
+			actual = instantanea.get();
+			if (actual == null) {
+				actual = cargar();
+			}
+			return actual;
+		}
+	}
+
+	private Instantanea cargar() throws RepositorioException {
+		long inicio = System.nanoTime();
+		Instantanea nueva = new Instantanea(delegado.getJerarquiaCompleta());
+		instantanea.set(nueva);
+		logger.info("Caché de categorías cargada: {} categorías en {} ms",
+				nueva.porId.size(), (System.nanoTime() - inicio) / 1_000_000);
+		return nueva;
+	}
+
+	/**
+	 * Vuelve a cargar el árbol tras una escritura. Si no se puede, se descarta la instantánea
+	 * para que la siguiente lectura lo intente de nuevo.
+	 */
+	private void recargar() {
+		synchronized (cerrojoCarga) {
+			try {
+				cargar();
+			} catch (RepositorioException e) {
+				logger.error("No se ha podido recargar la caché de categorías, se invalida", e);
+				instantanea.set(null);
+			}
+		}
+	}
+
+	/**
+	 * Tras una escritura se recarga el árbol o, si se ha escrito por lotes, sólo se descarta la instantánea.
+	 * Dentro de una unidad de trabajo no se toca: lo escrito no se ve hasta confirmar (y no se verá si se deshace),
+	 * así que la instantánea se descarta cuando termine la unidad.
+	 */
+	private void despuesDeEscribir(boolean recargar) {
+		if (UnidadTrabajo.isActiva()) {
+			UnidadTrabajo.alTerminar(RepositorioCategoriasCache::invalidar);
+		} else if (recargar) {
+			recargar();
+		} else {
+			invalidar();
+		}
+	}
+
+	/**
+	 * Descarta la instantánea; la siguiente lectura cargará el árbol de nuevo.
+	 * Sólo es necesario llamarlo si las categorías se modifican sin pasar por este repositorio.
+	 */
+	public static void invalidar() {
+		// se espera a que termine una carga en curso, que podría haber leído datos anteriores a la escritura
+		synchronized (cerrojoCarga) {
+			instantanea.set(null);
+		}
+	}
+
+	/**
+	 * Ruta de la categoría en la instantánea, sin cargarla si no lo está. Devuelve null si no hay instantánea
+	 * o la categoría no está en ella (por ejemplo, porque se ha creado en una unidad de trabajo sin confirmar).
+	 */
+	public static String getRuta(String id) {
+		Instantanea actual = instantanea.get();
+		Categoria categoria = actual != null ? actual.porId.get(id) : null;
+		return categoria != null ? categoria.getRuta() : null;
+	}
+
+	/**
+	 * Lecturas resueltas con la instantánea ya cargada.
+	 */
+	public static long getAciertos() {
+		return aciertos.sum();
+	}
+
+	/**
+	 * Lecturas que han encontrado la caché vacía y han tenido que cargar el árbol.
+	 */
+	public static long getFallos() {
+		return fallos.sum();
+	}
+
+	/*** Lecturas ***/
+
+	@Override
+	public Categoria getById(String id) throws RepositorioException, EntidadNoEncontrada {
+		return getById(id, modoConsistencia);
+	}
+
+	/**
+	 * En modo {@link ModoConsistencia#FUERTE} se lee del repositorio subyacente; en los otros, de la instantánea.
+	 * La instantánea tiene el árbol completo, así que si la categoría no está en ella no existe (las escrituras
+	 * que no pasan por este repositorio deben {@link #invalidar()} la caché).
+	 */
+	@Override
+	public Categoria getById(String id, ModoConsistencia modo) throws RepositorioException, EntidadNoEncontrada {
+		if (modo == ModoConsistencia.FUERTE) {
+			return delegado.getById(id, modo);
+		}
+		Instantanea actual = getInstantanea();
+		if (actual == null) {
+			return delegado.getById(id, modo);
+		}
+		Categoria categoria = actual.porId.get(id);
+		if (categoria == null) {
+			throw new EntidadNoEncontrada(id + " no existe en el repositorio");
+		}
+		return categoria;
+	}
+
+	/**
+	 * La del repositorio subyacente: la categoría de la instantánea se comparte y no debe relacionarse
+	 * con las entidades que se guardan.
+	 */
+	@Override
+	public Categoria getReferencia(String id) throws RepositorioException, EntidadNoEncontrada {
+		return delegado.getReferencia(id);
+	}
+
+	@Override
+	public List<Categoria> getAll() throws RepositorioException {
+		return getAll(modoConsistencia);
+	}
+
+	@Override
+	public List<Categoria> getAll(ModoConsistencia modo) throws RepositorioException {
+		if (modo == ModoConsistencia.FUERTE) {
+			return delegado.getAll(modo);
+		}
+		Instantanea actual = getInstantanea();
+		return actual != null ? new ArrayList<>(actual.porId.values()) : delegado.getAll(modo);
+	}
+
+	/**
+	 * Modo de las lecturas que no indican otro; por defecto {@link ModoConsistencia#CACHE} (la instantánea).
+	 */
+	@Override
+	public ModoConsistencia getModoConsistencia() {
+		return modoConsistencia;
+	}
+
+	@Override
+	public void setModoConsistencia(ModoConsistencia modo) {
+		this.modoConsistencia = modo;
+	}
+
+	@Override
+	public List<String> getIds() throws RepositorioException {
+		Instantanea actual = getInstantanea();
+		return actual != null ? new ArrayList<>(actual.porId.keySet()) : delegado.getIds();
+	}
+
+	@Override
+	public List<Categoria> getCategoriasRaiz() throws RepositorioException {
+		Instantanea actual = getInstantanea();
+		return actual != null ? actual.raices : delegado.getCategoriasRaiz();
+	}
+
+	@Override
+	public List<Categoria> getDescendientes(String categoriaId) throws RepositorioException, EntidadNoEncontrada {
+		Instantanea actual = getInstantanea();
+		if (actual == null) {
+			return delegado.getDescendientes(categoriaId);
+		}
+		Categoria categoria = actual.porId.get(categoriaId);
+		if (categoria == null) {
+			throw new EntidadNoEncontrada(categoriaId + " no existe en el repositorio");
+		}
+		// el árbol ya está en memoria, no hay cargas perezosas
+		return Collections.unmodifiableList(categoria.obtenerDescendientes());
+	}
+
+	@Override
+	public boolean existe(String id) throws RepositorioException {
+		Instantanea actual = getInstantanea();
+		return actual != null ? actual.porId.containsKey(id) : delegado.existe(id);
+	}
+
+	@Override
+	public List<Categoria> getJerarquiaCompleta() throws RepositorioException {
+		Instantanea actual = getInstantanea();
+		return actual != null ? actual.raices : delegado.getJerarquiaCompleta();
+	}
+
+	// Los recorridos por páginas o con cursor están pensados para no tener todo en memoria,
+	// así que van directamente al repositorio subyacente
+
+	@Override
+	public Pagina<Categoria> getPagina(String cursor, int tamano) throws RepositorioException {
+		return delegado.getPagina(cursor, tamano);
+	}
+
+	@Override
+	public void recorrer(Consumer<? super Categoria> consumidor) throws RepositorioException {
+		delegado.recorrer(consumidor);
+	}
+
+	/*** Escrituras: se delegan y se recarga (o invalida) la instantánea ***/
+
+	@Override
+	public String add(Categoria entity) throws RepositorioException {
+		try {
+			return delegado.add(entity);
+		} finally {
+			despuesDeEscribir(true);
+		}
+	}
+
+	@Override
+	public void update(Categoria entity) throws RepositorioException, EntidadNoEncontrada {
+		try {
+			// el objeto recibido puede ser de la instantánea (con el árbol completo cargado),
+			// así que se copian los campos sobre la versión persistida en lugar de hacer merge de él
+			Categoria persistida = delegado.getById(entity.getId());
+			persistida.setNombre(entity.getNombre());
+			persistida.setDescripcion(entity.getDescripcion());
+			delegado.update(persistida);
+		} finally {
+			despuesDeEscribir(true);
+		}
+	}
+
+	@Override
+	public void delete(Categoria entity) throws RepositorioException, EntidadNoEncontrada {
+		try {
+			delegado.delete(entity);
+		} finally {
+			despuesDeEscribir(true);
+		}
+	}
+
+	@Override
+	public void addLote(List<Categoria> lote) throws RepositorioException {
+		try {
+			delegado.addLote(lote);
+		} finally {
+			despuesDeEscribir(false);
+		}
+	}
+
+	@Override
+	public List<String> addAll(Collection<Categoria> entities, int tamanoLote) throws RepositorioException {
+		try {
+			return delegado.addAll(entities, tamanoLote);
+		} finally {
+			despuesDeEscribir(false);
+		}
+	}
+
+	@Override
+	public void updateAll(Collection<Categoria> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+		try {
+			delegado.updateAll(entities, tamanoLote);
+		} finally {
+			despuesDeEscribir(false);
+		}
+	}
+
+	@Override
+	public void deleteAll(Collection<Categoria> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+		try {
+			delegado.deleteAll(entities, tamanoLote);
+		} finally {
+			despuesDeEscribir(false);
+		}
+	}
+
+	@Override
+	public Set<String> getConProductos(Collection<String> ids) throws RepositorioException {
+		return delegado.getConProductos(ids);
+	}
+
+	@Override
+	public void aplicarCambios(List<Categoria> nuevas, List<Categoria> modificadas, List<Categoria> borradas)
+			throws RepositorioException {
+		try {
+			delegado.aplicarCambios(nuevas, modificadas, borradas);
+		} finally {
+			despuesDeEscribir(false);
+		}
+	}
+}
@@ -1,8 +1,15 @@
 package stoneyspring.SegundUM.repositorio.categorias;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
 import stoneyspring.SegundUM.dominio.Categoria;
@@ -16,6 +23,9 @@ import stoneyspring.SegundUM.utils.EntityManagerHelper;
  */
 public class RepositorioCategoriasJPA extends RepositorioJPA<Categoria> implements RepositorioCategorias {
     
+    /** Máximo de ids en cada lista IN. */
+    private static final int TAMANO_IN = 1000;
+    
     @Override
     public Class<Categoria> getClase() {
         return Categoria.class;
@@ -29,6 +39,7 @@ public class RepositorioCategoriasJPA extends RepositorioJPA<Categoria> implemen
                 "SELECT c FROM Categoria c WHERE c.categoriaPadre IS NULL", 
                 Categoria.class
             );
+            aplicarConsistencia(query, getModoConsistencia());
             return query.getResultList();
         } catch (Exception e) {
             throw new RepositorioException("Error al recuperar las categorías raíz", e);
@@ -41,13 +52,25 @@ public class RepositorioCategoriasJPA extends RepositorioJPA<Categoria> implemen
     public List<Categoria> getDescendientes(String categoriaId) throws RepositorioException, EntidadNoEncontrada {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            Categoria categoria = em.find(Categoria.class, categoriaId);
+            Categoria categoria = em.find(Categoria.class, categoriaId, sugerencias(getModoConsistencia()));
             if (categoria == null) {
                 throw new EntidadNoEncontrada("Categoría con id " + categoriaId + " no encontrada");
             }
             
-            // Obtener descendientes recursivamente usando el método del dominio
-            return categoria.obtenerDescendientes();
+            if (categoria.getRuta() == null) {
+                // Categorías antiguas sin ruta: se recorre el árbol con el método del dominio
+                return categoria.obtenerDescendientes();
+            }
+            
+            // Los descendientes son las categorías cuya ruta empieza por la de esta (prefijo indexado)
+            TypedQuery<Categoria> query = em.createQuery(
+                "SELECT c FROM Categoria c WHERE c.ruta LIKE :prefijo ESCAPE '!' AND c.id <> :id ORDER BY c.ruta",
+                Categoria.class
+            );
+            query.setParameter("prefijo", prefijoRuta(categoria.getRuta()));
+            query.setParameter("id", categoriaId);
+            aplicarConsistencia(query, getModoConsistencia());
+            return query.getResultList();
         } catch (EntidadNoEncontrada e) {
             throw e;
         } catch (Exception e) {
@@ -57,11 +80,19 @@ public class RepositorioCategoriasJPA extends RepositorioJPA<Categoria> implemen
         }
     }
     
+    /**
+     * Patrón LIKE que encuentra la ruta y todas las que cuelgan de ella.
+     * Se escapan los comodines por si algún id los contiene (escape '!').
+     */
+    public static String prefijoRuta(String ruta) {
+        return ruta.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+    
     @Override
     public boolean existe(String id) throws RepositorioException {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            Categoria categoria = em.find(Categoria.class, id);
+            Categoria categoria = em.find(Categoria.class, id, sugerencias(getModoConsistencia()));
             return categoria != null;
         } catch (Exception e) {
             throw new RepositorioException("Error al verificar existencia de categoría " + id, e);
@@ -69,4 +100,147 @@ public class RepositorioCategoriasJPA extends RepositorioJPA<Categoria> implemen
             EntityManagerHelper.closeEntityManager();
         }
     }
-}
\ No newline at end of file
+    
+    @Override
+    public void addLote(List<Categoria> lote) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            for (Categoria categoria : lote) {
+                Categoria padre = categoria.getCategoriaPadre();
+                // si el padre viene de un lote anterior no está gestionado por este EntityManager
+                if (padre != null && !em.contains(padre)) {
+                    categoria.setCategoriaPadre(em.getReference(Categoria.class, padre.getId()));
+                }
+                em.persist(categoria);
+            }
+            if (EntityManagerHelper.isUnidadTrabajoActiva()) {
+                // Los lotes se confirman juntos al final de la unidad: se escribe este y se separan sus categorías
+                // (solo las suyas: el resto del contexto es de quien abrió la unidad) para que no se acumulen
+                em.flush();
+                for (Categoria categoria : lote) {
+                    em.detach(categoria);
+                }
+            }
+            confirmarTransaccion(em);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al guardar el lote de " + lote.size() + " categorías", e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public List<Categoria> getJerarquiaCompleta() throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            // Una sola consulta con los campos planos; recorrer subcategorias cargaría cada nivel por separado
+            TypedQuery<Object[]> query = em.createQuery(
+                "SELECT c.id, c.nombre, c.descripcion, c.ruta, p.id FROM Categoria c LEFT JOIN c.categoriaPadre p",
+                Object[].class
+            );
+            aplicarConsistencia(query, getModoConsistencia());
+            List<Object[]> filas = query.getResultList();
+            
+            Map<String, Categoria> categorias = new HashMap<>();
+            for (Object[] fila : filas) {
+                Categoria categoria = new Categoria((String) fila[0], (String) fila[1]);
+                categoria.setDescripcion((String) fila[2]);
+                categoria.setRuta((String) fila[3]);
+                categorias.put(categoria.getId(), categoria);
+            }
+            
+            List<Categoria> raices = new ArrayList<>();
+            for (Object[] fila : filas) {
+                Categoria categoria = categorias.get((String) fila[0]);
+                String padreId = (String) fila[4];
+                if (padreId == null) {
+                    raices.add(categoria);
+                } else {
+                    categorias.get(padreId).addSubcategoria(categoria);
+                }
+            }
+            return raices;
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recuperar la jerarquía completa de categorías", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public Set<String> getConProductos(Collection<String> ids) throws RepositorioException {
+        Set<String> resultado = new HashSet<>();
+        if (ids.isEmpty()) {
+            return resultado;
+        }
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            TypedQuery<String> query = em.createQuery(
+                "SELECT DISTINCT p.categoria.id FROM Producto p WHERE p.categoria.id IN :ids",
+                String.class
+            );
+            List<String> lista = new ArrayList<>(ids);
+            for (int desde = 0; desde < lista.size(); desde += TAMANO_IN) {
+                query.setParameter("ids", lista.subList(desde, Math.min(desde + TAMANO_IN, lista.size())));
+                resultado.addAll(query.getResultList());
+            }
+            return resultado;
+        } catch (Exception e) {
+            throw new RepositorioException("Error al buscar las categorías con productos", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public void aplicarCambios(List<Categoria> nuevas, List<Categoria> modificadas, List<Categoria> borradas)
+            throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            
+            for (Categoria categoria : nuevas) {
+                Categoria padre = categoria.getCategoriaPadre();
+                if (padre != null && !em.contains(padre)) {
+                    categoria.setCategoriaPadre(em.getReference(Categoria.class, padre.getId()));
+                }
+                em.persist(categoria);
+            }
+            // Las modificadas pueden moverse bajo una nueva
+            em.flush();
+            
+            Query mover = em.createQuery("UPDATE Categoria c SET c.nombre = :nombre, c.descripcion = :descripcion, "
+                    + "c.ruta = :ruta, c.categoriaPadre = :padre WHERE c.id = :id");
+            Query moverARaiz = em.createQuery("UPDATE Categoria c SET c.nombre = :nombre, c.descripcion = :descripcion, "
+                    + "c.ruta = :ruta, c.categoriaPadre = NULL WHERE c.id = :id");
+            for (Categoria categoria : modificadas) {
+                Query query = categoria.getCategoriaPadre() != null ? mover : moverARaiz;
+                query.setParameter("nombre", categoria.getNombre());
+                query.setParameter("descripcion", categoria.getDescripcion());
+                query.setParameter("ruta", categoria.getRuta());
+                query.setParameter("id", categoria.getId());
+                if (categoria.getCategoriaPadre() != null) {
+                    query.setParameter("padre", em.getReference(Categoria.class, categoria.getCategoriaPadre().getId()));
+                }
+                query.executeUpdate();
+            }
+            
+            // Vienen de la más profunda a la menos, así que ninguna se borra antes que sus hijas
+            Query borrar = em.createQuery("DELETE FROM Categoria c WHERE c.id = :id");
+            for (Categoria categoria : borradas) {
+                borrar.setParameter("id", categoria.getId());
+                borrar.executeUpdate();
+            }
+            
+            confirmarTransaccion(em);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al aplicar los cambios en las categorías ("
+                    + nuevas.size() + " nuevas, " + modificadas.size() + " modificadas, " + borradas.size() + " borradas)", e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+}
@@ -1,14 +1,198 @@
 package stoneyspring.SegundUM.repositorio.categorias;
 
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
 import stoneyspring.SegundUM.repositorio.RepositorioXML;
 
 public class RepositorioCategoriasXML extends RepositorioXML<Categoria> {
 
+	private static final String CATEGORIA = "categoria";
+	private static final String NOMBRE = "nombre";
+	private static final String DESCRIPCION = "descripcion";
+
+	// La factoría es thread-safe una vez configurada
+	private static final XMLInputFactory factoria = XMLInputFactory.newInstance();
+
+	static {
+		factoria.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factoria.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * Recibe las categorías leídas en streaming, en lotes.
+	 */
+	@FunctionalInterface
+	public interface ConsumidorLote {
+		void aceptar(List<Categoria> lote) throws RepositorioException;
+	}
+
 	@Override
 	public Class<Categoria> getClase() {
 		return Categoria.class;
 	}
-	
+
+	/**
+	 * Nombres (ids) de los ficheros XML del directorio, ordenados.
+	 */
+	public List<String> getFicheros() throws RepositorioException {
+		File[] ficheros = new File(DIRECTORIO).listFiles(f -> f.isFile() && f.getName().endsWith(".xml"));
+		if (ficheros == null)
+			throw new RepositorioException("No se puede leer el directorio " + DIRECTORIO);
+
+		List<String> nombres = new ArrayList<>(ficheros.length);
+		for (File fichero : ficheros) {
+			nombres.add(fichero.getName());
+		}
+		Collections.sort(nombres);
+		return nombres;
+	}
+
+	/**
+	 * Devuelve el id de la categoría raíz del fichero leyendo sólo su primer elemento.
+	 */
+	public String getIdRaiz(String id) throws RepositorioException, EntidadNoEncontrada {
+		if (!checkDocumento(id))
+			throw new EntidadNoEncontrada("La entidad no existe, id: " + id);
+
+		try (InputStream entrada = new FileInputStream(getDocumento(id))) {
+			XMLStreamReader lector = factoria.createXMLStreamReader(entrada);
+			try {
+				lector.nextTag();
+				return lector.getAttributeValue(null, "id");
+			} finally {
+				lector.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			throw new RepositorioException("Error al leer la raíz de la jerarquía con id: " + id, e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Recorre la jerarquía del fichero con StAX sin construir el árbol en memoria.<br>
+	 * Las categorías se entregan al consumidor en lotes de <i>tamanoLote</i> elementos y siempre
+	 * en orden padre-primero: una categoría aparece en el mismo lote o en uno anterior al de sus hijas.
+	 * </p>
+	 * <p>
+	 * Cada categoría entregada tiene su <i>categoriaPadre</i> apuntando al padre ya entregado, pero
+	 * sus <i>subcategorias</i> están vacías; así la memoria depende de la profundidad y del tamaño
+	 * del lote, no del número de nodos.
+	 * </p>
+	 *
+	 * @return número total de categorías leídas
+	 */
+	public int recorrerJerarquia(String id, int tamanoLote, ConsumidorLote consumidor)
+			throws RepositorioException, EntidadNoEncontrada {
+
+		if (tamanoLote <= 0)
+			throw new IllegalArgumentException("El tamaño de lote debe ser positivo: " + tamanoLote);
+
+		if (!checkDocumento(id))
+			throw new EntidadNoEncontrada("La entidad no existe, id: " + id);
+
+		try (InputStream entrada = new FileInputStream(getDocumento(id))) {
+			XMLStreamReader lector = factoria.createXMLStreamReader(entrada);
+			try {
+				return recorrer(lector, tamanoLote, consumidor);
+			} finally {
+				lector.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			throw new RepositorioException("Error al recorrer la jerarquía con id: " + id, e);
+		}
+	}
+
+	/**
+	 * Nodo en curso: la categoría sólo se emite cuando ya se conoce su nombre, es decir,
+	 * al abrir su primera hija o al cerrarse.
+	 */
+	private static class Pendiente {
+		final Categoria categoria;
+		boolean emitida;
+
+		Pendiente(Categoria categoria) {
+			this.categoria = categoria;
+		}
+	}
+
+	private int recorrer(XMLStreamReader lector, int tamanoLote, ConsumidorLote consumidor)
+			throws XMLStreamException, RepositorioException {
+
+		Deque<Pendiente> pila = new ArrayDeque<>();
+		List<Categoria> lote = new ArrayList<>(tamanoLote);
+		int total = 0;
+
+		while (lector.hasNext()) {
+			int evento = lector.next();
+
+			if (evento == XMLStreamConstants.START_ELEMENT) {
+				String elemento = lector.getLocalName();
+
+				if (CATEGORIA.equals(elemento)) {
+					Pendiente padre = pila.peek();
+					if (padre != null && !padre.emitida) {
+						lote = emitir(padre, lote, tamanoLote, consumidor);
+						total++;
+					}
+
+					Categoria categoria = new Categoria(lector.getAttributeValue(null, "id"), null);
+					categoria.setRuta(lector.getAttributeValue(null, "ruta"));
+					if (padre != null) {
+						// no se usa addSubcategoria para no acumular los hijos en el padre
+						categoria.setCategoriaPadre(padre.categoria);
+					}
+					pila.push(new Pendiente(categoria));
+
+				} else if (NOMBRE.equals(elemento) && !pila.isEmpty()) {
+					pila.peek().categoria.setNombre(lector.getElementText().trim());
+				} else if (DESCRIPCION.equals(elemento) && !pila.isEmpty()) {
+					pila.peek().categoria.setDescripcion(lector.getElementText().trim());
+				}
+
+			} else if (evento == XMLStreamConstants.END_ELEMENT && CATEGORIA.equals(lector.getLocalName())) {
+				Pendiente actual = pila.pop();
+				if (!actual.emitida) {
+					lote = emitir(actual, lote, tamanoLote, consumidor);
+					total++;
+				}
+			}
+		}
+
+		if (!lote.isEmpty()) {
+			consumidor.aceptar(lote);
+		}
+
+		return total;
+	}
+
+	private List<Categoria> emitir(Pendiente pendiente, List<Categoria> lote, int tamanoLote, ConsumidorLote consumidor)
+			throws RepositorioException {
+
+		pendiente.emitida = true;
+		lote.add(pendiente.categoria);
+
+		if (lote.size() >= tamanoLote) {
+			consumidor.aceptar(lote);
+			return new ArrayList<>(tamanoLote);
+		}
+		return lote;
+	}
+
 }
@@ -0,0 +1,60 @@
+package stoneyspring.SegundUM.repositorio.estadisticas;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.RepositorioString;
+
+/**
+ * Repositorio de los agregados mensuales de los productos.
+ * <p>
+ * Las actualizaciones incrementales sólo tocan los meses abiertos que ya se han calculado (con su fila
+ * {@link EstadisticaMensual.Tipo#MES}): un mes sin calcular se calcula entero con {@link #recalcular(int, int, boolean)}
+ * y uno cerrado ya no cambia.
+ * </p>
+ */
+public interface RepositorioEstadisticas extends RepositorioString<EstadisticaMensual> {
+    
+    /**
+     * Suma un producto recién publicado a los agregados de su mes, de su vendedor y de su categoría,
+     * creando las filas del vendedor o la categoría si es su primer producto del mes. Se llama en la unidad de
+     * trabajo del alta: si el mes se calcula entre tanto, o cuenta el producto o espera a que se confirme.
+     */
+    void registrarAlta(Producto producto) throws RepositorioException;
+    
+    /**
+     * Actualiza los precios de los agregados del mes del producto tras cambiar su precio.
+     */
+    void registrarCambioPrecio(Producto producto, BigDecimal precioAnterior) throws RepositorioException;
+    
+    /**
+     * Suma las visualizaciones nuevas de cada producto (id de producto -> visualizaciones) a los agregados de su mes.
+     */
+    void sumarVisualizaciones(Map<String, Long> incrementos) throws RepositorioException;
+    
+    /**
+     * Agregados guardados del mes del tipo indicado, de más a menos visualizaciones.
+     */
+    List<EstadisticaMensual> getEstadisticas(int mes, int anio, EstadisticaMensual.Tipo tipo) throws RepositorioException;
+    
+    /**
+     * Calcula los agregados del mes a partir de los productos, sin guardarlos: primero la fila del mes (aunque no
+     * tenga productos) y después las de cada vendedor y categoría con productos.
+     */
+    List<EstadisticaMensual> calcular(int mes, int anio) throws RepositorioException;
+    
+    /**
+     * Fila del mes entero, calculando antes el mes si no lo estaba, o cerrándolo si se indica y no lo estaba.
+     * Se comprueba con la fila del mes bloqueada: de dos llamadas a la vez, solo una lo calcula.
+     */
+    EstadisticaMensual preparar(int mes, int anio, boolean cerrar) throws RepositorioException;
+    
+    /**
+     * Sustituye los agregados guardados del mes por los calculados a partir de los productos, y los cierra si se indica.
+     */
+    List<EstadisticaMensual> recalcular(int mes, int anio, boolean cerrar) throws RepositorioException;
+}
@@ -0,0 +1,366 @@
+package stoneyspring.SegundUM.repositorio.estadisticas;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+import stoneyspring.SegundUM.dominio.EstadisticaMensual.Tipo;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.repositorio.ModoConsistencia;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.RepositorioJPA;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Implementación JPA del repositorio de agregados mensuales.
+ * <p>
+ * Los incrementos son sentencias UPDATE que suman sobre el valor de la fila en la base de datos, así que
+ * dos escrituras a la vez sobre la misma fila no se pisan. La condición <i>cerrado = false</i> deja fuera
+ * los meses cerrados.
+ * </p>
+ * <p>
+ * La fila del mes entero ordena las escrituras del mes: las altas la actualizan antes que las del vendedor y la
+ * categoría, y los cálculos del mes la bloquean antes de leer los productos. Así las altas del mes van de una en
+ * una y un cálculo no se cruza con ellas. Para que sea así también la primera vez, antes de calcular un mes se
+ * crea su fila, sin calcular, en una transacción aparte.
+ * </p>
+ */
+public class RepositorioEstadisticasJPA extends RepositorioJPA<EstadisticaMensual> implements RepositorioEstadisticas {
+
+    /** Máximo de valores en una lista IN de una misma consulta. */
+    private static final int TAMANO_MAXIMO_IN = 1000;
+
+
+    /** Agregados que se calculan de los productos del mes, en el orden del constructor de EstadisticaMensual. */
+    private static final String AGREGADOS =
+            "COUNT(p), SUM(p.visualizaciones), SUM(p.precio), MIN(p.precio), MAX(p.precio)";
+
+    private static final String PRODUCTOS_DEL_MES =
+            " FROM Producto p WHERE p.fechaPublicacion >= :inicio AND p.fechaPublicacion < :fin";
+
+    @Override
+    public Class<EstadisticaMensual> getClase() {
+        return EstadisticaMensual.class;
+    }
+
+    @Override
+    public void registrarAlta(Producto producto) throws RepositorioException {
+        YearMonth mes = YearMonth.from(producto.getFechaPublicacion());
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            // Si el mes no tiene fila todavía se calculará entero, con este producto, la primera vez que se pida
+            if (sumarAlta(em, EstadisticaMensual.id(mes, Tipo.MES, EstadisticaMensual.CLAVE_MES), producto) > 0) {
+                sumarAltaOCrear(em, mes, Tipo.VENDEDOR, producto.getVendedor().getId(), producto);
+                sumarAltaOCrear(em, mes, Tipo.CATEGORIA, producto.getCategoria().getId(), producto);
+            }
+            confirmarTransaccion(em);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al sumar el producto " + producto.getId() + " a las estadísticas de " + mes, e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    private static int sumarAlta(EntityManager em, String id, Producto producto) {
+        return em.createQuery("UPDATE EstadisticaMensual e SET e.productos = e.productos + 1, "
+                + "e.visualizaciones = e.visualizaciones + :visualizaciones, e.sumaPrecios = e.sumaPrecios + :precio, "
+                + "e.precioMinimo = CASE WHEN e.precioMinimo IS NULL OR e.precioMinimo > :precio THEN :precio ELSE e.precioMinimo END, "
+                + "e.precioMaximo = CASE WHEN e.precioMaximo IS NULL OR e.precioMaximo < :precio THEN :precio ELSE e.precioMaximo END "
+                + "WHERE e.id = :id AND e.cerrado = false")
+            .setParameter("visualizaciones", (long) producto.getVisualizaciones())
+            .setParameter("precio", producto.getPrecio())
+            .setParameter("id", id)
+            .executeUpdate();
+    }
+
+    private static void sumarAltaOCrear(EntityManager em, YearMonth mes, Tipo tipo, String clave, Producto producto) {
+        if (sumarAlta(em, EstadisticaMensual.id(mes, tipo, clave), producto) == 0) {
+            // Dos primeras altas a la vez de la misma clave no chocan al insertar: la segunda espera en la
+            // fila del mes a que termine la primera, y después ya encuentra la fila que ha creado
+            em.persist(new EstadisticaMensual(mes, tipo, clave, 1, producto.getVisualizaciones(),
+                    producto.getPrecio(), producto.getPrecio(), producto.getPrecio()));
+        }
+    }
+
+    @Override
+    public void registrarCambioPrecio(Producto producto, BigDecimal precioAnterior) throws RepositorioException {
+        BigDecimal precio = producto.getPrecio();
+        if (precio.compareTo(precioAnterior) == 0) {
+            return;
+        }
+        YearMonth mes = YearMonth.from(producto.getFechaPublicacion());
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            iniciarTransaccion(em);
+            cambiarPrecio(em, mes, Tipo.MES, EstadisticaMensual.CLAVE_MES, null, precioAnterior, precio);
+            cambiarPrecio(em, mes, Tipo.VENDEDOR, producto.getVendedor().getId(), "p.vendedor.id", precioAnterior, precio);
+            cambiarPrecio(em, mes, Tipo.CATEGORIA, producto.getCategoria().getId(), "p.categoria.id", precioAnterior, precio);
+            confirmarTransaccion(em);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al cambiar el precio del producto " + producto.getId() + " en las estadísticas de " + mes, e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    /**
+     * El mínimo y el máximo sólo se vuelven a calcular de los productos cuando el precio anterior era uno de ellos
+     * y el nuevo se aleja: en otro caso basta compararlos con el precio nuevo.
+     */
+    private static void cambiarPrecio(EntityManager em, YearMonth mes, Tipo tipo, String clave, String atributoClave,
+                                      BigDecimal anterior, BigDecimal precio) {
+        String id = EstadisticaMensual.id(mes, tipo, clave);
+        EstadisticaMensual estadistica = em.find(EstadisticaMensual.class, id, sugerencias(ModoConsistencia.FUERTE));
+        if (estadistica == null || estadistica.isCerrado()) {
+            return;
+        }
+        BigDecimal minimo = estadistica.getPrecioMinimo();
+        BigDecimal maximo = estadistica.getPrecioMaximo();
+        boolean eraMinimo = minimo == null || anterior.compareTo(minimo) == 0 && precio.compareTo(anterior) > 0;
+        boolean eraMaximo = maximo == null || anterior.compareTo(maximo) == 0 && precio.compareTo(anterior) < 0;
+        em.createQuery("UPDATE EstadisticaMensual e SET e.sumaPrecios = e.sumaPrecios + :diferencia, "
+                + "e.precioMinimo = CASE WHEN e.precioMinimo > :precio THEN :precio ELSE e.precioMinimo END, "
+                + "e.precioMaximo = CASE WHEN e.precioMaximo < :precio THEN :precio ELSE e.precioMaximo END "
+                + "WHERE e.id = :id AND e.cerrado = false")
+            .setParameter("diferencia", precio.subtract(anterior))
+            .setParameter("precio", precio)
+            .setParameter("id", id)
+            .executeUpdate();
+        if (eraMinimo || eraMaximo) {
+            StringBuilder jpql = new StringBuilder("SELECT MIN(p.precio), MAX(p.precio)").append(PRODUCTOS_DEL_MES);
+            if (atributoClave != null) {
+                jpql.append(" AND ").append(atributoClave).append(" = :clave");
+            }
+            TypedQuery<Object[]> query = em.createQuery(jpql.toString(), Object[].class);
+            parametrosMes(query, mes);
+            if (atributoClave != null) {
+                query.setParameter("clave", clave);
+            }
+            Object[] extremos = query.getSingleResult();
+            em.createQuery("UPDATE EstadisticaMensual e SET e.precioMinimo = :minimo, e.precioMaximo = :maximo "
+                    + "WHERE e.id = :id AND e.cerrado = false")
+                .setParameter("minimo", extremos[0])
+                .setParameter("maximo", extremos[1])
+                .setParameter("id", id)
+                .executeUpdate();
+        }
+    }
+
+    @Override
+    public void sumarVisualizaciones(Map<String, Long> incrementos) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            // Incremento de cada fila afectada: muchos productos comparten mes, vendedor o categoría
+            Map<String, Long> porFila = new HashMap<>();
+            List<String> ids = new ArrayList<>(incrementos.keySet());
+            for (int i = 0; i < ids.size(); i += TAMANO_MAXIMO_IN) {
+                List<Object[]> claves = em.createQuery(
+                        "SELECT p.id, p.fechaPublicacion, p.vendedor.id, p.categoria.id FROM Producto p WHERE p.id IN :ids",
+                        Object[].class)
+                    .setParameter("ids", ids.subList(i, Math.min(i + TAMANO_MAXIMO_IN, ids.size())))
+                    .getResultList();
+                for (Object[] fila : claves) {
+                    long incremento = incrementos.get((String) fila[0]);
+                    YearMonth mes = YearMonth.from((LocalDateTime) fila[1]);
+                    porFila.merge(EstadisticaMensual.id(mes, Tipo.MES, EstadisticaMensual.CLAVE_MES), incremento, Long::sum);
+                    porFila.merge(EstadisticaMensual.id(mes, Tipo.VENDEDOR, (String) fila[2]), incremento, Long::sum);
+                    porFila.merge(EstadisticaMensual.id(mes, Tipo.CATEGORIA, (String) fila[3]), incremento, Long::sum);
+                }
+            }
+
+            // Como en incrementarVisualizaciones de los productos: una sentencia por cada incremento distinto
+            Map<Long, List<String>> porIncremento = new HashMap<>();
+            for (Map.Entry<String, Long> fila : porFila.entrySet()) {
+                porIncremento.computeIfAbsent(fila.getValue(), n -> new ArrayList<>()).add(fila.getKey());
+            }
+
+            iniciarTransaccion(em);
+            for (Map.Entry<Long, List<String>> grupo : porIncremento.entrySet()) {
+                List<String> filas = grupo.getValue();
+                for (int i = 0; i < filas.size(); i += TAMANO_MAXIMO_IN) {
+                    em.createQuery("UPDATE EstadisticaMensual e SET e.visualizaciones = e.visualizaciones + :incremento "
+                            + "WHERE e.id IN :ids AND e.cerrado = false")
+                        .setParameter("incremento", grupo.getKey())
+                        .setParameter("ids", filas.subList(i, Math.min(i + TAMANO_MAXIMO_IN, filas.size())))
+                        .executeUpdate();
+                }
+            }
+            confirmarTransaccion(em);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al sumar las visualizaciones de " + incrementos.size() + " productos a las estadísticas", e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Override
+    public List<EstadisticaMensual> getEstadisticas(int mes, int anio, Tipo tipo) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            TypedQuery<EstadisticaMensual> query = em.createQuery(
+                    "SELECT e FROM EstadisticaMensual e WHERE e.anio = :anio AND e.mes = :mes AND e.tipo = :tipo "
+                    + "ORDER BY e.visualizaciones DESC, e.clave", EstadisticaMensual.class)
+                .setParameter("anio", anio)
+                .setParameter("mes", mes)
+                .setParameter("tipo", tipo);
+            aplicarConsistencia(query, getModoConsistencia());
+            return query.getResultList();
+        } catch (Exception e) {
+            throw new RepositorioException("Error al obtener las estadísticas " + tipo + " de " + mes + "/" + anio, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Override
+    public List<EstadisticaMensual> calcular(int mes, int anio) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            return calcular(em, YearMonth.of(anio, mes));
+        } catch (Exception e) {
+            throw new RepositorioException("Error al calcular las estadísticas de " + mes + "/" + anio, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    /**
+     * Tres consultas agregadas sobre los productos del mes (por el índice de la fecha): el total, por vendedor
+     * y por categoría.
+     */
+    private static List<EstadisticaMensual> calcular(EntityManager em, YearMonth mes) {
+        List<EstadisticaMensual> estadisticas = new ArrayList<>();
+        TypedQuery<Object[]> total = em.createQuery("SELECT " + AGREGADOS + PRODUCTOS_DEL_MES, Object[].class);
+        parametrosMes(total, mes);
+        estadisticas.add(estadistica(mes, Tipo.MES, EstadisticaMensual.CLAVE_MES, total.getSingleResult(), 0));
+
+        String[][] grupos = { { "p.vendedor.id", Tipo.VENDEDOR.name() }, { "p.categoria.id", Tipo.CATEGORIA.name() } };
+        for (String[] grupo : grupos) {
+            TypedQuery<Object[]> query = em.createQuery("SELECT " + grupo[0] + ", " + AGREGADOS + PRODUCTOS_DEL_MES
+                    + " GROUP BY " + grupo[0], Object[].class);
+            parametrosMes(query, mes);
+            for (Object[] fila : query.getResultList()) {
+                estadisticas.add(estadistica(mes, Tipo.valueOf(grupo[1]), (String) fila[0], fila, 1));
+            }
+        }
+        return estadisticas;
+    }
+
+    private static EstadisticaMensual estadistica(YearMonth mes, Tipo tipo, String clave, Object[] fila, int desde) {
+        return new EstadisticaMensual(mes, tipo, clave,
+                fila[desde] != null ? ((Number) fila[desde]).longValue() : 0,
+                fila[desde + 1] != null ? ((Number) fila[desde + 1]).longValue() : 0,
+                (BigDecimal) fila[desde + 2], (BigDecimal) fila[desde + 3], (BigDecimal) fila[desde + 4]);
+    }
+
+    private static void parametrosMes(TypedQuery<?> query, YearMonth mes) {
+        LocalDateTime inicio = mes.atDay(1).atStartOfDay();
+        query.setParameter("inicio", inicio);
+        query.setParameter("fin", inicio.plusMonths(1));
+    }
+
+    @Override
+    public EstadisticaMensual preparar(int mes, int anio, boolean cerrar) throws RepositorioException {
+        return recalcular(YearMonth.of(anio, mes), cerrar, false).get(0);
+    }
+
+    @Override
+    public List<EstadisticaMensual> recalcular(int mes, int anio, boolean cerrar) throws RepositorioException {
+        return recalcular(YearMonth.of(anio, mes), cerrar, true);
+    }
+
+    /**
+     * Calcula el mes con su fila bloqueada hasta el final de la transacción, creándola antes si no existe.
+     * Sin <i>siempre</i>, no se calcula si con la fila bloqueada se ve que ya no hace falta.
+     */
+    private List<EstadisticaMensual> recalcular(YearMonth mes, boolean cerrar, boolean siempre) throws RepositorioException {
+        String id = EstadisticaMensual.id(mes, Tipo.MES, EstadisticaMensual.CLAVE_MES);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            crearMes(em, mes, id);
+            iniciarTransaccion(em);
+            EstadisticaMensual total = em.find(EstadisticaMensual.class, id, LockModeType.PESSIMISTIC_WRITE);
+            if (!siempre && total.isCalculado() && (total.isCerrado() || !cerrar)) {
+                // otra llamada lo ha calculado mientras se esperaba al bloqueo
+                confirmarTransaccion(em);
+                return Collections.singletonList(total);
+            }
+            List<EstadisticaMensual> estadisticas = calcular(em, mes);
+            guardar(em, id, estadisticas, cerrar);
+            confirmarTransaccion(em);
+            return estadisticas;
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recalcular las estadísticas de " + mes.getMonthValue() + "/" + mes.getYear(), e);
+        } finally {
+            deshacerTransaccion(em);
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    /**
+     * Crea la fila del mes, sin calcular, si no existe, y la confirma: desde entonces las altas del mes la
+     * actualizan, y un cálculo que la bloquea espera a las que están en curso. Si dos la crean a la vez,
+     * la segunda falla al insertar y usa la de la primera.
+     */
+    private void crearMes(EntityManager em, YearMonth mes, String id) {
+        if (em.find(EstadisticaMensual.class, id, sugerencias(ModoConsistencia.FUERTE)) != null) {
+            return;
+        }
+        try {
+            iniciarTransaccion(em);
+            em.persist(new EstadisticaMensual(mes, Tipo.MES, EstadisticaMensual.CLAVE_MES));
+            confirmarTransaccion(em);
+        } catch (PersistenceException e) {
+            deshacerTransaccion(em);
+            vaciarContexto(em);
+            if (em.find(EstadisticaMensual.class, id, sugerencias(ModoConsistencia.FUERTE)) == null) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Sustituye las filas del mes por las calculadas. La del mes entero se actualiza en lugar de borrarse,
+     * para no soltar su bloqueo.
+     */
+    private static void guardar(EntityManager em, String id, List<EstadisticaMensual> estadisticas, boolean cerrar) {
+        EstadisticaMensual total = estadisticas.get(0);
+        em.createQuery("DELETE FROM EstadisticaMensual e WHERE e.anio = :anio AND e.mes = :mes AND e.id <> :id")
+            .setParameter("anio", total.getAnio())
+            .setParameter("mes", total.getMes())
+            .setParameter("id", id)
+            .executeUpdate();
+        em.createQuery("UPDATE EstadisticaMensual e SET e.productos = :productos, e.visualizaciones = :visualizaciones, "
+                + "e.sumaPrecios = :sumaPrecios, e.precioMinimo = :minimo, e.precioMaximo = :maximo, e.cerrado = :cerrado, "
+                + "e.calculado = true WHERE e.id = :id")
+            .setParameter("productos", total.getProductos())
+            .setParameter("visualizaciones", total.getVisualizaciones())
+            .setParameter("sumaPrecios", total.getSumaPrecios())
+            .setParameter("minimo", total.getPrecioMinimo())
+            .setParameter("maximo", total.getPrecioMaximo())
+            .setParameter("cerrado", cerrar)
+            .setParameter("id", id)
+            .executeUpdate();
+        total.setCerrado(cerrar);
+        total.setCalculado(true);
+        for (EstadisticaMensual estadistica : estadisticas.subList(1, estadisticas.size())) {
+            estadistica.setCerrado(cerrar);
+            em.persist(estadistica);
+        }
+    }
+}
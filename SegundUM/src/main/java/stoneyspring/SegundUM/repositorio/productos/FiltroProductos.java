@@ -0,0 +1,140 @@
+package stoneyspring.SegundUM.repositorio.productos;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+
+/**
+ * Criterios de las consultas paginadas y en streaming de productos.
+ * Todos son opcionales: los que son nulos no filtran.
+ */
+public class FiltroProductos {
+
+    private String categoriaId;
+    private String texto;
+    private EstadoProducto estadoMinimo;
+    private BigDecimal precioMaximo;
+    private String vendedorId;
+    private LocalDateTime desde;
+    private LocalDateTime hasta;
+    private Collection<String> ids;
+
+    /**
+     * Mismos criterios que {@link RepositorioProductos#buscarProductos(String, String, EstadoProducto, BigDecimal)}.
+     */
+    public static FiltroProductos busqueda(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo) {
+        FiltroProductos filtro = new FiltroProductos();
+        filtro.setCategoriaId(categoriaId);
+        filtro.setTexto(texto);
+        filtro.setEstadoMinimo(estadoMinimo);
+        filtro.setPrecioMaximo(precioMaximo);
+        return filtro;
+    }
+
+    /**
+     * Mismos criterios que {@link RepositorioProductos#getProductosPorVendedor(String)}.
+     */
+    public static FiltroProductos porVendedor(String vendedorId) {
+        FiltroProductos filtro = new FiltroProductos();
+        filtro.setVendedorId(vendedorId);
+        return filtro;
+    }
+
+    /**
+     * Mismos criterios que {@link RepositorioProductos#getProductosPorFechas(LocalDateTime, LocalDateTime)}.
+     */
+    public static FiltroProductos porFechas(LocalDateTime desde, LocalDateTime hasta) {
+        FiltroProductos filtro = new FiltroProductos();
+        filtro.setDesde(desde);
+        filtro.setHasta(hasta);
+        return filtro;
+    }
+
+    public String getCategoriaId() {
+        return categoriaId;
+    }
+
+    /**
+     * La categoría incluye a sus descendientes.
+     */
+    public void setCategoriaId(String categoriaId) {
+        this.categoriaId = categoriaId;
+    }
+
+    public String getTexto() {
+        return texto;
+    }
+
+    /**
+     * Texto contenido en la descripción (sin distinguir mayúsculas).
+     */
+    public void setTexto(String texto) {
+        this.texto = texto;
+    }
+
+    public EstadoProducto getEstadoMinimo() {
+        return estadoMinimo;
+    }
+
+    public void setEstadoMinimo(EstadoProducto estadoMinimo) {
+        this.estadoMinimo = estadoMinimo;
+    }
+
+    public BigDecimal getPrecioMaximo() {
+        return precioMaximo;
+    }
+
+    public void setPrecioMaximo(BigDecimal precioMaximo) {
+        this.precioMaximo = precioMaximo;
+    }
+
+    public String getVendedorId() {
+        return vendedorId;
+    }
+
+    public void setVendedorId(String vendedorId) {
+        this.vendedorId = vendedorId;
+    }
+
+    public LocalDateTime getDesde() {
+        return desde;
+    }
+
+    /**
+     * Fecha de publicación mínima (incluida).
+     */
+    public void setDesde(LocalDateTime desde) {
+        this.desde = desde;
+    }
+
+    public LocalDateTime getHasta() {
+        return hasta;
+    }
+
+    /**
+     * Fecha de publicación máxima (incluida).
+     */
+    public void setHasta(LocalDateTime hasta) {
+        this.hasta = hasta;
+    }
+
+    public Collection<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * Restringe la consulta a estos productos.
+     */
+    public void setIds(Collection<String> ids) {
+        this.ids = ids;
+    }
+
+    @Override
+    public String toString() {
+        return "FiltroProductos{categoriaId=" + categoriaId + ", texto=" + texto + ", estadoMinimo=" + estadoMinimo
+                + ", precioMaximo=" + precioMaximo + ", vendedorId=" + vendedorId + ", desde=" + desde
+                + ", hasta=" + hasta + ", ids=" + (ids == null ? null : ids.size()) + "}";
+    }
+}
@@ -0,0 +1,60 @@
+package stoneyspring.SegundUM.repositorio.productos;
+
+import javax.persistence.Query;
+
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+
+/**
+ * <p>
+ * Relaciones de {@code Producto} que se cargan junto con los productos en las consultas de productos.
+ * </p>
+ * <p>
+ * La categoría y el vendedor son {@code @ManyToOne} EAGER: si no se cargan con la consulta, EclipseLink
+ * hace una SELECT más por cada categoría y vendedor distintos del resultado. Además, cada categoría carga
+ * su padre (también EAGER) y así hasta la raíz. Con el plan el número de sentencias depende como mucho de
+ * la profundidad del árbol, no de las filas ni de las categorías distintas del resultado:
+ * </p>
+ * <ul>
+ * <li>El vendedor se une siempre con un JOIN FETCH, también cuando es el mismo en todas las filas: en modo
+ * {@code FUERTE} se vuelven a leer las relaciones de cada fila, y unido viene ya en ella.</li>
+ * <li>En las consultas que leen todas las filas las categorías se leen por lotes ({@code IN}): una consulta
+ * con las del resultado y, como {@code categoriaPadre} es {@code @BatchFetch(IN)}, otra por cada nivel de
+ * ancestros.</li>
+ * <li>En los recorridos con cursor las filas se construyen de una en una y EclipseLink no puede leer por
+ * lotes, así que la categoría y sus ancestros se unen a la consulta con LEFT JOIN FETCH hasta
+ * {@link #NIVELES_RECORRIDO} niveles. Solo los ancestros por encima de ese nivel se leen aparte.</li>
+ * </ul>
+ * Se usan las sugerencias de EclipseLink y no grafos de entidades JPA porque EclipseLink aplica los
+ * grafos de carga leyendo las relaciones después, no uniéndolas en la consulta.
+ */
+final class PlanCarga {
+
+    /** Ancestros de la categoría que se unen en los recorridos: los árboles de categorías tienen hasta 7 niveles. */
+    static final int NIVELES_RECORRIDO = 6;
+
+    private PlanCarga() {
+    }
+
+    /**
+     * Añade el plan a una consulta (con alias {@code p} para el producto) cuyas filas se leen todas a la vez.
+     */
+    static void aplicar(Query query) {
+        query.setHint(QueryHints.FETCH, "p.vendedor");
+        query.setHint(QueryHints.BATCH, "p.categoria");
+        query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+    }
+
+    /**
+     * Añade el plan a una consulta (con alias {@code p} para el producto) que se recorre con un cursor.
+     */
+    static void aplicarRecorrido(Query query) {
+        query.setHint(QueryHints.FETCH, "p.vendedor");
+        String relacion = "p.categoria";
+        query.setHint(QueryHints.FETCH, relacion);
+        for (int nivel = 0; nivel < NIVELES_RECORRIDO; nivel++) {
+            relacion += ".categoriaPadre";
+            query.setHint(QueryHints.LEFT_FETCH, relacion);
+        }
+    }
+}
@@ -2,11 +2,17 @@ package stoneyspring.SegundUM.repositorio.productos;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import stoneyspring.SegundUM.dominio.EstadoProducto;
 import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
 import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.repositorio.Pagina;
 import stoneyspring.SegundUM.repositorio.RepositorioException;
 import stoneyspring.SegundUM.repositorio.RepositorioString;
 
@@ -15,6 +21,23 @@ import stoneyspring.SegundUM.repositorio.RepositorioString;
  */
 public interface RepositorioProductos extends RepositorioString<Producto> {
     
+    /**
+     * Recibe los textos de cada producto al recorrerlos con {@link RepositorioProductos#recorrerTextos(ConsumidorTextos)}.
+     */
+    @FunctionalInterface
+    interface ConsumidorTextos {
+        void aceptar(String id, String titulo, String descripcion);
+    }
+    
+    /**
+     * Recibe el resumen de cada producto del mes y el email de su vendedor al recorrerlos con
+     * {@link RepositorioProductos#recorrerHistorialMes(int, int, ConsumidorResumenes)}.
+     */
+    @FunctionalInterface
+    interface ConsumidorResumenes {
+        void aceptar(ResumenProducto resumen, String emailVendedor);
+    }
+    
     /**
      * Obtiene los productos de un vendedor.
      */
@@ -31,6 +54,43 @@ public interface RepositorioProductos extends RepositorioString<Producto> {
         BigDecimal precioMaximo
     ) throws RepositorioException;
     
+    /**
+     * Busca, entre los productos con los ids indicados, los que cumplen los filtros de categoría,
+     * estado y precio máximo (opcionales). No mantiene el orden de los ids.
+     */
+    List<Producto> buscarProductos(
+        String categoriaId,
+        Collection<String> ids,
+        EstadoProducto estadoMinimo,
+        BigDecimal precioMaximo
+    ) throws RepositorioException;
+    
+    /**
+     * Devuelve hasta <i>tamano</i> productos que cumplen el filtro, del más reciente al más antiguo,
+     * a continuación del cursor (nulo para la primera página).
+     */
+    Pagina<Producto> buscarPagina(FiltroProductos filtro, String cursor, int tamano) throws RepositorioException;
+    
+    /**
+     * Entrega al consumidor, uno a uno y sin orden, los productos que cumplen el filtro,
+     * leyéndolos con un cursor en lugar de cargarlos todos.
+     */
+    void recorrer(FiltroProductos filtro, Consumer<? super Producto> consumidor) throws RepositorioException;
+    
+    /**
+     * Productos cuyo lugar de recogida está a <i>radioKm</i> o menos del punto y que cumplen el filtro
+     * (puede ser null), del más cercano al más lejano. Los productos sin lugar de recogida no se devuelven.
+     *
+     * @throws IllegalArgumentException Si las coordenadas están fuera de rango o el radio no es positivo
+     */
+    List<ProductoCercano> buscarCercanos(double latitud, double longitud, double radioKm, FiltroProductos filtro)
+            throws RepositorioException;
+    
+    /**
+     * Recorre el id, título y descripción de todos los productos sin cargar las entidades.
+     */
+    void recorrerTextos(ConsumidorTextos consumidor) throws RepositorioException;
+    
     /**
      * Obtiene el historial del mes de un vendedor, ordenado por visualizaciones.
      */
@@ -41,8 +101,32 @@ public interface RepositorioProductos extends RepositorioString<Producto> {
      */
     List<ResumenProducto> getHistorialMes(int mes, int anio) throws RepositorioException;
     
+    /**
+     * Obtiene los <i>limite</i> productos más vistos del mes, del vendedor si se indica su email (puede ser null).
+     * Con <i>limite</i> menor o igual que 0 no se limita.
+     */
+    List<ResumenProducto> getHistorialMes(int mes, int anio, String emailVendedor, int limite) throws RepositorioException;
+    
+    /**
+     * Recorre, sin orden, el resumen y el email del vendedor de todos los productos publicados en el mes,
+     * con un cursor y sin cargar las entidades.
+     */
+    void recorrerHistorialMes(int mes, int anio, ConsumidorResumenes consumidor) throws RepositorioException;
+    
     /**
      * Obtiene productos publicados en un rango de fechas.
      */
     List<Producto> getProductosPorFechas(LocalDateTime inicio, LocalDateTime fin) throws RepositorioException;
+    
+    /**
+     * Suma a cada producto las visualizaciones indicadas (id -> incremento) en una transacción,
+     * sin cargar las entidades ni cambiar su versión. Devuelve los ids que no existen, que se ignoran.
+     * Es la única forma de cambiar las visualizaciones: {@code update} no las escribe.
+     */
+    Set<String> incrementarVisualizaciones(Map<String, Long> incrementos) throws RepositorioException;
+    
+    /**
+     * Si existe un producto con el id, con una consulta que no lo carga.
+     */
+    boolean existe(String id) throws RepositorioException;
 }
\ No newline at end of file
@@ -3,25 +3,42 @@ package stoneyspring.SegundUM.repositorio.productos;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 
-import stoneyspring.SegundUM.dominio.Categoria;
 import stoneyspring.SegundUM.dominio.EstadoProducto;
 import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
 import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.repositorio.Pagina;
 import stoneyspring.SegundUM.repositorio.RepositorioException;
 import stoneyspring.SegundUM.repositorio.RepositorioJPA;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategoriasCache;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategoriasJPA;
 import stoneyspring.SegundUM.utils.EntityManagerHelper;
+import stoneyspring.SegundUM.utils.Geohash;
 
 /**
  * Implementación JPA del repositorio de productos.
  */
 public class RepositorioProductosJPA extends RepositorioJPA<Producto> implements RepositorioProductos {
     
+    /** Máximo de valores en una lista IN de una misma consulta. */
+    private static final int TAMANO_MAXIMO_IN = 1000;
+    
+    /** Separa la fecha y el id en el cursor de las páginas de productos. */
+    private static final String SEPARADOR_CURSOR = "|";
+    
     @Override
     public Class<Producto> getClase() {
         return Producto.class;
@@ -36,6 +53,8 @@ public class RepositorioProductosJPA extends RepositorioJPA<Producto> implements
                 Producto.class
             );
             query.setParameter("vendedorId", vendedorId);
+            PlanCarga.aplicar(query);
+            aplicarConsistencia(query, getModoConsistencia());
             
             return query.getResultList();
         } catch (Exception e) {
@@ -54,107 +73,323 @@ public class RepositorioProductosJPA extends RepositorioJPA<Producto> implements
     ) throws RepositorioException {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            StringBuilder jpql = new StringBuilder("SELECT p FROM Producto p WHERE 1=1");
-            
-            List<String> categoriasIds = new ArrayList<>();
-            if (categoriaId != null) {
-                Categoria categoria = em.find(Categoria.class, categoriaId);
-                if (categoria != null) {
-                    categoriasIds.add(categoriaId);
-                    categoria.obtenerDescendientes().forEach(c -> categoriasIds.add(c.getId()));
-                }
-            }
-            
-            if (!categoriasIds.isEmpty()) {
-                jpql.append(" AND p.categoria.id IN :categoriasIds");
-            }
-            
-            if (textoBusqueda != null && !textoBusqueda.trim().isEmpty()) {
-                jpql.append(" AND LOWER(p.descripcion) LIKE LOWER(:texto)");
-            }
-            
-            if (estadoMinimo != null) {
-                jpql.append(" AND p.estado IN :estados");
+            return buscar(em, FiltroProductos.busqueda(categoriaId, textoBusqueda, estadoMinimo, precioMaximo));
+        } catch (Exception e) {
+            throw new RepositorioException("Error al buscar productos", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public List<Producto> buscarProductos(
+        String categoriaId,
+        Collection<String> ids,
+        EstadoProducto estadoMinimo,
+        BigDecimal precioMaximo
+    ) throws RepositorioException {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            // Se trocea la lista de ids para no superar el límite de parámetros de la sentencia
+            List<String> listaIds = new ArrayList<>(ids);
+            List<Producto> productos = new ArrayList<>();
+            for (int i = 0; i < listaIds.size(); i += TAMANO_MAXIMO_IN) {
+                FiltroProductos filtro = FiltroProductos.busqueda(categoriaId, null, estadoMinimo, precioMaximo);
+                filtro.setIds(listaIds.subList(i, Math.min(i + TAMANO_MAXIMO_IN, listaIds.size())));
+                productos.addAll(buscar(em, filtro));
             }
+            return productos;
+        } catch (Exception e) {
+            throw new RepositorioException("Error al buscar productos entre " + ids.size() + " candidatos", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public Pagina<Producto> buscarPagina(FiltroProductos filtro, String cursor, int tamano) throws RepositorioException {
+        comprobarTamanoPagina(tamano);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            Map<String, Object> parametros = new HashMap<>();
+            StringBuilder jpql = new StringBuilder("SELECT p").append(condiciones(em, filtro, parametros));
             
-            if (precioMaximo != null) {
-                jpql.append(" AND p.precio <= :precioMaximo");
+            // Paginación por clave (fechaPublicacion, id): cada página continúa tras la última fila de la anterior
+            // usando el índice, sin OFFSET, así que su coste no depende de lo lejos que se esté del principio
+            if (cursor != null) {
+                int separador = cursor.indexOf(SEPARADOR_CURSOR);
+                if (separador < 0) {
+                    throw new IllegalArgumentException("Cursor no válido: " + cursor);
+                }
+                jpql.append(" AND (p.fechaPublicacion < :fechaCursor OR (p.fechaPublicacion = :fechaCursor AND p.id < :idCursor))");
+                parametros.put("fechaCursor", LocalDateTime.parse(cursor.substring(0, separador)));
+                parametros.put("idCursor", cursor.substring(separador + 1));
             }
+            jpql.append(" ORDER BY p.fechaPublicacion DESC, p.id DESC");
             
             TypedQuery<Producto> query = em.createQuery(jpql.toString(), Producto.class);
+            parametros.forEach(query::setParameter);
+            PlanCarga.aplicar(query);
+            aplicarConsistencia(query, getModoConsistencia());
+            // una fila de más para saber si hay página siguiente
+            query.setMaxResults(tamano + 1);
             
-            if (!categoriasIds.isEmpty()) {
-                query.setParameter("categoriasIds", categoriasIds);
+            List<Producto> productos = query.getResultList();
+            if (productos.size() <= tamano) {
+                return new Pagina<>(productos, null);
             }
-            
-            if (textoBusqueda != null && !textoBusqueda.trim().isEmpty()) {
-                query.setParameter("texto", "%" + textoBusqueda.trim() + "%");
+            productos = new ArrayList<>(productos.subList(0, tamano));
+            Producto ultimo = productos.get(tamano - 1);
+            return new Pagina<>(productos, ultimo.getFechaPublicacion() + SEPARADOR_CURSOR + ultimo.getId());
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recuperar una página de productos con " + filtro + " tras " + cursor, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public void recorrer(FiltroProductos filtro, Consumer<? super Producto> consumidor) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            Map<String, Object> parametros = new HashMap<>();
+            Query query = em.createQuery("SELECT p" + condiciones(em, filtro, parametros));
+            parametros.forEach(query::setParameter);
+            PlanCarga.aplicarRecorrido(query);
+            aplicarConsistencia(query, getModoConsistencia());
+            recorrerCursor(em, query, consumidor);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recorrer los productos con " + filtro, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public List<ProductoCercano> buscarCercanos(double latitud, double longitud, double radioKm, FiltroProductos filtro)
+            throws RepositorioException {
+        if (!Geohash.validas(latitud, longitud)) {
+            throw new IllegalArgumentException("Coordenadas fuera de rango: " + latitud + ", " + longitud);
+        }
+        if (!(radioKm > 0)) {
+            throw new IllegalArgumentException("El radio debe ser positivo: " + radioKm);
+        }
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            // Candidatos: solo id y coordenadas de los productos dentro de la caja del círculo y de las celdas que
+            // lo cubren; cada rango de celdas es una consulta aparte para que sea una búsqueda por el índice del
+            // geohash (con OR entre rangos hay bases de datos que recorren la tabla). La distancia exacta se
+            // calcula aquí
+            Map<String, Object> parametros = new HashMap<>();
+            StringBuilder jpql = new StringBuilder("SELECT p.id, p.recogida.latitud, p.recogida.longitud")
+                    .append(condiciones(em, filtro != null ? filtro : new FiltroProductos(), parametros))
+                    .append(" AND p.recogida.latitud IS NOT NULL AND p.recogida.longitud IS NOT NULL");
+            double[] caja = Geohash.caja(latitud, longitud, radioKm);
+            if (caja != null) {
+                jpql.append(" AND p.recogida.latitud BETWEEN :latMin AND :latMax"
+                        + " AND p.recogida.longitud BETWEEN :lonMin AND :lonMax");
+                parametros.put("latMin", caja[0]);
+                parametros.put("latMax", caja[1]);
+                parametros.put("lonMin", caja[2]);
+                parametros.put("lonMax", caja[3]);
+            }
+            List<String[]> rangos = Geohash.rangos(Geohash.celdasCercanas(latitud, longitud, radioKm));
+            if (rangos.isEmpty()) {
+                rangos.add(null); // el círculo no cabe en las celdas: solo la caja
             }
             
-            if (estadoMinimo != null) {
-                List<EstadoProducto> estadosValidos = new ArrayList<>();
-                for (EstadoProducto estado : EstadoProducto.values()) {
-                    if (estado.esMejorOIgualQue(estadoMinimo)) {
-                        estadosValidos.add(estado);
+            Map<String, Double> distancias = new HashMap<>();
+            for (String[] rango : rangos) {
+                StringBuilder consulta = new StringBuilder(jpql);
+                if (rango != null) {
+                    consulta.append(" AND p.recogida.geohash >= :desde");
+                    if (rango[1] != null) {
+                        consulta.append(" AND p.recogida.geohash < :hasta");
+                    }
+                }
+                Query query = em.createQuery(consulta.toString());
+                parametros.forEach(query::setParameter);
+                if (rango != null) {
+                    query.setParameter("desde", rango[0]);
+                    if (rango[1] != null) {
+                        query.setParameter("hasta", rango[1]);
+                    }
+                }
+                aplicarConsistencia(query, getModoConsistencia());
+                for (Object fila : query.getResultList()) {
+                    Object[] columnas = (Object[]) fila;
+                    double distancia = Geohash.distanciaKm(latitud, longitud,
+                            ((Number) columnas[1]).doubleValue(), ((Number) columnas[2]).doubleValue());
+                    if (distancia <= radioKm) {
+                        distancias.put((String) columnas[0], distancia);
                     }
                 }
-                query.setParameter("estados", estadosValidos);
             }
             
-            if (precioMaximo != null) {
-                query.setParameter("precioMaximo", precioMaximo);
+            // Solo se cargan los que están dentro del radio
+            List<String> ids = new ArrayList<>(distancias.keySet());
+            List<ProductoCercano> cercanos = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i += TAMANO_MAXIMO_IN) {
+                FiltroProductos porIds = new FiltroProductos();
+                porIds.setIds(ids.subList(i, Math.min(i + TAMANO_MAXIMO_IN, ids.size())));
+                for (Producto producto : buscar(em, porIds)) {
+                    cercanos.add(new ProductoCercano(producto, distancias.get(producto.getId())));
+                }
             }
-            
-            return query.getResultList();
+            cercanos.sort(Comparator.comparingDouble(ProductoCercano::getDistanciaKm)
+                    .thenComparing(cercano -> cercano.getProducto().getId()));
+            return cercanos;
         } catch (Exception e) {
-            throw new RepositorioException("Error al buscar productos", e);
+            throw new RepositorioException("Error al buscar productos a " + radioKm + " km de (" + latitud + ", "
+                    + longitud + ") con " + filtro, e);
         } finally {
             EntityManagerHelper.closeEntityManager();
         }
     }
     
+    private List<Producto> buscar(EntityManager em, FiltroProductos filtro) {
+        Map<String, Object> parametros = new HashMap<>();
+        TypedQuery<Producto> query = em.createQuery("SELECT p" + condiciones(em, filtro, parametros), Producto.class);
+        parametros.forEach(query::setParameter);
+        PlanCarga.aplicar(query);
+        aplicarConsistencia(query, getModoConsistencia());
+        return query.getResultList();
+    }
+    
+    
+    /**
+     * Construye " FROM Producto p WHERE ..." con los criterios del filtro y deja en <i>parametros</i> sus valores.
+     */
+    private String condiciones(EntityManager em, FiltroProductos filtro, Map<String, Object> parametros) {
+        StringBuilder jpql = new StringBuilder(" FROM Producto p WHERE 1=1");
+        
+        // La categoría y sus descendientes se filtran por prefijo de la ruta materializada (|raiz|...|id|), un
+        // rango del índice de la ruta sea cual sea la profundidad del árbol
+        String categoriaId = filtro.getCategoriaId();
+        if (categoriaId != null) {
+            String rutaCategoria = rutaCategoria(em, categoriaId);
+            if (rutaCategoria != null) {
+                jpql.append(" AND p.categoria.ruta LIKE :rutaCategoria ESCAPE '!'");
+                parametros.put("rutaCategoria", RepositorioCategoriasJPA.prefijoRuta(rutaCategoria));
+            } else {
+                // Categorías antiguas sin ruta o que no existen: sólo sus productos
+                jpql.append(" AND p.categoria.id = :categoriaId");
+                parametros.put("categoriaId", categoriaId);
+            }
+        }
+        
+        if (filtro.getTexto() != null && !filtro.getTexto().trim().isEmpty()) {
+            jpql.append(" AND LOWER(p.descripcion) LIKE LOWER(:texto)");
+            parametros.put("texto", "%" + filtro.getTexto().trim() + "%");
+        }
+        
+        if (filtro.getIds() != null) {
+            jpql.append(" AND p.id IN :ids");
+            parametros.put("ids", filtro.getIds());
+        }
+        
+        if (filtro.getEstadoMinimo() != null) {
+            List<EstadoProducto> estadosValidos = new ArrayList<>();
+            for (EstadoProducto estado : EstadoProducto.values()) {
+                if (estado.esMejorOIgualQue(filtro.getEstadoMinimo())) {
+                    estadosValidos.add(estado);
+                }
+            }
+            jpql.append(" AND p.estado IN :estados");
+            parametros.put("estados", estadosValidos);
+        }
+        
+        if (filtro.getPrecioMaximo() != null) {
+            jpql.append(" AND p.precio <= :precioMaximo");
+            parametros.put("precioMaximo", filtro.getPrecioMaximo());
+        }
+        
+        if (filtro.getVendedorId() != null) {
+            jpql.append(" AND p.vendedor.id = :vendedorId");
+            parametros.put("vendedorId", filtro.getVendedorId());
+        }
+        
+        if (filtro.getDesde() != null) {
+            jpql.append(" AND p.fechaPublicacion >= :desde");
+            parametros.put("desde", filtro.getDesde());
+        }
+        
+        if (filtro.getHasta() != null) {
+            jpql.append(" AND p.fechaPublicacion <= :hasta");
+            parametros.put("hasta", filtro.getHasta());
+        }
+        
+        return jpql.toString();
+    }
+    
+    /**
+     * Ruta de la categoría: de la caché de categorías si la tiene y, si no, de la base de datos.
+     */
+    private String rutaCategoria(EntityManager em, String categoriaId) {
+        String ruta = RepositorioCategoriasCache.getRuta(categoriaId);
+        if (ruta != null) {
+            return ruta;
+        }
+        TypedQuery<String> query = em.createQuery("SELECT c.ruta FROM Categoria c WHERE c.id = :id", String.class)
+                .setParameter("id", categoriaId);
+        aplicarConsistencia(query, getModoConsistencia());
+        List<String> rutas = query.getResultList();
+        return rutas.isEmpty() ? null : rutas.get(0);
+    }
+    
     @Override
     public List<ResumenProducto> getHistorialMes(int mes, int anio, String emailVendedor) throws RepositorioException {
+        return getHistorialMes(mes, anio, emailVendedor, 0);
+    }
+    
+    @Override
+    public List<ResumenProducto> getHistorialMes(int mes, int anio, String emailVendedor, int limite) throws RepositorioException {
         EntityManager em = EntityManagerHelper.getEntityManager();
         try {
             // inicio y fin del mes
             LocalDateTime inicio = LocalDateTime.of(anio, mes, 1, 0, 0);
             LocalDateTime fin = inicio.plusMonths(1);
             
-            // consulta
+            // Proyección: sólo las columnas del resumen, con la categoría en la misma consulta,
+            // sin cargar entidades (ni sus relaciones) en el contexto de persistencia
             StringBuilder jpql = new StringBuilder(
-                "SELECT p FROM Producto p WHERE p.fechaPublicacion >= :inicio AND p.fechaPublicacion < :fin"
+                "SELECT NEW stoneyspring.SegundUM.dominio.ResumenProducto("
+                + "p.id, p.titulo, p.precio, p.fechaPublicacion, c.nombre, p.visualizaciones) "
+                + "FROM Producto p JOIN p.categoria c"
             );
             
+            boolean porVendedor = emailVendedor != null && !emailVendedor.trim().isEmpty();
+            if (porVendedor) {
+                jpql.append(" JOIN p.vendedor v");
+            }
+            
+            jpql.append(" WHERE p.fechaPublicacion >= :inicio AND p.fechaPublicacion < :fin");
+            
             // Si email de vendedor, añadir filtro
-            if (emailVendedor != null && !emailVendedor.trim().isEmpty()) {
-                jpql.append(" AND p.vendedor.email = :email");
+            if (porVendedor) {
+                jpql.append(" AND v.email = :email");
             }
             
             jpql.append(" ORDER BY p.visualizaciones DESC");
             
-            TypedQuery<Producto> query = em.createQuery(jpql.toString(), Producto.class);
+            TypedQuery<ResumenProducto> query = em.createQuery(jpql.toString(), ResumenProducto.class);
             query.setParameter("inicio", inicio);
             query.setParameter("fin", fin);
             
             // parámetro de email si está presente
-            if (emailVendedor != null && !emailVendedor.trim().isEmpty()) {
+            if (porVendedor) {
                 query.setParameter("email", emailVendedor);
             }
             
-            List<Producto> productos = query.getResultList();
+            if (limite > 0) {
+                query.setMaxResults(limite);
+            }
             
-            // ResumenProducto
-            return productos.stream()
-                .map(p -> new ResumenProducto(
-                    p.getId(),
-                    p.getTitulo(),
-                    p.getPrecio(),
-                    p.getFechaPublicacion(),
-                    p.getCategoria().getNombre(),
-                    p.getVisualizaciones()
-                ))
-                .collect(Collectors.toList());
+            return query.getResultList();
         } catch (Exception e) {
             throw new RepositorioException(
                 "Error al obtener historial del mes " + mes + "/" + anio + 
@@ -166,6 +401,32 @@ public class RepositorioProductosJPA extends RepositorioJPA<Producto> implements
         }
     }
     
+    @Override
+    public void recorrerHistorialMes(int mes, int anio, ConsumidorResumenes consumidor) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            LocalDateTime inicio = LocalDateTime.of(anio, mes, 1, 0, 0);
+            LocalDateTime fin = inicio.plusMonths(1);
+            
+            // Una sola consulta leída con cursor: paginarla por clave dentro del rango de fechas obliga a
+            // algunas bases de datos a recorrer el mes entero en cada página
+            Query query = em.createQuery(
+                    "SELECT p.id, p.titulo, p.precio, p.fechaPublicacion, c.nombre, p.visualizaciones, v.email "
+                    + "FROM Producto p JOIN p.categoria c JOIN p.vendedor v "
+                    + "WHERE p.fechaPublicacion >= :inicio AND p.fechaPublicacion < :fin");
+            query.setParameter("inicio", inicio);
+            query.setParameter("fin", fin);
+            this.<Object[]>recorrerCursor(em, query, fila -> consumidor.aceptar(
+                    new ResumenProducto((String) fila[0], (String) fila[1], (BigDecimal) fila[2],
+                            (LocalDateTime) fila[3], (String) fila[4], (Integer) fila[5]),
+                    (String) fila[6]));
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recorrer el historial del mes " + mes + "/" + anio, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
     @Override
     public List<Producto> getProductosPorFechas(LocalDateTime inicio, LocalDateTime fin) throws RepositorioException {
         EntityManager em = EntityManagerHelper.getEntityManager();
@@ -176,6 +437,8 @@ public class RepositorioProductosJPA extends RepositorioJPA<Producto> implements
             );
             query.setParameter("inicio", inicio);
             query.setParameter("fin", fin);
+            PlanCarga.aplicar(query);
+            aplicarConsistencia(query, getModoConsistencia());
             
             return query.getResultList();
         } catch (Exception e) {
@@ -187,40 +450,91 @@ public class RepositorioProductosJPA extends RepositorioJPA<Producto> implements
 
 	@Override
 	public List<ResumenProducto> getHistorialMes(int mes, int anio) throws RepositorioException {
-		EntityManager em = EntityManagerHelper.getEntityManager();
+		return getHistorialMes(mes, anio, null, 0);
+	}
+
+    @Override
+    public Set<String> incrementarVisualizaciones(Map<String, Long> incrementos) throws RepositorioException {
+        // Se agrupan los productos por incremento: una sentencia UPDATE por cada valor distinto
+        // (la mayoría de productos tiene incrementos pequeños y repetidos) y trozo de ids
+        Map<Long, List<String>> porIncremento = new HashMap<>();
+        for (Map.Entry<String, Long> incremento : incrementos.entrySet()) {
+            porIncremento.computeIfAbsent(incremento.getValue(), n -> new ArrayList<>()).add(incremento.getKey());
+        }
+        
+        Set<String> desconocidos = new HashSet<>();
+        EntityManager em = EntityManagerHelper.getEntityManager();
         try {
-            // inicio y fin del mes
-            LocalDateTime inicio = LocalDateTime.of(anio, mes, 1, 0, 0);
-            LocalDateTime fin = inicio.plusMonths(1);
-            
-         // consulta
-            StringBuilder jpql = new StringBuilder(
-                "SELECT p FROM Producto p WHERE p.fechaPublicacion >= :inicio AND p.fechaPublicacion < :fin"
-            );
-            
-            jpql.append(" ORDER BY p.visualizaciones DESC");
-            
-            TypedQuery<Producto> query = em.createQuery(jpql.toString(), Producto.class);
-            query.setParameter("inicio", inicio);
-            query.setParameter("fin", fin);
-            
-            List<Producto> productos = query.getResultList();
-            
-            // ResumenProducto
-            return productos.stream()
-                .map(p -> new ResumenProducto(
-                    p.getId(),
-                    p.getTitulo(),
-                    p.getPrecio(),
-                    p.getFechaPublicacion(),
-                    p.getCategoria().getNombre(),
-                    p.getVisualizaciones()
-                ))
-                .collect(Collectors.toList());
+            iniciarTransaccion(em);
+            for (Map.Entry<Long, List<String>> grupo : porIncremento.entrySet()) {
+                List<String> ids = grupo.getValue();
+                for (int i = 0; i < ids.size(); i += TAMANO_LOTE_POR_DEFECTO) {
+                    List<String> trozo = ids.subList(i, Math.min(i + TAMANO_LOTE_POR_DEFECTO, ids.size()));
+                    // Sin cambiar la versión: las visualizaciones no se escriben al actualizar el producto
+                    // (updatable = false), así que una actualización con el producto leído antes no las deshace.
+                    // EclipseLink suma 1 a la versión en los UPDATE masivos salvo que la sentencia ya la asigne
+                    int actualizados = em.createQuery("UPDATE Producto p SET p.visualizaciones = p.visualizaciones + :incremento, "
+                            + "p.version = p.version WHERE p.id IN :ids")
+                        .setParameter("incremento", Math.toIntExact(grupo.getKey()))
+                        .setParameter("ids", trozo)
+                        .executeUpdate();
+                    if (actualizados < trozo.size()) {
+                        // solo si falta alguno se consulta cuáles existen
+                        Set<String> faltan = new HashSet<>(trozo);
+                        faltan.removeAll(em.createQuery("SELECT p.id FROM Producto p WHERE p.id IN :ids", String.class)
+                            .setParameter("ids", trozo)
+                            .getResultList());
+                        desconocidos.addAll(faltan);
+                    }
+                }
+            }
+            confirmarTransaccion(em);
+            return desconocidos;
         } catch (Exception e) {
-            throw new RepositorioException("Error al obtener historial del mes " + mes + "/" + anio , e);
+            throw new RepositorioException("Error al incrementar las visualizaciones de " + incrementos.size() + " productos", e);
         } finally {
+            deshacerTransaccion(em);
             EntityManagerHelper.closeEntityManager();
         }
-	}
+    }
+
+    @Override
+    public boolean existe(String id) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            return existeId(em, id);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al verificar existencia del producto " + id, e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Override
+    public void recorrerTextos(ConsumidorTextos consumidor) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            // Se pagina por id para no tener todas las filas en memoria a la vez
+            String ultimoId = "";
+            List<Object[]> pagina;
+            do {
+                TypedQuery<Object[]> query = em.createQuery(
+                        "SELECT p.id, p.titulo, p.descripcion FROM Producto p WHERE p.id > :ultimo ORDER BY p.id",
+                        Object[].class)
+                    .setParameter("ultimo", ultimoId)
+                    .setMaxResults(TAMANO_MAXIMO_IN);
+                aplicarConsistencia(query, getModoConsistencia());
+                pagina = query.getResultList();
+                for (Object[] fila : pagina) {
+                    consumidor.aceptar((String) fila[0], (String) fila[1], (String) fila[2]);
+                    ultimoId = (String) fila[0];
+                }
+                vaciarContexto(em);
+            } while (pagina.size() == TAMANO_MAXIMO_IN);
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recorrer los textos de los productos", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
 }
\ No newline at end of file
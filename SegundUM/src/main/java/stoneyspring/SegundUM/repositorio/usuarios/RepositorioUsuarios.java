@@ -10,6 +10,14 @@ import stoneyspring.SegundUM.repositorio.RepositorioString;
  */
 public interface RepositorioUsuarios extends RepositorioString<Usuario> {
     
+    /**
+     * Recibe el id y el email de cada usuario al recorrerlos con {@link RepositorioUsuarios#recorrerEmails(ConsumidorEmails)}.
+     */
+    @FunctionalInterface
+    interface ConsumidorEmails {
+        void aceptar(String id, String email);
+    }
+    
     /**
      * Busca un usuario por su email.
      */
@@ -19,4 +27,14 @@ public interface RepositorioUsuarios extends RepositorioString<Usuario> {
      * Verifica si existe un usuario con el email dado.
      */
     boolean existeEmail(String email) throws RepositorioException;
+    
+    /**
+     * Número de usuarios registrados.
+     */
+    long getNumeroUsuarios() throws RepositorioException;
+    
+    /**
+     * Recorre el id y el email de todos los usuarios con un cursor, sin cargar las entidades.
+     */
+    void recorrerEmails(ConsumidorEmails consumidor) throws RepositorioException;
 }
\ No newline at end of file
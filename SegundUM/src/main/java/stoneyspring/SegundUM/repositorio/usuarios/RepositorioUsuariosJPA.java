@@ -30,6 +30,7 @@ public class RepositorioUsuariosJPA extends RepositorioJPA<Usuario> implements R
                 Usuario.class
             );
             query.setParameter("email", email);
+            aplicarConsistencia(query, getModoConsistencia());
             
             List<Usuario> usuarios = query.getResultList();
             
@@ -56,6 +57,7 @@ public class RepositorioUsuariosJPA extends RepositorioJPA<Usuario> implements R
                 Long.class
             );
             query.setParameter("email", email);
+            aplicarConsistencia(query, getModoConsistencia());
             
             return query.getSingleResult() > 0;
         } catch (Exception e) {
@@ -64,4 +66,30 @@ public class RepositorioUsuariosJPA extends RepositorioJPA<Usuario> implements R
             EntityManagerHelper.closeEntityManager();
         }
     }
-}
\ No newline at end of file
+    
+    @Override
+    public long getNumeroUsuarios() throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            return em.createQuery("SELECT COUNT(u) FROM Usuario u", Long.class).getSingleResult();
+        } catch (Exception e) {
+            throw new RepositorioException("Error al contar los usuarios", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+    
+    @Override
+    public void recorrerEmails(ConsumidorEmails consumidor) throws RepositorioException {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            // Proyección: las filas son arrays, no entidades, así que no llenan el contexto de persistencia
+            this.<Object[]>recorrerCursor(em, em.createQuery("SELECT u.id, u.email FROM Usuario u"),
+                    fila -> consumidor.aceptar((String) fila[0], (String) fila[1]));
+        } catch (Exception e) {
+            throw new RepositorioException("Error al recorrer los emails de los usuarios", e);
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+}
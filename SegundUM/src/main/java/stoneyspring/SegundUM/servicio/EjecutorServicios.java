@@ -0,0 +1,113 @@
+package stoneyspring.SegundUM.servicio;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.utils.PropertiesReader;
+
+/**
+ * <p>
+ * Ejecutor de los servicios asíncronos ({@link FactoriaServicios#getServicioAsync(Class)}) y de las consultas
+ * que los servicios lanzan en paralelo.
+ * </p>
+ * <p>
+ * Con Java 21 o posterior usa un hilo virtual por tarea: las tareas pasan casi todo el tiempo esperando a la
+ * base de datos y así no hay que dimensionar ningún pool (el límite lo pone el pool de conexiones de EclipseLink).
+ * Con versiones anteriores, o con <i>ejecutor=plataforma</i> en <i>servicios.properties</i>, usa un pool de
+ * <i>ejecutor.hilos</i> hilos de plataforma (32 por defecto, las conexiones del pool de EclipseLink). Ese pool no
+ * tiene cola: si todos sus hilos están ocupados, la tarea se ejecuta en el hilo que la envía. Así se frena a quien
+ * envía demasiadas y una tarea que espera a otra que ha lanzado nunca se queda sin hilo para ella.
+ * </p>
+ */
+public final class EjecutorServicios {
+
+	private static final Logger logger = LoggerFactory.getLogger(EjecutorServicios.class);
+
+	private static final String PROPERTIES = "servicios.properties";
+	private static final int HILOS_POR_DEFECTO = 32;
+
+	/**
+	 * Trabajo de una tarea; sus excepciones completan el futuro.
+	 */
+	@FunctionalInterface
+	public interface Tarea<T> {
+		T ejecutar() throws Exception;
+	}
+
+	private static boolean hilosVirtuales;
+	private static final ExecutorService ejecutor = crear();
+
+	private EjecutorServicios() {
+	}
+
+	private static ExecutorService crear() {
+		String tipo = "virtual";
+		int hilos = HILOS_POR_DEFECTO;
+		try {
+			PropertiesReader properties = new PropertiesReader(PROPERTIES);
+			if (properties.getProperty("ejecutor") != null) {
+				tipo = properties.getProperty("ejecutor").trim();
+			}
+			if (properties.getProperty("ejecutor.hilos") != null) {
+				hilos = Integer.parseInt(properties.getProperty("ejecutor.hilos").trim());
+			}
+		} catch (Exception e) {
+			logger.warn("No se ha podido leer la configuración del ejecutor en {}", PROPERTIES, e);
+		}
+
+		if ("virtual".equals(tipo)) {
+			try {
+				// Por reflexión, porque el proyecto compila para Java 8
+				ExecutorService virtual = (ExecutorService) Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+				hilosVirtuales = true;
+				logger.info("Servicios asíncronos con un hilo virtual por tarea");
+				return virtual;
+			} catch (Exception e) {
+				logger.info("La JVM no tiene hilos virtuales, se usa un pool de {} hilos", hilos);
+			}
+		}
+
+		AtomicInteger numero = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+				r -> {
+					Thread hilo = new Thread(r, "servicios-" + numero.incrementAndGet());
+					hilo.setDaemon(true);
+					return hilo;
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Indica si las tareas se ejecutan en hilos virtuales.
+	 */
+	public static boolean isHilosVirtuales() {
+		return hilosVirtuales;
+	}
+
+	/**
+	 * Ejecuta la tarea y devuelve un futuro con su resultado, o completado con la excepción que lance
+	 * ({@code join()} la entrega envuelta en una CompletionException).
+	 */
+	public static <T> CompletableFuture<T> ejecutar(Tarea<T> tarea) {
+		CompletableFuture<T> futuro = new CompletableFuture<>();
+		ejecutor.execute(() -> {
+			try {
+				futuro.complete(tarea.ejecutar());
+			} catch (Throwable e) {
+				futuro.completeExceptionally(e);
+			}
+		});
+		return futuro;
+	}
+}
@@ -1,50 +1,77 @@
 package stoneyspring.SegundUM.servicio;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import stoneyspring.SegundUM.utils.PropertiesReader;
+import stoneyspring.SegundUM.utils.RegistroImplementaciones;
 
 /*
  * Factoría que encapsula la implementación de un servicio.
  * 
- * Utiliza un fichero de propiedades para cargar la implementación.
+ * Utiliza un fichero de propiedades para cargar la implementación, que se lee una sola vez (RegistroImplementaciones).
  *
- * Los servicios se gestionan como un singleton (instancia única).
+ * Los servicios se gestionan como un singleton (instancia única), que se crea la primera vez que se pide;
+ * si varios hilos lo piden a la vez, todos obtienen la misma instancia.
+ *
+ * La versión asíncrona de un servicio es la interfaz con el mismo nombre terminado en Async
+ * (ServicioProductos -> ServicioProductosAsync), y ejecuta las operaciones del singleton en EjecutorServicios.
  *
  */
 
 public class FactoriaServicios {
 	
 	private static final String PROPERTIES = "servicios.properties";
+	private static final String SUFIJO_ASINCRONO = "Async";
+	
+	private static final RegistroImplementaciones registro =
+			RegistroImplementaciones.cargar(PROPERTIES, (servicio, instancia) -> instancia);
 	
-	private static Map<Class<?>, Object> servicios = new HashMap<>();
+	private static final ConcurrentMap<Class<?>, Object> serviciosAsincronos = new ConcurrentHashMap<>();
 	
-	@SuppressWarnings("unchecked")
 	public static <T> T getServicio(Class<T> servicio) {
+					
 				
-			
-			try {
-				if (servicios.containsKey(servicio)) {
-					return (T) servicios.get(servicio);
+				try {
+					return servicio.cast(registro.getInstancia(servicio));
 				}
-				else {
-					PropertiesReader properties = new PropertiesReader(PROPERTIES);			
-					String clase = properties.getProperty(servicio.getName());
+				catch (RuntimeException e) {
 					
-					T servicioInstancia = (T) Class.forName(clase).getConstructor().newInstance();
-					servicios.put(servicio, servicioInstancia);
-					return servicioInstancia;
+					e.printStackTrace(); // útil para depuración
+					
+					throw new RuntimeException("No se ha podido obtener la implementación del servicio: " + servicio.getName(), e);
 				}
 				
+	}
+	
+	/**
+	 * Versión asíncrona del servicio: la interfaz <i>servicioAsync</i> debe llamarse como la del servicio
+	 * terminada en Async y tener sus mismos métodos, devolviendo CompletableFuture.
+	 */
+	public static <A> A getServicioAsync(Class<A> servicioAsync) {
+		
+		Object servicioInstancia = serviciosAsincronos.get(servicioAsync);
+		if (servicioInstancia == null) {
+			servicioInstancia = serviciosAsincronos.computeIfAbsent(servicioAsync, FactoriaServicios::crearAsincrono);
+		}
+		return servicioAsync.cast(servicioInstancia);
+	}
+	
+	private static Object crearAsincrono(Class<?> servicioAsync) {
+		
+		try {
+			String nombre = servicioAsync.getName();
+			if (!nombre.endsWith(SUFIJO_ASINCRONO)) {
+				throw new IllegalArgumentException(nombre + " no termina en " + SUFIJO_ASINCRONO);
 			}
-			catch (Exception e) {
-				
-				e.printStackTrace(); // útil para depuración
-				
-				throw new RuntimeException("No se ha podido obtener la implementación del servicio: " + servicio.getName());
-			}
+			Class<?> sincrono = Class.forName(nombre.substring(0, nombre.length() - SUFIJO_ASINCRONO.length()));
+			return ServicioAsincrono.crear(servicioAsync, sincrono, getServicio(sincrono));
+		}
+		catch (Exception e) {
+			
+			e.printStackTrace(); // útil para depuración
 			
+			throw new RuntimeException("No se ha podido obtener la implementación del servicio: " + servicioAsync.getName(), e);
+		}
 	}
 	
 }
@@ -0,0 +1,73 @@
+package stoneyspring.SegundUM.servicio;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import stoneyspring.SegundUM.utils.ContextoPersistencia;
+
+/**
+ * Proxy que implementa la interfaz asíncrona de un servicio con la síncrona: cada método
+ * ejecuta en {@link EjecutorServicios} el método del mismo nombre y parámetros del servicio,
+ * dentro de un {@link ContextoPersistencia} propio de la llamada.
+ */
+class ServicioAsincrono implements InvocationHandler {
+
+	private final Object servicio;
+	private final Map<Method, Method> metodos;
+
+	private ServicioAsincrono(Object servicio, Map<Method, Method> metodos) {
+		this.servicio = servicio;
+		this.metodos = metodos;
+	}
+
+	/**
+	 * Comprueba que cada método de la interfaz asíncrona devuelve un CompletableFuture y tiene su
+	 * equivalente en la síncrona, y crea el proxy.
+	 */
+	static <A> A crear(Class<A> asincrona, Class<?> sincrona, Object servicio) throws NoSuchMethodException {
+		Map<Method, Method> metodos = new HashMap<>();
+		for (Method metodo : asincrona.getMethods()) {
+			if (metodo.getReturnType() != CompletableFuture.class) {
+				throw new IllegalArgumentException("El método " + metodo.getName() + " de " + asincrona.getName()
+						+ " no devuelve un CompletableFuture");
+			}
+			metodos.put(metodo, sincrona.getMethod(metodo.getName(), metodo.getParameterTypes()));
+		}
+		return asincrona.cast(Proxy.newProxyInstance(asincrona.getClassLoader(), new Class<?>[] { asincrona },
+				new ServicioAsincrono(servicio, metodos)));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (method.getDeclaringClass() == Object.class) {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return "Asíncrono(" + servicio + ")";
+			}
+		}
+		Method sincrono = metodos.get(method);
+		return EjecutorServicios.ejecutar(() -> {
+			// Sin try-with-resources: el contexto no se usa dentro del bloque, solo se cierra
+			ContextoPersistencia contexto = ContextoPersistencia.abrir();
+			try {
+				return sincrono.invoke(servicio, args);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw (Error) e.getCause();
+			} finally {
+				contexto.close();
+			}
+		});
+	}
+}
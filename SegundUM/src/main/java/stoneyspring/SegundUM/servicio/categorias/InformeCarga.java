@@ -0,0 +1,164 @@
+package stoneyspring.SegundUM.servicio.categorias;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resultado de {@link ServicioCategorias#cargarDirectorio(int)}: qué ha pasado con cada fichero y cuánto
+ * ha tardado la carga.
+ */
+public class InformeCarga {
+
+    /**
+     * Qué se ha hecho con un fichero.
+     */
+    public enum Estado {
+        /** Sus categorías se han insertado. */
+        CARGADO,
+        /** Su categoría raíz ya existía (en la base de datos o en otro fichero de la carga): no se ha insertado. */
+        YA_EXISTE,
+        /** No se ha podido leer: no se ha insertado. */
+        ERROR
+    }
+
+    /**
+     * Un fichero de la carga.
+     */
+    public static class Fichero {
+
+        private final String nombre;
+        private final String idRaiz;
+        private final Estado estado;
+        private final int categorias;
+        private final long msLectura;
+        private final String error;
+
+        public Fichero(String nombre, String idRaiz, Estado estado, int categorias, long msLectura, String error) {
+            this.nombre = nombre;
+            this.idRaiz = idRaiz;
+            this.estado = estado;
+            this.categorias = categorias;
+            this.msLectura = msLectura;
+            this.error = error;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public String getIdRaiz() {
+            return idRaiz;
+        }
+
+        public Estado getEstado() {
+            return estado;
+        }
+
+        /**
+         * Categorías leídas del fichero (0 si no se ha llegado a leer).
+         */
+        public int getCategorias() {
+            return categorias;
+        }
+
+        /**
+         * Tiempo de lectura y análisis del fichero, en su hilo.
+         */
+        public long getMsLectura() {
+            return msLectura;
+        }
+
+        /**
+         * Motivo del error, si el estado es {@link Estado#ERROR}.
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s, %d categorías, %d ms de lectura%s", nombre, estado, categorias, msLectura,
+                    error != null ? " (" + error + ")" : "");
+        }
+    }
+
+    private final List<Fichero> ficheros;
+    private final long msLectura;
+    private final long msInsercion;
+    private final int lotes;
+
+    public InformeCarga(List<Fichero> ficheros, long msLectura, long msInsercion, int lotes) {
+        this.ficheros = Collections.unmodifiableList(new ArrayList<>(ficheros));
+        this.msLectura = msLectura;
+        this.msInsercion = msInsercion;
+        this.lotes = lotes;
+    }
+
+    public List<Fichero> getFicheros() {
+        return ficheros;
+    }
+
+    /**
+     * Duración de la fase de lectura, con todos los ficheros en paralelo.
+     */
+    public long getMsLectura() {
+        return msLectura;
+    }
+
+    /**
+     * Duración de la inserción de todos los lotes.
+     */
+    public long getMsInsercion() {
+        return msInsercion;
+    }
+
+    public long getMsTotal() {
+        return msLectura + msInsercion;
+    }
+
+    public int getLotes() {
+        return lotes;
+    }
+
+    /**
+     * Categorías insertadas: las de los ficheros cargados.
+     */
+    public int getCategoriasCargadas() {
+        int total = 0;
+        for (Fichero fichero : ficheros) {
+            if (fichero.getEstado() == Estado.CARGADO) {
+                total += fichero.getCategorias();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Categorías insertadas por segundo de carga (lectura más inserción).
+     */
+    public double getCategoriasPorSegundo() {
+        return getMsTotal() > 0 ? getCategoriasCargadas() * 1000.0 / getMsTotal() : 0;
+    }
+
+    public boolean hayErrores() {
+        for (Fichero fichero : ficheros) {
+            if (fichero.getEstado() == Estado.ERROR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder(String.format(
+                "%d categorías de %d ficheros en %d ms (%d de lectura, %d de inserción en %d lotes): %.0f categorías/s",
+                getCategoriasCargadas(), ficheros.size(), getMsTotal(), msLectura, msInsercion, lotes,
+                getCategoriasPorSegundo()));
+        for (Fichero fichero : ficheros) {
+            texto.append(System.lineSeparator()).append("  ").append(fichero);
+        }
+        return texto.toString();
+    }
+}
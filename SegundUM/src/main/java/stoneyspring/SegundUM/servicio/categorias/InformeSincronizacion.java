@@ -0,0 +1,107 @@
+package stoneyspring.SegundUM.servicio.categorias;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resultado de {@link ServicioCategorias#sincronizarJerarquia(String)}: ids de las categorías que han cambiado,
+ * según el tipo de cambio. Una categoría movida y renombrada aparece en las dos listas.
+ */
+public class InformeSincronizacion {
+
+    private final String idRaiz;
+    private final List<String> insertadas;
+    private final List<String> movidas;
+    private final List<String> renombradas;
+    private final List<String> borradas;
+    private final List<String> conservadas;
+    private final int sinCambios;
+    private final long ms;
+
+    public InformeSincronizacion(String idRaiz, List<String> insertadas, List<String> movidas,
+            List<String> renombradas, List<String> borradas, List<String> conservadas, int sinCambios, long ms) {
+        this.idRaiz = idRaiz;
+        this.insertadas = Collections.unmodifiableList(new ArrayList<>(insertadas));
+        this.movidas = Collections.unmodifiableList(new ArrayList<>(movidas));
+        this.renombradas = Collections.unmodifiableList(new ArrayList<>(renombradas));
+        this.borradas = Collections.unmodifiableList(new ArrayList<>(borradas));
+        this.conservadas = Collections.unmodifiableList(new ArrayList<>(conservadas));
+        this.sinCambios = sinCambios;
+        this.ms = ms;
+    }
+
+    public String getIdRaiz() {
+        return idRaiz;
+    }
+
+    /**
+     * Categorías del XML que no existían.
+     */
+    public List<String> getInsertadas() {
+        return insertadas;
+    }
+
+    /**
+     * Categorías que han cambiado de padre o de ruta.
+     */
+    public List<String> getMovidas() {
+        return movidas;
+    }
+
+    /**
+     * Categorías que han cambiado de nombre o de descripción.
+     */
+    public List<String> getRenombradas() {
+        return renombradas;
+    }
+
+    /**
+     * Categorías de la jerarquía que ya no están en el XML y se han borrado.
+     */
+    public List<String> getBorradas() {
+        return borradas;
+    }
+
+    /**
+     * Categorías que ya no están en el XML pero no se han borrado porque tienen productos (o los tiene alguna
+     * de sus descendientes).
+     */
+    public List<String> getConservadas() {
+        return conservadas;
+    }
+
+    /**
+     * Categorías del XML que ya estaban igual.
+     */
+    public int getSinCambios() {
+        return sinCambios;
+    }
+
+    public long getMs() {
+        return ms;
+    }
+
+    /**
+     * Categorías escritas en la base de datos.
+     */
+    public int getEscrituras() {
+        Set<String> modificadas = new HashSet<>(movidas);
+        modificadas.addAll(renombradas);
+        return insertadas.size() + modificadas.size() + borradas.size();
+    }
+
+    public boolean hayCambios() {
+        return getEscrituras() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s en %d ms: %d insertadas %s, %d movidas %s, %d renombradas %s, %d borradas %s, "
+                + "%d conservadas con productos %s, %d sin cambios", idRaiz, ms, insertadas.size(), insertadas,
+                movidas.size(), movidas, renombradas.size(), renombradas, borradas.size(), borradas,
+                conservadas.size(), conservadas, sinCambios);
+    }
+}
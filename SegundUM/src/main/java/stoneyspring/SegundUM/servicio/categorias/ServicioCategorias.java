@@ -16,6 +16,39 @@ public interface ServicioCategorias {
      */
     void cargarJerarquia(String ruta) throws ServicioException;
 
+    /**
+     * Carga una jerarquía de categorías desde un fichero XML en modo streaming.
+     * El fichero se recorre con StAX y las categorías se insertan en lotes de
+     * <i>tamanoLote</i> elementos (padre-primero), sin construir el árbol completo en memoria.
+     *
+     * Todos los lotes se escriben en una misma transacción: si la carga falla a mitad no queda
+     * ninguna categoría del fichero.
+     * No debe cargar una categoría principal si ya existe en el sistema.
+     */
+    void cargarJerarquiaStreaming(String ruta, int tamanoLote) throws ServicioException;
+
+    /**
+     * Carga todas las jerarquías de los ficheros XML del directorio de categorías (<i>categoriasXML/</i>).
+     * Los ficheros se leen en paralelo y sus categorías se insertan juntas en lotes de <i>tamanoLote</i>
+     * elementos, todos en una transacción: si falla alguno no se carga ningún fichero.
+     *
+     * No carga los ficheros cuya categoría principal ya existe ni los que no se pueden leer; el informe
+     * dice qué se ha hecho con cada fichero y cuánto ha tardado.
+     */
+    InformeCarga cargarDirectorio(int tamanoLote) throws ServicioException;
+
+    /**
+     * Sincroniza con un fichero XML la jerarquía de su categoría principal ya cargada: compara las dos por id
+     * y escribe solo las diferencias, en una única transacción.
+     * - inserta las categorías del XML que no existen;
+     * - actualiza las que han cambiado de padre, ruta, nombre o descripción;
+     * - borra las de la jerarquía que ya no están en el XML, salvo las que tienen productos (y sus antecesoras),
+     *   que se conservan.
+     *
+     * Si la categoría principal no existe, carga la jerarquía entera.
+     */
+    InformeSincronizacion sincronizarJerarquia(String ruta) throws ServicioException;
+
     /**
      * Modifica la descripción de una categoría.
      */
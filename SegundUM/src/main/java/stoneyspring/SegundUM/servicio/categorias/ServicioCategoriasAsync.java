@@ -0,0 +1,29 @@
+package stoneyspring.SegundUM.servicio.categorias;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
+
+/**
+ * Versión asíncrona de {@link ServicioCategorias}: cada operación se ejecuta en {@link EjecutorServicios}
+ * y el futuro se completa con su resultado o con la ServicioException que lance.
+ * Se obtiene con {@code FactoriaServicios.getServicioAsync(ServicioCategoriasAsync.class)}.
+ */
+public interface ServicioCategoriasAsync {
+
+    CompletableFuture<Void> cargarJerarquia(String ruta);
+
+    CompletableFuture<Void> cargarJerarquiaStreaming(String ruta, int tamanoLote);
+
+    CompletableFuture<InformeCarga> cargarDirectorio(int tamanoLote);
+
+    CompletableFuture<InformeSincronizacion> sincronizarJerarquia(String ruta);
+
+    CompletableFuture<Void> modificarDescripcion(String categoriaId, String nuevaDescripcion);
+
+    CompletableFuture<List<Categoria>> getCategoriasRaiz();
+
+    CompletableFuture<List<Categoria>> getDescendientes(String categoriaId);
+}
@@ -3,15 +3,28 @@ package stoneyspring.SegundUM.servicio.categorias;
 import stoneyspring.SegundUM.servicio.ServicioException;
 import stoneyspring.SegundUM.dominio.Categoria;
 import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.ModoConsistencia;
 import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
 import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategoriasXML;
 import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.UnidadTrabajo;
 import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Implementación del servicio de categorías.
@@ -34,32 +47,362 @@ public class ServicioCategoriasImpl implements ServicioCategorias {
             Categoria raiz = repositorioCategoriasXML.getById(ruta);
             if (!repositorioCategorias.existe(raiz.getId())) {
                 repositorioCategorias.add(raiz);
-                logger.info("Jerarquía de categorías cargada: " + raiz.toString());
+                logger.info("Jerarquía de categorías cargada: {}", raiz);
             } else {
-                logger.info("La categoría " + raiz.getNombre() + " ya existe. No se cargará.");
+                logger.info("La categoría {} ya existe. No se cargará.", raiz.getNombre());
             }
 
         } catch (RepositorioException e) {
         	logger.error("Error accediendo al repositorio de categorías", e);
             throw new ServicioException("Error accediendo al repositorio de categorías", e);
         } catch (Exception e) {
-        	logger.error("Error al cargar la jerarquía desde el XML: " + ruta, e);
+        	logger.error("Error al cargar la jerarquía desde el XML: {}", ruta, e);
             throw new ServicioException("Error al cargar la jerarquía desde el XML: " + ruta, e);
         }
     }
 
+    @Override
+    public void cargarJerarquiaStreaming(String ruta, int tamanoLote) throws ServicioException {
+        if (tamanoLote <= 0) {
+            throw new ServicioException("El tamaño de lote debe ser positivo: " + tamanoLote);
+        }
+        try {
+            String idRaiz = repositorioCategoriasXML.getIdRaiz(ruta);
+            if (repositorioCategorias.existe(idRaiz)) {
+                logger.info("La categoría con ID {} ya existe. No se cargará.", idRaiz);
+                return;
+            }
+
+            long inicio = System.nanoTime();
+            int total;
+            // Todos los lotes en una transacción: si el fichero falla a mitad no queda una jerarquía a medias
+            try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+                total = repositorioCategoriasXML.recorrerJerarquia(ruta, tamanoLote, repositorioCategorias::addLote);
+                unidad.confirmar();
+            }
+            long ms = (System.nanoTime() - inicio) / 1_000_000;
+
+            logger.info("Jerarquía de categorías cargada en streaming desde {}: {} categorías en {} ms (lotes de {})",
+                    ruta, total, ms, tamanoLote);
+
+        } catch (EntidadNoEncontrada e) {
+        	logger.error("No existe el fichero XML: {}", ruta, e);
+            throw new ServicioException("No existe el fichero XML: " + ruta, e);
+        } catch (RepositorioException e) {
+        	logger.error("Error al cargar en streaming la jerarquía desde el XML: {}", ruta, e);
+            throw new ServicioException("Error al cargar en streaming la jerarquía desde el XML: " + ruta, e);
+        }
+    }
+
+    /**
+     * Lo leído de un fichero en {@link #cargarDirectorio(int)}.
+     */
+    private static class Lectura {
+        final String nombre;
+        final String idRaiz;
+        final InformeCarga.Estado estado;
+        final List<Categoria> categorias;
+        final long ms;
+        final String error;
+
+        Lectura(String nombre, String idRaiz, InformeCarga.Estado estado, List<Categoria> categorias, long ms, String error) {
+            this.nombre = nombre;
+            this.idRaiz = idRaiz;
+            this.estado = estado;
+            this.categorias = categorias;
+            this.ms = ms;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Lee los ficheros [desde, hasta) dividiendo el rango en mitades hasta llegar a uno por tarea.
+     * Devuelve las lecturas en el orden de los ficheros.
+     */
+    private class LecturaFicheros extends RecursiveTask<List<Lectura>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> nombres;
+        private final int desde;
+        private final int hasta;
+        private final int tamanoLote;
+
+        LecturaFicheros(List<String> nombres, int desde, int hasta, int tamanoLote) {
+            this.nombres = nombres;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.tamanoLote = tamanoLote;
+        }
+
+        @Override
+        protected List<Lectura> compute() {
+            if (hasta - desde <= 1) {
+                return desde < hasta ? Collections.singletonList(leer(nombres.get(desde), tamanoLote))
+                        : Collections.<Lectura>emptyList();
+            }
+            int mitad = (desde + hasta) >>> 1;
+            LecturaFicheros primera = new LecturaFicheros(nombres, desde, mitad, tamanoLote);
+            primera.fork();
+            List<Lectura> segunda = new LecturaFicheros(nombres, mitad, hasta, tamanoLote).compute();
+            List<Lectura> lecturas = new ArrayList<>(primera.join());
+            lecturas.addAll(segunda);
+            return lecturas;
+        }
+    }
+
+    private Lectura leer(String nombre, int tamanoLote) {
+        long inicio = System.nanoTime();
+        String idRaiz = null;
+        try {
+            idRaiz = repositorioCategoriasXML.getIdRaiz(nombre);
+            if (repositorioCategorias.existe(idRaiz)) {
+                return new Lectura(nombre, idRaiz, InformeCarga.Estado.YA_EXISTE, Collections.<Categoria>emptyList(),
+                        (System.nanoTime() - inicio) / 1_000_000, null);
+            }
+            List<Categoria> categorias = new ArrayList<>();
+            repositorioCategoriasXML.recorrerJerarquia(nombre, tamanoLote, categorias::addAll);
+            return new Lectura(nombre, idRaiz, InformeCarga.Estado.CARGADO, categorias,
+                    (System.nanoTime() - inicio) / 1_000_000, null);
+        } catch (RepositorioException | EntidadNoEncontrada e) {
+        	logger.error("Error al leer la jerarquía de categorías de {}", nombre, e);
+            return new Lectura(nombre, idRaiz, InformeCarga.Estado.ERROR, Collections.<Categoria>emptyList(),
+                    (System.nanoTime() - inicio) / 1_000_000, e.getMessage());
+        }
+    }
+
+    @Override
+    public InformeCarga cargarDirectorio(int tamanoLote) throws ServicioException {
+        if (tamanoLote <= 0) {
+            throw new ServicioException("El tamaño de lote debe ser positivo: " + tamanoLote);
+        }
+        List<String> nombres;
+        try {
+            nombres = repositorioCategoriasXML.getFicheros();
+        } catch (RepositorioException e) {
+        	logger.error("Error al listar los ficheros del directorio de categorías", e);
+            throw new ServicioException("Error al listar los ficheros del directorio de categorías", e);
+        }
+
+        // Lectura en paralelo: cada fichero se analiza en un hilo del pool
+        long inicio = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Math.min(nombres.size(), Runtime.getRuntime().availableProcessors())));
+        List<Lectura> lecturas;
+        try {
+            lecturas = pool.invoke(new LecturaFicheros(nombres, 0, nombres.size(), tamanoLote));
+        } finally {
+            pool.shutdown();
+        }
+        long msLectura = (System.nanoTime() - inicio) / 1_000_000;
+
+        // Las categorías de los ficheros nuevos se juntan, cada fichero padre-primero, para insertarlas en lotes
+        List<InformeCarga.Fichero> ficheros = new ArrayList<>(lecturas.size());
+        List<Categoria> pendientes = new ArrayList<>();
+        Set<String> raices = new HashSet<>();
+        for (Lectura lectura : lecturas) {
+            InformeCarga.Estado estado = lectura.estado;
+            if (estado == InformeCarga.Estado.CARGADO && !raices.add(lectura.idRaiz)) {
+                logger.info("La categoría {} de {} ya está en otro fichero. No se cargará.", lectura.idRaiz, lectura.nombre);
+                estado = InformeCarga.Estado.YA_EXISTE;
+            }
+            if (estado == InformeCarga.Estado.CARGADO) {
+                pendientes.addAll(lectura.categorias);
+            }
+            ficheros.add(new InformeCarga.Fichero(lectura.nombre, lectura.idRaiz, estado, lectura.categorias.size(),
+                    lectura.ms, lectura.error));
+        }
+
+        inicio = System.nanoTime();
+        int lotes = 0;
+        // Todos los lotes en una transacción: si uno falla no queda ningún fichero cargado, ni a medias
+        try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+            for (int desde = 0; desde < pendientes.size(); desde += tamanoLote) {
+                repositorioCategorias.addLote(new ArrayList<>(pendientes.subList(desde, Math.min(desde + tamanoLote, pendientes.size()))));
+                lotes++;
+            }
+            unidad.confirmar();
+        } catch (RepositorioException e) {
+        	logger.error("Error al insertar las categorías del directorio en el lote {}", lotes + 1, e);
+            throw new ServicioException("Error al insertar las categorías del directorio en el lote " + (lotes + 1)
+                    + " de " + tamanoLote + ": no se ha cargado ninguna", e);
+        }
+        long msInsercion = (System.nanoTime() - inicio) / 1_000_000;
+
+        InformeCarga informe = new InformeCarga(ficheros, msLectura, msInsercion, lotes);
+        logger.info("Directorio de categorías cargado: {}", informe);
+        return informe;
+    }
+
+    /**
+     * Una categoría persistida, vista desde la jerarquía completa.
+     */
+    private static class Persistida {
+        final Categoria categoria;
+        final String idPadre;
+        final int profundidad;
+
+        Persistida(Categoria categoria, String idPadre, int profundidad) {
+            this.categoria = categoria;
+            this.idPadre = idPadre;
+            this.profundidad = profundidad;
+        }
+    }
+
+    /**
+     * Indexa por id todas las categorías persistidas, con su padre y su profundidad.
+     */
+    private static Map<String, Persistida> indexar(List<Categoria> raices) {
+        Map<String, Persistida> persistidas = new HashMap<>();
+        Deque<Persistida> pendientes = new ArrayDeque<>();
+        for (Categoria raiz : raices) {
+            pendientes.push(new Persistida(raiz, null, 0));
+        }
+        while (!pendientes.isEmpty()) {
+            Persistida actual = pendientes.pop();
+            persistidas.put(actual.categoria.getId(), actual);
+            if (actual.categoria.getSubcategorias() != null) {
+                for (Categoria hija : actual.categoria.getSubcategorias()) {
+                    pendientes.push(new Persistida(hija, actual.categoria.getId(), actual.profundidad + 1));
+                }
+            }
+        }
+        return persistidas;
+    }
+
+    /**
+     * Compara textos del XML sin los espacios de los extremos: la carga con DOM los conserva y la lectura
+     * en streaming los quita.
+     */
+    private static boolean mismoTexto(String persistido, String xml) {
+        return Objects.equals(persistido != null ? persistido.trim() : null, xml != null ? xml.trim() : null);
+    }
+
+    @Override
+    public InformeSincronizacion sincronizarJerarquia(String ruta) throws ServicioException {
+        long inicio = System.nanoTime();
+        try {
+            // Árbol del XML, padre-primero y con categoriaPadre apuntando a la categoría del XML
+            List<Categoria> xml = new ArrayList<>();
+            repositorioCategoriasXML.recorrerJerarquia(ruta, 1000, xml::addAll);
+            if (xml.isEmpty()) {
+                throw new ServicioException("El fichero XML no tiene categorías: " + ruta);
+            }
+            String idRaiz = xml.get(0).getId();
+            Map<String, Persistida> persistidas = indexar(repositorioCategorias.getJerarquiaCompleta());
+
+            List<Categoria> nuevas = new ArrayList<>();
+            List<Categoria> modificadas = new ArrayList<>();
+            List<String> movidas = new ArrayList<>();
+            List<String> renombradas = new ArrayList<>();
+            int sinCambios = 0;
+            Set<String> enXml = new HashSet<>();
+            for (Categoria categoria : xml) {
+                enXml.add(categoria.getId());
+                Categoria padre = categoria.getCategoriaPadre();
+                if (categoria.getRuta() == null) {
+                    // La misma ruta que calcularía la entidad al persistirse
+                    categoria.setRuta((padre != null ? padre.getRuta() : "|") + categoria.getId() + "|");
+                }
+                Persistida persistida = persistidas.get(categoria.getId());
+                if (persistida == null) {
+                    nuevas.add(categoria);
+                    continue;
+                }
+                Categoria actual = persistida.categoria;
+                boolean movida = !Objects.equals(persistida.idPadre, padre != null ? padre.getId() : null)
+                        || !Objects.equals(actual.getRuta(), categoria.getRuta());
+                boolean renombrada = !mismoTexto(actual.getNombre(), categoria.getNombre())
+                        || !mismoTexto(actual.getDescripcion(), categoria.getDescripcion());
+                if (movida) {
+                    movidas.add(categoria.getId());
+                }
+                if (renombrada) {
+                    renombradas.add(categoria.getId());
+                }
+                if (movida || renombrada) {
+                    modificadas.add(categoria);
+                } else {
+                    sinCambios++;
+                }
+            }
+
+            // Candidatas a borrar: las de la jerarquía persistida de la raíz que no están en el XML
+            Map<String, Persistida> candidatas = new HashMap<>();
+            Persistida raizPersistida = persistidas.get(idRaiz);
+            if (raizPersistida != null) {
+                Deque<Categoria> pendientes = new ArrayDeque<>();
+                pendientes.push(raizPersistida.categoria);
+                while (!pendientes.isEmpty()) {
+                    Categoria actual = pendientes.pop();
+                    if (!enXml.contains(actual.getId())) {
+                        candidatas.put(actual.getId(), persistidas.get(actual.getId()));
+                    }
+                    if (actual.getSubcategorias() != null) {
+                        for (Categoria hija : actual.getSubcategorias()) {
+                            pendientes.push(hija);
+                        }
+                    }
+                }
+            }
+
+            // Las que tienen productos se conservan, y con ellas sus antecesoras candidatas
+            Set<String> conservadas = new HashSet<>();
+            for (String id : repositorioCategorias.getConProductos(candidatas.keySet())) {
+                for (String actual = id; actual != null && candidatas.containsKey(actual) && conservadas.add(actual); ) {
+                    actual = candidatas.get(actual).idPadre;
+                }
+            }
+            List<Persistida> porBorrar = new ArrayList<>();
+            for (Persistida candidata : candidatas.values()) {
+                if (!conservadas.contains(candidata.categoria.getId())) {
+                    porBorrar.add(candidata);
+                }
+            }
+            // De la más profunda a la menos: ninguna se borra antes que sus hijas
+            Collections.sort(porBorrar, (a, b) -> Integer.compare(b.profundidad, a.profundidad));
+            List<Categoria> borradas = new ArrayList<>(porBorrar.size());
+            List<String> idsBorradas = new ArrayList<>(porBorrar.size());
+            for (Persistida persistida : porBorrar) {
+                borradas.add(persistida.categoria);
+                idsBorradas.add(persistida.categoria.getId());
+            }
+
+            List<String> idsNuevas = new ArrayList<>(nuevas.size());
+            for (Categoria categoria : nuevas) {
+                idsNuevas.add(categoria.getId());
+            }
+
+            if (!nuevas.isEmpty() || !modificadas.isEmpty() || !borradas.isEmpty()) {
+                repositorioCategorias.aplicarCambios(nuevas, modificadas, borradas);
+            }
+
+            InformeSincronizacion informe = new InformeSincronizacion(idRaiz, idsNuevas, movidas, renombradas,
+                    idsBorradas, new ArrayList<>(conservadas), sinCambios, (System.nanoTime() - inicio) / 1_000_000);
+            logger.info("Jerarquía de categorías sincronizada desde {}: {}", ruta, informe);
+            return informe;
+
+        } catch (EntidadNoEncontrada e) {
+        	logger.error("No existe el fichero XML: {}", ruta, e);
+            throw new ServicioException("No existe el fichero XML: " + ruta, e);
+        } catch (RepositorioException e) {
+        	logger.error("Error al sincronizar la jerarquía desde el XML: {}", ruta, e);
+            throw new ServicioException("Error al sincronizar la jerarquía desde el XML: " + ruta, e);
+        }
+    }
+
     @Override
     public void modificarDescripcion(String categoriaId, String nuevaDescripcion) throws ServicioException {
         try {
-            Categoria c = repositorioCategorias.getById(categoriaId);
+            // La de la base de datos y no la de la caché, que se comparte y es de sólo lectura
+            Categoria c = repositorioCategorias.getById(categoriaId, ModoConsistencia.FUERTE);
             c.setDescripcion(nuevaDescripcion);
             repositorioCategorias.update(c);
         } catch (EntidadNoEncontrada e) {
             // VERIFICACIÓN: la categoría no existe
-        	logger.error("La categoría con ID " + categoriaId + " no existe en el sistema", e);
+        	logger.error("La categoría con ID {} no existe en el sistema", categoriaId, e);
             throw new ServicioException("La categoría con ID " + categoriaId + " no existe en el sistema", e);
         } catch (RepositorioException e) {
-        	logger.error("Error al modificar la descripción de la categoría " + categoriaId, e);
+        	logger.error("Error al modificar la descripción de la categoría {}", categoriaId, e);
             throw new ServicioException("Error al modificar la descripción de la categoría " + categoriaId, e);
         }
     }
@@ -78,14 +421,14 @@ public class ServicioCategoriasImpl implements ServicioCategorias {
     @Override
     public List<Categoria> getDescendientes(String categoriaId) throws ServicioException {
         try {
-        	logger.info("Recuperando descendientes de la categoría con ID " + categoriaId);
+        	logger.info("Recuperando descendientes de la categoría con ID {}", categoriaId);
             return repositorioCategorias.getDescendientes(categoriaId);
         } catch (EntidadNoEncontrada e) {
             // VERIFICACIÓN: la categoría no existe
-        	logger.error("La categoría con ID " + categoriaId + " no existe en el sistema", e);
+        	logger.error("La categoría con ID {} no existe en el sistema", categoriaId, e);
             throw new ServicioException("La categoría con ID " + categoriaId + " no existe en el sistema", e);
         } catch (RepositorioException e) {
-        	logger.error("Error al recuperar descendientes de " + categoriaId, e);
+        	logger.error("Error al recuperar descendientes de {}", categoriaId, e);
             throw new ServicioException("Error al recuperar descendientes de " + categoriaId, e);
         }
     }
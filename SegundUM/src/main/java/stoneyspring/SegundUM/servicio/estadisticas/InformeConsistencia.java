@@ -0,0 +1,97 @@
+package stoneyspring.SegundUM.servicio.estadisticas;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+
+/**
+ * Resultado de {@link ServicioEstadisticas#comprobarMes(int, int)}: las estadísticas guardadas del mes que no
+ * coinciden con las calculadas a partir de los productos.
+ * <p>
+ * En un mes cerrado las diferencias son normales: sus estadísticas son las del cierre y los productos
+ * siguen recibiendo visualizaciones.
+ * </p>
+ */
+public class InformeConsistencia {
+
+    /**
+     * Una fila que no coincide. Falta la guardada si no existe, y la calculada si ya no hay productos de su clave.
+     */
+    public static class Diferencia {
+
+        private final EstadisticaMensual guardada;
+        private final EstadisticaMensual calculada;
+
+        public Diferencia(EstadisticaMensual guardada, EstadisticaMensual calculada) {
+            this.guardada = guardada;
+            this.calculada = calculada;
+        }
+
+        public EstadisticaMensual getGuardada() {
+            return guardada;
+        }
+
+        public EstadisticaMensual getCalculada() {
+            return calculada;
+        }
+
+        @Override
+        public String toString() {
+            return "guardada: " + guardada + " / calculada: " + calculada;
+        }
+    }
+
+    private final YearMonth mes;
+    private final boolean cerrado;
+    private final int comprobadas;
+    private final List<Diferencia> diferencias;
+    private final long ms;
+
+    public InformeConsistencia(YearMonth mes, boolean cerrado, int comprobadas, List<Diferencia> diferencias, long ms) {
+        this.mes = mes;
+        this.cerrado = cerrado;
+        this.comprobadas = comprobadas;
+        this.diferencias = Collections.unmodifiableList(new ArrayList<>(diferencias));
+        this.ms = ms;
+    }
+
+    public YearMonth getMes() {
+        return mes;
+    }
+
+    public boolean isCerrado() {
+        return cerrado;
+    }
+
+    /**
+     * Filas comparadas: las guardadas más las calculadas que no lo estaban.
+     */
+    public int getComprobadas() {
+        return comprobadas;
+    }
+
+    public List<Diferencia> getDiferencias() {
+        return diferencias;
+    }
+
+    public boolean isConsistente() {
+        return diferencias.isEmpty();
+    }
+
+    public long getMs() {
+        return ms;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder(String.format("%s%s: %d filas comprobadas, %d diferencias en %d ms",
+                mes, cerrado ? " (cerrado)" : "", comprobadas, diferencias.size(), ms));
+        for (Diferencia diferencia : diferencias) {
+            texto.append(System.lineSeparator()).append("  ").append(diferencia);
+        }
+        return texto.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package stoneyspring.SegundUM.servicio.estadisticas;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+
+/**
+ * Resultado de {@link ServicioEstadisticas#informeMes(int, int)}.
+ */
+public class InformeMensual {
+
+    private final EstadisticaMensual total;
+    private final List<EstadisticaMensual> vendedores;
+    private final List<EstadisticaMensual> categorias;
+
+    public InformeMensual(EstadisticaMensual total, List<EstadisticaMensual> vendedores,
+                          List<EstadisticaMensual> categorias) {
+        this.total = total;
+        this.vendedores = Collections.unmodifiableList(new ArrayList<>(vendedores));
+        this.categorias = Collections.unmodifiableList(new ArrayList<>(categorias));
+    }
+
+    public YearMonth getMes() {
+        return total.getYearMonth();
+    }
+
+    /**
+     * Estadísticas de todos los productos del mes.
+     */
+    public EstadisticaMensual getTotal() {
+        return total;
+    }
+
+    /**
+     * Una por vendedor con productos en el mes, de más a menos visualizaciones.
+     */
+    public List<EstadisticaMensual> getVendedores() {
+        return vendedores;
+    }
+
+    /**
+     * Una por categoría con productos en el mes, de más a menos visualizaciones.
+     */
+    public List<EstadisticaMensual> getCategorias() {
+        return categorias;
+    }
+
+    public boolean isCerrado() {
+        return total.isCerrado();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d vendedores, %d categorías", total, vendedores.size(), categorias.size());
+    }
+}
@@ -0,0 +1,46 @@
+package stoneyspring.SegundUM.servicio.estadisticas;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+import stoneyspring.SegundUM.servicio.ServicioException;
+
+/**
+ * Estadísticas mensuales de los productos publicados (número de productos, visualizaciones y precios),
+ * del mes entero, de cada vendedor y de cada categoría.
+ * <p>
+ * Se responden con los agregados guardados, sin recorrer los productos. Un mes se calcula entero la primera vez
+ * que se pide y desde entonces se mantiene con las altas, los cambios de precio y las visualizaciones. Cuando
+ * termina, la siguiente consulta lo recalcula y lo cierra: sus estadísticas quedan como estaban al cerrarlo.
+ * </p>
+ */
+public interface ServicioEstadisticas {
+
+    /**
+     * Estadísticas del mes: las del mes entero, las de sus vendedores y las de sus categorías.
+     */
+    InformeMensual informeMes(int mes, int anio) throws ServicioException;
+
+    /**
+     * Estadísticas de los productos que el vendedor publicó en el mes (sin productos si no publicó ninguno).
+     */
+    EstadisticaMensual estadisticaVendedor(int mes, int anio, String vendedorId) throws ServicioException;
+
+    /**
+     * Estadísticas de los productos de la categoría (sin sus subcategorías) publicados en el mes.
+     */
+    EstadisticaMensual estadisticaCategoria(int mes, int anio, String categoriaId) throws ServicioException;
+
+    /**
+     * Compara las estadísticas guardadas del mes con las calculadas a partir de los productos, sin cambiar nada.
+     */
+    InformeConsistencia comprobarMes(int mes, int anio) throws ServicioException;
+
+    /**
+     * Vuelve a calcular las estadísticas del mes a partir de los productos (también si está cerrado, que sigue cerrado).
+     */
+    void recalcularMes(int mes, int anio) throws ServicioException;
+
+    /**
+     * Recalcula y cierra un mes terminado, aunque no se haya consultado.
+     */
+    void cerrarMes(int mes, int anio) throws ServicioException;
+}
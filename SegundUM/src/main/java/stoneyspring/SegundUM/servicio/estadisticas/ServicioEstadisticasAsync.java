@@ -0,0 +1,26 @@
+package stoneyspring.SegundUM.servicio.estadisticas;
+
+import java.util.concurrent.CompletableFuture;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
+
+/**
+ * Versión asíncrona de {@link ServicioEstadisticas}: cada operación se ejecuta en {@link EjecutorServicios}
+ * y el futuro se completa con su resultado o con la ServicioException que lance.
+ * Se obtiene con {@code FactoriaServicios.getServicioAsync(ServicioEstadisticasAsync.class)}.
+ */
+public interface ServicioEstadisticasAsync {
+
+    CompletableFuture<InformeMensual> informeMes(int mes, int anio);
+
+    CompletableFuture<EstadisticaMensual> estadisticaVendedor(int mes, int anio, String vendedorId);
+
+    CompletableFuture<EstadisticaMensual> estadisticaCategoria(int mes, int anio, String categoriaId);
+
+    CompletableFuture<InformeConsistencia> comprobarMes(int mes, int anio);
+
+    CompletableFuture<Void> recalcularMes(int mes, int anio);
+
+    CompletableFuture<Void> cerrarMes(int mes, int anio);
+}
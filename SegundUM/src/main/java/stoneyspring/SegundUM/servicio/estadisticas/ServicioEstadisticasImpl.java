@@ -0,0 +1,181 @@
+package stoneyspring.SegundUM.servicio.estadisticas;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+import stoneyspring.SegundUM.dominio.EstadisticaMensual.Tipo;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.estadisticas.RepositorioEstadisticas;
+import stoneyspring.SegundUM.servicio.ServicioException;
+
+/**
+ * Implementación del servicio de estadísticas mensuales.
+ */
+public class ServicioEstadisticasImpl implements ServicioEstadisticas {
+
+	private final Logger logger = LoggerFactory.getLogger(ServicioEstadisticasImpl.class);
+
+    private final RepositorioEstadisticas repositorioEstadisticas;
+
+    public ServicioEstadisticasImpl() {
+        this.repositorioEstadisticas = FactoriaRepositorios.getRepositorio(EstadisticaMensual.class);
+    }
+
+    @Override
+    public InformeMensual informeMes(int mes, int anio) throws ServicioException {
+        YearMonth clave = validar(mes, anio);
+        try {
+            EstadisticaMensual total = preparar(clave);
+            return new InformeMensual(total,
+                    repositorioEstadisticas.getEstadisticas(mes, anio, Tipo.VENDEDOR),
+                    repositorioEstadisticas.getEstadisticas(mes, anio, Tipo.CATEGORIA));
+        } catch (RepositorioException e) {
+            logger.error("Error al obtener las estadísticas de {}", clave, e);
+            throw new ServicioException("Error al obtener las estadísticas de " + clave, e);
+        }
+    }
+
+    @Override
+    public EstadisticaMensual estadisticaVendedor(int mes, int anio, String vendedorId) throws ServicioException {
+        return estadistica(validar(mes, anio), Tipo.VENDEDOR, vendedorId);
+    }
+
+    @Override
+    public EstadisticaMensual estadisticaCategoria(int mes, int anio, String categoriaId) throws ServicioException {
+        return estadistica(validar(mes, anio), Tipo.CATEGORIA, categoriaId);
+    }
+
+    private EstadisticaMensual estadistica(YearMonth mes, Tipo tipo, String clave) throws ServicioException {
+        if (clave == null) {
+            throw new ServicioException("El ID no puede ser nulo");
+        }
+        try {
+            EstadisticaMensual total = preparar(mes);
+            EstadisticaMensual estadistica = buscar(mes, tipo, clave);
+            if (estadistica == null) {
+                // sin productos en el mes
+                estadistica = new EstadisticaMensual(mes, tipo, clave);
+                estadistica.setCerrado(total.isCerrado());
+            }
+            return estadistica;
+        } catch (RepositorioException e) {
+            logger.error("Error al obtener las estadísticas de {} de {}", clave, mes, e);
+            throw new ServicioException("Error al obtener las estadísticas de " + clave + " de " + mes, e);
+        }
+    }
+
+    @Override
+    public InformeConsistencia comprobarMes(int mes, int anio) throws ServicioException {
+        YearMonth clave = validar(mes, anio);
+        try {
+            long inicio = System.nanoTime();
+            Map<String, EstadisticaMensual> guardadas = new LinkedHashMap<>();
+            for (Tipo tipo : Tipo.values()) {
+                for (EstadisticaMensual guardada : repositorioEstadisticas.getEstadisticas(mes, anio, tipo)) {
+                    guardadas.put(guardada.getId(), guardada);
+                }
+            }
+            EstadisticaMensual total = guardadas.get(EstadisticaMensual.id(clave, Tipo.MES, EstadisticaMensual.CLAVE_MES));
+            int comprobadas = guardadas.size();
+
+            List<InformeConsistencia.Diferencia> diferencias = new ArrayList<>();
+            for (EstadisticaMensual calculada : repositorioEstadisticas.calcular(mes, anio)) {
+                EstadisticaMensual guardada = guardadas.remove(calculada.getId());
+                if (guardada == null) {
+                    comprobadas++;
+                    diferencias.add(new InformeConsistencia.Diferencia(null, calculada));
+                } else if (!guardada.mismosAgregados(calculada)) {
+                    diferencias.add(new InformeConsistencia.Diferencia(guardada, calculada));
+                }
+            }
+            for (EstadisticaMensual sobrante : guardadas.values()) {
+                diferencias.add(new InformeConsistencia.Diferencia(sobrante, null));
+            }
+
+            InformeConsistencia informe = new InformeConsistencia(clave, total != null && total.isCerrado(),
+                    comprobadas, diferencias, (System.nanoTime() - inicio) / 1_000_000);
+            // sin la fila del mes calculada, el mes no se ha calculado todavía: no es una inconsistencia
+            if (!informe.isConsistente() && total != null && total.isCalculado() && !total.isCerrado()) {
+                logger.warn("Estadísticas de {} inconsistentes: {} de {} filas", clave, diferencias.size(), comprobadas);
+            }
+            return informe;
+        } catch (RepositorioException e) {
+            logger.error("Error al comprobar las estadísticas de {}", clave, e);
+            throw new ServicioException("Error al comprobar las estadísticas de " + clave, e);
+        }
+    }
+
+    @Override
+    public void recalcularMes(int mes, int anio) throws ServicioException {
+        YearMonth clave = validar(mes, anio);
+        try {
+            EstadisticaMensual total = buscar(clave, Tipo.MES, EstadisticaMensual.CLAVE_MES);
+            recalcular(clave, total != null && total.isCerrado());
+        } catch (RepositorioException e) {
+            logger.error("Error al recalcular las estadísticas de {}", clave, e);
+            throw new ServicioException("Error al recalcular las estadísticas de " + clave, e);
+        }
+    }
+
+    @Override
+    public void cerrarMes(int mes, int anio) throws ServicioException {
+        YearMonth clave = validar(mes, anio);
+        if (!clave.isBefore(YearMonth.now())) {
+            throw new ServicioException("El mes " + clave + " no ha terminado");
+        }
+        try {
+            recalcular(clave, true);
+        } catch (RepositorioException e) {
+            logger.error("Error al cerrar las estadísticas de {}", clave, e);
+            throw new ServicioException("Error al cerrar las estadísticas de " + clave, e);
+        }
+    }
+
+    /**
+     * Fila del mes entero, calculando el mes si no lo estaba todavía y cerrándolo si ha terminado.
+     */
+    private EstadisticaMensual preparar(YearMonth mes) throws RepositorioException {
+        EstadisticaMensual total = buscar(mes, Tipo.MES, EstadisticaMensual.CLAVE_MES);
+        boolean terminado = mes.isBefore(YearMonth.now());
+        if (total == null || !total.isCalculado() || terminado && !total.isCerrado()) {
+            long inicio = System.nanoTime();
+            // se vuelve a comprobar con la fila del mes bloqueada: otra petición puede estar calculándolo
+            total = repositorioEstadisticas.preparar(mes.getMonthValue(), mes.getYear(), terminado);
+            logger.info("Estadísticas de {} preparadas en {} ms", mes, (System.nanoTime() - inicio) / 1_000_000);
+        }
+        return total;
+    }
+
+    private EstadisticaMensual recalcular(YearMonth mes, boolean cerrar) throws RepositorioException {
+        long inicio = System.nanoTime();
+        List<EstadisticaMensual> estadisticas = repositorioEstadisticas.recalcular(mes.getMonthValue(), mes.getYear(), cerrar);
+        logger.info("Estadísticas de {} {}: {} filas en {} ms", mes, cerrar ? "calculadas y cerradas" : "calculadas",
+                estadisticas.size(), (System.nanoTime() - inicio) / 1_000_000);
+        // la primera es la del mes entero
+        return estadisticas.get(0);
+    }
+
+    private EstadisticaMensual buscar(YearMonth mes, Tipo tipo, String clave) throws RepositorioException {
+        try {
+            return repositorioEstadisticas.getById(EstadisticaMensual.id(mes, tipo, clave));
+        } catch (EntidadNoEncontrada e) {
+            return null;
+        }
+    }
+
+    private static YearMonth validar(int mes, int anio) throws ServicioException {
+        if (mes < 1 || mes > 12) {
+            throw new ServicioException("Mes no válido: " + mes);
+        }
+        return YearMonth.of(anio, mes);
+    }
+}
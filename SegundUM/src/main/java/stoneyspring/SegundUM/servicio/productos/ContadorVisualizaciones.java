@@ -0,0 +1,222 @@
+package stoneyspring.SegundUM.servicio.productos;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+
+/**
+ * <p>
+ * Acumula en memoria las visualizaciones de los productos y las vuelca periódicamente al repositorio.
+ * </p>
+ * <p>
+ * Cada producto tiene un contador, que se incrementa sin bloqueos. Cada volcado lee el valor acumulado
+ * de cada contador y se lo resta (no lo pone a cero), de modo que las visualizaciones que llegan durante
+ * el volcado se quedan para el siguiente y no se pierde ninguna. Si el volcado falla, los incrementos se
+ * devuelven a los contadores.
+ * </p>
+ * <p>
+ * Un contador que llega a un volcado sin nada pendiente se retira: pasa a un valor negativo y se quita del mapa,
+ * así que solo hay entradas de los productos vistos en el último periodo. Un incremento que cae en un contador
+ * retirado lo ve (el valor anterior es negativo), no cuenta y se repite en uno nuevo.
+ * </p>
+ * La primera visualización de un producto sin contador comprueba que existe con el {@link Verificador}. Los ids
+ * que el destino no encuentra al volcar (productos borrados entre tanto) se descartan.
+ * <p>
+ * Quien lea del destino y sume lo pendiente no necesita bloquear los volcados: le basta con comprobar que
+ * {@link #getSecuenciaVolcados()} no ha cambiado entre el principio de la lectura y la instantánea de lo pendiente.
+ * </p>
+ */
+public class ContadorVisualizaciones implements RankingMensual.Pendientes, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(ContadorVisualizaciones.class);
+
+	/** Valor de un contador retirado: por muchos incrementos que caigan después, sigue siendo negativo. */
+	private static final long RETIRADO = Long.MIN_VALUE / 2;
+
+	/**
+	 * Destino de los incrementos acumulados (id de producto -> visualizaciones nuevas). Devuelve los ids que
+	 * no existen, cuyos incrementos se descartan.
+	 */
+	@FunctionalInterface
+	public interface Destino {
+		Collection<String> volcar(Map<String, Long> incrementos) throws RepositorioException;
+	}
+
+	/**
+	 * Comprobación de que existe un producto que todavía no tiene contador.
+	 */
+	@FunctionalInterface
+	public interface Verificador {
+		boolean existe(String productoId) throws RepositorioException;
+	}
+
+	private final ConcurrentMap<String, AtomicLong> contadores = new ConcurrentHashMap<>();
+	private final Destino destino;
+	private final Verificador verificador;
+	private final ScheduledExecutorService planificador;
+
+	/** Volcados empezados más terminados: es impar mientras hay uno en curso. */
+	private final AtomicLong secuenciaVolcados = new AtomicLong();
+
+	/**
+	 * Contador que no comprueba los ids al incrementar: los desconocidos solo se descartan al volcar.
+	 */
+	public ContadorVisualizaciones(Destino destino, long periodoMs) {
+		this(destino, productoId -> true, periodoMs);
+	}
+
+	public ContadorVisualizaciones(Destino destino, Verificador verificador, long periodoMs) {
+		this.destino = destino;
+		this.verificador = verificador;
+		this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread hilo = new Thread(r, "volcado-visualizaciones");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		this.planificador.scheduleWithFixedDelay(this::volcarPeriodico, periodoMs, periodoMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Registra una visualización del producto. Si ya tiene contador no accede al repositorio; si no, comprueba
+	 * antes que existe. Devuelve false (y no cuenta la visualización) si no existe.
+	 */
+	public boolean incrementar(String productoId) throws RepositorioException {
+		if (!contadores.containsKey(productoId) && !verificador.existe(productoId)) {
+			return false;
+		}
+		sumar(productoId, 1);
+		return true;
+	}
+
+	private void sumar(String productoId, long n) {
+		while (true) {
+			AtomicLong contador = contadores.computeIfAbsent(productoId, id -> new AtomicLong());
+			if (contador.getAndAdd(n) >= 0) {
+				return;
+			}
+			// retirado: este incremento no lo leerá nadie, se repite en un contador nuevo
+			contadores.remove(productoId, contador);
+		}
+	}
+
+	/**
+	 * Visualizaciones del producto todavía no volcadas.
+	 */
+	public long getPendientes(String productoId) {
+		AtomicLong contador = contadores.get(productoId);
+		return contador == null ? 0 : Math.max(0, contador.get());
+	}
+
+	/**
+	 * Visualizaciones todavía no volcadas de cada producto con alguna, en el momento de la llamada.
+	 */
+	@Override
+	public Map<String, Long> getPendientes() {
+		Map<String, Long> pendientes = new HashMap<>();
+		for (Map.Entry<String, AtomicLong> entrada : contadores.entrySet()) {
+			long valor = entrada.getValue().get();
+			if (valor > 0) {
+				pendientes.put(entrada.getKey(), valor);
+			}
+		}
+		return pendientes;
+	}
+
+	/**
+	 * Número de volcados empezados más terminados: impar mientras se vuelca. Si es par y no cambia entre dos
+	 * llamadas, entre ellas el destino no ha recibido visualizaciones de este contador.
+	 */
+	@Override
+	public long getSecuenciaVolcados() {
+		return secuenciaVolcados.get();
+	}
+
+	/**
+	 * Productos con contador (vistos desde el penúltimo volcado).
+	 */
+	public int getNumeroContadores() {
+		return contadores.size();
+	}
+
+	/**
+	 * Vuelca al destino todos los incrementos pendientes en una sola llamada.
+	 */
+	public synchronized void volcar() throws RepositorioException {
+		secuenciaVolcados.incrementAndGet();
+		try {
+			volcarPendientes();
+		} finally {
+			secuenciaVolcados.incrementAndGet();
+		}
+	}
+
+	private void volcarPendientes() throws RepositorioException {
+		Map<String, Long> incrementos = new HashMap<>();
+		for (Map.Entry<String, AtomicLong> entrada : contadores.entrySet()) {
+			AtomicLong contador = entrada.getValue();
+			long pendientes = contador.get();
+			if (pendientes > 0) {
+				// solo este método resta, así que el contador no baja de lo que llegue entre tanto
+				contador.addAndGet(-pendientes);
+				incrementos.put(entrada.getKey(), pendientes);
+			} else if (pendientes == 0 && contador.compareAndSet(0, RETIRADO)) {
+				contadores.remove(entrada.getKey(), contador);
+			}
+		}
+
+		if (incrementos.isEmpty()) {
+			return;
+		}
+
+		Collection<String> desconocidos;
+		try {
+			desconocidos = destino.volcar(incrementos);
+		} catch (RepositorioException | RuntimeException e) {
+			// se devuelven para el siguiente volcado
+			for (Map.Entry<String, Long> incremento : incrementos.entrySet()) {
+				sumar(incremento.getKey(), incremento.getValue());
+			}
+			throw e;
+		}
+		for (String productoId : desconocidos) {
+			AtomicLong contador = contadores.remove(productoId);
+			if (contador != null) {
+				contador.set(RETIRADO);
+			}
+			logger.warn("Se descartan {} visualizaciones del producto {}, que no existe", incrementos.get(productoId), productoId);
+		}
+	}
+
+	private void volcarPeriodico() {
+		try {
+			volcar();
+		} catch (Exception e) {
+			logger.error("Error al volcar las visualizaciones, se reintentará en el siguiente volcado", e);
+		}
+	}
+
+	/**
+	 * Detiene el volcado periódico y hace un último volcado de lo pendiente.
+	 */
+	@Override
+	public void close() {
+		planificador.shutdown();
+		try {
+			planificador.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		volcarPeriodico();
+	}
+}
@@ -0,0 +1,185 @@
+package stoneyspring.SegundUM.servicio.productos;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * Índice invertido en memoria sobre el título y la descripción de los productos.
+ * </p>
+ * <p>
+ * Los textos se dividen en términos (minúsculas, sin tildes, sólo letras y dígitos).
+ * Cada término apunta a los productos que lo contienen y a cuántas veces aparece; las apariciones
+ * en el título cuentan {@value #PESO_TITULO} veces.
+ * </p>
+ * <p>
+ * Una consulta devuelve los productos que contienen todos sus términos, ordenados por
+ * relevancia según BM25 (k1 = {@value #K1}, b = {@value #B}).
+ * </p>
+ * Admite lecturas concurrentes; las escrituras son exclusivas.
+ */
+public class IndiceProductos {
+
+	private static final double K1 = 1.2;
+	private static final double B = 0.75;
+	private static final int PESO_TITULO = 2;
+
+	private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+	private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+	/** término -> (id de producto -> frecuencia) */
+	private final Map<String, Map<String, Integer>> terminos = new HashMap<>();
+	/** id de producto -> (término -> frecuencia), para poder quitarlo del índice */
+	private final Map<String, Map<String, Integer>> productos = new HashMap<>();
+	/** id de producto -> número de términos (con repeticiones y peso) */
+	private final Map<String, Integer> longitudes = new HashMap<>();
+	private long longitudTotal;
+
+	private final ReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+	/**
+	 * Divide el texto en términos normalizados.
+	 */
+	static List<String> tokenizar(String texto) {
+		List<String> tokens = new ArrayList<>();
+		if (texto == null) {
+			return tokens;
+		}
+		String normalizado = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+		for (String token : SEPARADORES.split(normalizado.toLowerCase())) {
+			if (!token.isEmpty()) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Añade el producto al índice, sustituyendo sus textos anteriores si ya estaba.
+	 */
+	public void indexar(String id, String titulo, String descripcion) {
+		Map<String, Integer> frecuencias = new HashMap<>();
+		for (String token : tokenizar(titulo)) {
+			frecuencias.merge(token, PESO_TITULO, Integer::sum);
+		}
+		for (String token : tokenizar(descripcion)) {
+			frecuencias.merge(token, 1, Integer::sum);
+		}
+
+		cerrojo.writeLock().lock();
+		try {
+			quitar(id);
+			productos.put(id, frecuencias);
+			int longitud = 0;
+			for (Map.Entry<String, Integer> frecuencia : frecuencias.entrySet()) {
+				terminos.computeIfAbsent(frecuencia.getKey(), t -> new HashMap<>())
+						.put(id, frecuencia.getValue());
+				longitud += frecuencia.getValue();
+			}
+			longitudes.put(id, longitud);
+			longitudTotal += longitud;
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Quita el producto del índice.
+	 */
+	public void eliminar(String id) {
+		cerrojo.writeLock().lock();
+		try {
+			quitar(id);
+		} finally {
+			cerrojo.writeLock().unlock();
+		}
+	}
+
+	private void quitar(String id) {
+		Map<String, Integer> anteriores = productos.remove(id);
+		if (anteriores == null) {
+			return;
+		}
+		for (Map.Entry<String, Integer> frecuencia : anteriores.entrySet()) {
+			Map<String, Integer> apariciones = terminos.get(frecuencia.getKey());
+			apariciones.remove(id);
+			if (apariciones.isEmpty()) {
+				terminos.remove(frecuencia.getKey());
+			}
+		}
+		longitudTotal -= longitudes.remove(id);
+	}
+
+	/**
+	 * Ids de los productos que contienen todos los términos de la consulta, de más a menos relevante.
+	 * Si la consulta no tiene términos se devuelve una lista vacía.
+	 */
+	public List<String> buscar(String consulta) {
+		List<String> consultaTokens = tokenizar(consulta);
+		if (consultaTokens.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		cerrojo.readLock().lock();
+		try {
+			// se empieza por el término menos frecuente para que la intersección sea lo más pequeña posible
+			List<Map<String, Integer>> listas = new ArrayList<>();
+			for (String token : new LinkedHashSet<>(consultaTokens)) {
+				Map<String, Integer> apariciones = terminos.get(token);
+				if (apariciones == null) {
+					return Collections.emptyList();
+				}
+				listas.add(apariciones);
+			}
+			listas.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+			int n = productos.size();
+			double longitudMedia = (double) longitudTotal / n;
+
+			Map<String, Double> puntuaciones = new HashMap<>();
+			for (String id : listas.get(0).keySet()) {
+				double puntuacion = 0;
+				double normalizacion = K1 * (1 - B + B * longitudes.get(id) / longitudMedia);
+				for (Map<String, Integer> apariciones : listas) {
+					Integer tf = apariciones.get(id);
+					if (tf == null) {
+						puntuacion = -1;
+						break;
+					}
+					int df = apariciones.size();
+					double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+					puntuacion += idf * tf * (K1 + 1) / (tf + normalizacion);
+				}
+				if (puntuacion >= 0) {
+					puntuaciones.put(id, puntuacion);
+				}
+			}
+
+			List<String> ids = new ArrayList<>(puntuaciones.keySet());
+			ids.sort((a, b) -> Double.compare(puntuaciones.get(b), puntuaciones.get(a)));
+			return ids;
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Número de productos indexados.
+	 */
+	public int getNumeroProductos() {
+		cerrojo.readLock().lock();
+		try {
+			return productos.size();
+		} finally {
+			cerrojo.readLock().unlock();
+		}
+	}
+}
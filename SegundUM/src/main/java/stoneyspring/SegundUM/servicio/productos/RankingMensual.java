@@ -0,0 +1,547 @@
+package stoneyspring.SegundUM.servicio.productos;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos.ConsumidorResumenes;
+
+/**
+ * <p>
+ * Ranking por visualizaciones de los productos de cada mes, en memoria, del mes entero y de cada vendedor del mes.
+ * Los N más vistos se leen recorriendo los N primeros de un conjunto ordenado, sin consultar la base de datos.
+ * </p>
+ * <p>
+ * Un mes se carga de la base de datos la primera vez que se pide, sumando a cada producto sus visualizaciones
+ * pendientes de volcar, y desde entonces se mantiene con las altas ({@link #anadir(ResumenProducto, String)}),
+ * las visualizaciones ({@link #incrementar(String)}) y los cambios de precio. Cada mes tiene todos sus productos,
+ * no sólo los primeros, porque cualquiera puede subir al ranking con una visualización. Como mucho se tienen
+ * <i>maximoMeses</i> meses; al pasarse se descarta el usado hace más tiempo.
+ * </p>
+ * <p>
+ * Las visualizaciones no bloquean: se acumulan en un contador de cada producto, y el producto se apunta en una cola
+ * de su mes la primera vez. El mes se reordena con lo acumulado, de una vez, cuando se lee.
+ * </p>
+ * <p>
+ * La carga se hace fuera del monitor del ranking: la hace el primero que pide el mes y los demás esperan a su
+ * resultado, mientras las altas y las consultas de otros meses siguen. Tampoco bloquea los volcados de
+ * visualizaciones: lo pendiente se suma de una instantánea tomada al terminar de leer. Si un volcado se cruza
+ * con la lectura, las visualizaciones volcadas de filas ya leídas faltan hasta que se reconcilie el mes.
+ * </p>
+ * Lo que cambie por otras vías (otra instancia de la aplicación, otro cliente de la base de datos) no se ve hasta
+ * la reconciliación periódica, que vuelve a leer de la base de datos el mes en curso, los que han tenido
+ * actividad o una lectura cruzada con un volcado desde la anterior, y el que lleva más tiempo sin reconciliarse,
+ * y corrige sus productos sin sustituir el mes. Las visualizaciones que llegan mientras se lee un mes pueden
+ * faltar en él hasta la siguiente reconciliación.
+ */
+public class RankingMensual implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RankingMensual.class);
+
+	/**
+	 * Origen de los productos de un mes: normalmente {@link RepositorioProductos#recorrerHistorialMes}.
+	 */
+	@FunctionalInterface
+	public interface Fuente {
+		void recorrer(int mes, int anio, ConsumidorResumenes consumidor) throws RepositorioException;
+	}
+
+	/**
+	 * Visualizaciones que aún no están en la fuente: normalmente {@link ContadorVisualizaciones}.
+	 */
+	public interface Pendientes {
+
+		/** Sin visualizaciones pendientes: la fuente las tiene todas. */
+		Pendientes NINGUNA = new Pendientes() {
+			@Override
+			public Map<String, Long> getPendientes() {
+				return Collections.emptyMap();
+			}
+
+			@Override
+			public long getSecuenciaVolcados() {
+				return 0;
+			}
+		};
+
+		/** Visualizaciones pendientes de cada producto con alguna, en el momento de la llamada. */
+		Map<String, Long> getPendientes();
+
+		/** Cambia con cada volcado a la fuente y es impar mientras hay uno en curso. */
+		long getSecuenciaVolcados();
+	}
+
+	/** Más vistos primero; a igualdad, por id para que el orden sea total. */
+	private static final Comparator<Entrada> ORDEN = (a, b) -> a.visualizaciones != b.visualizaciones
+			? Long.compare(b.visualizaciones, a.visualizaciones)
+			: a.resumen.getId().compareTo(b.resumen.getId());
+
+	/**
+	 * Un producto de un mes. Sus visualizaciones y su precio se protegen con el monitor de su mes, salvo las nuevas,
+	 * que se acumulan sin bloquear hasta que se ordena el mes.
+	 */
+	private static class Entrada {
+		final Mes mes;
+		final String emailVendedor;
+		/** Instante ({@link System#nanoTime()}) de la alta si se ha añadido con {@link #anadir}, o 0 si se ha cargado. */
+		final long alta;
+		ResumenProducto resumen;
+		long visualizaciones;
+		/** Visualizaciones todavía sin ordenar; si no es 0, la entrada está en la cola de su mes. */
+		final AtomicLong nuevas = new AtomicLong();
+
+		Entrada(Mes mes, ResumenProducto resumen, String emailVendedor, long visualizaciones, long alta) {
+			this.mes = mes;
+			this.resumen = resumen;
+			this.emailVendedor = emailVendedor;
+			this.visualizaciones = visualizaciones;
+			this.alta = alta;
+		}
+
+		ResumenProducto getResumen() {
+			return new ResumenProducto(resumen.getId(), resumen.getTitulo(), resumen.getPrecio(),
+					resumen.getFechaPublicacion(), resumen.getNombreCategoria(),
+					(int) Math.min(visualizaciones, Integer.MAX_VALUE));
+		}
+	}
+
+	/**
+	 * Los productos de un mes, ordenados, y los de cada vendedor.
+	 */
+	private static class Mes {
+		final TreeSet<Entrada> todos = new TreeSet<>(ORDEN);
+		final Map<String, TreeSet<Entrada>> porVendedor = new HashMap<>();
+		/** Descartado: sus entradas ya no se mantienen. */
+		boolean descartado;
+		/** Con altas, visualizaciones o cambios de precio, o leído con un volcado en curso, desde que se reconcilió. */
+		volatile boolean activo;
+		/** Instante ({@link System#nanoTime()}) en que se leyó de la fuente por última vez. */
+		long leido;
+		/** Entradas con visualizaciones nuevas, cada una una vez. */
+		final Queue<Entrada> sinOrdenar = new ConcurrentLinkedQueue<>();
+
+		void poner(Entrada entrada) {
+			todos.add(entrada);
+			porVendedor.computeIfAbsent(entrada.emailVendedor, email -> new TreeSet<>(ORDEN)).add(entrada);
+		}
+
+		void quitar(Entrada entrada) {
+			todos.remove(entrada);
+			porVendedor.get(entrada.emailVendedor).remove(entrada);
+		}
+
+		/**
+		 * Pasa a las entradas sus visualizaciones nuevas y las recoloca. Con el monitor del mes.
+		 */
+		void ordenar() {
+			Entrada entrada;
+			while ((entrada = sinOrdenar.poll()) != null) {
+				// a partir de aquí, la primera visualización nueva vuelve a apuntar la entrada
+				long nuevas = entrada.nuevas.getAndSet(0);
+				// la posición depende de las visualizaciones: se saca, se cambia y se vuelve a poner; si ya no está
+				// en el mes (la ha quitado una reconciliación), se descartan
+				if (nuevas > 0 && todos.remove(entrada)) {
+					porVendedor.get(entrada.emailVendedor).remove(entrada);
+					entrada.visualizaciones += nuevas;
+					poner(entrada);
+				}
+			}
+		}
+
+		synchronized List<ResumenProducto> primeros(String emailVendedor, int limite) {
+			ordenar();
+			TreeSet<Entrada> ranking = emailVendedor == null ? todos : porVendedor.get(emailVendedor);
+			if (ranking == null) {
+				return new ArrayList<>();
+			}
+			List<ResumenProducto> primeros = new ArrayList<>(Math.min(limite, ranking.size()));
+			Iterator<Entrada> it = ranking.iterator();
+			while (primeros.size() < limite && it.hasNext()) {
+				primeros.add(it.next().getResumen());
+			}
+			return primeros;
+		}
+	}
+
+	/**
+	 * Un mes que se está cargando: su resultado, para quien lo pida mientras tanto, y las altas que recibe.
+	 */
+	private static class Carga {
+		final CompletableFuture<Mes> mes = new CompletableFuture<>();
+		final List<Entrada> altas = new ArrayList<>();
+	}
+
+	private final Fuente fuente;
+	private final Pendientes pendientes;
+	private final int maximoMeses;
+
+	/** Meses cargados, del usado hace más tiempo al último. Protegido con el monitor del ranking. */
+	private final LinkedHashMap<YearMonth, Mes> meses = new LinkedHashMap<>(16, 0.75f, true);
+
+	/** Meses que se están cargando. Protegido con el monitor del ranking. */
+	private final Map<YearMonth, Carga> cargas = new HashMap<>();
+
+	/** Entrada de cada producto de los meses cargados, para las visualizaciones sin pasar por el monitor. */
+	private final ConcurrentMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService planificador;
+
+	/**
+	 * @param fuente De donde se cargan los meses
+	 * @param pendientes Visualizaciones que aún no están en la fuente
+	 * @param maximoMeses Meses que se tienen en memoria como mucho
+	 * @param periodoReconciliacionMs Cada cuánto se reconcilian con la fuente los meses activos
+	 */
+	public RankingMensual(Fuente fuente, Pendientes pendientes, int maximoMeses,
+			long periodoReconciliacionMs) {
+		this.fuente = fuente;
+		this.pendientes = pendientes;
+		this.maximoMeses = maximoMeses;
+		this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread hilo = new Thread(r, "reconciliacion-ranking");
+			hilo.setDaemon(true);
+			return hilo;
+		});
+		this.planificador.scheduleWithFixedDelay(this::reconciliarPeriodico, periodoReconciliacionMs,
+				periodoReconciliacionMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Los <i>limite</i> productos más vistos del mes, del vendedor si se indica su email (puede ser null).
+	 * Carga el mes si no lo estaba.
+	 */
+	public List<ResumenProducto> primeros(int mes, int anio, String emailVendedor, int limite)
+			throws RepositorioException {
+		return getMes(YearMonth.of(anio, mes)).primeros(emailVendedor, limite);
+	}
+
+	/**
+	 * Añade un producto recién publicado, si su mes está cargado y no lo tiene ya (lo habrá leído al cargarse).
+	 * Si el mes se está cargando, lo añade al terminar la carga si no lo ha leído.
+	 */
+	public synchronized void anadir(ResumenProducto resumen, String emailVendedor) {
+		YearMonth clave = YearMonth.from(resumen.getFechaPublicacion());
+		long visualizaciones = resumen.getVisualizaciones() == null ? 0 : resumen.getVisualizaciones();
+		Mes mes = meses.get(clave);
+		if (mes == null) {
+			Carga carga = cargas.get(clave);
+			if (carga != null) {
+				// sin mes todavía: al terminar la carga se pone en una entrada del mes cargado
+				carga.altas.add(new Entrada(null, resumen, emailVendedor, visualizaciones, System.nanoTime()));
+			}
+			return;
+		}
+		synchronized (mes) {
+			if (entradas.containsKey(resumen.getId())) {
+				return;
+			}
+			Entrada entrada = new Entrada(mes, resumen, emailVendedor, visualizaciones, System.nanoTime());
+			mes.poner(entrada);
+			mes.activo = true;
+			entradas.put(resumen.getId(), entrada);
+		}
+	}
+
+	/**
+	 * Suma una visualización al producto, si su mes está cargado (si no, la leerá al cargarse).
+	 */
+	public void incrementar(String productoId) {
+		Entrada entrada = entradas.get(productoId);
+		if (entrada == null) {
+			return;
+		}
+		Mes mes = entrada.mes;
+		// sin el monitor del mes: solo la primera desde que se ordenó apunta la entrada para ordenarla
+		if (entrada.nuevas.getAndIncrement() == 0) {
+			mes.sinOrdenar.add(entrada);
+		}
+		if (!mes.activo) {
+			mes.activo = true;
+		}
+	}
+
+	/**
+	 * Cambia el precio que se devuelve en el resumen del producto, si su mes está cargado.
+	 */
+	public void actualizarPrecio(String productoId, BigDecimal precio) {
+		Entrada entrada = entradas.get(productoId);
+		if (entrada == null) {
+			return;
+		}
+		synchronized (entrada.mes) {
+			ResumenProducto resumen = entrada.resumen;
+			entrada.resumen = new ResumenProducto(resumen.getId(), resumen.getTitulo(), precio,
+					resumen.getFechaPublicacion(), resumen.getNombreCategoria(), resumen.getVisualizaciones());
+			entrada.mes.activo = true;
+		}
+	}
+
+	/**
+	 * Vuelve a leer de la fuente todos los meses cargados y corrige los de memoria.
+	 *
+	 * @return Productos cuyas visualizaciones no coincidían, o que sobraban o faltaban en memoria
+	 */
+	public int reconciliar() throws RepositorioException {
+		Map<YearMonth, Mes> cargados;
+		synchronized (this) {
+			// copiar el mapa no cambia el orden de uso, a diferencia de get()
+			cargados = new LinkedHashMap<>(meses);
+		}
+		return reconciliar(cargados);
+	}
+
+	/**
+	 * Reconcilia los meses con los que puede haber diferencias: el mes en curso, que es el que recibe altas de
+	 * otras instancias, los activos desde la anterior reconciliación y, para que con el tiempo se repasen todos,
+	 * el que lleva más tiempo sin leerse de la fuente.
+	 */
+	private int reconciliarActivos() throws RepositorioException {
+		YearMonth actual = YearMonth.now();
+		Map<YearMonth, Mes> activos = new LinkedHashMap<>();
+		Map.Entry<YearMonth, Mes> masAntiguo = null;
+		synchronized (this) {
+			for (Map.Entry<YearMonth, Mes> entrada : meses.entrySet()) {
+				Mes mes = entrada.getValue();
+				synchronized (mes) {
+					if (entrada.getKey().equals(actual) || mes.activo) {
+						activos.put(entrada.getKey(), mes);
+					} else if (masAntiguo == null || mes.leido - masAntiguo.getValue().leido < 0) {
+						masAntiguo = entrada;
+					}
+				}
+			}
+			if (masAntiguo != null) {
+				activos.put(masAntiguo.getKey(), masAntiguo.getValue());
+			}
+		}
+		return reconciliar(activos);
+	}
+
+	private int reconciliar(Map<YearMonth, Mes> aReconciliar) throws RepositorioException {
+		int diferencias = 0;
+		for (Map.Entry<YearMonth, Mes> entrada : aReconciliar.entrySet()) {
+			long inicio = System.nanoTime();
+			Mes leido = cargar(entrada.getKey());
+			diferencias += corregir(entrada.getValue(), leido, inicio);
+		}
+		return diferencias;
+	}
+
+	/**
+	 * Pone en el mes de memoria las visualizaciones y los resúmenes leídos, añade los productos que le faltan y
+	 * quita los que sobran, salvo los añadidos desde <i>inicio</i>, que la lectura puede no haber visto.
+	 *
+	 * @return Productos cuyas visualizaciones no coincidían, o que sobraban o faltaban
+	 */
+	private int corregir(Mes mes, Mes leido, long inicio) {
+		Map<String, Entrada> leidas = new HashMap<>();
+		for (Entrada entrada : leido.todos) {
+			leidas.put(entrada.resumen.getId(), entrada);
+		}
+		synchronized (mes) {
+			if (mes.descartado) {
+				return 0;
+			}
+			mes.ordenar();
+			int diferencias = 0;
+			for (Entrada entrada : new ArrayList<>(mes.todos)) {
+				Entrada leida = leidas.remove(entrada.resumen.getId());
+				if (leida == null) {
+					if (entrada.alta == 0 || entrada.alta - inicio < 0) {
+						mes.quitar(entrada);
+						entradas.remove(entrada.resumen.getId(), entrada);
+						diferencias++;
+					}
+					continue;
+				}
+				if (leida.visualizaciones != entrada.visualizaciones) {
+					diferencias++;
+				}
+				mes.quitar(entrada);
+				entrada.visualizaciones = leida.visualizaciones;
+				entrada.resumen = leida.resumen;
+				mes.poner(entrada);
+			}
+			for (Entrada leida : leidas.values()) {
+				Entrada entrada = new Entrada(mes, leida.resumen, leida.emailVendedor, leida.visualizaciones, 0);
+				mes.poner(entrada);
+				entradas.put(entrada.resumen.getId(), entrada);
+				diferencias++;
+			}
+			mes.activo = leido.activo;
+			mes.leido = leido.leido;
+			return diferencias;
+		}
+	}
+
+	private void reconciliarPeriodico() {
+		try {
+			long inicio = System.nanoTime();
+			int diferencias = reconciliarActivos();
+			logger.info("Ranking mensual reconciliado: {} productos corregidos en {} ms", diferencias,
+					(System.nanoTime() - inicio) / 1_000_000);
+		} catch (Exception e) {
+			logger.error("Error al reconciliar el ranking mensual, se reintentará en la siguiente", e);
+		}
+	}
+
+	/**
+	 * El mes, cargándolo si no lo estaba. Solo lo carga el primero que lo pide, fuera del monitor del ranking;
+	 * los que lo piden mientras tanto esperan a esa carga, y las altas del mes se guardan para añadirlas al final.
+	 */
+	private Mes getMes(YearMonth clave) throws RepositorioException {
+		Carga carga;
+		boolean propia = false;
+		synchronized (this) {
+			Mes mes = meses.get(clave);
+			if (mes != null) {
+				return mes;
+			}
+			carga = cargas.get(clave);
+			if (carga == null) {
+				carga = new Carga();
+				cargas.put(clave, carga);
+				propia = true;
+			}
+		}
+		if (!propia) {
+			return esperar(carga.mes);
+		}
+
+		long inicio = System.nanoTime();
+		Mes mes;
+		try {
+			mes = cargar(clave);
+		} catch (RepositorioException | RuntimeException e) {
+			synchronized (this) {
+				cargas.remove(clave);
+			}
+			carga.mes.completeExceptionally(e);
+			throw e;
+		}
+		synchronized (this) {
+			cargas.remove(clave);
+			if (!carga.altas.isEmpty()) {
+				Set<String> leidos = new HashSet<>();
+				for (Entrada entrada : mes.todos) {
+					leidos.add(entrada.resumen.getId());
+				}
+				for (Entrada alta : carga.altas) {
+					if (leidos.add(alta.resumen.getId())) {
+						mes.poner(new Entrada(mes, alta.resumen, alta.emailVendedor, alta.visualizaciones, alta.alta));
+					}
+				}
+			}
+			meses.put(clave, mes);
+			registrar(mes);
+			descartarAntiguos();
+		}
+		carga.mes.complete(mes);
+		logger.info("Ranking de {} cargado: {} productos en {} ms", clave, mes.todos.size(),
+				(System.nanoTime() - inicio) / 1_000_000);
+		return mes;
+	}
+
+	/**
+	 * Espera a la carga que hace otro hilo y lanza su misma excepción si falla.
+	 */
+	private static Mes esperar(CompletableFuture<Mes> carga) throws RepositorioException {
+		try {
+			return carga.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RepositorioException) {
+				throw (RepositorioException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Lee el mes de la fuente y suma a cada producto sus visualizaciones pendientes, de una instantánea tomada
+	 * al terminar la lectura. Si un volcado se ha cruzado con ella, el mes se marca como activo para que la
+	 * siguiente reconciliación lo vuelva a leer.
+	 */
+	private Mes cargar(YearMonth clave) throws RepositorioException {
+		long secuencia = pendientes.getSecuenciaVolcados();
+		Mes mes = new Mes();
+		mes.leido = System.nanoTime();
+		List<Entrada> leidas = new ArrayList<>();
+		fuente.recorrer(clave.getMonthValue(), clave.getYear(), (resumen, emailVendedor) -> {
+			long visualizaciones = resumen.getVisualizaciones() == null ? 0 : resumen.getVisualizaciones();
+			leidas.add(new Entrada(mes, resumen, emailVendedor, visualizaciones, 0));
+		});
+		Map<String, Long> pendientesAhora = pendientes.getPendientes();
+		mes.activo = secuencia % 2 != 0 || pendientes.getSecuenciaVolcados() != secuencia;
+
+		// se ponen después de sumar lo pendiente, porque su posición depende de las visualizaciones
+		for (Entrada entrada : leidas) {
+			Long pendiente = pendientesAhora.get(entrada.resumen.getId());
+			if (pendiente != null) {
+				entrada.visualizaciones += pendiente;
+			}
+			mes.poner(entrada);
+		}
+		return mes;
+	}
+
+	private void registrar(Mes mes) {
+		for (Entrada entrada : mes.todos) {
+			entradas.put(entrada.resumen.getId(), entrada);
+		}
+	}
+
+	private void descartarAntiguos() {
+		Iterator<Mes> it = meses.values().iterator();
+		while (meses.size() > maximoMeses && it.hasNext()) {
+			Mes mes = it.next();
+			it.remove();
+			synchronized (mes) {
+				mes.descartado = true;
+				for (Entrada entrada : mes.todos) {
+					entradas.remove(entrada.resumen.getId(), entrada);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Meses cargados.
+	 */
+	public synchronized List<YearMonth> getMeses() {
+		return Collections.unmodifiableList(new ArrayList<>(meses.keySet()));
+	}
+
+	/**
+	 * Detiene la reconciliación periódica.
+	 */
+	@Override
+	public void close() {
+		planificador.shutdownNow();
+	}
+}
@@ -1,11 +1,15 @@
 package stoneyspring.SegundUM.servicio.productos;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 import stoneyspring.SegundUM.dominio.EstadoProducto;
 import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
 import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.repositorio.Pagina;
 import stoneyspring.SegundUM.servicio.ServicioException;
 
 /**
@@ -32,21 +36,72 @@ public interface ServicioProductos {
 
     /**
      * Incrementa en 1 el contador de visualizaciones.
+     * El incremento se acumula en memoria y se escribe en el siguiente volcado periódico. Si el producto no tenía
+     * visualizaciones pendientes se comprueba antes que existe; si no existe se lanza ServicioException.
      */
     void anadirVisualizacion(String productoId) throws ServicioException;
 
     /**
-     * Historial del mes de un vendedor: devuelve resumen ordenado por visualizaciones (desc).
+     * Historial del mes de un vendedor: devuelve el resumen de sus productos más vistos, ordenado por visualizaciones (desc).
+     * Se lee del ranking en memoria del mes, que se carga de la base de datos la primera vez.
      */
     List<ResumenProducto> historialMesVendedor(int mes, int anio, String emailVendedor) throws ServicioException;
     
     /**
-     * Historial del mes de: devuelve resumen ordenado por visualizaciones (desc).
+     * Historial del mes: devuelve el resumen de los productos más vistos, ordenado por visualizaciones (desc).
+     * Se lee del ranking en memoria del mes, que se carga de la base de datos la primera vez.
      */
     List<ResumenProducto> historialMes(int mes, int anio) throws ServicioException;
+    
+    /**
+     * Los <i>limite</i> productos más vistos del mes, de un vendedor si se indica su email (puede ser null).
+     */
+    List<ResumenProducto> masVistosMes(int mes, int anio, String emailVendedor, int limite) throws ServicioException;
+    
+    /**
+     * Vuelve a cargar de la base de datos los meses del ranking de visualizaciones, corrigiendo lo que no se haya
+     * registrado a través de este servicio. También se hace periódicamente.
+     *
+     * @return Productos cuyos datos en el ranking no coincidían con la base de datos
+     */
+    int reconciliarHistorial() throws ServicioException;
 
     /**
      * Buscar productos con los criterios opcionales.
+     * El texto se busca por palabras (sin distinguir mayúsculas ni tildes) en el título y la descripción;
+     * deben aparecer todas y los resultados se ordenan por relevancia.
      */
     List<Producto> buscarProductos(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo) throws ServicioException;
+
+    /**
+     * Búsqueda paginada con los mismos criterios que {@link #buscarProductos(String, String, EstadoProducto, BigDecimal)}.
+     * Sin texto, los productos van del más reciente al más antiguo; con texto, por relevancia.
+     * El cursor es el de la página anterior (nulo para la primera).
+     */
+    Pagina<Producto> buscarProductos(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo,
+                                     String cursor, int tamano) throws ServicioException;
+
+    /**
+     * Entrega al consumidor, uno a uno, los productos de la búsqueda sin tenerlos todos en memoria.
+     */
+    void recorrerProductos(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo,
+                           Consumer<? super Producto> consumidor) throws ServicioException;
+
+    /**
+     * Productos con lugar de recogida a <i>radioKm</i> o menos del punto, del más cercano al más lejano,
+     * con los filtros opcionales de categoría, estado mínimo y precio máximo.
+     */
+    List<ProductoCercano> buscarCercanos(double latitud, double longitud, double radioKm, String categoriaId,
+                                         EstadoProducto estadoMinimo, BigDecimal precioMaximo) throws ServicioException;
+
+    /**
+     * Productos de un vendedor, paginados del más reciente al más antiguo.
+     */
+    Pagina<Producto> productosVendedor(String vendedorId, String cursor, int tamano) throws ServicioException;
+
+    /**
+     * Productos publicados entre dos fechas (incluidas), paginados del más reciente al más antiguo.
+     */
+    Pagina<Producto> productosPorFechas(LocalDateTime desde, LocalDateTime hasta, String cursor, int tamano)
+            throws ServicioException;
 }
\ No newline at end of file
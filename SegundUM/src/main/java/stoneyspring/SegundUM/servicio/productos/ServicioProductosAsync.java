@@ -0,0 +1,61 @@
+package stoneyspring.SegundUM.servicio.productos;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
+import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.repositorio.Pagina;
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
+
+/**
+ * Versión asíncrona de {@link ServicioProductos}: cada operación se ejecuta en {@link EjecutorServicios}
+ * y el futuro se completa con su resultado o con la ServicioException que lance.
+ * Se obtiene con {@code FactoriaServicios.getServicioAsync(ServicioProductosAsync.class)}.
+ */
+public interface ServicioProductosAsync {
+
+    CompletableFuture<String> altaProducto(String titulo, String descripcion, BigDecimal precio,
+                                           EstadoProducto estado, String categoriaId, boolean envioDisponible,
+                                           String vendedorId);
+
+    CompletableFuture<Void> asignarLugarRecogida(String productoId, String descripcion, Double longitud, Double latitud);
+
+    CompletableFuture<Void> modificarProducto(String productoId, BigDecimal nuevoPrecio, String nuevaDescripcion);
+
+    CompletableFuture<Void> anadirVisualizacion(String productoId);
+
+    CompletableFuture<List<ResumenProducto>> historialMesVendedor(int mes, int anio, String emailVendedor);
+
+    CompletableFuture<List<ResumenProducto>> historialMes(int mes, int anio);
+
+    CompletableFuture<List<ResumenProducto>> masVistosMes(int mes, int anio, String emailVendedor, int limite);
+
+    CompletableFuture<Integer> reconciliarHistorial();
+
+    CompletableFuture<List<Producto>> buscarProductos(String categoriaId, String texto, EstadoProducto estadoMinimo,
+                                                      BigDecimal precioMaximo);
+
+    CompletableFuture<Pagina<Producto>> buscarProductos(String categoriaId, String texto, EstadoProducto estadoMinimo,
+                                                        BigDecimal precioMaximo, String cursor, int tamano);
+
+    /**
+     * El consumidor recibe los productos en el hilo del ejecutor.
+     */
+    CompletableFuture<Void> recorrerProductos(String categoriaId, String texto, EstadoProducto estadoMinimo,
+                                              BigDecimal precioMaximo, Consumer<? super Producto> consumidor);
+
+    CompletableFuture<List<ProductoCercano>> buscarCercanos(double latitud, double longitud, double radioKm,
+                                                            String categoriaId, EstadoProducto estadoMinimo,
+                                                            BigDecimal precioMaximo);
+
+    CompletableFuture<Pagina<Producto>> productosVendedor(String vendedorId, String cursor, int tamano);
+
+    CompletableFuture<Pagina<Producto>> productosPorFechas(LocalDateTime desde, LocalDateTime hasta, String cursor,
+                                                           int tamano);
+}
@@ -1,25 +1,43 @@
 package stoneyspring.SegundUM.servicio.productos;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
 import stoneyspring.SegundUM.servicio.ServicioException;
 import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
 import stoneyspring.SegundUM.dominio.EstadoProducto;
 import stoneyspring.SegundUM.dominio.LugarRecogida;
 import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
 import stoneyspring.SegundUM.dominio.Usuario;
 import stoneyspring.SegundUM.dominio.ResumenProducto;
 import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.Pagina;
+import stoneyspring.SegundUM.repositorio.productos.FiltroProductos;
 import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
 import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
 import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.repositorio.estadisticas.RepositorioEstadisticas;
 import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.UnidadTrabajo;
+import stoneyspring.SegundUM.repositorio.ConflictoVersion;
 import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.utils.ContextoPersistencia;
+import stoneyspring.SegundUM.utils.Geohash;
 
 /**
  * Implementación del servicio de productos.
@@ -28,49 +46,162 @@ public class ServicioProductosImpl implements ServicioProductos {
 
 	private final Logger logger = LoggerFactory.getLogger(ServicioProductosImpl.class);
 	
+	/** Cada cuánto se escriben en la base de datos las visualizaciones acumuladas. */
+	private static final long PERIODO_VOLCADO_VISUALIZACIONES_MS = 1000;
+	
+	/** Candidatos del índice que se consultan de cada vez al recorrer una búsqueda por texto. */
+	private static final int TAMANO_TROZO_CANDIDATOS = 1000;
+	
+	/** Productos del historial de un mes: los más vistos. */
+	private static final int TAMANO_HISTORIAL = 20;
+	
+	/** Meses del ranking de visualizaciones que se tienen en memoria. */
+	private static final int MESES_RANKING = 12;
+	
+	/** Cada cuánto se reconcilian con la base de datos los meses activos del ranking de visualizaciones. */
+	private static final long PERIODO_RECONCILIACION_RANKING_MS = 5 * 60 * 1000;
+	
+	/** Intentos de una modificación de producto que choca con otra. */
+	private static final int INTENTOS_MODIFICACION = 3;
+	
     private final RepositorioProductos repositorioProductos;
     private final RepositorioCategorias repositorioCategorias;
     private final RepositorioUsuarios repositorioUsuarios;
+    private final RepositorioEstadisticas repositorioEstadisticas;
+    private final ContadorVisualizaciones contadorVisualizaciones;
+    private final RankingMensual rankingMensual;
+    
+    // Índice de texto de los productos: se carga en la primera búsqueda por texto
+    // y se mantiene con las altas y modificaciones hechas a través de este servicio
+    private final IndiceProductos indiceProductos = new IndiceProductos();
+    private volatile boolean indiceCargado;
 
     public ServicioProductosImpl() {
         this.repositorioProductos = FactoriaRepositorios.getRepositorio(Producto.class);
         this.repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
         this.repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        this.repositorioEstadisticas = FactoriaRepositorios.getRepositorio(EstadisticaMensual.class);
+        this.contadorVisualizaciones = new ContadorVisualizaciones(this::volcarVisualizaciones,
+                repositorioProductos::existe, PERIODO_VOLCADO_VISUALIZACIONES_MS);
+        // lo pendiente se vuelca al cerrar la aplicación
+        Runtime.getRuntime().addShutdownHook(new Thread(contadorVisualizaciones::close, "cierre-visualizaciones"));
+        // Los meses se leen sin bloquear los volcados: el ranking suma lo pendiente de una instantánea del contador
+        this.rankingMensual = new RankingMensual(repositorioProductos::recorrerHistorialMes, contadorVisualizaciones,
+                MESES_RANKING, PERIODO_RECONCILIACION_RANKING_MS);
     }
 
     @Override
     public String altaProducto(String titulo, String descripcion, BigDecimal precio, EstadoProducto estado,
                                String categoriaId, boolean envioDisponible, String vendedorId) throws ServicioException {
+        // Las comprobaciones de la categoría y del vendedor son independientes: se hacen a la vez, cada una con su
+        // contexto de persistencia, antes de abrir la unidad. Dentro de ella no, porque la unidad tiene reservado
+        // el EntityManager, y esperar a una consulta de otro hilo que pidiera otro podría dejar a los dos esperando
+        CompletableFuture<Categoria> busquedaCategoria = consultar(() -> {
+        	logger.info("Obteniendo categoría con ID: {}", categoriaId);
+            return repositorioCategorias.getById(categoriaId);
+        });
+        CompletableFuture<Usuario> busquedaVendedor = consultar(() -> {
+        	logger.info("Obteniendo vendedor con ID: {}", vendedorId);
+            return repositorioUsuarios.getById(vendedorId);
+        });
+
+        Producto p;
+        Categoria categoria;
+        Usuario vendedor;
         try {
-            // VERIFICACIÓN: Obtener categoría y verificar que existe
-            Categoria categoria;
+            // VERIFICACIÓN: Obtener categoría y verificar que existe (se comprueba antes que el vendedor)
             try {
-            	logger.info("Obteniendo categoría con ID: " + categoriaId);
-                categoria = repositorioCategorias.getById(categoriaId);
+                categoria = esperar(busquedaCategoria);
             } catch (EntidadNoEncontrada e) {
-            	logger.error("Categoría con ID " + categoriaId + " no encontrada", e);
+            	logger.error("Categoría con ID {} no encontrada", categoriaId, e);
                 throw new ServicioException("La categoría con ID " + categoriaId + " no existe en el sistema", e);
             }
 
             // VERIFICACIÓN: Obtener vendedor y verificar que existe
-            Usuario vendedor;
             try {
-            	logger.info("Obteniendo vendedor con ID: " + vendedorId);
-                vendedor = repositorioUsuarios.getById(vendedorId);
+                vendedor = esperar(busquedaVendedor);
             } catch (EntidadNoEncontrada e) {
-            	logger.error("Vendedor con ID " + vendedorId + " no encontrado", e);
+            	logger.error("Vendedor con ID {} no encontrado", vendedorId, e);
                 throw new ServicioException("El vendedor con ID " + vendedorId + " no existe en el sistema", e);
             }
 
-            String id = UUID.randomUUID().toString();
+            // El alta y su registro en las estadísticas comparten EntityManager y transacción
+            try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+                String id = UUID.randomUUID().toString();
 
-            Producto p = new Producto(id, titulo, descripcion, precio, estado, categoria, envioDisponible, vendedor);
+                // Referencias de la unidad: la categoría y el vendedor leídos son de otros contextos
+                p = new Producto(id, titulo, descripcion, precio, estado, repositorioCategorias.getReferencia(categoriaId),
+                        envioDisponible, repositorioUsuarios.getReferencia(vendedorId));
 
-            return repositorioProductos.add(p);
-        } catch (RepositorioException e) {
+                repositorioProductos.add(p);
+                // En la misma transacción: un cálculo del mes a la vez espera en la fila del mes o ve el producto
+                repositorioEstadisticas.registrarAlta(p);
+                unidad.confirmar();
+            }
+        } catch (EntidadNoEncontrada | RepositorioException e) {
         	logger.error("Error al dar de alta el producto", e);
             throw new ServicioException("Error al dar de alta el producto", e);
         }
+        actualizarIndice(p);
+        rankingMensual.anadir(new ResumenProducto(p.getId(), titulo, precio, p.getFechaPublicacion(),
+                categoria.getNombre(), 0), vendedor.getEmail());
+        return p.getId();
+    }
+
+    /**
+     * Lanza una consulta en {@link EjecutorServicios} con su propio contexto de persistencia.
+     */
+    private static <T> CompletableFuture<T> consultar(EjecutorServicios.Tarea<T> consulta) {
+        return EjecutorServicios.ejecutar(() -> {
+            // Sin try-with-resources: el contexto no se usa dentro del bloque, solo se cierra
+            ContextoPersistencia contexto = ContextoPersistencia.abrir();
+            try {
+                return consulta.ejecutar();
+            } finally {
+                contexto.close();
+            }
+        });
+    }
+
+    /**
+     * Espera a una consulta lanzada con {@link #consultar(EjecutorServicios.Tarea)} y relanza sus excepciones
+     * de repositorio.
+     */
+    private static <T> T esperar(CompletableFuture<T> consulta) throws RepositorioException, EntidadNoEncontrada {
+        try {
+            return consulta.join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof EntidadNoEncontrada) {
+                throw (EntidadNoEncontrada) causa;
+            }
+            if (causa instanceof RepositorioException) {
+                throw (RepositorioException) causa;
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw new RepositorioException("Error en una consulta en paralelo", causa);
+        }
+    }
+
+    /**
+     * Destino del contador de visualizaciones: los productos y las estadísticas de sus meses, en la misma transacción.
+     */
+    private Set<String> volcarVisualizaciones(Map<String, Long> incrementos) throws RepositorioException {
+        try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+            Set<String> desconocidos = repositorioProductos.incrementarVisualizaciones(incrementos);
+            if (!desconocidos.isEmpty()) {
+                incrementos = new HashMap<>(incrementos);
+                incrementos.keySet().removeAll(desconocidos);
+            }
+            repositorioEstadisticas.sumarVisualizaciones(incrementos);
+            unidad.confirmar();
+            return desconocidos;
+        }
     }
 
     @Override
@@ -82,51 +213,70 @@ public class ServicioProductosImpl implements ServicioProductos {
             repositorioProductos.update(p);
         } catch (EntidadNoEncontrada e) {
             // VERIFICACIÓN: El producto no existe
-        	logger.error("Producto con ID " + productoId + " no encontrado", e);
+        	logger.error("Producto con ID {} no encontrado", productoId, e);
             throw new ServicioException("El producto con ID " + productoId + " no existe en el sistema", e);
         } catch (RepositorioException e) {
-        	logger.error("Error al asignar lugar de recogida al producto " + productoId, e);
+        	logger.error("Error al asignar lugar de recogida al producto {}", productoId, e);
             throw new ServicioException("Error al asignar lugar de recogida al producto " + productoId, e);
         }
     }
 
     @Override
     public void modificarProducto(String productoId, BigDecimal nuevoPrecio, String nuevaDescripcion) throws ServicioException {
-        try {
-            Producto p = repositorioProductos.getById(productoId);
-            if (nuevoPrecio != null) p.setPrecio(nuevoPrecio);
-            if (nuevaDescripcion != null) p.setDescripcion(nuevaDescripcion);
-            repositorioProductos.update(p);
-        } catch (EntidadNoEncontrada e) {
-            // VERIFICACIÓN: el producto no existe
-        	logger.error("Producto con ID " + productoId + " no encontrado", e);
-            throw new ServicioException("El producto con ID " + productoId + " no existe en el sistema", e);
-        } catch (RepositorioException e) {
-        	logger.error("Error al modificar el producto " + productoId, e);
-            throw new ServicioException("Error al modificar producto " + productoId, e);
+        // Si el producto cambia entre la lectura y la escritura se vuelve a leer y se reintenta, cada vez en una
+        // unidad nueva. Dentro de la unidad de otro no: un conflicto deja su transacción para deshacer
+        int intentos = UnidadTrabajo.isActiva() ? 1 : INTENTOS_MODIFICACION;
+        for (int intento = 1; ; intento++) {
+            // El producto y las estadísticas de su mes cambian en la misma transacción
+            try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+                Producto p = repositorioProductos.getById(productoId);
+                BigDecimal precioAnterior = p.getPrecio();
+                if (nuevoPrecio != null) p.setPrecio(nuevoPrecio);
+                if (nuevaDescripcion != null) p.setDescripcion(nuevaDescripcion);
+                repositorioProductos.update(p);
+                if (nuevoPrecio != null) repositorioEstadisticas.registrarCambioPrecio(p, precioAnterior);
+                unidad.confirmar();
+                if (nuevaDescripcion != null) actualizarIndice(p);
+                if (nuevoPrecio != null) rankingMensual.actualizarPrecio(productoId, nuevoPrecio);
+                return;
+            } catch (ConflictoVersion e) {
+                if (intento == intentos) {
+                	logger.error("El producto {} ha cambiado en cada uno de los {} intentos de modificarlo", productoId, intentos, e);
+                    throw new ServicioException("El producto " + productoId + " ha cambiado mientras se modificaba", e);
+                }
+            	logger.debug("El producto {} ha cambiado mientras se modificaba, intento {} de {}", productoId, intento + 1, intentos);
+            } catch (EntidadNoEncontrada e) {
+                // VERIFICACIÓN: el producto no existe
+            	logger.error("Producto con ID {} no encontrado", productoId, e);
+                throw new ServicioException("El producto con ID " + productoId + " no existe en el sistema", e);
+            } catch (RepositorioException e) {
+            	logger.error("Error al modificar el producto {}", productoId, e);
+                throw new ServicioException("Error al modificar producto " + productoId, e);
+            }
         }
     }
 
     @Override
     public void anadirVisualizacion(String productoId) throws ServicioException {
+        if (productoId == null) {
+            throw new ServicioException("El ID del producto no puede ser nulo");
+        }
+        // se acumula y se vuelca periódicamente; solo la primera visualización desde el último volcado
+        // comprueba en la base de datos que el producto existe
         try {
-            Producto p = repositorioProductos.getById(productoId);
-            p.incrementarVisualizaciones();
-            repositorioProductos.update(p);
-        } catch (EntidadNoEncontrada e) {
-            // VERIFICACIÓN: el producto no existe
-        	logger.error("Producto con ID " + productoId + " no encontrado", e);
-            throw new ServicioException("El producto con ID " + productoId + " no existe en el sistema", e);
+            if (!contadorVisualizaciones.incrementar(productoId)) {
+                throw new ServicioException("El producto con ID " + productoId + " no existe en el sistema");
+            }
         } catch (RepositorioException e) {
-        	logger.error("Error al añadir visualización al producto " + productoId, e);
-            throw new ServicioException("Error al añadir visualización al producto " + productoId, e);
+            throw new ServicioException("Error al registrar la visualización del producto " + productoId, e);
         }
+        rankingMensual.incrementar(productoId);
     }
 
     @Override
     public List<ResumenProducto> historialMesVendedor(int mes, int anio, String emailVendedor) throws ServicioException {
         try {
-            return repositorioProductos.getHistorialMes(mes, anio, emailVendedor);
+            return rankingMensual.primeros(mes, anio, normalizarEmail(emailVendedor), TAMANO_HISTORIAL);
         } catch (RepositorioException e) {
             throw new ServicioException("Error al obtener historial del mes", e);
         }
@@ -135,8 +285,15 @@ public class ServicioProductosImpl implements ServicioProductos {
     @Override
     public List<Producto> buscarProductos(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo) throws ServicioException {
         try {
-        	logger.info("Buscando productos con filtros - Categoría ID: " + categoriaId + ", Texto: " + texto + ", Estado mínimo: " + estadoMinimo + ", Precio máximo: " + precioMaximo);
-            return repositorioProductos.buscarProductos(categoriaId, texto, estadoMinimo, precioMaximo);
+        	logger.info("Buscando productos con filtros - Categoría ID: {}, Texto: {}, Estado mínimo: {}, Precio máximo: {}", categoriaId, texto, estadoMinimo, precioMaximo);
+            if (texto == null || texto.trim().isEmpty()) {
+                return repositorioProductos.buscarProductos(categoriaId, texto, estadoMinimo, precioMaximo);
+            }
+            
+            // El texto se resuelve con el índice (título y descripción, ordenado por relevancia)
+            // y el resto de filtros con la base de datos, sólo sobre los candidatos
+            List<String> candidatos = getIndice().buscar(texto);
+            return enOrden(candidatos, repositorioProductos.buscarProductos(categoriaId, candidatos, estadoMinimo, precioMaximo));
         } catch (RepositorioException e) {
         	logger.error("Error buscando productos con los filtros proporcionados", e);
             throw new ServicioException("Error buscando productos", e);
@@ -146,9 +303,176 @@ public class ServicioProductosImpl implements ServicioProductos {
 	@Override
 	public List<ResumenProducto> historialMes(int mes, int anio) throws ServicioException {
 		try {
-            return repositorioProductos.getHistorialMes(mes, anio);
+            return rankingMensual.primeros(mes, anio, null, TAMANO_HISTORIAL);
         } catch (RepositorioException e) {
             throw new ServicioException("Error al obtener historial del mes", e);
         }
 	}
+
+    @Override
+    public List<ResumenProducto> masVistosMes(int mes, int anio, String emailVendedor, int limite) throws ServicioException {
+        if (limite <= 0) {
+            throw new ServicioException("El número de productos debe ser positivo: " + limite);
+        }
+        try {
+            return rankingMensual.primeros(mes, anio, normalizarEmail(emailVendedor), limite);
+        } catch (RepositorioException e) {
+            throw new ServicioException("Error al obtener los productos más vistos del mes", e);
+        }
+    }
+
+    @Override
+    public int reconciliarHistorial() throws ServicioException {
+        try {
+            return rankingMensual.reconciliar();
+        } catch (RepositorioException e) {
+            logger.error("Error al reconciliar el ranking mensual", e);
+            throw new ServicioException("Error al reconciliar el historial mensual", e);
+        }
+    }
+
+    /**
+     * Un email vacío es lo mismo que no indicarlo, como en el repositorio.
+     */
+    private static String normalizarEmail(String emailVendedor) {
+        return emailVendedor == null || emailVendedor.trim().isEmpty() ? null : emailVendedor;
+    }
+
+	private IndiceProductos getIndice() throws RepositorioException {
+		if (!indiceCargado) {
+			synchronized (indiceProductos) {
+				if (!indiceCargado) {
+					long inicio = System.nanoTime();
+					repositorioProductos.recorrerTextos(indiceProductos::indexar);
+					indiceCargado = true;
+					logger.info("Índice de productos cargado: {} productos en {} ms",
+							indiceProductos.getNumeroProductos(), (System.nanoTime() - inicio) / 1_000_000);
+				}
+			}
+		}
+		return indiceProductos;
+	}
+
+	/**
+	 * Actualiza el producto en el índice si ya está cargado (si no, se leerá al cargarlo).
+	 * Si hay una carga en curso se espera a que termine, para que no sobrescriba el texto nuevo con el leído antes.
+	 */
+	private void actualizarIndice(Producto p) {
+		synchronized (indiceProductos) {
+			if (indiceCargado) {
+				indiceProductos.indexar(p.getId(), p.getTitulo(), p.getDescripcion());
+			}
+		}
+	}
+
+    @Override
+    public Pagina<Producto> buscarProductos(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo,
+                                            String cursor, int tamano) throws ServicioException {
+        try {
+            if (texto == null || texto.trim().isEmpty()) {
+                return repositorioProductos.buscarPagina(
+                        FiltroProductos.busqueda(categoriaId, null, estadoMinimo, precioMaximo), cursor, tamano);
+            }
+            
+            // Con texto el orden es el de relevancia del índice y el cursor es la posición en esa lista del
+            // candidato siguiente al último mirado. Se piden a la base de datos trozos enteros de candidatos, para que
+            // con filtros que descartan muchos no haga falta una consulta por cada pocos productos, y de cada trozo
+            // se toman en orden los que caben en la página
+            List<String> candidatos = getIndice().buscar(texto);
+            int posicion = cursor == null ? 0 : Integer.parseInt(cursor);
+            List<Producto> productos = new ArrayList<>(tamano);
+            while (productos.size() < tamano && posicion < candidatos.size()) {
+                int fin = Math.min(posicion + TAMANO_TROZO_CANDIDATOS, candidatos.size());
+                Map<String, Producto> encontrados = new HashMap<>();
+                for (Producto producto : repositorioProductos.buscarProductos(categoriaId, candidatos.subList(posicion, fin),
+                        estadoMinimo, precioMaximo)) {
+                    encontrados.put(producto.getId(), producto);
+                }
+                while (productos.size() < tamano && posicion < fin) {
+                    Producto producto = encontrados.get(candidatos.get(posicion++));
+                    if (producto != null) {
+                        productos.add(producto);
+                    }
+                }
+            }
+            return new Pagina<>(productos, posicion < candidatos.size() ? String.valueOf(posicion) : null);
+        } catch (RepositorioException | IllegalArgumentException e) {
+            logger.error("Error buscando la página de productos tras {}", cursor, e);
+            throw new ServicioException("Error buscando productos", e);
+        }
+    }
+
+    @Override
+    public void recorrerProductos(String categoriaId, String texto, EstadoProducto estadoMinimo, BigDecimal precioMaximo,
+                                  Consumer<? super Producto> consumidor) throws ServicioException {
+        try {
+            if (texto == null || texto.trim().isEmpty()) {
+                repositorioProductos.recorrer(FiltroProductos.busqueda(categoriaId, null, estadoMinimo, precioMaximo), consumidor);
+                return;
+            }
+            
+            List<String> candidatos = getIndice().buscar(texto);
+            for (int i = 0; i < candidatos.size(); i += TAMANO_TROZO_CANDIDATOS) {
+                List<String> trozo = candidatos.subList(i, Math.min(i + TAMANO_TROZO_CANDIDATOS, candidatos.size()));
+                enOrden(trozo, repositorioProductos.buscarProductos(categoriaId, trozo, estadoMinimo, precioMaximo)).forEach(consumidor);
+            }
+        } catch (RepositorioException e) {
+            logger.error("Error recorriendo los productos con los filtros proporcionados", e);
+            throw new ServicioException("Error recorriendo productos", e);
+        }
+    }
+
+    @Override
+    public List<ProductoCercano> buscarCercanos(double latitud, double longitud, double radioKm, String categoriaId,
+                                                EstadoProducto estadoMinimo, BigDecimal precioMaximo) throws ServicioException {
+        if (!Geohash.validas(latitud, longitud)) {
+            throw new ServicioException("Coordenadas fuera de rango: " + latitud + ", " + longitud);
+        }
+        if (!(radioKm > 0)) {
+            throw new ServicioException("El radio debe ser positivo: " + radioKm);
+        }
+        try {
+            return repositorioProductos.buscarCercanos(latitud, longitud, radioKm,
+                    FiltroProductos.busqueda(categoriaId, null, estadoMinimo, precioMaximo));
+        } catch (RepositorioException e) {
+            logger.error("Error buscando productos a {} km de ({}, {})", radioKm, latitud, longitud, e);
+            throw new ServicioException("Error buscando productos cercanos", e);
+        }
+    }
+
+    @Override
+    public Pagina<Producto> productosVendedor(String vendedorId, String cursor, int tamano) throws ServicioException {
+        try {
+            return repositorioProductos.buscarPagina(FiltroProductos.porVendedor(vendedorId), cursor, tamano);
+        } catch (RepositorioException e) {
+            logger.error("Error obteniendo los productos del vendedor {}", vendedorId, e);
+            throw new ServicioException("Error obteniendo los productos del vendedor " + vendedorId, e);
+        }
+    }
+
+    @Override
+    public Pagina<Producto> productosPorFechas(LocalDateTime desde, LocalDateTime hasta, String cursor, int tamano)
+            throws ServicioException {
+        if (desde == null || hasta == null || desde.isAfter(hasta)) {
+            throw new ServicioException("Rango de fechas no válido: " + desde + " - " + hasta);
+        }
+        try {
+            return repositorioProductos.buscarPagina(FiltroProductos.porFechas(desde, hasta), cursor, tamano);
+        } catch (RepositorioException e) {
+            logger.error("Error obteniendo los productos publicados entre {} y {}", desde, hasta, e);
+            throw new ServicioException("Error obteniendo los productos publicados entre " + desde + " y " + hasta, e);
+        }
+    }
+
+    /**
+     * Ordena los productos según la posición de su id en la lista de candidatos del índice.
+     */
+    private List<Producto> enOrden(List<String> candidatos, List<Producto> productos) {
+        Map<String, Integer> posiciones = new HashMap<>();
+        for (int i = 0; i < candidatos.size(); i++) {
+            posiciones.put(candidatos.get(i), i);
+        }
+        productos.sort((a, b) -> Integer.compare(posiciones.get(a.getId()), posiciones.get(b.getId())));
+        return productos;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,207 @@
+package stoneyspring.SegundUM.servicio.usuarios;
+
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
+import stoneyspring.SegundUM.utils.FiltroBloom;
+
+/**
+ * <p>
+ * Filtro previo de los emails registrados: un {@link FiltroBloom} con el email de todos los usuarios, para que el
+ * alta de un email que seguro que es nuevo no tenga que consultarlo en la base de datos.
+ * </p>
+ * <p>
+ * Se construye recorriendo los emails del repositorio y se actualiza con cada alta. Mientras se construye no
+ * descarta nada (se consulta todo). Cuando tiene más emails que su capacidad (el doble de los usuarios que había
+ * al construirlo) se vuelve a construir en segundo plano, más grande, para que no suba la tasa de falsos positivos.
+ * </p>
+ * Las altas que no pasan por este filtro (las de otra instancia de la aplicación) no están en él: de esas avisa la
+ * restricción única del email al insertar.
+ */
+public class FiltroEmails {
+
+	private static final Logger logger = LoggerFactory.getLogger(FiltroEmails.class);
+
+	/** Capacidad mínima del filtro. */
+	private static final long CAPACIDAD_MINIMA = 1024;
+
+	private final RepositorioUsuarios repositorio;
+	private final double tasaFalsosPositivos;
+
+	/** El filtro en uso; null hasta que se construye el primero. */
+	private volatile FiltroBloom filtro;
+	/** El que se está construyendo, que también recibe las altas; null si no se construye ninguno. */
+	private volatile FiltroBloom enConstruccion;
+	private final AtomicBoolean construyendo = new AtomicBoolean();
+	private volatile long msConstruccion;
+
+	private final LongAdder descartados = new LongAdder();
+	private final LongAdder falsosPositivos = new LongAdder();
+
+	/**
+	 * Filtro de los emails del repositorio con la tasa de falsos positivos indicada cuando está lleno.
+	 * No se construye hasta llamar a {@link #construir()} o {@link #construirEnSegundoPlano()}.
+	 */
+	public FiltroEmails(RepositorioUsuarios repositorio, double tasaFalsosPositivos) {
+		this.repositorio = repositorio;
+		this.tasaFalsosPositivos = tasaFalsosPositivos;
+	}
+
+	/**
+	 * Si el email seguro que no está registrado. false si puede estarlo (o si el filtro no está construido):
+	 * entonces hay que consultarlo y, si resulta que no lo estaba, avisar con {@link #falsoPositivo()}.
+	 */
+	public boolean esNuevo(String email) {
+		FiltroBloom actual = filtro;
+		if (actual != null && !actual.puedeContener(clave(email))) {
+			descartados.increment();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Cuenta una consulta de un email que el filtro no descartó y que no estaba registrado.
+	 */
+	public void falsoPositivo() {
+		if (filtro != null) {
+			falsosPositivos.increment();
+		}
+	}
+
+	/**
+	 * Añade un email dado de alta. Hay que llamarlo también después de confirmar el alta: si se construye un filtro
+	 * a la vez, o lee la fila nueva o recibe aquí el email.
+	 */
+	public void registrar(String email) {
+		String clave = clave(email);
+		// Primero el que se construye: si ya no hay ninguno, el nuevo ya es el filtro en uso
+		FiltroBloom nuevo = enConstruccion;
+		if (nuevo != null) {
+			nuevo.anadir(clave);
+		}
+		FiltroBloom actual = filtro;
+		if (actual != null && actual.anadir(clave) && actual.getElementos() > actual.getCapacidad()) {
+			construirEnSegundoPlano();
+		}
+	}
+
+	/**
+	 * Construye el filtro recorriendo los emails del repositorio y lo pone en uso. No hace nada si ya se está
+	 * construyendo otro.
+	 */
+	public void construir() throws RepositorioException {
+		if (!construyendo.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			long inicio = System.nanoTime();
+			long capacidad = Math.max(CAPACIDAD_MINIMA, 2 * repositorio.getNumeroUsuarios());
+			FiltroBloom nuevo = new FiltroBloom(capacidad, tasaFalsosPositivos);
+			enConstruccion = nuevo;
+			repositorio.recorrerEmails((id, email) -> nuevo.anadir(clave(email)));
+			filtro = nuevo;
+			msConstruccion = (System.nanoTime() - inicio) / 1_000_000;
+			logger.info("Filtro de emails construido en {} ms: {}", msConstruccion, nuevo);
+		} finally {
+			enConstruccion = null;
+			construyendo.set(false);
+		}
+	}
+
+	/**
+	 * Construye el filtro en {@link EjecutorServicios}. Si falla se sigue con el anterior (o consultando todo).
+	 */
+	public CompletableFuture<Void> construirEnSegundoPlano() {
+		return EjecutorServicios.<Void>ejecutar(() -> {
+			construir();
+			return null;
+		}).whenComplete((r, e) -> {
+			if (e != null) {
+				logger.warn("No se ha podido construir el filtro de emails", e);
+			}
+		});
+	}
+
+	/**
+	 * Clave del email en el filtro: en minúsculas y sin espacios al final, porque la base de datos puede
+	 * compararlos así (las colaciones de MySQL por defecto). Dos emails que solo se diferencian en eso dan la misma
+	 * clave, así que el filtro nunca descarta uno que la base de datos considere repetido.
+	 */
+	private static String clave(String email) {
+		int fin = email.length();
+		while (fin > 0 && email.charAt(fin - 1) == ' ') {
+			fin--;
+		}
+		return email.substring(0, fin).toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Si hay un filtro en uso.
+	 */
+	public boolean isConstruido() {
+		return filtro != null;
+	}
+
+	/**
+	 * Altas que se han ahorrado la consulta del email.
+	 */
+	public long getDescartados() {
+		return descartados.sum();
+	}
+
+	/**
+	 * Consultas de emails nuevos que el filtro no descartó.
+	 */
+	public long getFalsosPositivos() {
+		return falsosPositivos.sum();
+	}
+
+	/**
+	 * Tasa de falsos positivos medida en las altas: de los emails nuevos, los que el filtro no descartó.
+	 */
+	public double getTasaFalsosPositivos() {
+		long falsos = getFalsosPositivos();
+		long total = falsos + getDescartados();
+		return total == 0 ? 0 : (double) falsos / total;
+	}
+
+	/**
+	 * Tasa de falsos positivos del filtro en uso según sus bits, o 1 si no hay ninguno.
+	 */
+	public double getTasaFalsosPositivosEstimada() {
+		FiltroBloom actual = filtro;
+		return actual == null ? 1 : actual.getTasaFalsosPositivosEstimada();
+	}
+
+	/**
+	 * Memoria del filtro en uso, en bytes.
+	 */
+	public long getBytes() {
+		FiltroBloom actual = filtro;
+		return actual == null ? 0 : actual.getBytes();
+	}
+
+	/**
+	 * Lo que tardó la última construcción, en milisegundos.
+	 */
+	public long getMsConstruccion() {
+		return msConstruccion;
+	}
+
+	@Override
+	public String toString() {
+		FiltroBloom actual = filtro;
+		return String.format("%s; %d consultas evitadas, %d falsos positivos (%.4f%%)",
+				actual != null ? actual : "sin construir", getDescartados(), getFalsosPositivos(),
+				getTasaFalsosPositivos() * 100);
+	}
+}
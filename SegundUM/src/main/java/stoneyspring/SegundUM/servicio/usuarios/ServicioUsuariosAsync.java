@@ -0,0 +1,20 @@
+package stoneyspring.SegundUM.servicio.usuarios;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
+
+/**
+ * Versión asíncrona de {@link ServicioUsuarios}: cada operación se ejecuta en {@link EjecutorServicios}
+ * y el futuro se completa con su resultado o con la ServicioException que lance.
+ * Se obtiene con {@code FactoriaServicios.getServicioAsync(ServicioUsuariosAsync.class)}.
+ */
+public interface ServicioUsuariosAsync {
+
+    CompletableFuture<String> altaUsuario(String email, String nombre, String apellidos, String clave,
+                                          LocalDate fechaNacimiento, String telefono);
+
+    CompletableFuture<Void> modificarUsuario(String usuarioId, String nombre, String apellidos, String clave,
+                                             LocalDate fechaNacimiento, String telefono);
+}
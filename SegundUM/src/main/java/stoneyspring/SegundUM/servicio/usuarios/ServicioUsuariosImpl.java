@@ -16,21 +16,33 @@ import org.slf4j.LoggerFactory;
 public class ServicioUsuariosImpl implements ServicioUsuarios {
 	private final Logger logger = LoggerFactory.getLogger(ServicioUsuariosImpl.class);
 
+    /** Tasa de falsos positivos del filtro de emails cuando está lleno. */
+    private static final double TASA_FALSOS_POSITIVOS_EMAILS = 0.01;
+
     private final RepositorioUsuarios repositorioUsuarios;
+    private final FiltroEmails filtroEmails;
 
     public ServicioUsuariosImpl() {
         this.repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        // Mientras se construye, las altas consultan el email como antes
+        this.filtroEmails = new FiltroEmails(repositorioUsuarios, TASA_FALSOS_POSITIVOS_EMAILS);
+        filtroEmails.construirEnSegundoPlano();
     }
 
     @Override
     public String altaUsuario(String email, String nombre, String apellidos, String clave,
                               LocalDate fechaNacimiento, String telefono) throws ServicioException {
         try {
-            // VERIFICACIÓN: Comprobar que el email no existe ya
-            if (repositorioUsuarios.existeEmail(email)) {
-            	logger.warn("Intento de alta con email ya registrado: " + email);
-                throw new ServicioException("El email " + email + " ya está registrado en el sistema");
+            // VERIFICACIÓN: Comprobar que el email no existe ya. Solo se consulta si el filtro no sabe que es nuevo
+            if (!filtroEmails.esNuevo(email)) {
+                if (repositorioUsuarios.existeEmail(email)) {
+                	logger.warn("Intento de alta con email ya registrado: {}", email);
+                    throw new ServicioException("El email " + email + " ya está registrado en el sistema");
+                }
+                filtroEmails.falsoPositivo();
             }
+            // Antes de insertar, para que otra alta del mismo email a la vez no lo descarte
+            filtroEmails.registrar(email);
 
             // Generar id único
             String id = UUID.randomUUID().toString();
@@ -38,10 +50,22 @@ public class ServicioUsuariosImpl implements ServicioUsuarios {
             Usuario u = new Usuario(id, email, nombre, apellidos, clave, fechaNacimiento, telefono);
             // administrador por defecto ya false en el constructor de dominio
 
-            logger.debug("Dando de alta nuevo usuario: " + u.toString());
-            return repositorioUsuarios.add(u);
+            logger.debug("Dando de alta nuevo usuario: {}", u);
+            try {
+                repositorioUsuarios.add(u);
+            } catch (RepositorioException e) {
+                // La restricción única del email rechaza los que el filtro no conocía (otra alta a la vez,
+                // otra instancia de la aplicación): se distinguen de otros errores consultando el email
+                if (repositorioUsuarios.existeEmail(email)) {
+                	logger.warn("Intento de alta con email ya registrado: {}", email);
+                    throw new ServicioException("El email " + email + " ya está registrado en el sistema", e);
+                }
+                throw e;
+            }
+            filtroEmails.registrar(email);
+            return id;
         } catch (RepositorioException e) {
-        	logger.error("Error al dar de alta el usuario con email: " + email, e);
+        	logger.error("Error al dar de alta el usuario con email: {}", email, e);
             throw new ServicioException("Error al dar de alta el usuario", e);
         }
     }
@@ -61,10 +85,10 @@ public class ServicioUsuariosImpl implements ServicioUsuarios {
             repositorioUsuarios.update(u);
         } catch (EntidadNoEncontrada e) {
             // VERIFICACIÓN: Mensaje claro cuando el usuario no existe
-        	logger.error("Intento de modificación de usuario inexistente con ID: " + usuarioId, e);
+        	logger.error("Intento de modificación de usuario inexistente con ID: {}", usuarioId, e);
             throw new ServicioException("El usuario con ID " + usuarioId + " no existe en el sistema", e);
         } catch (RepositorioException e) {
-        	logger.error("Error al modificar el usuario con ID: " + usuarioId, e);
+        	logger.error("Error al modificar el usuario con ID: {}", usuarioId, e);
             throw new ServicioException("Error al modificar usuario " + usuarioId, e);
         }
     }
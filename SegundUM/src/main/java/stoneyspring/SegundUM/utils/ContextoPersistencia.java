@@ -0,0 +1,203 @@
+package stoneyspring.SegundUM.utils;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+
+/**
+ * <p>
+ * Contexto de persistencia de una petición: mientras está vinculado a un hilo, los repositorios JPA usan su
+ * EntityManager en lugar del del hilo. El EntityManager se abre con la primera llamada y se cierra con el
+ * contexto, así que una petición usa uno solo por muchos repositorios que llame, y no queda ninguno colgado del
+ * hilo (que puede ser de un pool o uno de miles de hilos virtuales).
+ * </p>
+ * <pre>
+ * ContextoPersistencia contexto = ContextoPersistencia.abrir();
+ * try {
+ *     ... llamadas a los repositorios ...
+ * } finally {
+ *     contexto.close();
+ * }
+ * </pre>
+ * <p>
+ * Si la petición sigue en otros hilos, se crea sin vincular y cada paso se vincula al hilo que lo ejecuta; el
+ * EntityManager no admite accesos concurrentes, así que el contexto solo puede estar vinculado a un hilo a la vez:
+ * </p>
+ * <pre>
+ * ContextoPersistencia contexto = ContextoPersistencia.crear();
+ * ... en cada hilo, por turnos:
+ * try (ContextoPersistencia.Vinculo vinculo = contexto.vincular()) { ... }
+ * ... al terminar la petición:
+ * contexto.close();
+ * </pre>
+ * <p>
+ * Al terminar cada llamada a un repositorio el EntityManager se vacía (salvo dentro de una unidad de trabajo), de
+ * modo que las entidades devueltas quedan separadas igual que sin contexto. Abrir un contexto con otro ya
+ * vinculado al hilo se une a él: cerrarlo no hace nada. Un contexto que se pierde sin cerrar se detecta y se cierra
+ * en la búsqueda de fugas de {@link EntityManagerHelper}.
+ * </p>
+ */
+public final class ContextoPersistencia implements AutoCloseable {
+
+    private static final ThreadLocal<ContextoPersistencia> actual = new ThreadLocal<>();
+
+    /** Contexto al que se une este, o null si es el que tiene el EntityManager. */
+    private final ContextoPersistencia unido;
+    private final AtomicReference<Thread> vinculado = new AtomicReference<>();
+    /** Vínculo con el hilo al que está vinculado, que al cerrarse vuelve a vincular el contexto que hubiera antes. */
+    private Vinculo vinculo;
+    private EntityManager em;
+    private volatile boolean cerrado;
+
+    private ContextoPersistencia(ContextoPersistencia unido) {
+        this.unido = unido;
+    }
+
+    /**
+     * Crea un contexto sin vincular a ningún hilo.
+     */
+    public static ContextoPersistencia crear() {
+        return new ContextoPersistencia(null);
+    }
+
+    /**
+     * Crea un contexto y lo vincula al hilo hasta que se cierre. Si el hilo ya tiene uno, se une a él.
+     */
+    public static ContextoPersistencia abrir() {
+        ContextoPersistencia existente = actual.get();
+        if (existente != null) {
+            return new ContextoPersistencia(existente);
+        }
+        ContextoPersistencia contexto = crear();
+        contexto.vincular();
+        return contexto;
+    }
+
+    /**
+     * Contexto vinculado al hilo, o null.
+     */
+    static ContextoPersistencia actual() {
+        return actual.get();
+    }
+
+    /**
+     * Vincula el contexto al hilo hasta que se cierre el vínculo.
+     *
+     * @throws IllegalStateException Si el contexto está cerrado o vinculado a otro hilo
+     */
+    public Vinculo vincular() {
+        if (unido != null) {
+            return unido.vincular();
+        }
+        comprobarAbierto();
+        Thread hilo = Thread.currentThread();
+        if (vinculado.get() == hilo) {
+            return new Vinculo(this, null, false);
+        }
+        if (!vinculado.compareAndSet(null, hilo)) {
+            throw new IllegalStateException("El contexto de persistencia ya está vinculado al hilo "
+                    + vinculado.get().getName());
+        }
+        vinculo = new Vinculo(this, actual.get(), true);
+        actual.set(this);
+        return vinculo;
+    }
+
+    /**
+     * Vínculo de un contexto con un hilo; al cerrarlo el hilo deja de usar el contexto.
+     */
+    public static final class Vinculo implements AutoCloseable {
+
+        private final ContextoPersistencia contexto;
+        /** Contexto que estaba vinculado al hilo antes, que se vuelve a vincular al cerrar. */
+        private final ContextoPersistencia anterior;
+        private final boolean propio;
+
+        private Vinculo(ContextoPersistencia contexto, ContextoPersistencia anterior, boolean propio) {
+            this.contexto = contexto;
+            this.anterior = anterior;
+            this.propio = propio;
+        }
+
+        @Override
+        public void close() {
+            if (!propio || contexto.vinculado.get() == null) {
+                return;
+            }
+            if (contexto.vinculado.get() != Thread.currentThread()) {
+                throw new IllegalStateException("El vínculo del contexto de persistencia se cierra desde otro hilo");
+            }
+            if (anterior != null) {
+                actual.set(anterior);
+            } else {
+                actual.remove();
+            }
+            contexto.vinculado.set(null);
+        }
+    }
+
+    /**
+     * EntityManager del contexto, que se abre la primera vez que se pide.
+     */
+    public EntityManager getEntityManager() {
+        if (unido != null) {
+            return unido.getEntityManager();
+        }
+        comprobarAbierto();
+        if (em == null || !em.isOpen()) {
+            if (em != null) {
+                EntityManagerHelper.cerrarEntityManager(em);
+            }
+            em = EntityManagerHelper.crearEntityManager(this, "contexto de persistencia de " + Thread.currentThread().getName());
+        }
+        return em;
+    }
+
+    /**
+     * Fin de una llamada a un repositorio: sin transacción en curso, vacía el EntityManager.
+     */
+    void terminarLlamada() {
+        if (em != null && em.isOpen() && !em.getTransaction().isActive()) {
+            em.clear();
+        }
+    }
+
+    private void comprobarAbierto() {
+        if (cerrado) {
+            throw new IllegalStateException("El contexto de persistencia está cerrado");
+        }
+    }
+
+    /**
+     * Desvincula el contexto del hilo, deshace la transacción que haya quedado sin confirmar y cierra
+     * el EntityManager.
+     *
+     * @throws IllegalStateException Si el contexto está vinculado a otro hilo
+     */
+    @Override
+    public void close() {
+        if (unido != null || cerrado) {
+            return;
+        }
+        Thread hilo = vinculado.get();
+        if (hilo != null && hilo != Thread.currentThread()) {
+            throw new IllegalStateException("El contexto de persistencia se cierra mientras lo usa el hilo " + hilo.getName());
+        }
+        if (hilo != null) {
+            // Cerrado dentro de su vínculo: se desvincula sin esperar a que se cierre el vínculo, volviendo al
+            // contexto que estuviera vinculado antes
+            vinculo.close();
+        }
+        cerrado = true;
+        if (em != null) {
+            try {
+                if (em.isOpen() && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } finally {
+                EntityManagerHelper.cerrarEntityManager(em);
+                em = null;
+            }
+        }
+    }
+}
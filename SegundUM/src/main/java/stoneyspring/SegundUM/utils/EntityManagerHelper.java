@@ -1,47 +1,318 @@
 package stoneyspring.SegundUM.utils;
 
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Helper para gestionar EntityManager de JPA.
+ * Las propiedades de sistema <i>javax.persistence.*</i>, <i>eclipselink.*</i> y <i>segundum.*</i> sustituyen a las de
+ * <i>persistence.xml</i> (por ejemplo, los benchmarks usan así una base de datos H2 embebida).
+ * Las sentencias SQL se miden con {@link EstadisticasSQL}; las que superan
+ * <i>segundum.sql.umbral-lento-ms</i> se registran como lentas.
+ * <p>
+ * Sin {@link ContextoPersistencia}, cada hilo tiene su EntityManager, que los repositorios cierran al terminar
+ * cada llamada. Dentro de un contexto se usa el del contexto, que vive lo que la petición y no lo que el hilo.
+ * </p>
+ * <p>
+ * Como mucho hay <i>segundum.em.maximo</i> EntityManagers abiertos a la vez (0, sin límite); pedir otro espera
+ * hasta <i>segundum.em.espera-ms</i> a que se cierre alguno y, si no, lanza una PersistenceException. Cada
+ * <i>segundum.em.fuga-segundos</i> se buscan fugas: los EntityManagers de hilos terminados o de contextos
+ * perdidos sin cerrar se cierran, y los abiertos desde hace más de ese tiempo se avisan (una vez) con WARN. Con
+ * <i>segundum.em.traza=true</i> el aviso lleva la pila de donde se abrió el EntityManager.
+ * </p>
  */
 public class EntityManagerHelper {
     
+    private static final Logger logger = LoggerFactory.getLogger(EntityManagerHelper.class);
+    
     private static final String PERSISTENCE_UNIT_NAME = "SegundUM";
+    private static final String UMBRAL_LENTO = "segundum.sql.umbral-lento-ms";
+    private static final long UMBRAL_LENTO_POR_DEFECTO = 500;
+    private static final String MAXIMO_ABIERTOS = "segundum.em.maximo";
+    private static final long MAXIMO_ABIERTOS_POR_DEFECTO = 256;
+    private static final String ESPERA = "segundum.em.espera-ms";
+    private static final long ESPERA_POR_DEFECTO = 30_000;
+    private static final String FUGA = "segundum.em.fuga-segundos";
+    private static final long FUGA_POR_DEFECTO = 60;
+    private static final String TRAZA = "segundum.em.traza";
     private static EntityManagerFactory emf;
+    private static EstadisticasSQL estadisticasSQL;
     private static final ThreadLocal<EntityManager> threadLocal = new ThreadLocal<>();
+    private static final ThreadLocal<Boolean> unidadTrabajo = new ThreadLocal<>();
+    
+    /**
+     * Quién tiene abierto un EntityManager y desde cuándo.
+     */
+    private static final class Apertura {
+        /** El hilo o el ContextoPersistencia; débil, para notar que se ha perdido sin cerrar. */
+        final WeakReference<Object> propietario;
+        final String descripcion;
+        final long inicio = System.nanoTime();
+        final Throwable traza;
+        volatile boolean avisada;
+        
+        Apertura(Object propietario, String descripcion, boolean conTraza) {
+            this.propietario = new WeakReference<>(propietario);
+            this.descripcion = descripcion;
+            this.traza = conTraza ? new Throwable("EntityManager abierto aquí") : null;
+        }
+    }
+    
+    private static final ConcurrentMap<EntityManager, Apertura> abiertos = new ConcurrentHashMap<>();
+    private static Semaphore permisos;
+    private static volatile long esperaMs;
+    private static long fugaNanos;
+    private static boolean traza;
     
     static {
         try {
-            emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME);
+            emf = Persistence.createEntityManagerFactory(PERSISTENCE_UNIT_NAME, propiedadesSistema());
+            estadisticasSQL = new EstadisticasSQL(propiedad(UMBRAL_LENTO, UMBRAL_LENTO_POR_DEFECTO));
+            JpaHelper.getServerSession(emf).getEventManager().addListener(estadisticasSQL);
+            
+            long maximo = propiedad(MAXIMO_ABIERTOS, MAXIMO_ABIERTOS_POR_DEFECTO);
+            permisos = maximo > 0 ? new Semaphore((int) maximo, true) : null;
+            esperaMs = propiedad(ESPERA, ESPERA_POR_DEFECTO);
+            long fugaSegundos = propiedad(FUGA, FUGA_POR_DEFECTO);
+            fugaNanos = TimeUnit.SECONDS.toNanos(fugaSegundos);
+            Object conTraza = emf.getProperties().get(TRAZA);
+            traza = conTraza != null && Boolean.parseBoolean(conTraza.toString().trim());
+            if (fugaSegundos > 0) {
+                ScheduledExecutorService vigilante = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread hilo = new Thread(r, "vigilante-entitymanagers");
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+                vigilante.scheduleWithFixedDelay(EntityManagerHelper::vigilar, fugaSegundos, fugaSegundos, TimeUnit.SECONDS);
+            }
         } catch (Exception e) {
             e.printStackTrace();
             throw new ExceptionInInitializerError("Fallo al crear EntityManagerFactory");
         }
     }
     
+    private static long propiedad(String nombre, long porDefecto) {
+        Object valor = emf.getProperties().get(nombre);
+        return valor != null ? Long.parseLong(valor.toString().trim()) : porDefecto;
+    }
+    
+    private static Map<String, String> propiedadesSistema() {
+        Map<String, String> propiedades = new HashMap<>();
+        for (String nombre : System.getProperties().stringPropertyNames()) {
+            if (nombre.startsWith("javax.persistence.") || nombre.startsWith("eclipselink.")
+                    || nombre.startsWith("segundum.")) {
+                propiedades.put(nombre, System.getProperty(nombre));
+            }
+        }
+        return propiedades;
+    }
+    
+    /**
+     * EntityManager del contexto de persistencia vinculado al hilo o, si no hay, del hilo.
+     *
+     * @throws PersistenceException Si se ha llegado al máximo de EntityManagers abiertos y no se cierra
+     *             ninguno a tiempo
+     */
     public static EntityManager getEntityManager() {
+        ContextoPersistencia contexto = ContextoPersistencia.actual();
+        if (contexto != null) {
+            return contexto.getEntityManager();
+        }
         EntityManager em = threadLocal.get();
         if (em == null || !em.isOpen()) {
-            em = emf.createEntityManager();
+            if (em != null) {
+                liberar(em);
+            }
+            Thread hilo = Thread.currentThread();
+            em = crearEntityManager(hilo, "hilo " + hilo.getName());
             threadLocal.set(em);
         }
         return em;
     }
     
+    /**
+     * Cierra el EntityManager del hilo. Dentro de una unidad de trabajo no hace nada:
+     * el EntityManager se cierra al terminar la unidad. Dentro de un contexto de persistencia
+     * tampoco lo cierra, pero, si no hay transacción, lo vacía, así que las entidades que ha
+     * devuelto la llamada quedan separadas como si se hubiera cerrado.
+     */
     public static void closeEntityManager() {
+        if (isUnidadTrabajoActiva()) {
+            return;
+        }
+        ContextoPersistencia contexto = ContextoPersistencia.actual();
+        if (contexto != null) {
+            contexto.terminarLlamada();
+            return;
+        }
         EntityManager em = threadLocal.get();
         if (em != null) {
+            cerrarEntityManager(em);
+            threadLocal.set(null);
+        }
+    }
+    
+    /**
+     * Abre un EntityManager a nombre del propietario, esperando un permiso si se ha llegado al máximo.
+     */
+    static EntityManager crearEntityManager(Object propietario, String descripcion) {
+        if (permisos != null) {
+            boolean concedido;
+            try {
+                concedido = permisos.tryAcquire(esperaMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PersistenceException("Interrumpido esperando un EntityManager libre", e);
+            }
+            if (!concedido) {
+                throw new PersistenceException("No hay EntityManagers libres: hay " + abiertos.size()
+                        + " abiertos (" + MAXIMO_ABIERTOS + ") y no se ha cerrado ninguno en " + esperaMs + " ms");
+            }
+        }
+        EntityManager em;
+        try {
+            em = emf.createEntityManager();
+        } catch (RuntimeException e) {
+            if (permisos != null) {
+                permisos.release();
+            }
+            throw e;
+        }
+        abiertos.put(em, new Apertura(propietario, descripcion, traza));
+        return em;
+    }
+    
+    /**
+     * Cierra un EntityManager abierto con {@link #crearEntityManager(Object, String)} y devuelve su permiso.
+     */
+    static void cerrarEntityManager(EntityManager em) {
+        try {
             if (em.isOpen()) {
                 em.close();
             }
-            threadLocal.set(null);
+        } finally {
+            liberar(em);
+        }
+    }
+    
+    private static void liberar(EntityManager em) {
+        if (abiertos.remove(em) != null && permisos != null) {
+            permisos.release();
+        }
+    }
+    
+    /**
+     * Milisegundos que se espera a que se cierre un EntityManager cuando se ha llegado al máximo.
+     */
+    public static long getEsperaMs() {
+        return esperaMs;
+    }
+    
+    /**
+     * Cambia la espera de <i>segundum.em.espera-ms</i> sin reiniciar (0, no se espera).
+     */
+    public static void setEsperaMs(long esperaMs) {
+        EntityManagerHelper.esperaMs = esperaMs;
+    }
+    
+    /**
+     * Número de EntityManagers abiertos ahora mismo.
+     */
+    public static int getEntityManagersAbiertos() {
+        return abiertos.size();
+    }
+    
+    /**
+     * Busca fugas: cierra los EntityManagers cuyo hilo ha terminado o cuyo contexto se ha perdido sin
+     * cerrarse, y avisa de los que llevan abiertos más de <i>segundum.em.fuga-segundos</i>.
+     *
+     * @return Número de EntityManagers cerrados por fuga
+     */
+    public static int comprobarFugas() {
+        int cerrados = 0;
+        long ahora = System.nanoTime();
+        for (Map.Entry<EntityManager, Apertura> entrada : abiertos.entrySet()) {
+            EntityManager em = entrada.getKey();
+            Apertura apertura = entrada.getValue();
+            Object propietario = apertura.propietario.get();
+            long segundos = TimeUnit.NANOSECONDS.toSeconds(ahora - apertura.inicio);
+            if (propietario == null || propietario instanceof Thread && !((Thread) propietario).isAlive()) {
+                logger.warn("EntityManager sin cerrar del {} ({} s abierto), terminado o perdido: se cierra",
+                        apertura.descripcion, segundos, apertura.traza);
+                try {
+                    cerrarEntityManager(em);
+                } catch (RuntimeException e) {
+                    logger.warn("Error al cerrar el EntityManager del {}", apertura.descripcion, e);
+                }
+                cerrados++;
+            } else if (fugaNanos > 0 && ahora - apertura.inicio > fugaNanos && !apertura.avisada) {
+                apertura.avisada = true;
+                logger.warn("EntityManager del {} abierto desde hace {} s", apertura.descripcion, segundos, apertura.traza);
+            }
+        }
+        return cerrados;
+    }
+    
+    private static void vigilar() {
+        try {
+            comprobarFugas();
+        } catch (RuntimeException e) {
+            // Una excepción cancelaría las comprobaciones siguientes
+            logger.error("Error al buscar EntityManagers sin cerrar", e);
         }
     }
     
+    /**
+     * Indica si el hilo está dentro de una unidad de trabajo, es decir, si el EntityManager
+     * y la transacción se comparten entre las llamadas a los repositorios.
+     */
+    public static boolean isUnidadTrabajoActiva() {
+        return unidadTrabajo.get() != null;
+    }
+    
+    /**
+     * Empieza una unidad de trabajo en el hilo y devuelve su EntityManager.
+     */
+    public static EntityManager abrirUnidadTrabajo() {
+        unidadTrabajo.set(Boolean.TRUE);
+        return getEntityManager();
+    }
+    
+    /**
+     * Termina la unidad de trabajo del hilo y cierra su EntityManager.
+     */
+    public static void cerrarUnidadTrabajo() {
+        unidadTrabajo.remove();
+        closeEntityManager();
+    }
+    
+    /**
+     * Estadísticas de las sentencias SQL ejecutadas desde el arranque.
+     */
+    public static EstadisticasSQL getEstadisticasSQL() {
+        return estadisticasSQL;
+    }
+    
     public static void closeEntityManagerFactory() {
+        if (!abiertos.isEmpty()) {
+            logger.warn("Se cierra la EntityManagerFactory con {} EntityManagers abiertos", abiertos.size());
+        }
         if (emf != null && emf.isOpen()) {
             emf.close();
         }
@@ -0,0 +1,213 @@
+package stoneyspring.SegundUM.utils;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.eclipse.persistence.internal.databaseaccess.DatabaseCall;
+import org.eclipse.persistence.internal.databaseaccess.DatasourceCall;
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.queries.Call;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Estadísticas de las sentencias SQL que lanza EclipseLink, agrupadas por forma de la consulta: la JPQL
+ * si la sentencia viene de una (con sus parámetros con nombre, así que no depende de los valores) y, si no
+ * (búsquedas por id, carga de relaciones, escrituras), el SQL con sus <i>?</i>. Para cada forma se cuentan las
+ * ejecuciones, las filas devueltas o modificadas y el tiempo total y máximo.
+ * </p>
+ * <p>
+ * Las sentencias que tardan más del umbral se registran como WARN con la forma de sus parámetros (el tipo
+ * de cada uno y el tamaño de las colecciones, nunca los valores, que pueden ser emails o claves).
+ * Con escritura por lotes, el tiempo de un INSERT/UPDATE/DELETE es el de añadirlo al lote.
+ * </p>
+ * Se registra en la sesión de EclipseLink desde {@link EntityManagerHelper}.
+ */
+public class EstadisticasSQL extends SessionEventAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(EstadisticasSQL.class);
+
+    /**
+     * Contadores de una forma de consulta.
+     */
+    public static class Sentencia {
+
+        private final String forma;
+        private final LongAdder ejecuciones = new LongAdder();
+        private final LongAdder filas = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+        Sentencia(String forma) {
+            this.forma = forma;
+        }
+
+        void registrar(long duracion, long filasSentencia) {
+            ejecuciones.increment();
+            filas.add(filasSentencia);
+            nanos.add(duracion);
+            maximo.accumulate(duracion);
+        }
+
+        public String getForma() {
+            return forma;
+        }
+
+        public long getEjecuciones() {
+            return ejecuciones.sum();
+        }
+
+        public long getFilas() {
+            return filas.sum();
+        }
+
+        public double getTiempoTotalMs() {
+            return nanos.sum() / 1_000_000.0;
+        }
+
+        public double getTiempoMaximoMs() {
+            return maximo.get() / 1_000_000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ejecuciones, %d filas, %.1f ms en total, %.1f ms máximo: %s",
+                    getEjecuciones(), getFilas(), getTiempoTotalMs(), getTiempoMaximoMs(), forma);
+        }
+    }
+
+    /** Llamada en curso del hilo y su inicio; las consultas pueden anidarse al cargar relaciones. */
+    private static class Ejecucion {
+        final Call llamada;
+        final long inicio;
+
+        Ejecucion(Call llamada, long inicio) {
+            this.llamada = llamada;
+            this.inicio = inicio;
+        }
+    }
+
+    private final ConcurrentMap<String, Sentencia> sentencias = new ConcurrentHashMap<>();
+    private final ThreadLocal<Deque<Ejecucion>> enCurso = ThreadLocal.withInitial(ArrayDeque::new);
+    private final long umbralLentoNanos;
+
+    /**
+     * @param umbralLentoMs Tiempo a partir del cual una sentencia se registra como lenta (0 o negativo, nunca)
+     */
+    public EstadisticasSQL(long umbralLentoMs) {
+        this.umbralLentoNanos = umbralLentoMs > 0 ? umbralLentoMs * 1_000_000 : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void preExecuteCall(SessionEvent event) {
+        enCurso.get().push(new Ejecucion(event.getCall(), System.nanoTime()));
+    }
+
+    @Override
+    public void postExecuteCall(SessionEvent event) {
+        long fin = System.nanoTime();
+        Deque<Ejecucion> pila = enCurso.get();
+        // Si una llamada anterior falló no tuvo post: se descarta hasta llegar a la que termina
+        Ejecucion ejecucion = pila.poll();
+        while (ejecucion != null && ejecucion.llamada != event.getCall()) {
+            ejecucion = pila.poll();
+        }
+        if (ejecucion == null) {
+            return;
+        }
+        long duracion = fin - ejecucion.inicio;
+
+        Call llamada = event.getCall();
+        DatabaseQuery consulta = llamada instanceof DatasourceCall ? ((DatasourceCall) llamada).getQuery() : null;
+        String sql = llamada instanceof DatabaseCall ? ((DatabaseCall) llamada).getSQLString() : String.valueOf(llamada);
+        String forma = consulta != null && consulta.getJPQLString() != null ? consulta.getJPQLString() : sql;
+
+        Sentencia sentencia = sentencias.get(forma);
+        if (sentencia == null) {
+            sentencia = sentencias.computeIfAbsent(forma, Sentencia::new);
+        }
+        long filas = filas(event.getResult());
+        sentencia.registrar(duracion, filas);
+
+        if (duracion >= umbralLentoNanos) {
+            logger.warn("Sentencia lenta ({} ms, {} filas): {} | parámetros {} | SQL: {}",
+                    duracion / 1_000_000, filas, forma, formaParametros(llamada), sql);
+        }
+    }
+
+    private static long filas(Object resultado) {
+        if (resultado instanceof Collection) {
+            return ((Collection<?>) resultado).size();
+        }
+        if (resultado instanceof Number) {
+            // Filas modificadas por un INSERT/UPDATE/DELETE
+            return ((Number) resultado).longValue();
+        }
+        if (resultado instanceof AbstractRecord || resultado instanceof Map) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private static String formaParametros(Call llamada) {
+        if (!(llamada instanceof DatasourceCall)) {
+            return "[]";
+        }
+        DatasourceCall datasourceCall = (DatasourceCall) llamada;
+        Collection<?> parametros = datasourceCall.getParameters();
+        if (parametros.isEmpty() && datasourceCall.getQuery() != null && datasourceCall.getQuery().getTranslationRow() != null) {
+            // Las consultas cuyo SQL se genera en cada ejecución llevan los valores en la fila de traducción
+            parametros = datasourceCall.getQuery().getTranslationRow().getValues();
+        }
+        StringJoiner forma = new StringJoiner(", ", "[", "]");
+        for (Object parametro : parametros) {
+            if (parametro == null) {
+                forma.add("null");
+            } else if (parametro instanceof Collection) {
+                forma.add(parametro.getClass().getSimpleName() + "(" + ((Collection<?>) parametro).size() + ")");
+            } else {
+                forma.add(parametro.getClass().getSimpleName());
+            }
+        }
+        return forma.toString();
+    }
+
+    /**
+     * Las {@code n} formas de consulta con más tiempo total, de más a menos.
+     */
+    public List<Sentencia> getMasCostosas(int n) {
+        return sentencias.values().stream()
+                .sorted(Comparator.comparingDouble(Sentencia::getTiempoTotalMs).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Escribe en el log (INFO) las {@code n} formas de consulta con más tiempo total.
+     */
+    public void volcar(int n) {
+        List<Sentencia> masCostosas = getMasCostosas(n);
+        logger.info("Sentencias SQL más costosas ({} de {} formas):", masCostosas.size(), sentencias.size());
+        for (Sentencia sentencia : masCostosas) {
+            logger.info("  {}", sentencia);
+        }
+    }
+
+    public void reiniciar() {
+        sentencias.clear();
+    }
+}
@@ -0,0 +1,156 @@
+package stoneyspring.SegundUM.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Filtro de Bloom de cadenas: un conjunto aproximado que ocupa unos pocos bits por elemento. Si dice que una
+ * cadena no está, seguro que no se ha añadido; si dice que puede estar, se equivoca con una probabilidad (la tasa
+ * de falsos positivos) que depende de lo lleno que esté.
+ * </p>
+ * Se dimensiona para una capacidad y una tasa de falsos positivos: con más elementos que la capacidad la tasa
+ * sube. Los bits están en un {@link AtomicLongArray}, así que se puede añadir y consultar desde varios hilos sin
+ * bloqueos. No se pueden quitar elementos.
+ */
+public final class FiltroBloom {
+
+    private final AtomicLongArray bits;
+    private final long numeroBits;
+    private final int funciones;
+    private final long capacidad;
+    private final LongAdder elementos = new LongAdder();
+
+    /**
+     * Filtro para <i>capacidad</i> elementos con una tasa de falsos positivos de <i>tasaFalsosPositivos</i>
+     * (entre 0 y 1) cuando está lleno.
+     */
+    public FiltroBloom(long capacidad, double tasaFalsosPositivos) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("Capacidad no válida: " + capacidad);
+        }
+        if (tasaFalsosPositivos <= 0 || tasaFalsosPositivos >= 1) {
+            throw new IllegalArgumentException("Tasa de falsos positivos no válida: " + tasaFalsosPositivos);
+        }
+        // m = -n ln p / (ln 2)^2 bits, redondeados a palabras de 64, y k = m / n ln 2 funciones
+        long palabras = (long) Math.ceil(-capacidad * Math.log(tasaFalsosPositivos) / (Math.log(2) * Math.log(2)) / 64);
+        if (palabras > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Filtro demasiado grande para " + capacidad + " elementos");
+        }
+        this.bits = new AtomicLongArray((int) palabras);
+        this.numeroBits = palabras * 64;
+        this.funciones = Math.max(1, (int) Math.round((double) numeroBits / capacidad * Math.log(2)));
+        this.capacidad = capacidad;
+    }
+
+    /**
+     * Añade la cadena. Devuelve true si no estaba (si ha activado algún bit): así se cuentan los elementos
+     * distintos, salvo los que eran falsos positivos.
+     */
+    public boolean anadir(String valor) {
+        long h = hash(valor);
+        long h1 = mezclar(h);
+        long h2 = mezclar(h ^ 0x9E3779B97F4A7C15L) | 1;
+        boolean nuevo = false;
+        for (int i = 0; i < funciones; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numeroBits);
+            int palabra = (int) (bit >>> 6);
+            long mascara = 1L << bit;
+            long actual = bits.get(palabra);
+            while ((actual & mascara) == 0) {
+                if (bits.compareAndSet(palabra, actual, actual | mascara)) {
+                    nuevo = true;
+                    break;
+                }
+                actual = bits.get(palabra);
+            }
+        }
+        if (nuevo) {
+            elementos.increment();
+        }
+        return nuevo;
+    }
+
+    /**
+     * Si la cadena puede estar en el filtro. false significa que seguro que no se ha añadido.
+     */
+    public boolean puedeContener(String valor) {
+        long h = hash(valor);
+        long h1 = mezclar(h);
+        long h2 = mezclar(h ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < funciones; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numeroBits);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a de 64 bits de los caracteres de la cadena.
+     */
+    private static long hash(String valor) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < valor.length(); i++) {
+            h ^= valor.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Mezcla final de MurmurHash3: reparte los bits del hash, que FNV deja poco mezclados en los bits altos.
+     */
+    private static long mezclar(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public long getCapacidad() {
+        return capacidad;
+    }
+
+    /**
+     * Elementos distintos añadidos (sin los que eran falsos positivos al añadirlos).
+     */
+    public long getElementos() {
+        return elementos.sum();
+    }
+
+    public long getNumeroBits() {
+        return numeroBits;
+    }
+
+    public int getFunciones() {
+        return funciones;
+    }
+
+    /**
+     * Memoria de los bits, en bytes.
+     */
+    public long getBytes() {
+        return numeroBits / 8;
+    }
+
+    /**
+     * Tasa de falsos positivos actual según los bits activos: (activos / bits)^funciones. Recorre todos los bits.
+     */
+    public double getTasaFalsosPositivosEstimada() {
+        long activos = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            activos += Long.bitCount(bits.get(i));
+        }
+        return Math.pow((double) activos / numeroBits, funciones);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d elementos (capacidad %d), %d KB, %d funciones, falsos positivos %.4f%%",
+                getElementos(), capacidad, getBytes() / 1024, funciones, getTasaFalsosPositivosEstimada() * 100);
+    }
+}
@@ -0,0 +1,273 @@
+package stoneyspring.SegundUM.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Geohash de un punto: la celda de la rejilla que lo contiene, como una cadena en base 32 en la que cada carácter
+ * divide la celda anterior en 32. Los puntos cercanos comparten prefijo, así que una columna con el geohash y un
+ * índice normal permiten buscar por zona con consultas <i>LIKE 'prefijo%'</i>.
+ * </p>
+ * Una búsqueda por radio usa las celdas que cubren la caja del círculo, de la precisión más fina con la que no
+ * pasan de {@link #MAXIMO_CELDAS}: cuanto más finas, menos puntos de fuera del círculo se leen. Las celdas se
+ * convierten en rangos de la columna ({@link #rangos(List)}), que cualquier base de datos resuelve con el índice, y
+ * después se filtra por la distancia real.
+ */
+public final class Geohash {
+
+    /** Caracteres que se guardan: celdas de unos 5 x 5 metros. */
+    public static final int PRECISION = 9;
+
+    /** Celdas como mucho para cubrir la zona de una búsqueda. */
+    public static final int MAXIMO_CELDAS = 32;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    /** Radio medio de la Tierra. */
+    private static final double RADIO_TIERRA_KM = 6371.0;
+
+    private static final double KM_POR_GRADO = Math.PI * RADIO_TIERRA_KM / 180;
+
+    private Geohash() {
+    }
+
+    /**
+     * Geohash del punto con la precisión indicada, o null si falta alguna coordenada o está fuera de rango.
+     */
+    public static String codificar(Double latitud, Double longitud, int precision) {
+        if (latitud == null || longitud == null || !validas(latitud, longitud)) {
+            return null;
+        }
+        double latMin = -90, latMax = 90, lonMin = -180, lonMax = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean esLongitud = true;
+        int bits = 0, valor = 0;
+        while (hash.length() < precision) {
+            if (esLongitud) {
+                double mitad = (lonMin + lonMax) / 2;
+                valor <<= 1;
+                if (longitud >= mitad) {
+                    valor |= 1;
+                    lonMin = mitad;
+                } else {
+                    lonMax = mitad;
+                }
+            } else {
+                double mitad = (latMin + latMax) / 2;
+                valor <<= 1;
+                if (latitud >= mitad) {
+                    valor |= 1;
+                    latMin = mitad;
+                } else {
+                    latMax = mitad;
+                }
+            }
+            esLongitud = !esLongitud;
+            if (++bits == 5) {
+                hash.append(BASE32.charAt(valor));
+                bits = 0;
+                valor = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    public static String codificar(Double latitud, Double longitud) {
+        return codificar(latitud, longitud, PRECISION);
+    }
+
+    /**
+     * Alto en grados de una celda de la precisión indicada.
+     */
+    private static double altoCelda(int precision) {
+        return 180 / Math.pow(2, (5 * precision) / 2);
+    }
+
+    /**
+     * Ancho en grados de una celda de la precisión indicada.
+     */
+    private static double anchoCelda(int precision) {
+        return 360 / Math.pow(2, (5 * precision + 1) / 2);
+    }
+
+    /**
+     * Celdas que cubren el círculo de radio <i>radioKm</i> alrededor del punto: las que cubren su caja, o la del
+     * punto y sus ocho vecinas cuando no hay caja (junto a un polo o al antimeridiano). Vacía si ni las celdas de
+     * un carácter lo cubren; entonces no hay que filtrar por celda.
+     *
+     * @throws IllegalArgumentException Si las coordenadas están fuera de rango
+     */
+    public static List<String> celdasCercanas(double latitud, double longitud, double radioKm) {
+        comprobarCoordenadas(latitud, longitud);
+        double[] caja = caja(latitud, longitud, radioKm);
+        return caja != null ? celdasCaja(caja) : celdasVecinas(latitud, longitud, radioKm);
+    }
+
+    /**
+     * Celdas de la precisión más fina que cubren la caja con {@link #MAXIMO_CELDAS} o menos.
+     */
+    private static List<String> celdasCaja(double[] caja) {
+        for (int precision = PRECISION; precision > 0; precision--) {
+            double alto = altoCelda(precision);
+            double ancho = anchoCelda(precision);
+            long filaMin = (long) Math.floor((caja[0] + 90) / alto);
+            long filaMax = (long) Math.floor((caja[1] + 90) / alto);
+            long columnaMin = (long) Math.floor((caja[2] + 180) / ancho);
+            long columnaMax = Math.min((long) Math.floor((caja[3] + 180) / ancho), Math.round(360 / ancho) - 1);
+            if ((filaMax - filaMin + 1) * (columnaMax - columnaMin + 1) > MAXIMO_CELDAS) {
+                continue;
+            }
+            List<String> celdas = new ArrayList<>();
+            for (long fila = filaMin; fila <= filaMax; fila++) {
+                for (long columna = columnaMin; columna <= columnaMax; columna++) {
+                    // el centro de cada celda
+                    celdas.add(codificar(-90 + (fila + 0.5) * alto, -180 + (columna + 0.5) * ancho, precision));
+                }
+            }
+            return celdas;
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * La celda del punto y sus ocho vecinas (menos si se repiten junto a un polo), de la precisión más fina
+     * cuyas celdas miden al menos el radio: el círculo no puede salirse de ellas.
+     */
+    private static List<String> celdasVecinas(double latitud, double longitud, double radioKm) {
+        double radioGrados = radioKm / KM_POR_GRADO;
+        double latitudExtrema = Math.abs(latitud) + radioGrados;
+        if (latitudExtrema >= 90) {
+            return new ArrayList<>();
+        }
+        double cosenoExtremo = Math.cos(Math.toRadians(latitudExtrema));
+
+        int precision = PRECISION;
+        while (precision > 0 && (altoCelda(precision) * KM_POR_GRADO < radioKm
+                || anchoCelda(precision) * KM_POR_GRADO * cosenoExtremo < radioKm)) {
+            precision--;
+        }
+        if (precision == 0) {
+            return new ArrayList<>();
+        }
+
+        double alto = altoCelda(precision);
+        double ancho = anchoCelda(precision);
+        Set<String> celdas = new LinkedHashSet<>();
+        for (int dy = -1; dy <= 1; dy++) {
+            double lat = Math.max(-90, Math.min(latitud + dy * alto, Math.nextDown(90.0)));
+            for (int dx = -1; dx <= 1; dx++) {
+                double lon = longitud + dx * ancho;
+                if (lon >= 180) {
+                    lon -= 360;
+                } else if (lon < -180) {
+                    lon += 360;
+                }
+                celdas.add(codificar(lat, lon, precision));
+            }
+        }
+        return new ArrayList<>(celdas);
+    }
+
+    /**
+     * Rangos [desde, hasta) de geohash que contienen exactamente los puntos de las celdas, uniendo las que son
+     * consecutivas. <i>hasta</i> es null si el rango llega al final.
+     */
+    public static List<String[]> rangos(List<String> celdas) {
+        List<String> ordenadas = new ArrayList<>(celdas);
+        Collections.sort(ordenadas);
+        List<String[]> rangos = new ArrayList<>();
+        String[] actual = null;
+        for (String celda : ordenadas) {
+            if (actual != null && consecutiva(actual[1], celda)) {
+                actual[1] = siguiente(celda);
+            } else {
+                actual = new String[] { celda, siguiente(celda) };
+                rangos.add(actual);
+            }
+        }
+        return rangos;
+    }
+
+    /**
+     * Si la celda empieza justo donde acaba un rango: es <i>hasta</i> o lo continúa con ceros (tras "u4pz" el
+     * rango acaba en "u4q", y "u4q0" es la celda siguiente).
+     */
+    private static boolean consecutiva(String hasta, String celda) {
+        if (hasta == null || !celda.startsWith(hasta)) {
+            return false;
+        }
+        for (int i = hasta.length(); i < celda.length(); i++) {
+            if (celda.charAt(i) != BASE32.charAt(0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Menor geohash mayor que todos los que empiezan por la celda, o null si no lo hay.
+     */
+    private static String siguiente(String celda) {
+        for (int i = celda.length() - 1; i >= 0; i--) {
+            int valor = BASE32.indexOf(celda.charAt(i));
+            if (valor < BASE32.length() - 1) {
+                return celda.substring(0, i) + BASE32.charAt(valor + 1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Caja [latMin, latMax, lonMin, lonMax] que contiene el círculo de radio <i>radioKm</i> alrededor del punto,
+     * o null si toca un polo o cruza el antimeridiano (la caja no sería un único rango de longitudes).
+     */
+    public static double[] caja(double latitud, double longitud, double radioKm) {
+        double radioGrados = radioKm / KM_POR_GRADO;
+        double latMin = latitud - radioGrados;
+        double latMax = latitud + radioGrados;
+        if (latMin <= -90 || latMax >= 90) {
+            return null;
+        }
+        // Mayor diferencia de longitud de los puntos del círculo
+        double seno = Math.sin(Math.toRadians(radioGrados)) / Math.cos(Math.toRadians(latitud));
+        if (seno >= 1) {
+            return null;
+        }
+        double anchoGrados = Math.toDegrees(Math.asin(seno));
+        double lonMin = longitud - anchoGrados;
+        double lonMax = longitud + anchoGrados;
+        if (lonMin < -180 || lonMax > 180) {
+            return null;
+        }
+        return new double[] { latMin, latMax, lonMin, lonMax };
+    }
+
+    /**
+     * Distancia en km entre dos puntos sobre la esfera (fórmula del haversine).
+     */
+    public static double distanciaKm(double latitud1, double longitud1, double latitud2, double longitud2) {
+        double dLat = Math.toRadians(latitud2 - latitud1);
+        double dLon = Math.toRadians(longitud2 - longitud1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitud1)) * Math.cos(Math.toRadians(latitud2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * RADIO_TIERRA_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Si las coordenadas están dentro de rango.
+     */
+    public static boolean validas(double latitud, double longitud) {
+        return latitud >= -90 && latitud <= 90 && longitud >= -180 && longitud <= 180;
+    }
+
+    private static void comprobarCoordenadas(double latitud, double longitud) {
+        if (!validas(latitud, longitud)) {
+            throw new IllegalArgumentException("Coordenadas fuera de rango: " + latitud + ", " + longitud);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package stoneyspring.SegundUM.utils;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Helper para gestionar los contextos JAXB.
+ * <p>
+ * Crear un {@link JAXBContext} es muy costoso (recorre las anotaciones de la clase y construye
+ * el modelo de reflexión), así que se crea una única vez por clase y se reutiliza.<br>
+ * Los {@link Marshaller} y {@link Unmarshaller} no son thread-safe, por lo que se mantienen en un
+ * pool por clase: cada operación toma uno, lo usa en exclusiva y lo devuelve al terminar.
+ * </p>
+ */
+public class JAXBHelper {
+
+    /** Número máximo de marshallers/unmarshallers ociosos que se guardan por clase. */
+    private static final int TAMANO_POOL = 16;
+
+    private static final ConcurrentMap<Class<?>, Registro> registros = new ConcurrentHashMap<>();
+
+    private JAXBHelper() {}
+
+    /**
+     * Contexto JAXB de la clase junto con sus pools de marshallers y unmarshallers.
+     */
+    private static class Registro {
+
+        private final JAXBContext contexto;
+        private final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(TAMANO_POOL);
+        private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(TAMANO_POOL);
+
+        Registro(JAXBContext contexto) {
+            this.contexto = contexto;
+        }
+
+        Marshaller tomarMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+            if (marshaller == null) {
+                marshaller = contexto.createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            }
+            return marshaller;
+        }
+
+        Unmarshaller tomarUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            if (unmarshaller == null) {
+                unmarshaller = contexto.createUnmarshaller();
+            }
+            return unmarshaller;
+        }
+
+        void devolver(Marshaller marshaller) {
+            // si el pool está lleno se descarta
+            marshallers.offer(marshaller);
+        }
+
+        void devolver(Unmarshaller unmarshaller) {
+            unmarshallers.offer(unmarshaller);
+        }
+    }
+
+    private static Registro getRegistro(Class<?> clase) throws JAXBException {
+        Registro registro = registros.get(clase);
+        if (registro == null) {
+            // Si dos hilos llegan a la vez se crean dos contextos, pero sólo se queda el primero
+            Registro nuevo = new Registro(JAXBContext.newInstance(clase));
+            registro = registros.putIfAbsent(clase, nuevo);
+            if (registro == null) {
+                registro = nuevo;
+            }
+        }
+        return registro;
+    }
+
+    /**
+     * Devuelve el contexto JAXB (compartido) de la clase.
+     */
+    public static JAXBContext getContexto(Class<?> clase) throws JAXBException {
+        return getRegistro(clase).contexto;
+    }
+
+    /**
+     * Serializa la entidad en el fichero indicado con salida formateada.
+     */
+    public static <T> void guardar(Class<T> clase, T entidad, File fichero) throws JAXBException {
+        Registro registro = getRegistro(clase);
+        Marshaller marshaller = registro.tomarMarshaller();
+        try {
+            marshaller.marshal(entidad, fichero);
+        } finally {
+            registro.devolver(marshaller);
+        }
+    }
+
+    /**
+     * Deserializa una entidad de la clase indicada desde el fichero.
+     */
+    public static <T> T cargar(Class<T> clase, File fichero) throws JAXBException {
+        Registro registro = getRegistro(clase);
+        Unmarshaller unmarshaller = registro.tomarUnmarshaller();
+        try {
+            return clase.cast(unmarshaller.unmarshal(fichero));
+        } finally {
+            registro.devolver(unmarshaller);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package stoneyspring.SegundUM.utils;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.Set;
 
 public class PropertiesReader {
     private Properties properties;
@@ -17,4 +18,8 @@ public class PropertiesReader {
     public String getProperty(String propertyName) {
         return this.properties.getProperty(propertyName);
     }
+
+    public Set<String> getPropertyNames() {
+        return this.properties.stringPropertyNames();
+    }
 }
\ No newline at end of file
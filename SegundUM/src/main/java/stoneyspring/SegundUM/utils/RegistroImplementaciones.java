@@ -0,0 +1,154 @@
+package stoneyspring.SegundUM.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Enlaces <i>clase=implementación</i> de un fichero de propiedades, resueltos una sola vez: al cargar el registro
+ * se lee el fichero y, para cada propiedad cuyo nombre es una clase, se busca el constructor sin parámetros de la
+ * implementación. Las demás propiedades (por ejemplo <i>Entidad.consistencia</i>) se guardan tal cual.
+ * </p>
+ * <p>
+ * Cada implementación se crea la primera vez que se pide y después se devuelve siempre la misma instancia. Los
+ * enlaces no cambian una vez cargado el registro, así que pedir una instancia ya creada no bloquea ni usa reflexión;
+ * la creación se hace con el cerrojo del enlace, de modo que dos hilos que la piden a la vez obtienen la misma.
+ * </p>
+ * Los errores de un enlace (la implementación no existe o no tiene constructor sin parámetros) no impiden cargar
+ * el registro: se lanzan al pedir su instancia.
+ */
+public final class RegistroImplementaciones {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegistroImplementaciones.class);
+
+    /**
+     * Enlace de una clase con su implementación y la instancia única, cuando ya se ha creado.
+     */
+    private static final class Enlace {
+        final Constructor<?> constructor;
+        final Exception error;
+        volatile Object instancia;
+        boolean creando;
+
+        Enlace(Constructor<?> constructor, Exception error) {
+            this.constructor = constructor;
+            this.error = error;
+        }
+    }
+
+    private final String fichero;
+    private final Map<Class<?>, Enlace> enlaces;
+    private final Properties propiedades;
+    private final BiFunction<Class<?>, Object, Object> preparacion;
+
+    private RegistroImplementaciones(String fichero, Map<Class<?>, Enlace> enlaces, Properties propiedades,
+            BiFunction<Class<?>, Object, Object> preparacion) {
+        this.fichero = fichero;
+        this.enlaces = enlaces;
+        this.propiedades = propiedades;
+        this.preparacion = preparacion;
+    }
+
+    /**
+     * Lee el fichero de propiedades del classpath y resuelve sus enlaces.
+     *
+     * @param preparacion Se aplica a cada instancia recién creada, con la clase de su enlace; lo que
+     *            devuelve es la instancia que se guarda (por ejemplo, un proxy)
+     */
+    public static RegistroImplementaciones cargar(String fichero, BiFunction<Class<?>, Object, Object> preparacion) {
+        Properties propiedades = new Properties();
+        try {
+            PropertiesReader reader = new PropertiesReader(fichero);
+            for (String nombre : reader.getPropertyNames()) {
+                propiedades.setProperty(nombre, reader.getProperty(nombre));
+            }
+        } catch (Exception e) {
+            logger.error("No se ha podido leer {}", fichero, e);
+        }
+
+        Map<Class<?>, Enlace> enlaces = new HashMap<>();
+        for (String nombre : propiedades.stringPropertyNames()) {
+            Class<?> clase;
+            try {
+                clase = Class.forName(nombre);
+            } catch (ClassNotFoundException e) {
+                continue; // No es un enlace
+            }
+            String implementacion = propiedades.getProperty(nombre).trim();
+            try {
+                enlaces.put(clase, new Enlace(Class.forName(implementacion).getConstructor(), null));
+            } catch (ClassNotFoundException | NoSuchMethodException | LinkageError e) {
+                logger.error("La implementación {} de {} no existe o no tiene constructor sin parámetros",
+                        implementacion, nombre, e);
+                enlaces.put(clase, new Enlace(null, e instanceof Exception ? (Exception) e : new Exception(e)));
+            }
+        }
+        return new RegistroImplementaciones(fichero, Collections.unmodifiableMap(enlaces), propiedades, preparacion);
+    }
+
+    /**
+     * Instancia única de la implementación enlazada con la clase, que se crea la primera vez.
+     *
+     * @throws IllegalArgumentException Si la clase no tiene enlace en el fichero
+     * @throws IllegalStateException Si no se puede crear la implementación, o si su creación necesita,
+     *             directa o indirectamente, a ella misma
+     */
+    public Object getInstancia(Class<?> clase) {
+        Enlace enlace = enlaces.get(clase);
+        if (enlace == null) {
+            throw new IllegalArgumentException("No hay implementación para " + clase.getName() + " en " + fichero);
+        }
+        Object instancia = enlace.instancia;
+        if (instancia != null) {
+            return instancia;
+        }
+        synchronized (enlace) {
+            if (enlace.instancia == null) {
+                enlace.instancia = crear(clase, enlace);
+            }
+            return enlace.instancia;
+        }
+    }
+
+    private Object crear(Class<?> clase, Enlace enlace) {
+        if (enlace.error != null) {
+            throw new IllegalStateException("No se puede crear la implementación de " + clase.getName(), enlace.error);
+        }
+        if (enlace.creando) {
+            throw new IllegalStateException("La implementación de " + clase.getName() + " se necesita a sí misma al crearse");
+        }
+        enlace.creando = true;
+        try {
+            return preparacion.apply(clase, enlace.constructor.newInstance());
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Error al crear " + enlace.constructor.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Error al crear " + enlace.constructor.getName(), e);
+        } finally {
+            enlace.creando = false;
+        }
+    }
+
+    /**
+     * Clases con enlace en el fichero.
+     */
+    public Set<Class<?>> getClases() {
+        return enlaces.keySet();
+    }
+
+    /**
+     * Valor de una propiedad del fichero, o null.
+     */
+    public String getPropiedad(String nombre) {
+        return propiedades.getProperty(nombre);
+    }
+}
@@ -0,0 +1,83 @@
+package stoneyspring.SegundUM.metricas;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba las cubetas del histograma en los límites entre los valores exactos y las cubetas log-lineales,
+ * y que cada valor cae en una cubeta cuyo máximo lo aproxima con menos de un 3,2% de error.
+ */
+class HistogramaTest {
+
+    @Test
+    void testLimitesDeCubetas() {
+        // Exactos hasta 63
+        assertEquals(0, Histograma.indice(0));
+        assertEquals(63, Histograma.indice(63));
+        assertEquals(63, Histograma.valorMaximo(63));
+
+        // De 64 a 127, cubetas de 2
+        assertEquals(64, Histograma.indice(64));
+        assertEquals(64, Histograma.indice(65));
+        assertEquals(65, Histograma.valorMaximo(64));
+        assertEquals(95, Histograma.indice(127));
+        assertEquals(127, Histograma.valorMaximo(95));
+
+        // Desde 128, cubetas de 4
+        assertEquals(96, Histograma.indice(128));
+        assertEquals(96, Histograma.indice(131));
+        assertEquals(97, Histograma.indice(132));
+        assertEquals(131, Histograma.valorMaximo(96));
+    }
+
+    @Test
+    void testValoresExtremos() {
+        assertEquals(0, Histograma.indice(-5));
+        int ultima = Histograma.indice(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Histograma.valorMaximo(ultima));
+    }
+
+    @Test
+    void testCadaValorEnSuCubeta() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long valor = random.nextLong() >>> (1 + random.nextInt(63));
+            comprobarCubeta(valor);
+        }
+        for (long valor = 0; valor < 5000; valor++) {
+            comprobarCubeta(valor);
+        }
+    }
+
+    @Test
+    void testPercentiles() {
+        Histograma histograma = new Histograma();
+        assertEquals(0, histograma.percentil(50));
+        for (long valor = 1; valor <= 1000; valor++) {
+            histograma.registrar(valor * 1000);
+        }
+        assertEquals(500_000, histograma.percentil(50), 500_000 * 0.032);
+        assertEquals(990_000, histograma.percentil(99), 990_000 * 0.032);
+        assertTrue(histograma.percentil(100) >= 1_000_000);
+
+        histograma.reiniciar();
+        assertEquals(0, histograma.percentil(99));
+    }
+
+    /**
+     * El valor no pasa del máximo de su cubeta, sí del de la anterior, y el máximo lo aproxima con menos
+     * de un 3,2% de error.
+     */
+    private static void comprobarCubeta(long valor) {
+        int indice = Histograma.indice(valor);
+        long maximo = Histograma.valorMaximo(indice);
+        assertTrue(valor <= maximo, "El valor " + valor + " pasa del máximo de su cubeta " + maximo);
+        if (indice > 0) {
+            assertTrue(valor > Histograma.valorMaximo(indice - 1), "El valor " + valor + " cabe en la cubeta anterior");
+        }
+        assertTrue(maximo - valor <= valor * 0.032, "Error demasiado grande para " + valor + ": " + maximo);
+    }
+}
@@ -4,7 +4,13 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.persistence.PersistenceException;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,6 +24,8 @@ import stoneyspring.SegundUM.dominio.Usuario;
 import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
 import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
 import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.ContextoPersistencia;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
 
 class RepositorioTest {
 
@@ -281,15 +289,13 @@ class RepositorioTest {
         );
         repositorioProductos.add(producto);
 
-        // Incrementar visualizaciones
-        producto.incrementarVisualizaciones();
-        producto.incrementarVisualizaciones();
-        producto.incrementarVisualizaciones();
-        repositorioProductos.update(producto);
+        // Incrementar visualizaciones (update no las escribe)
+        repositorioProductos.incrementarVisualizaciones(Collections.singletonMap("prod-test-002", 3L));
 
         // Verificar
         Producto productoActualizado = repositorioProductos.getById("prod-test-002");
         assertEquals(3, productoActualizado.getVisualizaciones(), "Debe tener 3 visualizaciones");
+        assertEquals(producto.getVersion(), productoActualizado.getVersion(), "Las visualizaciones no cambian la versión");
 
         System.out.println("✓ Visualizaciones incrementadas correctamente");
         System.out.println("  - Producto: " + productoActualizado.getTitulo());
@@ -338,4 +344,51 @@ class RepositorioTest {
         System.out.println("  - existe@test.com: SÍ existe");
         System.out.println("  - noexiste@test.com: NO existe");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testUnidadTrabajoTrasAgotarEntityManagers() throws Exception {
+        // Se ocupan todos los EntityManagers, sin esperar a que se cierre ninguno
+        long espera = EntityManagerHelper.getEsperaMs();
+        EntityManagerHelper.setEsperaMs(0);
+        List<ContextoPersistencia> ocupados = new ArrayList<>();
+        try {
+            PersistenceException agotado = null;
+            while (agotado == null) {
+                ContextoPersistencia contexto = ContextoPersistencia.crear();
+                ocupados.add(contexto);
+                try {
+                    contexto.getEntityManager();
+                } catch (PersistenceException e) {
+                    agotado = e;
+                }
+            }
+
+            // La unidad no llega a empezar y el hilo no debe quedar dentro de ella
+            assertThrows(PersistenceException.class, UnidadTrabajo::iniciar);
+            assertFalse(UnidadTrabajo.isActiva(), "El hilo no debe quedar dentro de una unidad de trabajo");
+        } finally {
+            for (ContextoPersistencia contexto : ocupados) {
+                contexto.close();
+            }
+            EntityManagerHelper.setEsperaMs(espera);
+        }
+
+        // La unidad siguiente del mismo hilo confirma
+        try (UnidadTrabajo unidad = UnidadTrabajo.iniciar()) {
+            repositorioCategorias.add(new Categoria("cat-test-008", "Jardín"));
+            unidad.confirmar();
+        }
+        assertFalse(UnidadTrabajo.isActiva(), "La unidad de trabajo debe haber terminado");
+
+        // Se lee desde otro hilo, que no comparte el EntityManager de la unidad
+        ExecutorService otroHilo = Executors.newSingleThreadExecutor();
+        try {
+            Categoria leida = otroHilo.submit(() -> repositorioCategorias.getById("cat-test-008")).get();
+            assertEquals("Jardín", leida.getNombre(), "La categoría debe estar confirmada");
+        } finally {
+            otroHilo.shutdown();
+        }
+
+        System.out.println("✓ La unidad de trabajo confirma tras agotarse los EntityManagers");
+    }
+}
@@ -0,0 +1,172 @@
+package stoneyspring.SegundUM.repositorio.productos;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionEventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Comprueba que las consultas de productos lanzan siempre el mismo número de sentencias SQL,
+ * tengan pocas o muchas filas y categorías y vendedores distintos.
+ */
+class PlanCargaTest {
+
+    private static final String PREFIJO = "plan-test-";
+
+    @FunctionalInterface
+    private interface Llamada {
+        void ejecutar() throws Exception;
+    }
+
+    private RepositorioUsuarios repositorioUsuarios;
+    private RepositorioCategorias repositorioCategorias;
+    private RepositorioProductos repositorioProductos;
+
+    private final AtomicInteger sentencias = new AtomicInteger();
+    /** Si se vacía la caché compartida antes de cada llamada, para que las relaciones se lean de la base de datos. */
+    private boolean sinCache;
+    private SessionEventListener contador;
+    private Session sesion;
+
+    private Categoria raiz;
+    private final List<Categoria> hojas = new ArrayList<>();
+    private final List<Usuario> vendedores = new ArrayList<>();
+    private final List<Producto> productos = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws RepositorioException {
+        repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+        repositorioProductos = FactoriaRepositorios.getRepositorio(Producto.class);
+
+        // Árbol de tres niveles: los productos cuelgan de las hojas, así que cada categoría tiene dos ancestros
+        raiz = new Categoria(PREFIJO + "raiz", "Raíz");
+        for (int i = 0; i < 4; i++) {
+            Categoria hija = new Categoria(PREFIJO + "hija-" + i, "Hija " + i);
+            raiz.addSubcategoria(hija);
+            for (int j = 0; j < 2; j++) {
+                Categoria hoja = new Categoria(PREFIJO + "hoja-" + i + "-" + j, "Hoja " + i + "." + j);
+                hija.addSubcategoria(hoja);
+                hojas.add(hoja);
+            }
+        }
+        repositorioCategorias.add(raiz);
+
+        for (int i = 0; i < 4; i++) {
+            Usuario vendedor = new Usuario(PREFIJO + "usuario-" + i, PREFIJO + i + "@segundum.com",
+                    "Vendedor", "Plan " + i, "clave", LocalDate.of(1990, 1, 1), null);
+            repositorioUsuarios.add(vendedor);
+            vendedores.add(vendedor);
+        }
+
+        sesion = EntityManagerHelper.getEntityManager().unwrap(Session.class);
+        EntityManagerHelper.closeEntityManager();
+        contador = new SessionEventAdapter() {
+            @Override
+            public void postExecuteCall(SessionEvent event) {
+                sentencias.incrementAndGet();
+            }
+        };
+        sesion.getEventManager().addListener(contador);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        sesion.getEventManager().removeListener(contador);
+        repositorioProductos.deleteAll(productos, 100);
+        for (Usuario vendedor : vendedores) {
+            repositorioUsuarios.delete(vendedor);
+        }
+        repositorioCategorias.delete(repositorioCategorias.getById(raiz.getId()));
+    }
+
+    /**
+     * Añade productos repartidos entre las primeras {@code categorias} hojas y los primeros {@code usuarios} vendedores.
+     */
+    private void anadirProductos(int cantidad, int categorias, int usuarios) throws RepositorioException {
+        List<Producto> nuevos = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            nuevos.add(new Producto(PREFIJO + UUID.randomUUID(), "Producto " + i, "Producto del plan de carga " + i,
+                    BigDecimal.valueOf(10 + i), EstadoProducto.NUEVO, hojas.get(i % categorias), true,
+                    vendedores.get(i % usuarios)));
+        }
+        repositorioProductos.addAll(nuevos, 100);
+        productos.addAll(nuevos);
+    }
+
+    private int contarSentencias(Llamada llamada) throws Exception {
+        if (sinCache) {
+            EntityManagerHelper.getEntityManager().getEntityManagerFactory().getCache().evictAll();
+            EntityManagerHelper.closeEntityManager();
+        }
+        sentencias.set(0);
+        llamada.ejecutar();
+        return sentencias.get();
+    }
+
+    private List<Integer> contarConsultas() throws Exception {
+        FiltroProductos filtro = new FiltroProductos();
+        filtro.setCategoriaId(raiz.getId());
+        String vendedorId = vendedores.get(0).getId();
+        LocalDateTime ahora = LocalDateTime.now();
+
+        List<Integer> cuentas = new ArrayList<>();
+        cuentas.add(contarSentencias(() -> repositorioProductos.buscarProductos(raiz.getId(), (String) null, null, null)));
+        cuentas.add(contarSentencias(() -> repositorioProductos.getProductosPorVendedor(vendedorId)));
+        cuentas.add(contarSentencias(() -> repositorioProductos.buscarPagina(filtro, null, 1000)));
+        cuentas.add(contarSentencias(() -> repositorioProductos.recorrer(filtro, p -> p.getCategoria().getCategoriaPadre())));
+        cuentas.add(contarSentencias(() -> repositorioProductos.getProductosPorFechas(ahora.minusDays(1), ahora.plusDays(1))));
+        return cuentas;
+    }
+
+    @Test
+    void testSentenciasConstantes() throws Exception {
+        // Pocas filas, una sola categoría y un solo vendedor
+        anadirProductos(3, 1, 1);
+        List<Integer> pocas = contarConsultas();
+
+        // Muchas más filas repartidas entre todas las hojas y todos los vendedores
+        anadirProductos(60, hojas.size(), vendedores.size());
+        List<Integer> muchas = contarConsultas();
+
+        System.out.println("✓ Sentencias por llamada con 3 productos: " + pocas + ", con 63: " + muchas);
+        assertEquals(pocas, muchas, "El número de sentencias no debe depender de las filas ni de las relaciones distintas");
+    }
+
+    @Test
+    void testSentenciasConstantesSinCache() throws Exception {
+        // Con la caché vacía las categorías y sus ancestros se leen en cada llamada: una consulta por nivel
+        sinCache = true;
+        anadirProductos(3, 1, 1);
+        List<Integer> pocas = contarConsultas();
+
+        anadirProductos(60, hojas.size(), vendedores.size());
+        List<Integer> muchas = contarConsultas();
+
+        System.out.println("✓ Sentencias por llamada sin caché con 3 productos: " + pocas + ", con 63: " + muchas);
+        assertEquals(pocas, muchas, "El número de sentencias no debe depender de las filas ni de las relaciones distintas");
+    }
+}
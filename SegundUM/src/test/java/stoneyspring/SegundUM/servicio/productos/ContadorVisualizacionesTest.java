@@ -0,0 +1,180 @@
+package stoneyspring.SegundUM.servicio.productos;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import stoneyspring.SegundUM.repositorio.RepositorioException;
+
+/**
+ * Comprueba que no se pierden visualizaciones con muchos hilos incrementando
+ * mientras se vuelca continuamente, incluso si algunos volcados fallan o se retiran
+ * los contadores, y que se descartan las de productos que no existen.
+ */
+public class ContadorVisualizacionesTest {
+
+    private static final int HILOS = 8;
+    private static final int INCREMENTOS_POR_HILO = 200_000;
+    private static final int PRODUCTOS = 16;
+
+    private void lanzar(ContadorVisualizaciones.Destino destino, Runnable antesDeCerrar)
+            throws InterruptedException {
+        ExecutorService hilos = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        try (ContadorVisualizaciones contador = new ContadorVisualizaciones(destino, 1)) {
+            for (int h = 0; h < HILOS; h++) {
+                final int hilo = h;
+                hilos.submit(() -> {
+                    salida.await();
+                    for (int i = 0; i < INCREMENTOS_POR_HILO; i++) {
+                        contador.incrementar("producto-" + ((i + hilo) % PRODUCTOS));
+                    }
+                    return null;
+                });
+            }
+            salida.countDown();
+            hilos.shutdown();
+            hilos.awaitTermination(1, TimeUnit.MINUTES);
+            antesDeCerrar.run();
+        }
+    }
+
+    private void comprobarTotales(Map<String, Long> volcadas) {
+        long total = 0;
+        for (int p = 0; p < PRODUCTOS; p++) {
+            long producto = volcadas.getOrDefault("producto-" + p, 0L);
+            assertEquals((long) HILOS * INCREMENTOS_POR_HILO / PRODUCTOS, producto, "producto-" + p);
+            total += producto;
+        }
+        assertEquals((long) HILOS * INCREMENTOS_POR_HILO, total);
+    }
+
+    @Test
+    void testNoSePierdenVisualizaciones() throws Exception {
+        Map<String, Long> volcadas = new ConcurrentHashMap<>();
+
+        lanzar(incrementos -> {
+            incrementos.forEach((id, n) -> volcadas.merge(id, n, Long::sum));
+            return Collections.emptySet();
+        }, () -> { });
+
+        comprobarTotales(volcadas);
+    }
+
+    @Test
+    void testVolcadoFallidoSeReintenta() throws Exception {
+        Map<String, Long> volcadas = new ConcurrentHashMap<>();
+        AtomicInteger intentos = new AtomicInteger();
+        AtomicBoolean fallar = new AtomicBoolean(true);
+
+        lanzar(incrementos -> {
+            // falla uno de cada tres volcados mientras los hilos están incrementando
+            if (fallar.get() && intentos.incrementAndGet() % 3 == 0) {
+                throw new RepositorioException("Fallo simulado");
+            }
+            incrementos.forEach((id, n) -> volcadas.merge(id, n, Long::sum));
+            return Collections.emptySet();
+        }, () -> fallar.set(false));
+
+        comprobarTotales(volcadas);
+    }
+
+    @Test
+    void testContadoresSinPendientesSeRetiran() throws Exception {
+        Map<String, Long> volcadas = new ConcurrentHashMap<>();
+        ContadorVisualizaciones.Destino destino = incrementos -> {
+            incrementos.forEach((id, n) -> volcadas.merge(id, n, Long::sum));
+            return Collections.emptySet();
+        };
+        try (ContadorVisualizaciones contador = new ContadorVisualizaciones(destino, 60_000)) {
+            contador.incrementar("a");
+            contador.incrementar("b");
+            contador.volcar();
+            assertEquals(2, contador.getNumeroContadores());
+
+            // sin visualizaciones en el último periodo: se retiran
+            contador.volcar();
+            assertEquals(0, contador.getNumeroContadores());
+
+            contador.incrementar("a");
+            contador.volcar();
+            assertEquals(2L, volcadas.get("a"));
+            assertEquals(1L, volcadas.get("b"));
+        }
+    }
+
+    @Test
+    void testNoSePierdenVisualizacionesAlRetirarContadores() throws Exception {
+        Map<String, Long> volcadas = new ConcurrentHashMap<>();
+        ExecutorService hilos = Executors.newFixedThreadPool(HILOS);
+        // volcado cada milisegundo y ráfagas separadas, para que los contadores se retiren mientras se incrementan
+        try (ContadorVisualizaciones contador = new ContadorVisualizaciones(incrementos -> {
+            incrementos.forEach((id, n) -> volcadas.merge(id, n, Long::sum));
+            return Collections.emptySet();
+        }, 1)) {
+            for (int h = 0; h < HILOS; h++) {
+                final int hilo = h;
+                hilos.submit(() -> {
+                    for (int i = 0; i < INCREMENTOS_POR_HILO; i++) {
+                        contador.incrementar("producto-" + ((i + hilo) % PRODUCTOS));
+                        if (i % 10_000 == 0) {
+                            Thread.sleep(2);
+                        }
+                    }
+                    return null;
+                });
+            }
+            hilos.shutdown();
+            hilos.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        comprobarTotales(volcadas);
+    }
+
+    @Test
+    void testProductosDesconocidos() throws Exception {
+        Map<String, Long> volcadas = new ConcurrentHashMap<>();
+        Set<String> existentes = new HashSet<>(Arrays.asList("a", "b"));
+        ContadorVisualizaciones.Destino destino = incrementos -> {
+            Set<String> desconocidos = new HashSet<>();
+            incrementos.forEach((id, n) -> {
+                if (existentes.contains(id)) {
+                    volcadas.merge(id, n, Long::sum);
+                } else {
+                    desconocidos.add(id);
+                }
+            });
+            return desconocidos;
+        };
+        try (ContadorVisualizaciones contador = new ContadorVisualizaciones(destino, existentes::contains, 60_000)) {
+            assertTrue(contador.incrementar("a"));
+            assertFalse(contador.incrementar("x"));
+            assertEquals(0, contador.getPendientes("x"));
+
+            // borrado después de la primera visualización: se descarta al volcar
+            assertTrue(contador.incrementar("b"));
+            existentes.remove("b");
+            contador.incrementar("b");
+            contador.volcar();
+            assertEquals(1L, volcadas.get("a"));
+            assertFalse(volcadas.containsKey("b"));
+            assertEquals(1, contador.getNumeroContadores());
+            assertFalse(contador.incrementar("b"));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package stoneyspring.SegundUM.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba que el filtro de Bloom no da falsos negativos (tampoco añadiendo desde varios hilos) y que la tasa
+ * de falsos positivos se queda cerca de la pedida cuando está lleno.
+ */
+class FiltroBloomTest {
+
+    private static final int CAPACIDAD = 100_000;
+    private static final double TASA = 0.01;
+
+    @Test
+    void testSinFalsosNegativos() {
+        FiltroBloom filtro = new FiltroBloom(CAPACIDAD, TASA);
+        for (int i = 0; i < CAPACIDAD; i++) {
+            filtro.anadir("usuario" + i + "@segundum.com");
+        }
+        for (int i = 0; i < CAPACIDAD; i++) {
+            assertTrue(filtro.puedeContener("usuario" + i + "@segundum.com"), "Falso negativo: usuario" + i);
+        }
+    }
+
+    @Test
+    void testSinFalsosNegativosConVariosHilos() throws Exception {
+        FiltroBloom filtro = new FiltroBloom(CAPACIDAD, TASA);
+        int hilos = 8;
+        ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+        try {
+            List<Future<?>> tareas = new ArrayList<>();
+            for (int h = 0; h < hilos; h++) {
+                final int hilo = h;
+                tareas.add(ejecutor.submit(() -> {
+                    for (int i = hilo; i < CAPACIDAD; i += hilos) {
+                        filtro.anadir("usuario" + i + "@segundum.com");
+                    }
+                }));
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } finally {
+            ejecutor.shutdown();
+        }
+        for (int i = 0; i < CAPACIDAD; i++) {
+            assertTrue(filtro.puedeContener("usuario" + i + "@segundum.com"), "Falso negativo: usuario" + i);
+        }
+    }
+
+    @Test
+    void testTasaFalsosPositivos() {
+        FiltroBloom filtro = new FiltroBloom(CAPACIDAD, TASA);
+        for (int i = 0; i < CAPACIDAD; i++) {
+            filtro.anadir("usuario" + i + "@segundum.com");
+        }
+        int falsos = 0;
+        int pruebas = 100_000;
+        for (int i = 0; i < pruebas; i++) {
+            if (filtro.puedeContener("otro" + i + "@segundum.com")) {
+                falsos++;
+            }
+        }
+        double tasa = (double) falsos / pruebas;
+        System.out.println("✓ Tasa de falsos positivos medida: " + tasa + " (estimada " + filtro.getTasaFalsosPositivosEstimada() + ")");
+        assertTrue(tasa < 2 * TASA, "Tasa de falsos positivos demasiado alta: " + tasa);
+    }
+
+    @Test
+    void testAnadirCuentaLosNuevos() {
+        FiltroBloom filtro = new FiltroBloom(1000, TASA);
+        assertTrue(filtro.anadir("a@segundum.com"));
+        assertFalse(filtro.anadir("a@segundum.com"));
+        assertEquals(1, filtro.getElementos());
+    }
+
+    @Test
+    void testParametrosNoValidos() {
+        assertThrows(IllegalArgumentException.class, () -> new FiltroBloom(0, TASA));
+        assertThrows(IllegalArgumentException.class, () -> new FiltroBloom(1000, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FiltroBloom(1000, 1));
+    }
+}
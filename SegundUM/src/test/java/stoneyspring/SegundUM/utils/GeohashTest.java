@@ -0,0 +1,128 @@
+package stoneyspring.SegundUM.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Comprueba la codificación de geohash, las celdas que cubren una búsqueda por radio (también junto al
+ * antimeridiano y a un polo) y la unión de celdas consecutivas en rangos.
+ */
+class GeohashTest {
+
+    @Test
+    void testCodificarPuntoConocido() {
+        // Ejemplo clásico de geohash (Jutlandia, Dinamarca)
+        assertEquals("u4pruydqq", Geohash.codificar(57.64911, 10.40744));
+        assertEquals("u4pru", Geohash.codificar(57.64911, 10.40744, 5));
+        assertNull(Geohash.codificar(null, 10.40744));
+        assertNull(Geohash.codificar(91.0, 10.40744));
+        assertNull(Geohash.codificar(57.64911, -180.5));
+    }
+
+    @Test
+    void testCeldasCubrenCirculo() {
+        comprobarCobertura(38.0235, -1.1740, 2);
+        comprobarCobertura(57.64911, 10.40744, 25);
+    }
+
+    @Test
+    void testCeldasJuntoAlAntimeridiano() {
+        // La caja cruzaría el antimeridiano: se usan la celda del punto y sus vecinas, a los dos lados
+        assertNull(Geohash.caja(0, 179.999, 1));
+        List<String> celdas = comprobarCobertura(0, 179.999, 1);
+        int precision = celdas.get(0).length();
+        assertTrue(celdas.contains(Geohash.codificar(0.0, 179.999, precision)));
+        assertTrue(celdas.contains(Geohash.codificar(0.0, -179.999, precision)));
+
+        comprobarCobertura(-10, -179.9995, 0.5);
+    }
+
+    @Test
+    void testCeldasJuntoAUnPolo() {
+        // Si el círculo llega al polo no hay celdas que lo cubran: no se filtra por celda
+        assertNull(Geohash.caja(89.999, 45, 1));
+        assertTrue(Geohash.celdasCercanas(89.999, 45, 1).isEmpty());
+        assertTrue(Geohash.celdasCercanas(-89.999, 45, 1).isEmpty());
+    }
+
+    @Test
+    void testCoordenadasFueraDeRango() {
+        assertThrows(IllegalArgumentException.class, () -> Geohash.celdasCercanas(95, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> Geohash.celdasCercanas(0, 181, 1));
+    }
+
+    @Test
+    void testRangosUnenCeldasConsecutivas() {
+        List<String[]> rangos = Geohash.rangos(Arrays.asList("u4pr", "u4pq", "u4pt"));
+        assertEquals(2, rangos.size());
+        assertArrayEquals(new String[] { "u4pq", "u4ps" }, rangos.get(0));
+        assertArrayEquals(new String[] { "u4pt", "u4pu" }, rangos.get(1));
+
+        // Al pasar de la última celda de un prefijo a la primera del siguiente
+        rangos = Geohash.rangos(Arrays.asList("u4pz", "u4q0"));
+        assertEquals(1, rangos.size());
+        assertArrayEquals(new String[] { "u4pz", "u4q1" }, rangos.get(0));
+
+        // La última celda no tiene fin
+        rangos = Geohash.rangos(Arrays.asList("zzzy", "zzzz"));
+        assertEquals(1, rangos.size());
+        assertArrayEquals(new String[] { "zzzy", null }, rangos.get(0));
+    }
+
+    /**
+     * Comprueba que los puntos del borde del círculo y el centro caen en alguna de las celdas y en alguno
+     * de sus rangos, y devuelve las celdas.
+     */
+    private static List<String> comprobarCobertura(double latitud, double longitud, double radioKm) {
+        List<String> celdas = Geohash.celdasCercanas(latitud, longitud, radioKm);
+        assertFalse(celdas.isEmpty());
+        assertTrue(celdas.size() <= Geohash.MAXIMO_CELDAS);
+        List<String[]> rangos = Geohash.rangos(celdas);
+
+        for (int rumbo = 0; rumbo <= 360; rumbo += 10) {
+            // el centro y puntos casi en el borde, en rumbos de 10 en 10 grados
+            double[] punto = rumbo == 360 ? new double[] { latitud, longitud }
+                    : destino(latitud, longitud, rumbo, radioKm * 0.999);
+            double lat = punto[0];
+            double lon = punto[1];
+            assertTrue(Geohash.distanciaKm(latitud, longitud, lat, lon) <= radioKm);
+            String geohash = Geohash.codificar(lat, lon);
+            assertTrue(celdas.contains(geohash.substring(0, celdas.get(0).length())),
+                    "Punto fuera de las celdas: " + lat + ", " + lon);
+            assertTrue(enAlgunRango(rangos, geohash), "Punto fuera de los rangos: " + lat + ", " + lon);
+        }
+        return celdas;
+    }
+
+    /**
+     * Punto a la distancia indicada del de partida siguiendo un rumbo (en grados desde el norte), sobre la esfera.
+     */
+    private static double[] destino(double latitud, double longitud, double rumbo, double distanciaKm) {
+        double angular = distanciaKm / 6371.0;
+        double lat1 = Math.toRadians(latitud);
+        double r = Math.toRadians(rumbo);
+        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(angular) + Math.cos(lat1) * Math.sin(angular) * Math.cos(r));
+        double lon2 = Math.toRadians(longitud) + Math.atan2(Math.sin(r) * Math.sin(angular) * Math.cos(lat1),
+                Math.cos(angular) - Math.sin(lat1) * Math.sin(lat2));
+        double lon = Math.toDegrees(lon2);
+        if (lon >= 180) {
+            lon -= 360;
+        } else if (lon < -180) {
+            lon += 360;
+        }
+        return new double[] { Math.toDegrees(lat2), lon };
+    }
+
+    private static boolean enAlgunRango(List<String[]> rangos, String geohash) {
+        for (String[] rango : rangos) {
+            if (geohash.compareTo(rango[0]) >= 0 && (rango[1] == null || geohash.compareTo(rango[1]) < 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package encuestas.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import encuestas.modelo.Encuesta;
+import encuestas.repositorio.RepositorioEncuestasJPA;
+import encuestas.repositorio.RepositorioEncuestasMemoria;
+import encuestas.repositorio.RepositorioEncuestasXML;
+import repositorio.RepositorioString;
+
+/**
+ * Operaciones básicas de los repositorios de encuestas: en memoria, XML y JPA.
+ * <p>
+ * El repositorio se llena con {@code encuestas} encuestas antes de medir. Las encuestas que da de alta
+ * {@code add} se borran al final de cada iteración, para que el tamaño del repositorio no dependa
+ * de lo rápido que vaya. El repositorio JPA usa la base de datos de los benchmarks
+ * (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}).
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar RepositorioEncuestasBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RepositorioEncuestasBenchmark {
+
+    @Param({ "memoria", "xml", "jpa" })
+    public String implementacion;
+
+    @Param({ "100" })
+    public int encuestas;
+
+    private RepositorioString<Encuesta> repositorio;
+    private final List<String> ids = new ArrayList<>();
+    private final List<Encuesta> nuevas = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        switch (implementacion) {
+        case "memoria":
+            repositorio = new RepositorioEncuestasMemoria();
+            break;
+        case "xml":
+            repositorio = new RepositorioEncuestasXML();
+            break;
+        default:
+            repositorio = new RepositorioEncuestasJPA();
+        }
+        for (int i = 0; i < encuestas; i++) {
+            ids.add(repositorio.add(nuevaEncuesta(i)));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void borrarNuevas() throws Exception {
+        for (Encuesta encuesta : nuevas) {
+            repositorio.delete(encuesta);
+        }
+        nuevas.clear();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        for (String id : ids) {
+            repositorio.delete(repositorio.getById(id));
+        }
+    }
+
+    private static Encuesta nuevaEncuesta(int i) {
+        return new Encuesta("Encuesta " + i, "Instrucciones de la encuesta " + i, LocalDateTime.now().minusDays(1),
+                LocalDateTime.now().plusDays(1), Arrays.asList("Opción 1", "Opción 2", "Opción 3"));
+    }
+
+    private String idAleatorio() {
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    @Benchmark
+    public String add() throws Exception {
+        Encuesta encuesta = nuevaEncuesta(nuevas.size());
+        nuevas.add(encuesta);
+        return repositorio.add(encuesta);
+    }
+
+    @Benchmark
+    public Encuesta getById() throws Exception {
+        return repositorio.getById(idAleatorio());
+    }
+
+    @Benchmark
+    public void update() throws Exception {
+        Encuesta encuesta = repositorio.getById(idAleatorio());
+        encuesta.setInstrucciones("Instrucciones actualizadas " + System.nanoTime());
+        repositorio.update(encuesta);
+    }
+
+    @Benchmark
+    public List<Encuesta> getAll() throws Exception {
+        return repositorio.getAll();
+    }
+}
@@ -0,0 +1,102 @@
+package encuestas.benchmark;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import encuestas.servicio.IServicioEncuestas;
+import servicio.FactoriaServicios;
+
+/**
+ * {@code votar} y {@code haVotado} del servicio de encuestas, con el repositorio configurado en
+ * <i>repositorios.properties</i> (JPA sobre la base de datos de los benchmarks, ver
+ * {@link stoneyspring.benchmark.EjecutarBenchmarks}).
+ * <p>
+ * {@code haVotado} consulta por un usuario que no ha votado (recorre todos los votos) en una encuesta con
+ * {@code votos} votos. {@code votar} vota con un usuario distinto cada vez en una encuesta nueva en cada
+ * iteración, así que la encuesta va creciendo a lo largo de la iteración, como en uso real.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar ServicioEncuestasBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ServicioEncuestasBenchmark {
+
+    private static String crearEncuesta(IServicioEncuestas servicio) throws Exception {
+        return servicio.crear("Encuesta de benchmark", "Instrucciones", LocalDateTime.now().minusDays(1),
+                LocalDateTime.now().plusDays(1), Arrays.asList("Opción 1", "Opción 2", "Opción 3"));
+    }
+
+    @State(Scope.Benchmark)
+    public static class EncuestaConVotos {
+
+        @Param({ "100", "1000" })
+        public int votos;
+
+        IServicioEncuestas servicio;
+        String id;
+
+        @Setup
+        public void setUp() throws Exception {
+            servicio = FactoriaServicios.getServicio(IServicioEncuestas.class);
+            id = crearEncuesta(servicio);
+            for (int i = 0; i < votos; i++) {
+                servicio.votar(id, 1 + i % 3, "votante-" + i);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            servicio.eliminar(id);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EncuestaNueva {
+
+        IServicioEncuestas servicio;
+        String id;
+        long votantes;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            servicio = FactoriaServicios.getServicio(IServicioEncuestas.class);
+            id = crearEncuesta(servicio);
+            votantes = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws Exception {
+            servicio.eliminar(id);
+        }
+    }
+
+    @Benchmark
+    public boolean haVotado(EncuestaConVotos estado) throws Exception {
+        return estado.servicio.haVotado(estado.id, "no-ha-votado");
+    }
+
+    @Benchmark
+    public void votar(EncuestaNueva estado) throws Exception {
+        estado.servicio.votar(estado.id, 1, "votante-" + estado.votantes++);
+    }
+}
@@ -0,0 +1,94 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Modificación de un usuario leído fuera de una unidad de trabajo, como en {@code ServicioUsuarios.modificarUsuario}:
+ * lectura con {@code getById} y escritura.
+ * <p>
+ * {@code versionada} escribe con {@code update}, que con el atributo de versión es una sola sentencia UPDATE que la
+ * comprueba. {@code findYMerge} reproduce el {@code update} anterior: find para comprobar que existe y merge, que
+ * vuelve a leer la fila antes de escribirla.
+ * </p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}) y un usuario de pruebas.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar ActualizacionVersionadaBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ActualizacionVersionadaBenchmark {
+
+    private static final String USUARIO = "bench-modificar";
+
+    private RepositorioUsuarios repositorio;
+    private int contador;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = FactoriaRepositorios.getRepositorio(Usuario.class);
+        try {
+            repositorio.getById(USUARIO);
+        } catch (EntidadNoEncontrada e) {
+            repositorio.add(new Usuario(USUARIO, USUARIO + "@bench.segundum.com", "Bench", "Mark",
+                    "clave", LocalDate.of(1990, 1, 1), null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    @Benchmark
+    public void versionada() throws Exception {
+        Usuario usuario = repositorio.getById(USUARIO);
+        usuario.setNombre("Bench " + contador++);
+        repositorio.update(usuario);
+    }
+
+    @Benchmark
+    public void findYMerge() throws Exception {
+        Usuario usuario = repositorio.getById(USUARIO);
+        usuario.setNombre("Bench " + contador++);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            if (em.find(Usuario.class, usuario.getId()) == null) {
+                throw new EntidadNoEncontrada(usuario.getId() + " no existe en el repositorio");
+            }
+            em.merge(usuario);
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.controller.Controller;
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Altas de producto por segundo (CU3) con varios hilos.
+ * <p>
+ * {@code controlador} usa {@code Controller.darAltaProducto}, que hace las consultas y el alta en una
+ * unidad de trabajo (un EntityManager y una transacción). {@code llamadasSeparadas} reproduce el camino
+ * anterior: consulta de la categoría, del vendedor y alta, cada una con su EntityManager y su transacción.
+ * </p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}); cada operación inserta un producto
+ * del vendedor y la categoría de pruebas.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar AltaProductoBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class AltaProductoBenchmark {
+
+    private static final String VENDEDOR = "bench-alta";
+    private static final String CATEGORIA = "bench-categoria";
+
+    private Controller controller;
+    private RepositorioCategorias repositorioCategorias;
+    private RepositorioUsuarios repositorioUsuarios;
+    private RepositorioProductos repositorioProductos;
+
+    @Setup
+    public void setUp() throws Exception {
+        controller = new Controller();
+        repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+        repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        repositorioProductos = FactoriaRepositorios.getRepositorio(Producto.class);
+
+        try {
+            repositorioUsuarios.getById(VENDEDOR);
+        } catch (EntidadNoEncontrada e) {
+            repositorioUsuarios.add(new Usuario(VENDEDOR, VENDEDOR + "@bench.segundum.com", "Bench", "Mark",
+                    "clave", LocalDate.of(1990, 1, 1), null));
+        }
+        if (!repositorioCategorias.existe(CATEGORIA)) {
+            repositorioCategorias.add(new Categoria(CATEGORIA, "Benchmark"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    @Benchmark
+    public String controlador() {
+        return controller.darAltaProducto("Producto", "Producto de benchmark", BigDecimal.TEN,
+                EstadoProducto.NUEVO, CATEGORIA, true, VENDEDOR);
+    }
+
+    @Benchmark
+    public String llamadasSeparadas() throws Exception {
+        Categoria categoria = repositorioCategorias.getById(CATEGORIA);
+        Usuario vendedor = repositorioUsuarios.getById(VENDEDOR);
+        return repositorioProductos.add(new Producto(UUID.randomUUID().toString(), "Producto",
+                "Producto de benchmark", BigDecimal.TEN, EstadoProducto.NUEVO, categoria, true, vendedor));
+    }
+}
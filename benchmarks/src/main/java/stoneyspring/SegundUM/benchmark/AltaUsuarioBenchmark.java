@@ -0,0 +1,90 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.servicio.usuarios.FiltroEmails;
+import stoneyspring.SegundUM.servicio.usuarios.ServicioUsuarios;
+import stoneyspring.SegundUM.servicio.usuarios.ServicioUsuariosImpl;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Altas de usuario por segundo con varios hilos, todas de emails nuevos (como en una campaña de registro).
+ * <p>
+ * {@code filtroEmails} usa {@code ServicioUsuarios.altaUsuario}, que no consulta los emails que su
+ * {@link FiltroEmails} sabe que son nuevos. {@code consultaEmail} reproduce el camino anterior: consulta del
+ * email y alta. Al terminar se escribe el estado del filtro (memoria, tiempo de construcción y falsos positivos).
+ * </p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}); cada operación
+ * inserta un usuario.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar AltaUsuarioBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+@Fork(1)
+public class AltaUsuarioBenchmark {
+
+    private static final LocalDate NACIMIENTO = LocalDate.of(1990, 1, 1);
+
+    private ServicioUsuarios servicio;
+    private RepositorioUsuarios repositorio;
+    private FiltroEmails filtro;
+
+    @Setup
+    public void setUp() throws Exception {
+        servicio = new ServicioUsuariosImpl();
+        repositorio = FactoriaRepositorios.getRepositorio(Usuario.class);
+        // El mismo filtro que construye el servicio, para ver cuánto tarda y cuánto ocupa
+        filtro = new FiltroEmails(repositorio, 0.01);
+        filtro.construir();
+        System.out.println("Usuarios: " + repositorio.getNumeroUsuarios() + ", filtro construido en "
+                + filtro.getMsConstruccion() + " ms: " + filtro);
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    private static String email() {
+        return "bench-" + UUID.randomUUID() + "@bench.segundum.com";
+    }
+
+    @Benchmark
+    public String filtroEmails() throws Exception {
+        return servicio.altaUsuario(email(), "Bench", "Mark", "clave", NACIMIENTO, null);
+    }
+
+    @Benchmark
+    public String consultaEmail() throws Exception {
+        String email = email();
+        if (repositorio.existeEmail(email)) {
+            throw new IllegalStateException("Email repetido: " + email);
+        }
+        return repositorio.add(new Usuario(UUID.randomUUID().toString(), email, "Bench", "Mark", "clave",
+                NACIMIENTO, null));
+    }
+}
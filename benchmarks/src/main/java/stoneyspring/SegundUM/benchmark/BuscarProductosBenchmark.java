@@ -0,0 +1,121 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+
+/**
+ * Tiempo de {@code buscarProductos} del repositorio de productos JPA por categoría (con sus descendientes),
+ * por texto en la descripción y por categoría y precio máximo.
+ * <p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}). Antes de medir
+ * se crea un árbol de 5 categorías con 4 subcategorías cada una y {@code productos} productos repartidos entre
+ * las hojas; se borran al terminar.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar BuscarProductosBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BuscarProductosBenchmark {
+
+    private static final String PREFIJO = "bench-busqueda-";
+    private static final String[] PALABRAS = { "bicicleta", "libro", "portátil", "guitarra", "mesa" };
+
+    @Param({ "1000", "10000" })
+    public int productos;
+
+    private RepositorioCategorias repositorioCategorias;
+    private RepositorioProductos repositorioProductos;
+    private RepositorioUsuarios repositorioUsuarios;
+
+    private final List<Categoria> raices = new ArrayList<>();
+    private final List<Producto> insertados = new ArrayList<>();
+    private Usuario vendedor;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+        repositorioProductos = FactoriaRepositorios.getRepositorio(Producto.class);
+        repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+
+        List<Categoria> hojas = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Categoria raiz = new Categoria(PREFIJO + i, "Categoría " + i);
+            for (int j = 0; j < 4; j++) {
+                Categoria hoja = new Categoria(PREFIJO + i + "-" + j, "Categoría " + i + "." + j);
+                raiz.addSubcategoria(hoja);
+                hojas.add(hoja);
+            }
+            repositorioCategorias.add(raiz);
+            raices.add(raiz);
+        }
+
+        vendedor = new Usuario(PREFIJO + "vendedor", PREFIJO + "vendedor@bench.segundum.com", "Bench", "Mark",
+                "clave", LocalDate.of(1990, 1, 1), null);
+        repositorioUsuarios.add(vendedor);
+
+        for (int i = 0; i < productos; i++) {
+            String palabra = PALABRAS[i % PALABRAS.length];
+            insertados.add(new Producto(PREFIJO + UUID.randomUUID(), "Producto " + i,
+                    "Se vende " + palabra + " en buen estado, referencia " + i, BigDecimal.valueOf(5 + i % 500),
+                    EstadoProducto.values()[i % EstadoProducto.values().length], hojas.get(i % hojas.size()), true,
+                    vendedor));
+        }
+        repositorioProductos.addAll(insertados, 1000);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        repositorioProductos.deleteAll(insertados, 1000);
+        repositorioUsuarios.delete(vendedor);
+        for (Categoria raiz : raices) {
+            repositorioCategorias.delete(repositorioCategorias.getById(raiz.getId()));
+        }
+    }
+
+    @Benchmark
+    public List<Producto> porCategoria() throws Exception {
+        return repositorioProductos.buscarProductos(PREFIJO + 0, (String) null, null, null);
+    }
+
+    @Benchmark
+    public List<Producto> porTexto() throws Exception {
+        return repositorioProductos.buscarProductos(null, "guitarra", null, null);
+    }
+
+    @Benchmark
+    public List<Producto> porCategoriaYPrecio() throws Exception {
+        return repositorioProductos.buscarProductos(PREFIJO + 0, (String) null, null, BigDecimal.valueOf(100));
+    }
+}
@@ -0,0 +1,155 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.LugarRecogida;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ProductoCercano;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.FiltroProductos;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+import stoneyspring.SegundUM.utils.Geohash;
+
+/**
+ * Búsqueda de los productos que se recogen a menos de {@code radioKm} de un punto entre {@code puntos} lugares de
+ * recogida repartidos al azar por la península: con el índice del geohash ({@code buscarCercanos}) y como había que
+ * hacerlo antes ({@code recorrerTodos}), leyendo todos los productos y calculando la distancia de cada uno.
+ * Cada llamada busca alrededor de una ciudad distinta.
+ * <p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}). La primera vez inserta
+ * los productos de un vendedor de pruebas (tarda) y en las siguientes los reutiliza. Son los únicos productos con lugar
+ * de recogida de esa base de datos, así que {@code buscarCercanos} no filtra por vendedor. El índice del geohash
+ * se crea con la tabla: si <i>benchmarks-h2/</i> es de antes de tenerlo, hay que borrarla.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar BusquedaCercanosBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class BusquedaCercanosBenchmark {
+
+    private static final String VENDEDOR = "bench-geo-vendedor";
+    private static final String CATEGORIA = "bench-geo-categoria";
+
+    /** Madrid, Barcelona, Valencia, Sevilla, Zaragoza, Murcia, Bilbao, Valladolid. */
+    private static final double[][] CENTROS = {
+        { 40.4168, -3.7038 }, { 41.3874, 2.1686 }, { 39.4699, -0.3763 }, { 37.3891, -5.9845 },
+        { 41.6488, -0.8891 }, { 37.9922, -1.1307 }, { 43.2630, -2.9350 }, { 41.6523, -4.7245 }
+    };
+
+    @Param({ "1000000" })
+    public int puntos;
+
+    @Param({ "1", "10", "50" })
+    public double radioKm;
+
+    private RepositorioProductos repositorio;
+    private int siguiente;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = FactoriaRepositorios.getRepositorio(Producto.class);
+        RepositorioUsuarios repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        RepositorioCategorias repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+
+        Usuario vendedor;
+        try {
+            vendedor = repositorioUsuarios.getById(VENDEDOR);
+        } catch (EntidadNoEncontrada e) {
+            vendedor = new Usuario(VENDEDOR, VENDEDOR + "@bench.segundum.com", "Bench", "Mark",
+                    "clave", LocalDate.of(1990, 1, 1), null);
+            repositorioUsuarios.add(vendedor);
+        }
+        if (!repositorioCategorias.existe(CATEGORIA)) {
+            repositorioCategorias.add(new Categoria(CATEGORIA, "Benchmark"));
+        }
+        Categoria categoria = repositorioCategorias.getById(CATEGORIA);
+
+        long existentes = contar();
+
+        // Península: latitudes 36..43.8, longitudes -9.3..3.3
+        Random random = new Random(existentes);
+        List<Producto> lote = new ArrayList<>(10_000);
+        for (long i = existentes; i < puntos; i++) {
+            Producto producto = new Producto(UUID.randomUUID().toString(), "Producto " + i, "Producto de benchmark " + i,
+                    BigDecimal.valueOf(i % 1000), EstadoProducto.NUEVO, categoria, true, vendedor);
+            producto.setRecogida(new LugarRecogida("Punto " + i, -9.3 + random.nextDouble() * 12.6,
+                    36 + random.nextDouble() * 7.8));
+            lote.add(producto);
+            if (lote.size() == 10_000 || i == puntos - 1) {
+                repositorio.addAll(lote, 1000);
+                lote.clear();
+            }
+        }
+    }
+
+    private long contar() throws Exception {
+        long[] total = { 0 };
+        repositorio.recorrer(FiltroProductos.porVendedor(VENDEDOR), p -> total[0]++);
+        return total[0];
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    private double[] centro() {
+        return CENTROS[siguiente++ % CENTROS.length];
+    }
+
+    @Benchmark
+    public List<ProductoCercano> buscarCercanos() throws Exception {
+        double[] centro = centro();
+        return repositorio.buscarCercanos(centro[0], centro[1], radioKm, null);
+    }
+
+    @Benchmark
+    public List<ProductoCercano> recorrerTodos() throws Exception {
+        double[] centro = centro();
+        List<ProductoCercano> cercanos = new ArrayList<>();
+        repositorio.recorrer(FiltroProductos.porVendedor(VENDEDOR), p -> {
+            LugarRecogida lugar = p.getRecogida();
+            if (lugar != null && lugar.getLatitud() != null && lugar.getLongitud() != null) {
+                double distancia = Geohash.distanciaKm(centro[0], centro[1], lugar.getLatitud(), lugar.getLongitud());
+                if (distancia <= radioKm) {
+                    cercanos.add(new ProductoCercano(p, distancia));
+                }
+            }
+        });
+        cercanos.sort(Comparator.comparingDouble(ProductoCercano::getDistanciaKm));
+        return cercanos;
+    }
+}
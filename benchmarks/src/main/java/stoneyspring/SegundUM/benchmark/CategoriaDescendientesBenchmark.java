@@ -0,0 +1,65 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+
+/**
+ * Tiempo de {@link Categoria#obtenerDescendientes()} desde la raíz de un árbol en memoria con
+ * {@code profundidad} niveles bajo la raíz y {@code hijas} subcategorías por categoría.
+ * No usa base de datos.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar CategoriaDescendientesBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CategoriaDescendientesBenchmark {
+
+    @Param({ "2", "4" })
+    public int profundidad;
+
+    @Param({ "5", "10" })
+    public int hijas;
+
+    private Categoria raiz;
+
+    @Setup
+    public void setUp() {
+        raiz = new Categoria("0", "Raíz");
+        anadirHijas(raiz, profundidad);
+    }
+
+    private void anadirHijas(Categoria padre, int niveles) {
+        if (niveles == 0) {
+            return;
+        }
+        for (int i = 0; i < hijas; i++) {
+            Categoria hija = new Categoria(padre.getId() + "." + i, "Categoría " + padre.getId() + "." + i);
+            padre.addSubcategoria(hija);
+            anadirHijas(hija, niveles - 1);
+        }
+    }
+
+    @Benchmark
+    public List<Categoria> obtenerDescendientes() {
+        return raiz.obtenerDescendientes();
+    }
+}
@@ -0,0 +1,147 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.ModoConsistencia;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Latencia y consultas a la base de datos de {@code getById} en cada {@link ModoConsistencia}.
+ * <p>
+ * Al final de cada iteración se imprimen las sentencias SQL por lectura, contadas con un listener
+ * de la sesión de EclipseLink: 3 en modo FUERTE (el producto, su categoría y su vendedor, que también se vuelven a
+ * leer) y 0 en CACHE e INSTANTANEA una vez caliente la caché.
+ * Antes de los modos cada lectura eran 2 (find y refresh, sin caché compartida).
+ * </p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}); la primera vez inserta
+ * {@code productos} productos de un vendedor de pruebas.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar ConsistenciaLecturaBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConsistenciaLecturaBenchmark {
+
+    private static final String VENDEDOR = "bench-consistencia";
+    private static final String CATEGORIA = "bench-categoria";
+
+    @Param({ "1000" })
+    public int productos;
+
+    @Param({ "FUERTE", "CACHE", "INSTANTANEA" })
+    public ModoConsistencia modo;
+
+    private RepositorioProductos repositorio;
+    private List<String> ids;
+
+    private final AtomicLong sentencias = new AtomicLong();
+    private final AtomicLong lecturas = new AtomicLong();
+    private Session sesion;
+    private SessionEventAdapter contador;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = FactoriaRepositorios.getRepositorio(Producto.class);
+        RepositorioUsuarios repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        RepositorioCategorias repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+
+        Usuario vendedor;
+        try {
+            vendedor = repositorioUsuarios.getById(VENDEDOR);
+        } catch (EntidadNoEncontrada e) {
+            vendedor = new Usuario(VENDEDOR, VENDEDOR + "@bench.segundum.com", "Bench", "Mark",
+                    "clave", LocalDate.of(1990, 1, 1), null);
+            repositorioUsuarios.add(vendedor);
+        }
+        if (!repositorioCategorias.existe(CATEGORIA)) {
+            repositorioCategorias.add(new Categoria(CATEGORIA, "Benchmark"));
+        }
+        Categoria categoria = repositorioCategorias.getById(CATEGORIA);
+
+        ids = new ArrayList<>();
+        for (Producto p : repositorio.getProductosPorVendedor(VENDEDOR)) {
+            ids.add(p.getId());
+        }
+        List<Producto> nuevos = new ArrayList<>();
+        for (int i = ids.size(); i < productos; i++) {
+            nuevos.add(new Producto(UUID.randomUUID().toString(), "Producto " + i, "Producto de benchmark " + i,
+                    BigDecimal.valueOf(i % 1000), EstadoProducto.NUEVO, categoria, true, vendedor));
+        }
+        ids.addAll(repositorio.addAll(nuevos));
+
+        sesion = EntityManagerHelper.getEntityManager().unwrap(Session.class);
+        EntityManagerHelper.closeEntityManager();
+        contador = new SessionEventAdapter() {
+            @Override
+            public void postExecuteCall(SessionEvent event) {
+                sentencias.incrementAndGet();
+            }
+        };
+        sesion.getEventManager().addListener(contador);
+    }
+
+    @Setup(Level.Iteration)
+    public void reiniciarContadores() {
+        sentencias.set(0);
+        lecturas.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void imprimirSentencias() {
+        System.out.printf("%n  sentencias SQL por lectura: %.2f%n", (double) sentencias.get() / Math.max(1, lecturas.get()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        sesion.getEventManager().removeListener(contador);
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    private String idAleatorio() {
+        lecturas.incrementAndGet();
+        return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    @Benchmark
+    public Producto getById() throws Exception {
+        return repositorio.getById(idAleatorio(), modo);
+    }
+}
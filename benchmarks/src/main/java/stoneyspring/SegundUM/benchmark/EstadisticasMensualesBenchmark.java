@@ -0,0 +1,90 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import stoneyspring.SegundUM.dominio.EstadisticaMensual;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.estadisticas.RepositorioEstadisticas;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Estadísticas del mes actual (total, por vendedor y por categoría): leídas de la tabla de agregados
+ * ({@code agregados}) y calculadas a partir de los productos como haría un informe sin ella ({@code calcular}).
+ * <p>
+ * Usa los productos que haya en el mes actual en la base de datos de los benchmarks (ver
+ * {@link stoneyspring.benchmark.EjecutarBenchmarks}): conviene ejecutar antes los que insertan productos,
+ * como {@link BusquedaCercanosBenchmark}. Antes de cada operación se visualiza un producto, como en la
+ * aplicación: sin cambios en la tabla, H2 devolvería el resultado anterior de las consultas de {@code calcular}.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar EstadisticasMensualesBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class EstadisticasMensualesBenchmark {
+
+    private RepositorioEstadisticas repositorio;
+    private RepositorioProductos repositorioProductos;
+    private Map<String, Long> visualizacion;
+    private int mes;
+    private int anio;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = FactoriaRepositorios.getRepositorio(EstadisticaMensual.class);
+        YearMonth actual = YearMonth.now();
+        mes = actual.getMonthValue();
+        anio = actual.getYear();
+        repositorioProductos = FactoriaRepositorios.getRepositorio(Producto.class);
+        visualizacion = Collections.singletonMap(repositorioProductos.getHistorialMes(mes, anio, null, 1).get(0).getId(), 1L);
+        repositorio.recalcular(mes, anio, false);
+    }
+
+    @Setup(Level.Invocation)
+    public void visualizar() throws Exception {
+        repositorioProductos.incrementarVisualizaciones(visualizacion);
+        repositorio.sumarVisualizaciones(visualizacion);
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    @Benchmark
+    public void agregados(Blackhole bh) throws Exception {
+        for (EstadisticaMensual.Tipo tipo : EstadisticaMensual.Tipo.values()) {
+            bh.consume(repositorio.getEstadisticas(mes, anio, tipo));
+        }
+    }
+
+    @Benchmark
+    public List<EstadisticaMensual> calcular() throws Exception {
+        return repositorio.calcular(mes, anio);
+    }
+}
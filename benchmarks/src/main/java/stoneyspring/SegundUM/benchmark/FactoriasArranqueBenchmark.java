@@ -0,0 +1,129 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.ModoConsistencia;
+import stoneyspring.SegundUM.repositorio.RepositorioString;
+import stoneyspring.SegundUM.utils.PropertiesReader;
+
+/**
+ * Coste de obtener los repositorios con {@link FactoriaRepositorios}, que resuelve los enlaces una vez y da
+ * siempre la misma instancia, frente a como lo hacía antes (<i>legado</i>): leer <i>repositorios.properties</i>
+ * y crear el repositorio por reflexión en cada llamada.
+ * <ul>
+ * <li>{@code primeraPeticion*}: en una JVM recién arrancada, las cinco peticiones de repositorios que hacen los
+ * tres servicios al crearse en la primera petición a la aplicación (cada medida es un proceso nuevo). Antes se
+ * hace lo que hace el arranque de la aplicación: cargar las clases de los repositorios y la factoría, que lee
+ * ya sus enlaces; sin eso la medida sería casi toda carga de clases de EclipseLink, igual en las dos versiones.</li>
+ * <li>{@code getRepositorio*}: una petición cuando la aplicación ya está en marcha.</li>
+ * </ul>
+ * La versión legado envuelve también el repositorio para medirlo, llamando por reflexión al método de la factoría.
+ * No usa la base de datos: ninguno de los repositorios la toca al crearse.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar FactoriasArranqueBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FactoriasArranqueBenchmark {
+
+    private static final Class<?>[] PRIMERA_PETICION = {
+        Producto.class, Categoria.class, Usuario.class, Categoria.class, Usuario.class
+    };
+
+    private static final Method INSTRUMENTAR;
+
+    static {
+        try {
+            INSTRUMENTAR = Class.forName("stoneyspring.SegundUM.repositorio.RepositorioInstrumentado")
+                    .getDeclaredMethod("instrumentar", Object.class, Class.class);
+            INSTRUMENTAR.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void arrancar() throws Exception {
+        PropertiesReader properties = new PropertiesReader("repositorios.properties");
+        for (Class<?> entidad : PRIMERA_PETICION) {
+            Class.forName(properties.getProperty(entidad.getName()));
+        }
+        Class.forName(FactoriaRepositorios.class.getName());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object[] primeraPeticion() {
+        Object[] repositorios = new Object[PRIMERA_PETICION.length];
+        for (int i = 0; i < PRIMERA_PETICION.length; i++) {
+            repositorios[i] = FactoriaRepositorios.getRepositorio(PRIMERA_PETICION[i]);
+        }
+        return repositorios;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Object[] primeraPeticionLegado() throws Exception {
+        Object[] repositorios = new Object[PRIMERA_PETICION.length];
+        for (int i = 0; i < PRIMERA_PETICION.length; i++) {
+            repositorios[i] = getRepositorioLegado(PRIMERA_PETICION[i]);
+        }
+        return repositorios;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public Object getRepositorio() {
+        return FactoriaRepositorios.getRepositorio(Producto.class);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public Object getRepositorioLegado() throws Exception {
+        return getRepositorioLegado(Producto.class);
+    }
+
+    /**
+     * Lo que hacía {@code FactoriaRepositorios.getRepositorio} en cada llamada.
+     */
+    private static Object getRepositorioLegado(Class<?> entidad) throws Exception {
+        PropertiesReader properties = new PropertiesReader("repositorios.properties");
+        String clase = properties.getProperty(entidad.getName());
+        Object repositorio = Class.forName(clase).getConstructor().newInstance();
+        String consistencia = properties.getProperty(entidad.getName() + ".consistencia");
+        if (consistencia != null && repositorio instanceof RepositorioString) {
+            ((RepositorioString<?>) repositorio).setModoConsistencia(ModoConsistencia.valueOf(consistencia.trim()));
+        }
+        return INSTRUMENTAR.invoke(null, repositorio, entidad);
+    }
+}
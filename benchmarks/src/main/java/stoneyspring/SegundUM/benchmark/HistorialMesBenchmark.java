@@ -0,0 +1,152 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.ResumenProducto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.servicio.productos.RankingMensual;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Latencia y memoria reservada por llamada del historial del mes de un vendedor.
+ * <p>
+ * {@code entidades} reproduce cómo se calculaba antes (entidades completas y el resumen construido
+ * en Java) y {@code proyeccion} usa el repositorio ({@code SELECT NEW ResumenProducto}), sin límite
+ * y con los 10 más vistos. {@code ranking} lee el ranking en memoria del mes que usa ahora el servicio, ya cargado;
+ * sin límite devuelve todos los productos del vendedor. La memoria reservada por operación es
+ * <i>gc.alloc.rate.norm</i> del GCProfiler.
+ * </p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}); la primera vez inserta
+ * {@code filas} productos del mes actual de un vendedor de pruebas.
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar HistorialMesBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class HistorialMesBenchmark {
+
+    private static final String VENDEDOR = "bench-historial";
+    private static final String CATEGORIA = "bench-categoria";
+
+    @Param({ "20000" })
+    public int filas;
+
+    @Param({ "0", "10" })
+    public int limite;
+
+    private RepositorioProductos repositorio;
+    private int mes;
+    private int anio;
+    private String email;
+    private RankingMensual ranking;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = FactoriaRepositorios.getRepositorio(Producto.class);
+        RepositorioUsuarios repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        RepositorioCategorias repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+
+        LocalDate hoy = LocalDate.now();
+        mes = hoy.getMonthValue();
+        anio = hoy.getYear();
+        email = VENDEDOR + "@bench.segundum.com";
+
+        Usuario vendedor;
+        try {
+            vendedor = repositorioUsuarios.getById(VENDEDOR);
+        } catch (EntidadNoEncontrada e) {
+            vendedor = new Usuario(VENDEDOR, email, "Bench", "Mark", "clave", LocalDate.of(1990, 1, 1), null);
+            repositorioUsuarios.add(vendedor);
+        }
+        if (!repositorioCategorias.existe(CATEGORIA)) {
+            repositorioCategorias.add(new Categoria(CATEGORIA, "Benchmark"));
+        }
+        Categoria categoria = repositorioCategorias.getById(CATEGORIA);
+
+        List<Producto> nuevos = new ArrayList<>();
+        for (int i = repositorio.getHistorialMes(mes, anio, email).size(); i < filas; i++) {
+            nuevos.add(new Producto(UUID.randomUUID().toString(), "Producto " + i, "Producto de benchmark " + i,
+                    BigDecimal.valueOf(i % 1000), EstadoProducto.NUEVO, categoria, true, vendedor));
+        }
+        repositorio.addAll(nuevos, 1000);
+
+        // sin reconciliaciones durante la medida
+        ranking = new RankingMensual(repositorio::recorrerHistorialMes, RankingMensual.Pendientes.NINGUNA, 1, TimeUnit.DAYS.toMillis(1));
+        ranking.primeros(mes, anio, email, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ranking.close();
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    @Benchmark
+    public List<ResumenProducto> entidades() {
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            LocalDateTime inicio = LocalDateTime.of(anio, mes, 1, 0, 0);
+            TypedQuery<Producto> query = em.createQuery(
+                    "SELECT p FROM Producto p WHERE p.fechaPublicacion >= :inicio AND p.fechaPublicacion < :fin"
+                    + " AND p.vendedor.email = :email ORDER BY p.visualizaciones DESC", Producto.class);
+            query.setParameter("inicio", inicio);
+            query.setParameter("fin", inicio.plusMonths(1));
+            query.setParameter("email", email);
+
+            List<ResumenProducto> resumen = new ArrayList<>();
+            for (Producto p : query.getResultList()) {
+                resumen.add(new ResumenProducto(p.getId(), p.getTitulo(), p.getPrecio(), p.getFechaPublicacion(),
+                        p.getCategoria().getNombre(), p.getVisualizaciones()));
+            }
+            // antes el límite había que aplicarlo sobre la lista completa
+            return limite > 0 && resumen.size() > limite ? resumen.subList(0, limite) : resumen;
+        } finally {
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Benchmark
+    public List<ResumenProducto> proyeccion() throws Exception {
+        return repositorio.getHistorialMes(mes, anio, email, limite);
+    }
+
+    @Benchmark
+    public List<ResumenProducto> ranking() throws Exception {
+        return ranking.primeros(mes, anio, email, limite > 0 ? limite : Integer.MAX_VALUE);
+    }
+}
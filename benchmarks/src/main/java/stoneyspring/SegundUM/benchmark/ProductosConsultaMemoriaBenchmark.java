@@ -0,0 +1,158 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.EntidadNoEncontrada;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.Pagina;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.FiltroProductos;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Memoria y tiempo para leer todos los productos de un vendedor con millones de productos:
+ * la lista completa ({@code getProductosPorVendedor}), página a página por clave ({@code buscarPagina})
+ * y con cursor ({@code recorrer}).
+ * <p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}). La primera vez inserta
+ * {@code filas} productos de un vendedor de pruebas (tarda) y en las siguientes los reutiliza.
+ * Cada iteración imprime el pico de heap usado; con el {@code -Xmx} del fork la lista completa
+ * se queda sin memoria con suficientes filas, mientras que las otras dos variantes no dependen de ellas.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar ProductosConsultaMemoriaBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx1g" })
+public class ProductosConsultaMemoriaBenchmark {
+
+    private static final String VENDEDOR = "bench-vendedor";
+    private static final String CATEGORIA = "bench-categoria";
+    private static final int TAMANO_PAGINA = 1000;
+
+    @Param({ "2000000" })
+    public int filas;
+
+    private RepositorioProductos repositorio;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = FactoriaRepositorios.getRepositorio(Producto.class);
+        RepositorioUsuarios repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+        RepositorioCategorias repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+
+        Usuario vendedor;
+        try {
+            vendedor = repositorioUsuarios.getById(VENDEDOR);
+        } catch (EntidadNoEncontrada e) {
+            vendedor = new Usuario(VENDEDOR, VENDEDOR + "@bench.segundum.com", "Bench", "Mark",
+                    "clave", LocalDate.of(1990, 1, 1), null);
+            repositorioUsuarios.add(vendedor);
+        }
+        if (!repositorioCategorias.existe(CATEGORIA)) {
+            repositorioCategorias.add(new Categoria(CATEGORIA, "Benchmark"));
+        }
+        Categoria categoria = repositorioCategorias.getById(CATEGORIA);
+
+        long existentes = contar();
+
+        List<Producto> lote = new ArrayList<>(10_000);
+        for (long i = existentes; i < filas; i++) {
+            lote.add(new Producto(UUID.randomUUID().toString(), "Producto " + i, "Producto de benchmark " + i,
+                    BigDecimal.valueOf(i % 1000), EstadoProducto.NUEVO, categoria, true, vendedor));
+            if (lote.size() == 10_000 || i == filas - 1) {
+                repositorio.addAll(lote, 1000);
+                lote.clear();
+            }
+        }
+    }
+
+    private long contar() throws Exception {
+        long[] total = { 0 };
+        repositorio.recorrer(FiltroProductos.porVendedor(VENDEDOR), p -> total[0]++);
+        return total[0];
+    }
+
+    @Setup(Level.Iteration)
+    public void reiniciarPico() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void imprimirPico() {
+        long pico = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pico += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.println("\n  pico de heap: " + pico / (1024 * 1024) + " MB");
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    @Benchmark
+    public void listaCompleta(Blackhole bh) throws Exception {
+        for (Producto p : repositorio.getProductosPorVendedor(VENDEDOR)) {
+            bh.consume(p);
+        }
+    }
+
+    @Benchmark
+    public void paginasPorClave(Blackhole bh) throws Exception {
+        FiltroProductos filtro = FiltroProductos.porVendedor(VENDEDOR);
+        String cursor = null;
+        do {
+            Pagina<Producto> pagina = repositorio.buscarPagina(filtro, cursor, TAMANO_PAGINA);
+            for (Producto p : pagina.getElementos()) {
+                bh.consume(p);
+            }
+            cursor = pagina.getSiguiente();
+        } while (cursor != null);
+    }
+
+    @Benchmark
+    public void cursor(Blackhole bh) throws Exception {
+        repositorio.recorrer(FiltroProductos.porVendedor(VENDEDOR), bh::consume);
+    }
+}
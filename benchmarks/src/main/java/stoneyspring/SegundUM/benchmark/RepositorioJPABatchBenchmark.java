@@ -0,0 +1,96 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.utils.EntityManagerHelper;
+
+/**
+ * Filas por segundo al dar de alta usuarios con {@code add} (una transacción por fila)
+ * y con {@code addAll} para distintos tamaños de lote.
+ * <p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}). Cada invocación inserta
+ * {@value #FILAS} usuarios, y al final de cada iteración se borran con {@code deleteAll}.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar RepositorioJPABatchBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RepositorioJPABatchBenchmark {
+
+    private static final int FILAS = 1000;
+
+    @Param({ "1", "10", "100", "1000" })
+    public int tamanoLote;
+
+    private RepositorioUsuarios repositorio;
+    private final List<Usuario> insertados = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        repositorio = FactoriaRepositorios.getRepositorio(Usuario.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void borrarInsertados() throws Exception {
+        repositorio.deleteAll(insertados, 1000);
+        insertados.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        EntityManagerHelper.closeEntityManagerFactory();
+    }
+
+    private List<Usuario> nuevosUsuarios() {
+        List<Usuario> usuarios = new ArrayList<>(FILAS);
+        for (int i = 0; i < FILAS; i++) {
+            String id = UUID.randomUUID().toString();
+            usuarios.add(new Usuario(id, id + "@bench.segundum.com", "Bench", "Mark",
+                    "clave", LocalDate.of(1990, 1, 1), null));
+        }
+        insertados.addAll(usuarios);
+        return usuarios;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILAS)
+    public void addUnoAUno() throws Exception {
+        for (Usuario usuario : nuevosUsuarios()) {
+            repositorio.add(usuario);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILAS)
+    public List<String> addAll() throws Exception {
+        return repositorio.addAll(nuevosUsuarios(), tamanoLote);
+    }
+}
@@ -0,0 +1,91 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.repositorio.RepositorioXML;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategoriasXML;
+
+/**
+ * Rendimiento de carga y guardado de las jerarquías de <i>categoriasXML/</i>.
+ * <p>
+ * Los métodos <i>sinCache</i> reproducen lo que hacía antes {@link RepositorioXML}
+ * (un {@link JAXBContext} nuevo en cada operación) y los métodos <i>repositorio</i>
+ * usan el repositorio con el contexto cacheado y los (un)marshallers del pool.
+ * </p>
+ * Se lanza desde el directorio <i>SegundUM/</i> (el repositorio usa rutas relativas):
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar RepositorioXMLBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositorioXMLBenchmark {
+
+    private static final String ID_GUARDADO = "benchmark";
+
+    @Param({ "Electronica.xml", "Material_de_oficina.xml", "Camaras_y_opticas.xml" })
+    public String fichero;
+
+    private RepositorioCategoriasXML repositorio;
+    private Categoria categoria;
+
+    @Setup
+    public void setUp() throws Exception {
+        repositorio = new RepositorioCategoriasXML();
+        categoria = repositorio.getById(fichero);
+        // se guarda siempre sobre un fichero fijo (add generaría uno nuevo en cada invocación)
+        categoria.setId(ID_GUARDADO);
+        guardarSinCache();
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(RepositorioXML.DIRECTORIO + "Categoria-" + ID_GUARDADO + ".xml").delete();
+    }
+
+    @Benchmark
+    public Object cargarSinCache() throws Exception {
+        JAXBContext contexto = JAXBContext.newInstance(Categoria.class);
+        return contexto.createUnmarshaller().unmarshal(new File(RepositorioXML.DIRECTORIO + fichero));
+    }
+
+    @Benchmark
+    public Categoria cargarRepositorio() throws Exception {
+        return repositorio.getById(fichero);
+    }
+
+    @Benchmark
+    public void guardarSinCache() throws Exception {
+        JAXBContext contexto = JAXBContext.newInstance(Categoria.class);
+        Marshaller marshaller = contexto.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        marshaller.marshal(categoria, new File(RepositorioXML.DIRECTORIO + "Categoria-" + ID_GUARDADO + ".xml"));
+    }
+
+    @Benchmark
+    public void guardarRepositorio() throws Exception {
+        repositorio.update(categoria);
+    }
+}
@@ -0,0 +1,136 @@
+package stoneyspring.SegundUM.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stoneyspring.SegundUM.dominio.Categoria;
+import stoneyspring.SegundUM.dominio.EstadoProducto;
+import stoneyspring.SegundUM.dominio.Producto;
+import stoneyspring.SegundUM.dominio.Usuario;
+import stoneyspring.SegundUM.repositorio.FactoriaRepositorios;
+import stoneyspring.SegundUM.repositorio.Pagina;
+import stoneyspring.SegundUM.repositorio.categorias.RepositorioCategorias;
+import stoneyspring.SegundUM.repositorio.productos.RepositorioProductos;
+import stoneyspring.SegundUM.repositorio.usuarios.RepositorioUsuarios;
+import stoneyspring.SegundUM.servicio.EjecutorServicios;
+import stoneyspring.SegundUM.servicio.FactoriaServicios;
+import stoneyspring.SegundUM.servicio.productos.ServicioProductosAsync;
+
+/**
+ * Peticiones por segundo de {@link ServicioProductosAsync} según cuántas haya en curso a la vez.
+ * <p>
+ * Cada hilo de JMH mantiene hasta {@code ventana} peticiones {@code productosVendedor} (primera página de 20)
+ * sin terminar: cada operación envía una y, si la ventana está llena, espera a la más antigua. Así las
+ * operaciones por segundo son peticiones por segundo, y con {@code ventana} 1 el resultado es el del servicio
+ * síncrono. Al crecer la ventana las peticiones se solapan en {@link EjecutorServicios} hasta que se agotan las
+ * conexiones del pool de la base de datos.
+ * </p>
+ * <p>
+ * Usa la base de datos de los benchmarks (ver {@link stoneyspring.benchmark.EjecutarBenchmarks}). Antes de medir
+ * se crean una categoría, un vendedor y 500 productos suyos; se borran al terminar.
+ * </p>
+ * <pre>
+ * java -jar ../benchmarks/target/benchmarks.jar ServiciosAsyncCargaBenchmark
+ * java -jar ../benchmarks/target/benchmarks.jar ServiciosAsyncCargaBenchmark -t 4
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ServiciosAsyncCargaBenchmark {
+
+    private static final String PREFIJO = "bench-async-";
+    private static final int PRODUCTOS = 500;
+    private static final int TAMANO_PAGINA = 20;
+
+    @Param({ "1", "4", "16", "64" })
+    public int ventana;
+
+    private ServicioProductosAsync servicio;
+
+    private RepositorioCategorias repositorioCategorias;
+    private RepositorioProductos repositorioProductos;
+    private RepositorioUsuarios repositorioUsuarios;
+
+    private Categoria categoria;
+    private Usuario vendedor;
+    private final List<Producto> insertados = new ArrayList<>();
+
+    /**
+     * Peticiones en curso de un hilo de JMH, de la más antigua a la más reciente.
+     */
+    @State(Scope.Thread)
+    public static class EnCurso {
+
+        final Deque<CompletableFuture<Pagina<Producto>>> peticiones = new ArrayDeque<>();
+
+        @TearDown(Level.Iteration)
+        public void esperarTodas() {
+            while (!peticiones.isEmpty()) {
+                peticiones.poll().join();
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        servicio = FactoriaServicios.getServicioAsync(ServicioProductosAsync.class);
+
+        repositorioCategorias = FactoriaRepositorios.getRepositorio(Categoria.class);
+        repositorioProductos = FactoriaRepositorios.getRepositorio(Producto.class);
+        repositorioUsuarios = FactoriaRepositorios.getRepositorio(Usuario.class);
+
+        categoria = new Categoria(PREFIJO + "categoria", "Categoría de carga");
+        repositorioCategorias.add(categoria);
+
+        vendedor = new Usuario(PREFIJO + "vendedor", PREFIJO + "vendedor@bench.segundum.com", "Bench", "Mark",
+                "clave", LocalDate.of(1990, 1, 1), null);
+        repositorioUsuarios.add(vendedor);
+
+        for (int i = 0; i < PRODUCTOS; i++) {
+            insertados.add(new Producto(PREFIJO + UUID.randomUUID(), "Producto " + i, "Producto de carga " + i,
+                    BigDecimal.valueOf(5 + i % 500), EstadoProducto.values()[i % EstadoProducto.values().length],
+                    categoria, true, vendedor));
+        }
+        repositorioProductos.addAll(insertados, 500);
+        System.out.println("Hilos virtuales: " + EjecutorServicios.isHilosVirtuales());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        repositorioProductos.deleteAll(insertados, 500);
+        repositorioUsuarios.delete(vendedor);
+        repositorioCategorias.delete(repositorioCategorias.getById(categoria.getId()));
+    }
+
+    @Benchmark
+    public Pagina<Producto> productosVendedor(EnCurso enCurso) {
+        Deque<CompletableFuture<Pagina<Producto>>> peticiones = enCurso.peticiones;
+        peticiones.add(servicio.productosVendedor(vendedor.getId(), null, TAMANO_PAGINA));
+        return peticiones.size() >= ventana ? peticiones.poll().join() : null;
+    }
+}
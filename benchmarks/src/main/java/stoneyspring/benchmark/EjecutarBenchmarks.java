@@ -0,0 +1,87 @@
+package stoneyspring.benchmark;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>
+ * Punto de entrada de <i>benchmarks.jar</i>. Admite las mismas opciones que JMH (por ejemplo, una expresión
+ * regular con los benchmarks a ejecutar, {@code -f 0} o {@code -prof gc}) y añade dos cosas:
+ * </p>
+ * <ul>
+ * <li>Los benchmarks que usan JPA (de SegundUM y de encuestas) trabajan sobre una base de datos H2 embebida
+ * en fichero, <i>benchmarks-h2/</i> en el directorio de trabajo, así que no hace falta un servidor MySQL.
+ * Se pasa a los procesos de JMH con las propiedades {@code javax.persistence.jdbc.*}, que los
+ * EntityManagerHelper anteponen a <i>persistence.xml</i>; para medir contra otra base de datos basta con
+ * indicarlas al lanzar ({@code java -Djavax.persistence.jdbc.url=... -jar benchmarks.jar}).</li>
+ * <li>Los resultados se guardan en JSON en <i>resultados/jmh-fecha.json</i>, para poder compararlos entre
+ * ejecuciones. Con {@code -rf} y {@code -rff} se cambia el formato y el fichero.</li>
+ * </ul>
+ * Se lanza desde el directorio <i>SegundUM/</i>, porque los repositorios XML usan rutas relativas:
+ * <pre>
+ * mvn -DskipTests package
+ * cd SegundUM
+ * java -jar ../benchmarks/target/benchmarks.jar [benchmarks] [opciones de JMH]
+ * </pre>
+ */
+public class EjecutarBenchmarks {
+
+    private static final String DIRECTORIO_RESULTADOS = "resultados";
+
+    /** Base de datos por defecto: propiedad y valor. */
+    private static final String[][] BASE_DATOS = {
+        { "javax.persistence.jdbc.driver", "org.h2.Driver" },
+        { "javax.persistence.jdbc.url", "jdbc:h2:file:./benchmarks-h2/bd;MODE=MySQL" },
+        { "javax.persistence.jdbc.user", "sa" },
+        { "javax.persistence.jdbc.password", "" },
+    };
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions linea = new CommandLineOptions(args);
+        if (linea.shouldHelp() || linea.shouldList() || linea.shouldListWithParams()
+                || linea.shouldListProfilers() || linea.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        // Propiedades de la base de datos (y cualquier eclipselink.* indicada al lanzar) para este proceso,
+        // por si se ejecuta sin procesos hijos (-f 0), y para los procesos de JMH
+        Properties sistema = System.getProperties();
+        for (String[] propiedad : BASE_DATOS) {
+            if (sistema.getProperty(propiedad[0]) == null) {
+                sistema.setProperty(propiedad[0], propiedad[1]);
+            }
+        }
+        List<String> argumentosJvm = new ArrayList<>();
+        for (String nombre : sistema.stringPropertyNames()) {
+            if (nombre.startsWith("javax.persistence.") || nombre.startsWith("eclipselink.")) {
+                argumentosJvm.add("-D" + nombre + "=" + sistema.getProperty(nombre));
+            }
+        }
+        argumentosJvm.addAll(linea.getJvmArgsPrepend().orElse(new ArrayList<>()));
+
+        OptionsBuilder opciones = new OptionsBuilder();
+        opciones.parent(linea);
+        opciones.jvmArgsPrepend(argumentosJvm.toArray(new String[0]));
+
+        ResultFormatType formato = linea.getResultFormat().orElse(ResultFormatType.JSON);
+        opciones.resultFormat(formato);
+        if (!linea.getResult().hasValue()) {
+            new File(DIRECTORIO_RESULTADOS).mkdirs();
+            String fecha = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            opciones.result(DIRECTORIO_RESULTADOS + "/jmh-" + fecha + "." + formato.toString().toLowerCase());
+        }
+
+        new Runner(opciones.build()).run();
+    }
+}
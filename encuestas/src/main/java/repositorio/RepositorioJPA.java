@@ -1,6 +1,10 @@
 package repositorio;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -77,6 +81,136 @@ public abstract class RepositorioJPA<T extends Identificable> implements Reposit
         }
     }
 
+    /*
+     * Operaciones por lotes: todo va en una transacción y cada tamanoLote entidades se hace
+     * flush (las sentencias salen agrupadas por el batch writing de EclipseLink, ver persistence.xml)
+     * y clear, para que el contexto de persistencia no crezca con el número de entidades.
+     */
+
+    @Override
+    public List<String> addAll(Collection<T> entities, int tamanoLote) throws RepositorioException {
+        comprobarTamanoLote(tamanoLote);
+        List<String> ids = new ArrayList<>(entities.size());
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            int pendientes = 0;
+            for (T entity : entities) {
+                em.persist(entity);
+                ids.add(entity.getId());
+                if (++pendientes == tamanoLote) {
+                    em.flush();
+                    em.clear();
+                    pendientes = 0;
+                }
+            }
+            em.getTransaction().commit();
+        } catch (Exception e) {
+            throw new RepositorioException("Error al guardar " + entities.size() + " entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            EntityManagerHelper.closeEntityManager();
+        }
+        return ids;
+    }
+
+    @Override
+    public void updateAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+        comprobarTamanoLote(tamanoLote);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (List<T> lote : trocear(entities, tamanoLote)) {
+                comprobarExisten(em, lote);
+                for (T entity : lote) {
+                    em.merge(entity);
+                }
+                em.flush();
+                em.clear();
+            }
+            em.getTransaction().commit();
+        } catch (RuntimeException e) {
+            throw new RepositorioException("Error al actualizar " + entities.size() + " entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+        comprobarTamanoLote(tamanoLote);
+        EntityManager em = EntityManagerHelper.getEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (List<T> lote : trocear(entities, tamanoLote)) {
+                for (T instancia : comprobarExisten(em, lote)) {
+                    // remove (y no un DELETE masivo) para respetar las cascadas del mapeo
+                    em.remove(instancia);
+                }
+                em.flush();
+                em.clear();
+            }
+            em.getTransaction().commit();
+        } catch (RuntimeException e) {
+            throw new RepositorioException("Error al borrar " + entities.size() + " entidades de " + getClase().getSimpleName(), e);
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            EntityManagerHelper.closeEntityManager();
+        }
+    }
+
+    private void comprobarTamanoLote(int tamanoLote) {
+        if (tamanoLote <= 0) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser positivo: " + tamanoLote);
+        }
+    }
+
+    private List<List<T>> trocear(Collection<T> entities, int tamanoLote) {
+        List<List<T>> lotes = new ArrayList<>();
+        List<T> lote = new ArrayList<>(tamanoLote);
+        for (T entity : entities) {
+            lote.add(entity);
+            if (lote.size() == tamanoLote) {
+                lotes.add(lote);
+                lote = new ArrayList<>(tamanoLote);
+            }
+        }
+        if (!lote.isEmpty()) {
+            lotes.add(lote);
+        }
+        return lotes;
+    }
+
+    /*
+     * Recupera con una sola consulta las instancias del lote y lanza EntidadNoEncontrada si falta alguna.
+     */
+    private List<T> comprobarExisten(EntityManager em, List<T> lote) throws EntidadNoEncontrada {
+        Set<String> ids = new HashSet<>();
+        for (T entity : lote) {
+            ids.add(entity.getId());
+        }
+
+        final String queryString = " SELECT t from " + getClase().getSimpleName() + " t WHERE t.id IN :ids ";
+        TypedQuery<T> query = em.createQuery(queryString, getClase());
+        query.setParameter("ids", ids);
+        List<T> instancias = query.getResultList();
+
+        if (instancias.size() != ids.size()) {
+            for (T instancia : instancias) {
+                ids.remove(instancia.getId());
+            }
+            throw new EntidadNoEncontrada(ids + " no existen en el repositorio");
+        }
+        return instancias;
+    }
+
     @Override
     public T getById(String id) throws EntidadNoEncontrada, RepositorioException {
         try {   
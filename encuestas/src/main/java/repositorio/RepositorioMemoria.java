@@ -1,6 +1,7 @@
 package repositorio;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -44,6 +45,42 @@ public class RepositorioMemoria<T extends Identificable> implements RepositorioS
 		this.entidades.remove(entity.getId());
 	}
 
+	// Se comprueba todo antes de modificar el mapa, así que si falta alguna no se cambia ninguna;
+	// el tamaño de lote no aplica
+
+	@Override
+	public List<String> addAll(Collection<T> entities, int tamanoLote) {
+		
+		List<String> ids = new ArrayList<>(entities.size());
+		for (T entity : entities)
+			ids.add(add(entity));
+		
+		return ids;
+	}
+
+	@Override
+	public void updateAll(Collection<T> entities, int tamanoLote) throws EntidadNoEncontrada {
+		
+		comprobarExisten(entities);
+		for (T entity : entities)
+			this.entidades.put(entity.getId(), entity);
+	}
+
+	@Override
+	public void deleteAll(Collection<T> entities, int tamanoLote) throws EntidadNoEncontrada {
+		
+		comprobarExisten(entities);
+		for (T entity : entities)
+			this.entidades.remove(entity.getId());
+	}
+
+	private void comprobarExisten(Collection<T> entities) throws EntidadNoEncontrada {
+		
+		for (T entity : entities)
+			if (! this.entidades.containsKey(entity.getId()))
+				throw new EntidadNoEncontrada(entity.getId() + " no existe en el repositorio");
+	}
+
 	@Override
 	public T getById(String id) throws EntidadNoEncontrada {
 		
@@ -1,9 +1,46 @@
 package repositorio;
 
+import java.util.Collection;
+import java.util.List;
+
 /*
  * Extensión de la interfaz repositorio para concretar
  * el uso de cadenas como identificadores
  */
 public interface RepositorioString<T> extends Repositorio<T, String> {
 
+    /*
+     * Número de entidades que se escriben por lote si no se indica otro.
+     */
+    int TAMANO_LOTE_POR_DEFECTO = 100;
+
+    /*
+     * Añade todas las entidades en una única operación, escribiéndolas en lotes de
+     * tamanoLote elementos. Devuelve los ids en el mismo orden.
+     */
+    List<String> addAll(Collection<T> entities, int tamanoLote) throws RepositorioException;
+
+    /*
+     * Actualiza todas las entidades en una única operación, escribiéndolas en lotes de
+     * tamanoLote elementos. Si alguna no existe no se actualiza ninguna.
+     */
+    void updateAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada;
+
+    /*
+     * Borra todas las entidades en una única operación, en lotes de tamanoLote elementos.
+     * Si alguna no existe no se borra ninguna.
+     */
+    void deleteAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada;
+
+    default List<String> addAll(Collection<T> entities) throws RepositorioException {
+        return addAll(entities, TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    default void updateAll(Collection<T> entities) throws RepositorioException, EntidadNoEncontrada {
+        updateAll(entities, TAMANO_LOTE_POR_DEFECTO);
+    }
+
+    default void deleteAll(Collection<T> entities) throws RepositorioException, EntidadNoEncontrada {
+        deleteAll(entities, TAMANO_LOTE_POR_DEFECTO);
+    }
 }
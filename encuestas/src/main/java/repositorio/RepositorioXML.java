@@ -1,6 +1,8 @@
 package repositorio;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
@@ -114,6 +116,41 @@ public abstract class RepositorioXML<T extends Identificable> implements Reposit
 
 	}
 
+	// En ficheros no hay transacciones ni escritura por lotes: se comprueba todo antes de escribir
+	// y el tamaño de lote se ignora
+
+	@Override
+	public List<String> addAll(Collection<T> entities, int tamanoLote) throws RepositorioException {
+		List<String> ids = new ArrayList<>(entities.size());
+		for (T entity : entities) {
+			ids.add(add(entity));
+		}
+		return ids;
+	}
+
+	@Override
+	public void updateAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+		comprobarExisten(entities);
+		for (T entity : entities) {
+			save(entity);
+		}
+	}
+
+	@Override
+	public void deleteAll(Collection<T> entities, int tamanoLote) throws RepositorioException, EntidadNoEncontrada {
+		comprobarExisten(entities);
+		for (T entity : entities) {
+			new File(getDocumento(entity.getId())).delete();
+		}
+	}
+
+	private void comprobarExisten(Collection<T> entities) throws EntidadNoEncontrada {
+		for (T entity : entities) {
+			if (!checkDocumento(entity.getId()))
+				throw new EntidadNoEncontrada("La entidad no existe, id: " + entity.getId());
+		}
+	}
+
 	@Override
 	public T getById(String id) throws RepositorioException, EntidadNoEncontrada {
 		return load(id);
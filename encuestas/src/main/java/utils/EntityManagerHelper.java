@@ -1,16 +1,29 @@
 package utils;
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
 
 import repositorio.Identificable;
 
+/*
+ * Las propiedades de sistema javax.persistence.* y eclipselink.* sustituyen a las de persistence.xml
+ * (por ejemplo, para usar una base de datos embebida en los benchmarks).
+ */
 public class EntityManagerHelper {
     private static EntityManagerFactory entityManagerFactory;
     private static final ThreadLocal<EntityManager> entityManagerHolder;
 
     static {    
-        entityManagerFactory = Persistence.createEntityManagerFactory("encuestas");
+        Map<String, String> propiedades = new HashMap<>();
+        for (String nombre : System.getProperties().stringPropertyNames()) {
+            if (nombre.startsWith("javax.persistence.") || nombre.startsWith("eclipselink.")) {
+                propiedades.put(nombre, System.getProperty(nombre));
+            }
+        }
+        entityManagerFactory = Persistence.createEntityManagerFactory("encuestas", propiedades);
         entityManagerHolder = new ThreadLocal<EntityManager>();
     }
 